@@ -18,6 +18,7 @@ import java.security.Principal;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.nuxeo.ecm.core.api.DocumentModel.DocumentModelRefresh;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
@@ -368,6 +369,39 @@ public interface CoreSession extends AutoCloseable {
     DocumentModelList getChildren(DocumentRef parent, String type,
             Filter filter, Sorter sorter) throws ClientException;
 
+    /**
+     * Gets a page of the children of the given parent, filtered according to
+     * the given document type and permission, and ordered.
+     * <p>
+     * Unlike {@link #getChildren(DocumentRef, String, String, Filter, Sorter)},
+     * the filtering on type, the ordering and the paging are done by the query
+     * engine, and only the documents of the requested page are loaded. The
+     * {@code Browse} permission is checked by the query engine (using read
+     * ACLs when available), other permissions are checked on each candidate
+     * child.
+     *
+     * @param parent the parent reference
+     * @param type the wanted document type, or {@code null} for all types
+     * @param perm the permission to check, or {@code null} for {@code Browse}
+     * @param orderBy the NXQL order by clause (without {@code ORDER BY}), or
+     *            {@code null} to order by position then name
+     * @param limit the maximum number of children to return, or 0 for all of
+     *            them
+     * @param offset the offset (starting at 0) of the first child to return
+     * @param countUpTo if {@code -1}, count the total number of children. If
+     *            {@code 0}, don't count it. If {@code n}, count it if there
+     *            are no more than {@code n} children, otherwise set it to
+     *            {@code -2}
+     * @return the page of children, with the total number of children as
+     *         {@link DocumentModelList#totalSize}
+     * @throws ClientException
+     * @since 7.1
+     */
+    @NoRollbackOnException
+    DocumentModelList getChildren(DocumentRef parent, String type,
+            String perm, String orderBy, long limit, long offset,
+            long countUpTo) throws ClientException;
+
     /**
      * Same as {@link CoreSession#getChildren(DocumentRef)} but returns only
      * folder documents.
@@ -879,6 +913,21 @@ public interface CoreSession extends AutoCloseable {
     DataModel getDataModel(DocumentRef docRef, Schema schema)
             throws ClientException;
 
+    /**
+     * Loads the given schemas for several documents at once.
+     * <p>
+     * The storage reads the data of all the documents together where it can,
+     * instead of once per document and schema as with lazy loading. Schemas
+     * already loaded are skipped, as are documents not bound to this session
+     * or that cannot be read; they will be lazily loaded as usual.
+     *
+     * @param docs the documents
+     * @param schemas the schema names
+     * @since 7.1
+     */
+    void loadDataModels(List<DocumentModel> docs, Set<String> schemas)
+            throws ClientException;
+
     // -------- Versioning API ---------------
 
     /**
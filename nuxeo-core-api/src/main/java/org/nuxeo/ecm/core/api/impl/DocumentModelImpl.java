@@ -16,6 +16,8 @@ import static org.apache.commons.lang.ObjectUtils.NULL;
 import static org.nuxeo.ecm.core.schema.types.ComplexTypeImpl.canonicalXPath;
 
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.text.DateFormat;
 import java.util.ArrayList;
@@ -191,6 +193,50 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
 
     protected static Boolean strictSessionManagement;
 
+    /**
+     * The documents whose schemas are loaded together with this one's, or
+     * {@code null}.
+     *
+     * @since 7.1
+     */
+    protected transient BatchLoadGroup batchLoadGroup;
+
+    /**
+     * Documents that load their lazily-loaded schemas together, see
+     * {@link CoreSession#loadDataModels}.
+     * <p>
+     * The documents are weakly referenced, so that a document kept around
+     * doesn't keep alive the whole list it was part of.
+     *
+     * @since 7.1
+     */
+    public static class BatchLoadGroup {
+
+        protected final List<Reference<DocumentModel>> docs;
+
+        public BatchLoadGroup(Collection<DocumentModel> docs) {
+            this.docs = new ArrayList<Reference<DocumentModel>>(docs.size());
+            for (DocumentModel doc : docs) {
+                this.docs.add(new WeakReference<DocumentModel>(doc));
+            }
+        }
+
+        /**
+         * Gets the documents of the group that are still referenced.
+         */
+        public List<DocumentModel> getDocuments() {
+            List<DocumentModel> list = new ArrayList<DocumentModel>(
+                    docs.size());
+            for (Reference<DocumentModel> ref : docs) {
+                DocumentModel doc = ref.get();
+                if (doc != null) {
+                    list.add(doc);
+                }
+            }
+            return list;
+        }
+    }
+
     protected DocumentModelImpl() {
     }
 
@@ -487,6 +533,20 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
                     + "lazy loading is not available");
             return null;
         }
+        CoreSession coreSession = batchLoadGroup == null ? null
+                : getCoreSession();
+        if (coreSession != null) {
+            // load the schema for the whole group at once
+            List<DocumentModel> docs = batchLoadGroup.getDocuments();
+            if (docs.size() > 1) {
+                coreSession.loadDataModels(docs,
+                        Collections.singleton(schema));
+                DataModel dataModel = dataModels.get(schema);
+                if (dataModel != null) {
+                    return dataModel;
+                }
+            }
+        }
         TypeProvider typeProvider = Framework.getLocalService(SchemaManager.class);
         final Schema schemaType = typeProvider.getSchema(schema);
         DataModel dataModel = new RunWithCoreSession<DataModel>() {
@@ -517,6 +577,34 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
         dataModels.put(dataModel.getSchema(), dataModel);
     }
 
+    /**
+     * Gets which of the given schemas have to be read from the persistent
+     * document, because they are neither loaded yet nor new for this document.
+     *
+     * @since 7.1
+     */
+    public Set<String> getSchemasToLoad(Collection<String> schemas) {
+        Set<String> toLoad = new HashSet<String>();
+        for (String schema : schemas) {
+            if (schemasOrig.contains(schema) && this.schemas.contains(schema)
+                    && !dataModels.containsKey(schema)) {
+                toLoad.add(schema);
+            }
+        }
+        return toLoad;
+    }
+
+    /**
+     * Sets the documents whose schemas are loaded together with this one's.
+     *
+     * @param batchLoadGroup the group, or {@code null} to load the schemas of
+     *            this document on their own
+     * @since 7.1
+     */
+    public void setBatchLoadGroup(BatchLoadGroup batchLoadGroup) {
+        this.batchLoadGroup = batchLoadGroup;
+    }
+
     @Override
     public String[] getSchemas() {
         return schemas.toArray(new String[schemas.size()]);
@@ -1513,6 +1601,7 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
     @Override
     public DocumentModel clone() throws CloneNotSupportedException {
         DocumentModelImpl dm = (DocumentModelImpl) super.clone();
+        dm.batchLoadGroup = null;
         // dm.id =id;
         // dm.acp = acp;
         // dm.currentLifeCycleState = currentLifeCycleState;
@@ -16,8 +16,10 @@ package org.nuxeo.ecm.core.api.impl;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl.BatchLoadGroup;
 
 /**
  * @author Bogdan Stefanescu
@@ -61,6 +63,24 @@ public class DocumentModelListImpl extends ArrayList<DocumentModel> implements
         this.totalSize = totalSize;
     }
 
+    /**
+     * Makes the documents of this list load their schemas together: the first
+     * time a schema not loaded yet is accessed on one of them, it is loaded
+     * for all of them at once using {@link CoreSession#loadDataModels}.
+     * <p>
+     * Documents added to the list afterwards are not part of the batch.
+     *
+     * @since 7.1
+     */
+    public void enableBatchLoading() {
+        BatchLoadGroup group = new BatchLoadGroup(this);
+        for (DocumentModel doc : this) {
+            if (doc instanceof DocumentModelImpl) {
+                ((DocumentModelImpl) doc).setBatchLoadGroup(group);
+            }
+        }
+    }
+
     @Override
     public long totalSize() {
         if (totalSize == -1) {
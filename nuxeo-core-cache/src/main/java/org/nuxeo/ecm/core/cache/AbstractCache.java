@@ -17,8 +17,26 @@
  */
 package org.nuxeo.ecm.core.cache;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Abstract class to be extended to provide new cache implementation
+ * <p>
+ * The bulk operations are implemented by calling the single-key operations,
+ * and the asynchronous operations by calling the synchronous ones in a shared
+ * thread pool. Implementations should override them when they can do better.
  *
  * @since 6.0
  */
@@ -27,7 +45,21 @@ public abstract class AbstractCache implements Cache {
     protected final String name;
 
     protected final int ttl;
-    
+
+    /**
+     * Maximum number of threads used for the asynchronous operations.
+     *
+     * @since 7.1
+     */
+    protected static final int ASYNC_THREADS = 16;
+
+    /**
+     * Executor for the default asynchronous operations.
+     *
+     * @since 7.1
+     */
+    protected static final ExecutorService ASYNC_EXECUTOR = newAsyncExecutor();
+
     protected AbstractCache(CacheDescriptor desc) {
        name = desc.name;
        ttl = desc.ttl;
@@ -38,5 +70,121 @@ public abstract class AbstractCache implements Cache {
         return name;
     }
 
+    /**
+     * Called once the cache is instantiated, before it is used. Background
+     * resources needed by the cache should be started here rather than in the
+     * constructor.
+     *
+     * @since 7.1
+     */
+    public void start() {
+    }
+
+    protected static ExecutorService newAsyncExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(ASYNC_THREADS,
+                ASYNC_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                    protected final AtomicInteger threadNumber = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Nuxeo-Cache-Async-"
+                                + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public Map<String, Serializable> getAll(Collection<String> keys)
+            throws IOException {
+        Map<String, Serializable> values = new HashMap<String, Serializable>();
+        for (String key : keys) {
+            if (key == null) {
+                continue;
+            }
+            Serializable value = get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> entries)
+            throws IOException {
+        for (Map.Entry<String, ? extends Serializable> es : entries.entrySet()) {
+            put(es.getKey(), es.getValue());
+        }
+    }
+
+    @Override
+    public void invalidateAll(Collection<String> keys) throws IOException {
+        for (String key : keys) {
+            if (key != null) {
+                invalidate(key);
+            }
+        }
+    }
+
+    @Override
+    public Future<Serializable> getAsync(final String key) {
+        return ASYNC_EXECUTOR.submit(new Callable<Serializable>() {
+            @Override
+            public Serializable call() throws IOException {
+                return get(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Map<String, Serializable>> getAllAsync(
+            final Collection<String> keys) {
+        return ASYNC_EXECUTOR.submit(new Callable<Map<String, Serializable>>() {
+            @Override
+            public Map<String, Serializable> call() throws IOException {
+                return getAll(keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> putAsync(final String key, final Serializable value) {
+        return ASYNC_EXECUTOR.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                put(key, value);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> putAllAsync(
+            final Map<String, ? extends Serializable> entries) {
+        return ASYNC_EXECUTOR.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                putAll(entries);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> invalidateAsync(final String key) {
+        return ASYNC_EXECUTOR.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                invalidate(key);
+                return null;
+            }
+        });
+    }
 
 }
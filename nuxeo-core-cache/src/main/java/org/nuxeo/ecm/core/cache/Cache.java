@@ -19,6 +19,9 @@ package org.nuxeo.ecm.core.cache;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * The nuxeo cache interface that define generic methods to use cache
@@ -72,4 +75,67 @@ public interface Cache {
      */
     public void put(String key, Serializable value) throws IOException;
 
+    /**
+     * Gets several values from the cache.
+     *
+     * @param keys the keys, null keys are ignored
+     * @return a map of the keys that exist to their values
+     * @since 7.1
+     */
+    public Map<String, Serializable> getAll(Collection<String> keys)
+            throws IOException;
+
+    /**
+     * Stores several values.
+     *
+     * @param entries the keys and values to store, none of them can be null
+     * @since 7.1
+     */
+    public void putAll(Map<String, ? extends Serializable> entries)
+            throws IOException;
+
+    /**
+     * Invalidates the given keys.
+     *
+     * @param keys the keys to remove from the cache, null keys are ignored
+     * @since 7.1
+     */
+    public void invalidateAll(Collection<String> keys) throws IOException;
+
+    /**
+     * Asynchronous version of {@link #get}.
+     *
+     * @since 7.1
+     */
+    public Future<Serializable> getAsync(String key);
+
+    /**
+     * Asynchronous version of {@link #getAll}.
+     *
+     * @since 7.1
+     */
+    public Future<Map<String, Serializable>> getAllAsync(
+            Collection<String> keys);
+
+    /**
+     * Asynchronous version of {@link #put}.
+     *
+     * @since 7.1
+     */
+    public Future<Void> putAsync(String key, Serializable value);
+
+    /**
+     * Asynchronous version of {@link #putAll}.
+     *
+     * @since 7.1
+     */
+    public Future<Void> putAllAsync(Map<String, ? extends Serializable> entries);
+
+    /**
+     * Asynchronous version of {@link #invalidate}.
+     *
+     * @since 7.1
+     */
+    public Future<Void> invalidateAsync(String key);
+
 }
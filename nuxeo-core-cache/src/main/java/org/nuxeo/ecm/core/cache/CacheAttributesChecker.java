@@ -19,6 +19,12 @@ package org.nuxeo.ecm.core.cache;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.Futures;
 
 /**
  * Class to implement mandatory check attributes before calling implementation
@@ -79,4 +85,88 @@ public class CacheAttributesChecker extends AbstractCache {
         cache.put(key, value);
     }
 
+    @Override
+    public Map<String, Serializable> getAll(Collection<String> keys)
+            throws IOException {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return cache.getAll(keys);
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> entries)
+            throws IOException {
+        checkEntries(entries);
+        cache.putAll(entries);
+    }
+
+    @Override
+    public void invalidateAll(Collection<String> keys) throws IOException {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        cache.invalidateAll(keys);
+    }
+
+    @Override
+    public Future<Serializable> getAsync(String key) {
+        if (key == null) {
+            return Futures.<Serializable> immediateFuture(null);
+        }
+        return cache.getAsync(key);
+    }
+
+    @Override
+    public Future<Map<String, Serializable>> getAllAsync(
+            Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            Map<String, Serializable> empty = Collections.emptyMap();
+            return Futures.immediateFuture(empty);
+        }
+        return cache.getAllAsync(keys);
+    }
+
+    @Override
+    public Future<Void> putAsync(String key, Serializable value) {
+        checkEntry(key, value);
+        return cache.putAsync(key, value);
+    }
+
+    @Override
+    public Future<Void> putAllAsync(Map<String, ? extends Serializable> entries) {
+        checkEntries(entries);
+        return cache.putAllAsync(entries);
+    }
+
+    @Override
+    public Future<Void> invalidateAsync(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Can't invalidate a null key for the cache '%s'!", name));
+        }
+        return cache.invalidateAsync(key);
+    }
+
+    protected void checkEntries(Map<String, ? extends Serializable> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Can't put null entries for the cache '%s'!", name));
+        }
+        for (Map.Entry<String, ? extends Serializable> es : entries.entrySet()) {
+            checkEntry(es.getKey(), es.getValue());
+        }
+    }
+
+    protected void checkEntry(String key, Serializable value) {
+        if (key == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Can't put a null key for the cache '%s'!", name));
+        }
+        if (value == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Can't put a null value for the cache '%s'!", name));
+        }
+    }
+
 }
@@ -17,10 +17,14 @@
  */
 package org.nuxeo.ecm.core.cache;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.xmap.annotation.XNode;
 import org.nuxeo.common.xmap.annotation.XNodeMap;
 import org.nuxeo.common.xmap.annotation.XObject;
@@ -34,6 +38,8 @@ import org.nuxeo.ecm.core.api.NuxeoException;
 @XObject("cache")
 public class CacheDescriptor {
 
+    private static final Log log = LogFactory.getLog(CacheDescriptor.class);
+
     @XNode("@name")
     public String name;
 
@@ -76,6 +82,15 @@ public class CacheDescriptor {
         this.implClass = implClass;
     }
 
+    /**
+     * Gets the implementation-specific options.
+     *
+     * @since 7.1
+     */
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
     @Override
     public String toString() {
         return name + ": " + implClass + ": " + ttl + ": " + options;
@@ -84,8 +99,12 @@ public class CacheDescriptor {
     public void start() {
         try {
             cacheChecker = new CacheAttributesChecker(this);
-            cacheChecker.setCache(implClass.getConstructor(
-                    CacheDescriptor.class).newInstance(this));
+            Cache cache = implClass.getConstructor(CacheDescriptor.class).newInstance(
+                    this);
+            if (cache instanceof AbstractCache) {
+                ((AbstractCache) cache).start();
+            }
+            cacheChecker.setCache(cache);
         } catch (InstantiationException | IllegalAccessException
                 | IllegalArgumentException | InvocationTargetException
                 | NoSuchMethodException | SecurityException e) {
@@ -98,6 +117,13 @@ public class CacheDescriptor {
         if (cacheChecker == null) {
             return;
         }
+        if (cacheChecker.cache instanceof Closeable) {
+            try {
+                ((Closeable) cacheChecker.cache).close();
+            } catch (IOException e) {
+                log.error("Failed to close cache " + name, e);
+            }
+        }
         cacheChecker.cache = null;
         cacheChecker = null;
     }
@@ -18,6 +18,12 @@
 package org.nuxeo.ecm.core.cache;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
@@ -25,6 +31,7 @@ import org.apache.commons.logging.LogFactory;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Futures;
 
 /**
  * Default in memory implementation for cache management based on guava
@@ -97,4 +104,63 @@ public class InMemoryCacheImpl extends AbstractCache {
         }
     }
 
+    @Override
+    public Map<String, Serializable> getAll(Collection<String> keys) {
+        List<String> nonNullKeys = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            if (key != null) {
+                nonNullKeys.add(key);
+            }
+        }
+        return new HashMap<String, Serializable>(
+                cache.getAllPresent(nonNullKeys));
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> entries) {
+        cache.putAll(entries);
+    }
+
+    @Override
+    public void invalidateAll(Collection<String> keys) {
+        List<String> nonNullKeys = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            if (key != null) {
+                nonNullKeys.add(key);
+            }
+        }
+        cache.invalidateAll(nonNullKeys);
+    }
+
+    // in-memory operations are fast enough to not need another thread
+
+    @Override
+    public Future<Serializable> getAsync(String key) {
+        return Futures.immediateFuture(get(key));
+    }
+
+    @Override
+    public Future<Map<String, Serializable>> getAllAsync(
+            Collection<String> keys) {
+        return Futures.immediateFuture(getAll(keys));
+    }
+
+    @Override
+    public Future<Void> putAsync(String key, Serializable value) {
+        put(key, value);
+        return Futures.<Void> immediateFuture(null);
+    }
+
+    @Override
+    public Future<Void> putAllAsync(Map<String, ? extends Serializable> entries) {
+        putAll(entries);
+        return Futures.<Void> immediateFuture(null);
+    }
+
+    @Override
+    public Future<Void> invalidateAsync(String key) {
+        invalidate(key);
+        return Futures.<Void> immediateFuture(null);
+    }
+
 }
@@ -21,6 +21,10 @@ package org.nuxeo.ecm.core.cache;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.inject.Named;
 
@@ -105,4 +109,34 @@ public class CacheComplianceFixture {
         Assert.assertNull(defaultCache.get("key2"));
     }
 
+    @Test
+    public void bulkOperations() throws IOException {
+        Map<String, Serializable> entries = new HashMap<String, Serializable>();
+        entries.put("key2", "val2");
+        entries.put("key3", "val3");
+        defaultCache.putAll(entries);
+        Map<String, Serializable> values = defaultCache.getAll(Arrays.asList(
+                CacheFeature.KEY, "key2", "key3", "key-not-exist", null));
+        Assert.assertEquals(3, values.size());
+        Assert.assertEquals(CacheFeature.VAL, values.get(CacheFeature.KEY));
+        Assert.assertEquals("val2", values.get("key2"));
+        Assert.assertEquals("val3", values.get("key3"));
+        defaultCache.invalidateAll(Arrays.asList(CacheFeature.KEY, "key2"));
+        Assert.assertNull(defaultCache.get(CacheFeature.KEY));
+        Assert.assertNull(defaultCache.get("key2"));
+        Assert.assertEquals("val3", defaultCache.get("key3"));
+    }
+
+    @Test
+    public void asyncOperations() throws Exception {
+        defaultCache.putAsync("key2", "val2").get();
+        Assert.assertEquals(CacheFeature.VAL,
+                defaultCache.getAsync(CacheFeature.KEY).get());
+        Map<String, Serializable> values = defaultCache.getAllAsync(
+                Arrays.asList("key2")).get();
+        Assert.assertEquals("val2", values.get("key2"));
+        defaultCache.invalidateAsync("key2").get();
+        Assert.assertNull(defaultCache.get("key2"));
+    }
+
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.api;
+
+/**
+ * Priority class of an asynchronous conversion, each one being executed by
+ * its own pool of threads.
+ *
+ * @since 7.1
+ */
+public enum ConversionPriority {
+
+    /**
+     * A user is waiting for the result, for instance for a preview.
+     */
+    INTERACTIVE,
+
+    /**
+     * Nobody is waiting for the result, for instance for fulltext extraction.
+     */
+    BACKGROUND
+
+}
@@ -15,6 +15,7 @@ package org.nuxeo.ecm.core.convert.api;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 
@@ -41,6 +42,25 @@ public interface ConversionService {
     BlobHolder convert(String converterName, BlobHolder blobHolder,
             Map<String, Serializable> parameters) throws ConversionException;
 
+    /**
+     * Converts a Blob given a converter name, asynchronously.
+     * <p>
+     * The conversion is executed on this node by the threads of the given
+     * priority class. If not done after the given timeout, it is canceled. It
+     * can also be canceled through the returned {@link Future}, and is
+     * canceled if the service is stopped before it is done. Canceling stops
+     * waiting for the result, but doesn't interrupt a started conversion, as
+     * its result may be shared with other callers.
+     *
+     * @param timeoutMillis the timeout in milliseconds, or 0 for no timeout
+     * @return the future result of the conversion
+     * @since 7.1
+     */
+    Future<BlobHolder> convertAsync(String converterName,
+            BlobHolder blobHolder, Map<String, Serializable> parameters,
+            ConversionPriority priority, long timeoutMillis)
+            throws ConversionException;
+
     /**
      * Converts a Blob given a target destination MimeType.
      */
@@ -22,11 +22,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.convert.plugins.text.extractors.StreamingTextConverter;
 import org.nuxeo.ecm.core.test.CoreFeature;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
@@ -132,6 +137,26 @@ public class TestConverters extends SimpleConverterTest {
         assertTrue(textContent.contains("d\u00e9j\u00e0"));
     }
 
+    @Test
+    public void testTextConverterMaxLength() throws Exception {
+        doTestTextConverterMaxLength("pdf2text", "hello.pdf");
+        doTestTextConverterMaxLength("html2text", "hello.html");
+        doTestTextConverterMaxLength("xlx2text", "hello.xlsx");
+    }
+
+    protected void doTestTextConverterMaxLength(String converterName,
+            String fileName) throws Exception {
+        Map<String, Serializable> parameters = new HashMap<String, Serializable>();
+        parameters.put(StreamingTextConverter.MAX_LENGTH_PARAMETER,
+                Long.valueOf(10));
+        BlobHolder holder = getBlobFromPath("test-docs/" + fileName);
+        BlobHolder result = cs.convert(converterName, holder, parameters);
+        assertNotNull(result);
+        String text = result.getBlob().getString();
+        assertTrue(fileName + ": " + text, text.length() > 0);
+        assertTrue(fileName + ": " + text, text.length() <= 10);
+    }
+
     // fails since upgrade from pdfbox 1.6.0 to 1.8.5
     // but deemed lower priority than NXP-11676
     @Ignore
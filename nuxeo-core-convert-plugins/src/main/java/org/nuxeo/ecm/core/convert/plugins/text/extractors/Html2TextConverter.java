@@ -20,20 +20,16 @@ package org.nuxeo.ecm.core.convert.plugins.text.extractors;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.Map;
 
 import net.htmlparser.jericho.Renderer;
 import net.htmlparser.jericho.Source;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.api.impl.blob.StreamingBlob;
-import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
 import org.nuxeo.ecm.core.convert.api.ConversionException;
-import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
-import org.nuxeo.ecm.core.convert.extension.Converter;
 import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
 import org.nuxeo.runtime.services.streaming.StreamSource;
 import org.nuxeo.runtime.services.streaming.StringSource;
@@ -45,15 +41,19 @@ import org.nuxeo.runtime.services.streaming.StringSource;
  * @author <a href="mailto:troger@nuxeo.com">Thomas Roger</a>
  * @author <a href="mailto:ogrisel@nuxeo.com">Olivier Grisel</a>
  */
-public class Html2TextConverter implements Converter {
-
-    private static final Log log = LogFactory.getLog(Html2TextConverter.class);
+public class Html2TextConverter implements StreamingTextConverter {
 
     @Override
     public BlobHolder convert(BlobHolder blobHolder,
             Map<String, Serializable> parameters) throws ConversionException {
+        return StreamingTextConverterHelper.convert(this, blobHolder,
+                parameters);
+    }
 
-        InputStream stream = null;
+    @Override
+    public void extractText(BlobHolder blobHolder,
+            Map<String, Serializable> parameters, Writer writer)
+            throws ConversionException, IOException {
         try {
             Blob blob = blobHolder.getBlob();
             Source source = null;
@@ -70,29 +70,75 @@ public class Html2TextConverter implements Converter {
             }
             if (source == null) {
                 // use the parser charset heuristic to decode properly
-                source = new Source(blob.getStream());
+                try (InputStream stream = blob.getStream()) {
+                    source = new Source(stream);
+                }
             }
             Renderer renderer = source.getRenderer();
             renderer.setIncludeHyperlinkURLs(false);
             renderer.setDecorateFontStyles(false);
-            String text = renderer.toString();
-            text = text.replaceAll("\r\n", "\n"); // unix end of line
-            text = text.replaceAll(" *\n", "\n"); // clean trailing spaces
-            text = text.replaceAll("\\n\\n+", "\n\n"); // clean multiple lines
-            text = text.trim();
-            return new SimpleCachableBlobHolder(new StringBlob(text,
-                    "text/plain"));
+            renderer.writeTo(new TextNormalizingWriter(writer));
+        } catch (LimitedWriter.LimitReachedException e) {
+            throw e;
         } catch (Exception e) {
             throw new ConversionException("Error during Html2Text conversion", e);
-        } finally {
-            if (stream != null) {
-                try {
-                    stream.close();
-                } catch (IOException e) {
-                    log.error("Error while closing Blob stream", e);
+        }
+    }
+
+    /**
+     * Writer normalizing the whitespace of the rendered text as it is
+     * written: unix end of lines, no trailing spaces, no more than one empty
+     * line in a row, and no leading or trailing whitespace.
+     *
+     * @since 7.1
+     */
+    protected static class TextNormalizingWriter extends Writer {
+
+        protected final Writer out;
+
+        /** Whitespace seen since the last non-whitespace character. */
+        protected final StringBuilder whitespace = new StringBuilder();
+
+        protected boolean started;
+
+        public TextNormalizingWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                char c = cbuf[i];
+                if (c <= ' ') {
+                    whitespace.append(c);
+                    continue;
                 }
+                if (started) {
+                    out.write(normalize(whitespace.toString()));
+                } // else leading whitespace is dropped
+                whitespace.setLength(0);
+                out.write(c);
+                started = true;
             }
         }
+
+        protected String normalize(String ws) {
+            ws = ws.replace("\r\n", "\n"); // unix end of line
+            ws = ws.replaceAll(" *\n", "\n"); // clean trailing spaces
+            ws = ws.replaceAll("\\n\\n+", "\n\n"); // clean multiple lines
+            return ws;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // trailing whitespace is dropped, the underlying writer is not ours
+            flush();
+        }
     }
 
     @Override
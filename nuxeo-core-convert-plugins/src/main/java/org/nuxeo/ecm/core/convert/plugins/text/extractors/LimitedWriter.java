@@ -0,0 +1,102 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.plugins.text.extractors;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer letting through a maximum number of characters, after which writes
+ * fail with a {@link LimitReachedException}.
+ *
+ * @since 7.1
+ */
+public class LimitedWriter extends FilterWriter {
+
+    /**
+     * Exception thrown when the maximum number of characters is reached.
+     */
+    public static class LimitReachedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public LimitReachedException(long maxLength) {
+            super("Maximum length reached: " + maxLength);
+        }
+    }
+
+    protected final long maxLength;
+
+    protected long length;
+
+    protected boolean limitReached;
+
+    public LimitedWriter(Writer out, long maxLength) {
+        super(out);
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Checks if some characters were not written because the maximum was
+     * reached.
+     */
+    public boolean isLimitReached() {
+        return limitReached;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (length >= maxLength) {
+            limitReached = true;
+            throw new LimitReachedException(maxLength);
+        }
+        out.write(c);
+        length++;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int n = (int) Math.min(len, maxLength - length);
+        if (n > 0) {
+            out.write(cbuf, off, n);
+            length += n;
+        }
+        if (n < len) {
+            limitReached = true;
+            throw new LimitReachedException(maxLength);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        int n = (int) Math.min(len, maxLength - length);
+        if (n > 0) {
+            out.write(str, off, n);
+            length += n;
+        }
+        if (n < len) {
+            limitReached = true;
+            throw new LimitReachedException(maxLength);
+        }
+    }
+
+}
@@ -17,12 +17,9 @@
  */
 package org.nuxeo.ecm.core.convert.plugins.text.extractors;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.util.HashSet;
 import java.util.List;
@@ -39,14 +36,10 @@ import org.apache.pdfbox.util.PDFStreamEngine;
 import org.apache.pdfbox.util.PDFTextStripper;
 import org.apache.pdfbox.util.operator.OperatorProcessor;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
-import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
-import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
 import org.nuxeo.ecm.core.convert.api.ConversionException;
-import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
-import org.nuxeo.ecm.core.convert.extension.Converter;
 import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
 
-public class PDF2TextConverter implements Converter {
+public class PDF2TextConverter implements StreamingTextConverter {
 
     public static class PatchedPDFTextStripper extends PDFTextStripper {
 
@@ -118,10 +111,15 @@ public class PDF2TextConverter implements Converter {
     @Override
     public BlobHolder convert(BlobHolder blobHolder,
             Map<String, Serializable> parameters) throws ConversionException {
+        return StreamingTextConverterHelper.convert(this, blobHolder,
+                parameters);
+    }
 
+    @Override
+    public void extractText(BlobHolder blobHolder,
+            Map<String, Serializable> parameters, Writer writer)
+            throws ConversionException, IOException {
         PDDocument document = null;
-        File f = null;
-        OutputStream fas = null;
         try {
             document = PDDocument.load(blobHolder.getBlob().getStream());
             // NXP-1556: if document is protected an IOException will be raised
@@ -139,17 +137,11 @@ public class PDF2TextConverter implements Converter {
                 // right-to-left languages.
                 textStripper.setSortByPosition(true);
 
-                String text = textStripper.getText(document);
-                // replace non breaking space by regular spaces (why?)
-                // text = text.replace("\u00a0", " ");
-                f = File.createTempFile("pdfboplugin", ".txt");
-                fas = new FileOutputStream(f);
-                fas.write(text.getBytes("UTF-8"));
-                return new SimpleCachableBlobHolder(new FileBlob(
-                        new FileInputStream(f), "text/plain", "UTF-8"));
-            } else {
-                return new SimpleCachableBlobHolder(new StringBlob(""));
+                // written page by page
+                textStripper.writeText(document, writer);
             }
+        } catch (LimitedWriter.LimitReachedException e) {
+            throw e;
         } catch (Exception e) {
             throw new ConversionException(
                     "Error during text extraction with PDFBox", e);
@@ -161,16 +153,6 @@ public class PDF2TextConverter implements Converter {
                     log.error("Error while closing PDFBox document", e);
                 }
             }
-            if (fas != null) {
-                try {
-                    fas.close();
-                } catch (IOException e) {
-                    log.error(e);
-                }
-            }
-            if (f != null) {
-                f.delete();
-            }
         }
     }
 
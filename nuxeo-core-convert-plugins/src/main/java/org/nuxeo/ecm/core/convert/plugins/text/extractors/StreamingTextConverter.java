@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.plugins.text.extractors;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.Map;
+
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.extension.Converter;
+
+/**
+ * Text extraction converter able to write the text as it is extracted,
+ * instead of materializing it in memory.
+ * <p>
+ * Its {@link #convert} method is expected to delegate to
+ * {@link StreamingTextConverterHelper#convert}, which writes the text to a
+ * temporary file.
+ *
+ * @since 7.1
+ */
+public interface StreamingTextConverter extends Converter {
+
+    /**
+     * Conversion parameter holding the maximum number of characters to
+     * extract, as a {@link Number} or a {@link String}. Extraction stops once
+     * it is reached.
+     */
+    String MAX_LENGTH_PARAMETER = "maxLength";
+
+    /**
+     * Extracts the text of the blob holder and writes it to the writer.
+     * <p>
+     * Writes to the writer may fail with a
+     * {@link LimitedWriter.LimitReachedException}, which must not be caught.
+     *
+     * @param blobHolder the source
+     * @param parameters the conversion parameters
+     * @param writer the writer for the text, not closed
+     */
+    void extractText(BlobHolder blobHolder,
+            Map<String, Serializable> parameters, Writer writer)
+            throws ConversionException, IOException;
+
+}
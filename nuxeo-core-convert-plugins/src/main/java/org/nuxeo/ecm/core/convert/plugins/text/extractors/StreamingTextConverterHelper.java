@@ -0,0 +1,122 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.plugins.text.extractors;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.Map;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Helper for {@link StreamingTextConverter} implementations.
+ *
+ * @since 7.1
+ */
+public class StreamingTextConverterHelper {
+
+    private static final String TEXT_PLAIN_MT = "text/plain";
+
+    private static final String UTF_8 = "UTF-8";
+
+    // Utility class.
+    private StreamingTextConverterHelper() {
+    }
+
+    /**
+     * Gets the maximum number of characters to extract from the conversion
+     * parameters, or -1 if there is no maximum.
+     */
+    public static long getMaxLength(Map<String, Serializable> parameters) {
+        if (parameters == null) {
+            return -1;
+        }
+        Serializable value = parameters.get(StreamingTextConverter.MAX_LENGTH_PARAMETER);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof String) {
+            return Long.parseLong((String) value);
+        }
+        return -1;
+    }
+
+    /**
+     * Extracts the text of the blob holder into a temporary file, and returns
+     * it as a UTF-8 text blob.
+     */
+    public static BlobHolder convert(StreamingTextConverter converter,
+            BlobHolder blobHolder, Map<String, Serializable> parameters)
+            throws ConversionException {
+        File file;
+        try {
+            file = File.createTempFile("nxtext-", ".txt");
+        } catch (IOException e) {
+            throw new ConversionException("Cannot create temporary file", e);
+        }
+        boolean ok = false;
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file), UTF_8))) {
+                extractText(converter, blobHolder, parameters, writer);
+            }
+            Blob blob = new FileBlob(file, TEXT_PLAIN_MT, UTF_8);
+            Framework.trackFile(file, blob);
+            ok = true;
+            return new SimpleCachableBlobHolder(blob);
+        } catch (IOException e) {
+            throw new ConversionException("Error during text extraction", e);
+        } finally {
+            if (!ok) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Extracts the text of the blob holder to the writer, stopping at the
+     * maximum length given by the conversion parameters.
+     */
+    public static void extractText(StreamingTextConverter converter,
+            BlobHolder blobHolder, Map<String, Serializable> parameters,
+            Writer writer) throws ConversionException, IOException {
+        long maxLength = getMaxLength(parameters);
+        if (maxLength < 0) {
+            converter.extractText(blobHolder, parameters, writer);
+            return;
+        }
+        LimitedWriter limitedWriter = new LimitedWriter(writer, maxLength);
+        try {
+            converter.extractText(blobHolder, parameters, limitedWriter);
+        } catch (IOException | RuntimeException e) {
+            // the converter may have wrapped the LimitReachedException
+            if (!limitedWriter.isLimitReached()) {
+                throw e;
+            }
+        }
+    }
+
+}
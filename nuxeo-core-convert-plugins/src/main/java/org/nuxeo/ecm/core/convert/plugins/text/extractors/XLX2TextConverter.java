@@ -20,6 +20,7 @@ package org.nuxeo.ecm.core.convert.plugins.text.extractors;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -34,13 +35,10 @@ import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
-import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
 import org.nuxeo.ecm.core.convert.api.ConversionException;
-import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
-import org.nuxeo.ecm.core.convert.extension.Converter;
 
 public class XLX2TextConverter extends BaseOfficeXMLTextConverter implements
-        Converter {
+        StreamingTextConverter {
 
     private static final Log log = LogFactory.getLog(XLX2TextConverter.class);
 
@@ -51,21 +49,32 @@ public class XLX2TextConverter extends BaseOfficeXMLTextConverter implements
     @Override
     public BlobHolder convert(BlobHolder blobHolder,
             Map<String, Serializable> parameters) throws ConversionException {
+        return StreamingTextConverterHelper.convert(this, blobHolder,
+                parameters);
+    }
+
+    @Override
+    public void extractText(BlobHolder blobHolder,
+            Map<String, Serializable> parameters, Writer writer)
+            throws ConversionException, IOException {
 
         InputStream stream = null;
-        StringBuffer sb = new StringBuffer();
 
         try {
             Blob blob = blobHolder.getBlob();
 
             if (blob.getLength() > maxSize4POI) {
-                return runFallBackConverter(blobHolder, "xl/");
+                BlobHolder result = runFallBackConverter(blobHolder, "xl/");
+                result.getBlob().transferTo(writer);
+                return;
             }
 
             stream = blob.getStream();
 
             OPCPackage p = OPCPackage.open(stream);
             XSSFWorkbook workbook = new XSSFWorkbook(p);
+            // one row at a time, reusing the buffer
+            StringBuffer sb = new StringBuffer();
             for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
                 XSSFSheet sheet = workbook.getSheetAt(i);
                 Iterator<Row> rows = sheet.rowIterator();
@@ -77,9 +86,12 @@ public class XLX2TextConverter extends BaseOfficeXMLTextConverter implements
                         appendTextFromCell(cell, sb);
                     }
                     sb.append(ROW_SEP);
+                    writer.append(sb);
+                    sb.setLength(0);
                 }
             }
-            return new SimpleCachableBlobHolder(new StringBlob(sb.toString()));
+        } catch (LimitedWriter.LimitReachedException e) {
+            throw e;
         } catch (Exception e) {
             throw new ConversionException("Error during XLX2Text conversion", e);
         } finally {
@@ -15,6 +15,8 @@ package org.nuxeo.ecm.core.convert.cache;
 import java.io.File;
 import java.util.Date;
 
+import org.apache.commons.io.FileUtils;
+
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
 
@@ -27,7 +29,22 @@ import org.nuxeo.ecm.core.convert.api.ConversionService;
  */
 public class ConversionCacheEntry {
 
-    protected Date lastAccessTime;
+    protected volatile Date lastAccessTime;
+
+    /**
+     * Set when the entry is read, cleared when the GC gives it a second
+     * chance.
+     *
+     * @since 7.1
+     */
+    protected volatile boolean accessed;
+
+    /**
+     * The cache key, or {@code null} if unknown.
+     *
+     * @since 7.1
+     */
+    protected String key;
 
     protected BlobHolder bh;
 
@@ -42,6 +59,29 @@ public class ConversionCacheEntry {
         updateAccessTime();
     }
 
+    /**
+     * @since 7.1
+     */
+    public ConversionCacheEntry(String key, BlobHolder bh) {
+        this(bh);
+        this.key = key;
+    }
+
+    /**
+     * Constructor for an entry already persisted, when the cache index is
+     * rebuilt from disk.
+     *
+     * @since 7.1
+     */
+    public ConversionCacheEntry(String key, String persistPath,
+            Date lastAccessTime) {
+        this.key = key;
+        this.persistPath = persistPath;
+        this.lastAccessTime = lastAccessTime;
+        sizeInKB = FileUtils.sizeOf(new File(persistPath)) / 1024;
+        persisted = true;
+    }
+
     protected void updateAccessTime() {
         lastAccessTime = new Date();
     }
@@ -51,7 +91,7 @@ public class ConversionCacheEntry {
             CachableBlobHolder cbh = (CachableBlobHolder) bh;
             persistPath = cbh.persist(basePath);
             if (persistPath != null) {
-                sizeInKB = new File(persistPath).length() / 1024;
+                sizeInKB = FileUtils.sizeOf(new File(persistPath)) / 1024;
                 persisted = true;
             }
         }
@@ -59,14 +99,29 @@ public class ConversionCacheEntry {
         return persisted;
     }
 
+    /**
+     * Updates the persisted path after the directory in which the entry was
+     * persisted has been moved.
+     *
+     * @since 7.1
+     */
+    protected void moved(File dir) {
+        if (persistPath != null) {
+            persistPath = new File(dir, new File(persistPath).getName())
+                    .getAbsolutePath();
+        }
+    }
+
     public void remove() {
         if (persisted && persistPath != null) {
-            new File(persistPath).delete();
+            // may be a directory for multi-blobs results
+            FileUtils.deleteQuietly(new File(persistPath));
         }
     }
 
     public BlobHolder restore() {
         updateAccessTime();
+        accessed = true;
         if (persisted && persistPath != null) {
             CachableBlobHolder holder = new SimpleCachableBlobHolder();
             holder.load(persistPath);
@@ -84,4 +139,18 @@ public class ConversionCacheEntry {
         return lastAccessTime;
     }
 
+    /**
+     * @since 7.1
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @since 7.1
+     */
+    public String getPersistPath() {
+        return persistPath;
+    }
+
 }
@@ -14,14 +14,6 @@
  */
 package org.nuxeo.ecm.core.convert.cache;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
@@ -60,16 +52,7 @@ public class ConversionCacheGCManager {
     }
 
     public static long getCacheSizeInKB() {
-        long totalSize = 0;
-        Set<String> cacheKeys = ConversionCacheHolder.getCacheKeys();
-
-        for (String key : cacheKeys) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(key);
-            if (cacheEntry != null) {
-                totalSize += cacheEntry.getDiskSpaceUsageInKB();
-            }
-        }
-        return totalSize;
+        return ConversionCacheHolder.getCacheSizeInKB();
     }
 
     public static boolean gcIfNeeded() {
@@ -98,35 +81,7 @@ public class ConversionCacheGCManager {
     }
 
     public static void doGC(long deltaInKB) {
-
-        Set<String> cacheKeys = ConversionCacheHolder.getCacheKeys();
-
-        Map<Date, String> sortingMap = new HashMap<Date, String>();
-
-        for (String key : cacheKeys) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(key);
-            if (key != null) {
-                sortingMap.put(cacheEntry.getLastAccessedTime(), key);
-            }
-        }
-
-        List<Date> accessTimeList = new ArrayList<Date>();
-        accessTimeList.addAll(sortingMap.keySet());
-        Collections.sort(accessTimeList);
-
-        long deletedVolume = 0;
-        for (Date accessDate : accessTimeList) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(sortingMap.get(accessDate));
-
-            long deletePotential = cacheEntry.getDiskSpaceUsageInKB();
-
-            deletedVolume += deletePotential;
-            ConversionCacheHolder.removeFromCache(sortingMap.get(accessDate));
-
-            if (deletedVolume > deltaInKB) {
-                break;
-            }
-        }
+        ConversionCacheHolder.evict(deltaInKB);
         gcRuns += 1;
     }
 
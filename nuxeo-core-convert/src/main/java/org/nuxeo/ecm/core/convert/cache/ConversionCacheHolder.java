@@ -13,15 +13,25 @@
 package org.nuxeo.ecm.core.convert.cache;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.utils.Path;
@@ -31,14 +41,50 @@ import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
 
 /**
  * Manager for the cache system of the {@link ConversionService}.
+ * <p>
+ * The index is a concurrent map, the total size of the entries is maintained
+ * as they are added and removed, and eviction uses a CLOCK (second chance)
+ * queue approximating LRU.
+ * <p>
+ * Each entry is persisted in its own directory, named after a digest of the
+ * key, along with a {@link #KEY_FILE} holding the key itself, so that the
+ * index can be rebuilt from disk at startup.
  *
  * @author tiry
  */
 public class ConversionCacheHolder {
 
-    protected static final Map<String, ConversionCacheEntry> cache = new HashMap<>();
+    /**
+     * Name of the file holding the key in the directory of an entry.
+     *
+     * @since 7.1
+     */
+    public static final String KEY_FILE = ".key";
+
+    /**
+     * Suffix of the temporary directories in which entries are written.
+     *
+     * @since 7.1
+     */
+    protected static final String TMP_SUFFIX = ".tmp";
+
+    protected static final ConcurrentMap<String, ConversionCacheEntry> cache = new ConcurrentHashMap<>(
+            256, 0.75f, 16);
+
+    /**
+     * Entries in insertion order, for eviction. May hold entries that have
+     * since been removed from the cache, they are skipped.
+     *
+     * @since 7.1
+     */
+    protected static final ConcurrentLinkedQueue<ConversionCacheEntry> evictionQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @since 7.1
+     */
+    protected static final AtomicLong cacheSizeInKB = new AtomicLong();
 
-    protected static final ReentrantReadWriteLock cacheLock = new ReentrantReadWriteLock();
+    protected static final AtomicLong cacheHits = new AtomicLong();
 
     private static final Log log = LogFactory.getLog(ConversionCacheHolder.class);
 
@@ -46,27 +92,31 @@ public class ConversionCacheHolder {
 
     public static int subPathPartSize = 2;
 
-    public static long cacheHits = 0;
-
     // Utility class.
     private ConversionCacheHolder() {
     }
 
     public static long getCacheHits() {
-        return cacheHits;
+        return cacheHits.get();
     }
 
     public static int getNbCacheEntries() {
-        return cache.keySet().size();
+        return cache.size();
+    }
+
+    /**
+     * Gets the total disk space used by the cache entries, in KB.
+     *
+     * @since 7.1
+     */
+    public static long getCacheSizeInKB() {
+        return cacheSizeInKB.get();
     }
 
     protected static List<String> getSubPathFromKey(String key) {
         List<String> subPath = new ArrayList<>();
 
-        String path = Base64.encodeBase64String(key.getBytes());
-
-        path = path.replace("+", "X");
-        path = path.replace("/", "Y");
+        String path = DigestUtils.md5Hex(key);
 
         int idx = 0;
 
@@ -78,120 +128,270 @@ public class ConversionCacheHolder {
                 break;
             }
         }
+        // directory of the entry itself
+        subPath.add(path);
         return subPath;
     }
 
-    protected static String getCacheEntryPath(String key) {
+    /**
+     * Gets the path of the directory of an entry, without creating it.
+     *
+     * @since 7.1
+     */
+    protected static Path getCacheEntryDir(String key) {
         Path path = new Path(ConversionServiceImpl.getCacheBasePath());
-
-        List<String> subPath = getSubPathFromKey(key);
-
-        for (String subPart : subPath) {
+        for (String subPart : getSubPathFromKey(key)) {
             path = path.append(subPart);
-            new File(path.toString()).mkdir();
         }
+        return path;
+    }
 
-        // path = path.append(key);
-
-        return path.toString();
+    protected static String getCacheEntryPath(String key) {
+        String path = getCacheEntryDir(key).toString();
+        new File(path).mkdirs();
+        return path;
     }
 
+    /**
+     * Adds a conversion result to the cache, unless already there.
+     * <p>
+     * The entry is written to a temporary sibling directory, then moved
+     * atomically to its final location before being indexed, so that
+     * concurrent additions for the same key or removals never see a partially
+     * written entry.
+     */
     public static void addToCache(String key, BlobHolder result) {
-        cacheLock.writeLock().lock();
-        try {
-            doAddToCache(key, result);
-        } finally {
-            cacheLock.writeLock().unlock();
+        if (cache.containsKey(key)) {
+            return;
         }
-    }
-
-    protected static void doAddToCache(String key, BlobHolder result) {
-        ConversionCacheEntry cce = new ConversionCacheEntry(result);
-        boolean persisted = false;
-
+        ConversionCacheEntry cce = new ConversionCacheEntry(key, result);
+        File dir = new File(getCacheEntryDir(key).toString());
+        File tmp = null;
+        boolean persisted;
         try {
-            persisted = cce.persist(getCacheEntryPath(key));
+            dir.getParentFile().mkdirs();
+            tmp = Files.createTempDirectory(dir.getParentFile().toPath(),
+                    dir.getName() + TMP_SUFFIX).toFile();
+            persisted = cce.persist(tmp.getPath());
+            if (persisted) {
+                FileUtils.writeStringToFile(new File(tmp, KEY_FILE), key,
+                        "UTF-8");
+                persisted = moveEntry(tmp, dir);
+            }
         } catch (Exception e) {
             log.error("Error while trying to persist cache entry", e);
+            persisted = false;
         }
-
-        if (persisted) {
-            cache.put(key, cce);
+        if (!persisted) {
+            FileUtils.deleteQuietly(tmp);
+            return;
         }
+        cce.moved(dir);
+        if (cache.putIfAbsent(key, cce) == null) {
+            index(cce);
+        }
+        // else added concurrently to the same location
     }
 
-    public static void removeFromCache(String key) {
-        cacheLock.writeLock().lock();
+    /**
+     * Moves a persisted entry from its temporary directory to its final
+     * location.
+     *
+     * @return {@code false} if the entry was added concurrently, in which case
+     *         the other entry is kept
+     * @since 7.1
+     */
+    protected static boolean moveEntry(File tmp, File dir)
+            throws IOException {
         try {
-            doRemoveFromCache(key);
-        } finally {
-            cacheLock.writeLock().unlock();
+            Files.move(tmp.toPath(), dir.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+            // added concurrently
+            return false;
         }
+    }
 
+    protected static void index(ConversionCacheEntry cce) {
+        cacheSizeInKB.addAndGet(cce.getDiskSpaceUsageInKB());
+        evictionQueue.add(cce);
     }
 
-    protected static void doRemoveFromCache(String key) {
-        if (cache.containsKey(key)) {
-            ConversionCacheEntry cce = cache.get(key);
-            cce.remove();
-            cache.remove(key);
+    public static void removeFromCache(String key) {
+        ConversionCacheEntry cce = cache.remove(key);
+        if (cce != null) {
+            removed(cce);
         }
     }
 
-    public static ConversionCacheEntry getCacheEntry(String key) {
-        cacheLock.readLock().lock();
-        try {
-            return doGetCacheEntry(key);
-        } finally {
-            cacheLock.readLock().unlock();
-        }
+    /**
+     * Accounts for an entry removed from the index, and deletes it from disk.
+     *
+     * @since 7.1
+     */
+    protected static void removed(ConversionCacheEntry cce) {
+        cacheSizeInKB.addAndGet(-cce.getDiskSpaceUsageInKB());
+        cce.remove();
+        FileUtils.deleteQuietly(new File(getCacheEntryDir(cce.getKey()).toString()));
     }
 
-    protected static ConversionCacheEntry doGetCacheEntry(String key) {
+    public static ConversionCacheEntry getCacheEntry(String key) {
         return cache.get(key);
     }
 
     public static BlobHolder getFromCache(String key) {
-        cacheLock.readLock().lock();
-        try {
-            return doGetFromCache(key);
-        } finally {
-            cacheLock.readLock().unlock();
-        }
-    }
-
-    protected static BlobHolder doGetFromCache(String key) {
         ConversionCacheEntry cacheEntry = cache.get(key);
         if (cacheEntry != null) {
-            if (cacheHits == Long.MAX_VALUE) {
-                cacheHits = 0;
-            } else {
-                cacheHits += 1;
-            }
+            cacheHits.incrementAndGet();
             return cacheEntry.restore();
         }
         return null;
     }
 
     public static Set<String> getCacheKeys() {
-        cacheLock.readLock().lock();
+        return new HashSet<>(cache.keySet());
+    }
+
+    /**
+     * Evicts entries, least recently used first, until more than the given
+     * disk space has been freed or the cache is empty.
+     * <p>
+     * Entries read since they were last considered get a second chance, so
+     * this is only an approximation of LRU, which does not need any ordering
+     * to be maintained on reads.
+     *
+     * @param deltaInKB the disk space to free
+     * @return the disk space freed, in KB
+     * @since 7.1
+     */
+    public static long evict(long deltaInKB) {
+        long deletedVolume = 0;
+        // each entry is seen at most twice
+        int max = 2 * evictionQueue.size();
+        for (int i = 0; i < max && deletedVolume <= deltaInKB; i++) {
+            ConversionCacheEntry cce = evictionQueue.poll();
+            if (cce == null) {
+                break;
+            }
+            if (cache.get(cce.getKey()) != cce) {
+                // already removed
+                continue;
+            }
+            if (cce.accessed) {
+                cce.accessed = false;
+                evictionQueue.add(cce);
+                continue;
+            }
+            if (cache.remove(cce.getKey(), cce)) {
+                removed(cce);
+                deletedVolume += cce.getDiskSpaceUsageInKB();
+            }
+        }
+        return deletedVolume;
+    }
+
+    /**
+     * Rebuilds the index from the entries persisted in the cache directory.
+     * <p>
+     * Incomplete entries, including the temporary directories of entries
+     * being written, and those of a previous layout, are deleted.
+     *
+     * @since 7.1
+     */
+    public static void loadCache() {
+        File base = new File(ConversionServiceImpl.getCacheBasePath());
+        List<ConversionCacheEntry> entries = new ArrayList<>();
+        loadCache(base, 0, entries);
+        // oldest first in the eviction queue
+        Collections.sort(entries, new Comparator<ConversionCacheEntry>() {
+            @Override
+            public int compare(ConversionCacheEntry e1, ConversionCacheEntry e2) {
+                return e1.getLastAccessedTime().compareTo(
+                        e2.getLastAccessedTime());
+            }
+        });
+        for (ConversionCacheEntry cce : entries) {
+            if (cache.putIfAbsent(cce.getKey(), cce) == null) {
+                index(cce);
+            }
+        }
+        log.debug("Loaded " + entries.size() + " conversion cache entries ("
+                + getCacheSizeInKB() + " KB)");
+    }
+
+    protected static void loadCache(File dir, int depth,
+            List<ConversionCacheEntry> entries) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (depth < nbSubPathPart) {
+                // only walk our own sub-directories
+                if (file.isDirectory()
+                        && file.getName().length() == subPathPartSize) {
+                    loadCache(file, depth + 1, entries);
+                }
+                continue;
+            }
+            ConversionCacheEntry cce = loadEntry(file);
+            if (cce == null) {
+                FileUtils.deleteQuietly(file);
+            } else {
+                entries.add(cce);
+            }
+        }
+    }
+
+    protected static ConversionCacheEntry loadEntry(File dir) {
+        File keyFile = new File(dir, KEY_FILE);
+        if (!dir.isDirectory() || !keyFile.isFile()) {
+            return null;
+        }
+        String key;
         try {
-            return new HashSet<>(cache.keySet());
-        } finally {
-            cacheLock.readLock().unlock();
+            key = FileUtils.readFileToString(keyFile, "UTF-8");
+        } catch (IOException e) {
+            log.warn("Cannot read conversion cache key: " + keyFile, e);
+            return null;
+        }
+        if (!dir.getName().equals(DigestUtils.md5Hex(key))) {
+            return null;
+        }
+        File[] files = dir.listFiles();
+        File data = null;
+        for (File file : files) {
+            if (!file.getName().equals(KEY_FILE)) {
+                data = file;
+                break;
+            }
+        }
+        if (data == null) {
+            return null;
         }
+        return new ConversionCacheEntry(key, data.getAbsolutePath(), new Date(
+                keyFile.lastModified()));
+    }
+
+    /**
+     * Forgets the index, without deleting the entries from disk.
+     *
+     * @since 7.1
+     */
+    public static void unloadCache() {
+        cache.clear();
+        evictionQueue.clear();
+        cacheSizeInKB.set(0);
     }
 
     /**
      * @since 6.0
      */
     public static void deleteCache() {
-        cacheLock.writeLock().lock();
-        try {
-            cache.clear();
-            new File(ConversionServiceImpl.getCacheBasePath()).delete();
-        } finally {
-            cacheLock.writeLock().unlock();
+        for (String key : getCacheKeys()) {
+            removeFromCache(key);
         }
+        unloadCache();
     }
 }
@@ -70,6 +70,14 @@ public class ConverterDescriptor implements Serializable {
     @XNodeList(value = "conversionSteps/subconverter", type = ArrayList.class, componentType = String.class)
     protected List<String> subConverters = new ArrayList<>();
 
+    /**
+     * Maximum number of concurrent conversions, 0 for the default.
+     *
+     * @since 7.1
+     */
+    @XNode("@maxConcurrency")
+    protected int maxConcurrency;
+
     public String getConverterName() {
         return converterName;
     }
@@ -157,6 +165,9 @@ public class ConverterDescriptor implements Serializable {
         if (other.steps != null && !other.steps.isEmpty()) {
             steps = other.steps;
         }
+        if (other.maxConcurrency > 0) {
+            maxConcurrency = other.maxConcurrency;
+        }
 
         return this;
     }
@@ -165,4 +176,14 @@ public class ConverterDescriptor implements Serializable {
         return converterType;
     }
 
+    /**
+     * Gets the maximum number of concurrent conversions, or 0 if not
+     * specified.
+     *
+     * @since 7.1
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
 }
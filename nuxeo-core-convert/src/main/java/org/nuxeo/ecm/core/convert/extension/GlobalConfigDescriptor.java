@@ -13,10 +13,8 @@
 package org.nuxeo.ecm.core.convert.extension;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
 
-import org.apache.commons.io.FileUtils;
 import org.nuxeo.common.Environment;
 import org.nuxeo.common.xmap.annotation.XNode;
 import org.nuxeo.common.xmap.annotation.XObject;
@@ -88,14 +86,7 @@ public class GlobalConfigDescriptor implements Serializable {
     protected File defaultCachingDirectory() {
         File data = new File(Environment.getDefault().getData(),
                 CACHING_DIRECTORY);
-        if (data.exists()) {
-            try {
-                FileUtils.deleteDirectory(data);
-            } catch (IOException cause) {
-                throw new RuntimeException("Cannot create cache dir " + data,
-                        cause);
-            }
-        }
+        // existing entries are reloaded by the cache at startup
         data.mkdirs();
         return data.getAbsoluteFile();
     }
@@ -14,15 +14,34 @@ package org.nuxeo.ecm.core.convert.service;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.api.ConversionPriority;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
 import org.nuxeo.ecm.core.convert.api.ConverterCheckResult;
 import org.nuxeo.ecm.core.convert.api.ConverterNotAvailable;
@@ -35,10 +54,16 @@ import org.nuxeo.ecm.core.convert.extension.Converter;
 import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
 import org.nuxeo.ecm.core.convert.extension.ExternalConverter;
 import org.nuxeo.ecm.core.convert.extension.GlobalConfigDescriptor;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.DefaultComponent;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
 /**
  * Runtime Component that also provides the POJO implementation of the
  * {@link ConversionService}.
@@ -55,6 +80,47 @@ public class ConversionServiceImpl extends DefaultComponent implements
 
     public static final String CONFIG_EP = "configuration";
 
+    /**
+     * Framework property for the maximum number of concurrent conversions
+     * per converter, for converters not specifying it.
+     *
+     * @since 7.1
+     */
+    public static final String MAX_CONCURRENCY_PROP = "org.nuxeo.ecm.core.convert.maxConcurrency";
+
+    /**
+     * @since 7.1
+     */
+    public static final String DEFAULT_MAX_CONCURRENCY = "16";
+
+    /**
+     * Framework property for the number of threads executing the
+     * asynchronous conversions of priority
+     * {@link ConversionPriority#INTERACTIVE}.
+     *
+     * @since 7.1
+     */
+    public static final String INTERACTIVE_THREADS_PROP = "org.nuxeo.ecm.core.convert.async.interactive.maxThreads";
+
+    /**
+     * @since 7.1
+     */
+    public static final String DEFAULT_INTERACTIVE_THREADS = "4";
+
+    /**
+     * Framework property for the number of threads executing the
+     * asynchronous conversions of priority
+     * {@link ConversionPriority#BACKGROUND}.
+     *
+     * @since 7.1
+     */
+    public static final String BACKGROUND_THREADS_PROP = "org.nuxeo.ecm.core.convert.async.background.maxThreads";
+
+    /**
+     * @since 7.1
+     */
+    public static final String DEFAULT_BACKGROUND_THREADS = "2";
+
     protected final Map<String, ConverterDescriptor> converterDescriptors = new HashMap<>();
 
     protected final MimeTypeTranslationHelper translationHelper = new MimeTypeTranslationHelper();
@@ -65,21 +131,133 @@ public class ConversionServiceImpl extends DefaultComponent implements
 
     protected Thread gcThread;
 
+    /**
+     * Conversions in progress, by cache key, so that concurrent identical
+     * conversions wait for the same one.
+     *
+     * @since 7.1
+     */
+    protected final ConcurrentMap<String, Future<BlobHolder>> inflightConversions = new ConcurrentHashMap<>();
+
+    /**
+     * Permits limiting the number of concurrent conversions, by converter
+     * name.
+     *
+     * @since 7.1
+     */
+    protected final ConcurrentMap<String, Semaphore> converterPermits = new ConcurrentHashMap<>();
+
+    /**
+     * Asynchronous conversions not yet done.
+     *
+     * @since 7.1
+     */
+    protected final Set<AsyncConversion> asyncConversions = Collections.newSetFromMap(new ConcurrentHashMap<AsyncConversion, Boolean>());
+
+    /**
+     * Executes the asynchronous conversions on this node, by priority class.
+     * <p>
+     * They are not executed through the WorkManager, whose queues may be
+     * shared with other nodes, because their input and result only exist in
+     * memory on the node where they were requested.
+     *
+     * @since 7.1
+     */
+    protected final Map<ConversionPriority, ThreadPoolExecutor> asyncExecutors = new EnumMap<>(
+            ConversionPriority.class);
+
+    /**
+     * Cancels the asynchronous conversions on timeout.
+     *
+     * @since 7.1
+     */
+    protected ScheduledThreadPoolExecutor asyncTimeouts;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
     @Override
     public void activate(ComponentContext context) throws Exception {
         converterDescriptors.clear();
         translationHelper.clear();
+        asyncTimeouts = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r,
+                                "Nuxeo-Convert-Async-Timeout");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        asyncTimeouts.setRemoveOnCancelPolicy(true);
+        startAsyncConversions();
         self = this;
     }
 
     @Override
     public void deactivate(ComponentContext context) throws Exception {
         if (config.isCacheEnabled()) {
-            ConversionCacheHolder.deleteCache();
+            // entries are kept on disk and reloaded at next startup
+            ConversionCacheHolder.unloadCache();
         }
         self = null;
         converterDescriptors.clear();
         translationHelper.clear();
+        stopAsyncConversions();
+        asyncTimeouts.shutdownNow();
+        asyncTimeouts = null;
+    }
+
+    /**
+     * Starts the threads executing the asynchronous conversions.
+     *
+     * @since 7.1
+     */
+    public synchronized void startAsyncConversions() {
+        asyncExecutors.put(ConversionPriority.INTERACTIVE, newAsyncExecutor(
+                "Interactive", INTERACTIVE_THREADS_PROP,
+                DEFAULT_INTERACTIVE_THREADS));
+        asyncExecutors.put(ConversionPriority.BACKGROUND, newAsyncExecutor(
+                "Background", BACKGROUND_THREADS_PROP,
+                DEFAULT_BACKGROUND_THREADS));
+    }
+
+    /**
+     * Stops the threads executing the asynchronous conversions, canceling
+     * those not yet done so that nobody waits for them forever.
+     *
+     * @since 7.1
+     */
+    public synchronized void stopAsyncConversions() {
+        for (ThreadPoolExecutor executor : asyncExecutors.values()) {
+            // started conversions complete, as their result may be shared
+            executor.shutdown();
+        }
+        asyncExecutors.clear();
+        for (AsyncConversion conversion : asyncConversions) {
+            conversion.cancel(false);
+        }
+    }
+
+    protected static ThreadPoolExecutor newAsyncExecutor(final String name,
+            String prop, String defaultThreads) {
+        int threads = Integer.parseInt(Framework.getProperty(prop,
+                defaultThreads));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    protected final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Nuxeo-Convert-Async-"
+                                + name + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
@@ -146,6 +324,7 @@ public class ConversionServiceImpl extends DefaultComponent implements
         }
         self.translationHelper.addConverter(desc);
         self.converterDescriptors.put(desc.getConverterName(), desc);
+        self.converterPermits.remove(desc.getConverterName());
     }
 
     public static int getMaxCacheSizeInKB() {
@@ -194,18 +373,202 @@ public class ConversionServiceImpl extends DefaultComponent implements
                 blobHolder, parameters);
 
         BlobHolder cachedResult = ConversionCacheHolder.getFromCache(cacheKey);
-
         if (cachedResult != null) {
             return cachedResult;
-        } else {
-            Converter converter = desc.getConverterInstance();
+        }
+
+        FutureTask<BlobHolder> task = new FutureTask<>(new Conversion(desc,
+                cacheKey, blobHolder, parameters));
+        Future<BlobHolder> inflight = inflightConversions.putIfAbsent(
+                cacheKey, task);
+        if (inflight == null) {
+            try {
+                task.run();
+            } finally {
+                inflightConversions.remove(cacheKey, task);
+            }
+            return getResult(task);
+        }
+
+        // same conversion already in progress, wait for it
+        registry.counter(
+                MetricRegistry.name("nuxeo", "conversions", converterName,
+                        "coalesced")).inc();
+        BlobHolder result = getResult(inflight);
+        // don't share the result if each caller can get its own copy
+        cachedResult = ConversionCacheHolder.getFromCache(cacheKey);
+        return cachedResult == null ? result : cachedResult;
+    }
+
+    /**
+     * Does the conversion, bounded by the concurrency limit of the
+     * converter, and caches its result.
+     *
+     * @since 7.1
+     */
+    protected class Conversion implements Callable<BlobHolder> {
+
+        protected final ConverterDescriptor desc;
+
+        protected final String cacheKey;
+
+        protected final BlobHolder blobHolder;
+
+        protected final Map<String, Serializable> parameters;
+
+        public Conversion(ConverterDescriptor desc, String cacheKey,
+                BlobHolder blobHolder, Map<String, Serializable> parameters) {
+            this.desc = desc;
+            this.cacheKey = cacheKey;
+            this.blobHolder = blobHolder;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public BlobHolder call() throws ConversionException {
+            String converterName = desc.getConverterName();
+            Semaphore permits = getPermits(desc);
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConversionException(
+                        "Interrupted while waiting for converter "
+                                + converterName, e);
+            }
+            Timer.Context context = registry.timer(
+                    MetricRegistry.name("nuxeo", "conversions", converterName)).time();
+            try {
+                Converter converter = desc.getConverterInstance();
+                BlobHolder result = converter.convert(blobHolder, parameters);
+                if (config.isCacheEnabled()) {
+                    ConversionCacheHolder.addToCache(cacheKey, result);
+                }
+                return result;
+            } finally {
+                context.stop();
+                permits.release();
+            }
+        }
+    }
+
+    protected Semaphore getPermits(ConverterDescriptor desc) {
+        String converterName = desc.getConverterName();
+        Semaphore permits = converterPermits.get(converterName);
+        if (permits == null) {
+            int max = desc.getMaxConcurrency();
+            if (max <= 0) {
+                max = Integer.parseInt(Framework.getProperty(
+                        MAX_CONCURRENCY_PROP, DEFAULT_MAX_CONCURRENCY));
+            }
+            Semaphore existing = converterPermits.putIfAbsent(converterName,
+                    permits = new Semaphore(max, true));
+            if (existing != null) {
+                permits = existing;
+            }
+        }
+        return permits;
+    }
+
+    protected static BlobHolder getResult(Future<BlobHolder> future)
+            throws ConversionException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException(
+                    "Interrupted while waiting for conversion", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ConversionException("Conversion failed", cause);
+        }
+    }
+
+    @Override
+    public Future<BlobHolder> convertAsync(final String converterName,
+            final BlobHolder blobHolder,
+            final Map<String, Serializable> parameters,
+            ConversionPriority priority, long timeoutMillis)
+            throws ConversionException {
+        // fail early if not available
+        ConverterCheckResult check = isConverterAvailable(converterName);
+        if (!check.isAvailable()) {
+            throw new ConverterNotAvailable(converterName);
+        }
+        ThreadPoolExecutor executor;
+        synchronized (this) {
+            executor = asyncExecutors.get(priority);
+        }
+        if (executor == null) {
+            throw new ConversionException(
+                    "Asynchronous conversions stopped, cannot convert: "
+                            + converterName);
+        }
+        final AsyncConversion conversion = new AsyncConversion(
+                new Callable<BlobHolder>() {
+                    @Override
+                    public BlobHolder call() throws ConversionException {
+                        return convert(converterName, blobHolder, parameters);
+                    }
+                });
+        asyncConversions.add(conversion);
+        if (timeoutMillis > 0) {
+            conversion.timeout = asyncTimeouts.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (conversion.cancel(false)) {
+                        log.debug("Asynchronous conversion timed out: "
+                                + converterName);
+                    }
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            executor.execute(conversion);
+        } catch (RejectedExecutionException e) {
+            // stopped concurrently
+            conversion.cancel(false);
+            throw new ConversionException(
+                    "Asynchronous conversions stopped, cannot convert: "
+                            + converterName, e);
+        }
+        return conversion;
+    }
+
+    /**
+     * Result of an asynchronous conversion.
+     * <p>
+     * Canceling it never interrupts a started conversion: its thread may be
+     * running a conversion shared with other callers waiting for the same
+     * result, which must not fail because this one gave up.
+     *
+     * @since 7.1
+     */
+    protected class AsyncConversion extends FutureTask<BlobHolder> {
+
+        protected volatile ScheduledFuture<?> timeout;
 
-            BlobHolder result = converter.convert(blobHolder, parameters);
+        public AsyncConversion(Callable<BlobHolder> callable) {
+            super(callable);
+        }
 
-            if (config.isCacheEnabled()) {
-                ConversionCacheHolder.addToCache(cacheKey, result);
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return super.cancel(false);
+        }
+
+        @Override
+        protected void done() {
+            asyncConversions.remove(this);
+            if (timeout != null) {
+                timeout.cancel(false);
             }
-            return result;
         }
     }
 
@@ -317,6 +680,9 @@ public class ConversionServiceImpl extends DefaultComponent implements
 
     @Override
     public void applicationStarted(ComponentContext context) throws Exception {
+        if (config.isCacheEnabled()) {
+            ConversionCacheHolder.loadCache();
+        }
         startGC();
     }
 
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.tests;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
+import org.nuxeo.ecm.core.convert.extension.Converter;
+import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
+
+/**
+ * Identity converter taking some time, recording its invocations.
+ */
+public class SlowConverter implements Converter {
+
+    public static final AtomicInteger invocations = new AtomicInteger();
+
+    public static final AtomicInteger running = new AtomicInteger();
+
+    public static final AtomicInteger maxRunning = new AtomicInteger();
+
+    public static long durationMillis = 200;
+
+    public static void reset() {
+        invocations.set(0);
+        running.set(0);
+        maxRunning.set(0);
+    }
+
+    @Override
+    public BlobHolder convert(BlobHolder blobHolder,
+            Map<String, Serializable> parameters) throws ConversionException {
+        invocations.incrementAndGet();
+        int n = running.incrementAndGet();
+        try {
+            int max;
+            do {
+                max = maxRunning.get();
+            } while (n > max && !maxRunning.compareAndSet(max, n));
+            Thread.sleep(durationMillis);
+            return new SimpleCachableBlobHolder(blobHolder.getBlob());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Interrupted", e);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void init(ConverterDescriptor descriptor) {
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.ecm.core.convert.api.ConversionPriority;
+import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+import com.google.inject.Inject;
+
+@RunWith(FeaturesRunner.class)
+@Features(ConvertFeature.class)
+@LocalDeploy("org.nuxeo.ecm.core.convert:OSGI-INF/converters-test-contrib6.xml")
+public class TestAsyncConversions {
+
+    @Inject
+    ConversionService cs;
+
+    @Before
+    public void setUp() {
+        SlowConverter.reset();
+    }
+
+    @After
+    public void tearDown() {
+        SlowConverter.durationMillis = 200;
+    }
+
+    protected static BlobHolder getBlobHolder(String content) {
+        Blob blob = new StringBlob(content);
+        blob.setFilename("test.txt");
+        blob.setMimeType("text/plain");
+        return new SimpleBlobHolder(blob);
+    }
+
+    @Test
+    public void testAsyncConversion() throws Exception {
+        Future<BlobHolder> interactive = cs.convertAsync("slow",
+                getBlobHolder("foo"), null, ConversionPriority.INTERACTIVE, 0);
+        Future<BlobHolder> background = cs.convertAsync("slow",
+                getBlobHolder("bar"), null, ConversionPriority.BACKGROUND, 0);
+        assertEquals("foo",
+                interactive.get(10, TimeUnit.SECONDS).getBlob().getString());
+        assertEquals("bar",
+                background.get(10, TimeUnit.SECONDS).getBlob().getString());
+        assertEquals(2, SlowConverter.invocations.get());
+    }
+
+    @Test
+    public void testAsyncConversionTimeout() throws Exception {
+        SlowConverter.durationMillis = 2000;
+        Future<BlobHolder> future = cs.convertAsync("slow",
+                getBlobHolder("foo"), null, ConversionPriority.INTERACTIVE,
+                200);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("should have timed out");
+        } catch (CancellationException e) {
+            // ok
+        }
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testAsyncConversionTimeoutDoesNotFailCoalescedConversion()
+            throws Exception {
+        SlowConverter.durationMillis = 1000;
+        BlobHolder bh = getBlobHolder("foo");
+        Future<BlobHolder> future = cs.convertAsync("slow", bh, null,
+                ConversionPriority.INTERACTIVE, 200);
+        // wait for the asynchronous conversion to be the one running
+        long deadline = System.currentTimeMillis() + 10000;
+        while (SlowConverter.running.get() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        // waits for the same conversion, which outlives the timeout
+        BlobHolder result = cs.convert("slow", bh, null);
+        assertEquals("foo", result.getBlob().getString());
+        assertEquals(1, SlowConverter.invocations.get());
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testAsyncConversionsCanceledOnStop() throws Exception {
+        SlowConverter.durationMillis = 2000;
+        // more than the background threads, so that some are still queued
+        List<Future<BlobHolder>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(cs.convertAsync("slow", getBlobHolder("foo" + i),
+                    null, ConversionPriority.BACKGROUND, 0));
+        }
+        ConversionServiceImpl service = (ConversionServiceImpl) cs;
+        service.stopAsyncConversions();
+        try {
+            for (Future<BlobHolder> future : futures) {
+                // completes instead of blocking forever
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    fail("should have been canceled");
+                } catch (CancellationException e) {
+                    // ok
+                }
+            }
+        } finally {
+            service.startAsyncConversions();
+        }
+        // still usable after restart
+        SlowConverter.durationMillis = 10;
+        Future<BlobHolder> future = cs.convertAsync("slow",
+                getBlobHolder("bar"), null, ConversionPriority.BACKGROUND, 0);
+        assertEquals("bar",
+                future.get(10, TimeUnit.SECONDS).getBlob().getString());
+    }
+
+}
@@ -14,10 +14,14 @@
 package org.nuxeo.ecm.core.convert.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -27,8 +31,10 @@ import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
 import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.convert.cache.CacheKeyGenerator;
 import org.nuxeo.ecm.core.convert.cache.ConversionCacheGCManager;
 import org.nuxeo.ecm.core.convert.cache.ConversionCacheHolder;
+import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
 import org.nuxeo.ecm.core.convert.extension.Converter;
 import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
 import org.nuxeo.runtime.api.Framework;
@@ -90,4 +96,88 @@ public class TestCache {
         assertEquals(0, cacheSize1 - cacheSize3);
     }
 
+    @Test
+    public void testCacheReload() throws Exception {
+        ConversionService cs = Framework.getLocalService(ConversionService.class);
+
+        File file = FileUtils.getResourceFileFromContext("test-data/hello.doc");
+        Blob blob = new FileBlob(file);
+        blob.setFilename("hello.doc");
+        blob.setMimeType("application/msword");
+        BlobHolder bh = new SimpleBlobHolder(blob);
+
+        cs.convert("identity", bh, null);
+        String key = CacheKeyGenerator.computeKey("identity", bh, null);
+        assertNotNull(ConversionCacheHolder.getCacheEntry(key));
+        int cacheSize = ConversionCacheHolder.getNbCacheEntries();
+        long cacheSizeInKB = ConversionCacheHolder.getCacheSizeInKB();
+        assertEquals(file.length() / 1024,
+                ConversionCacheHolder.getCacheEntry(key).getDiskSpaceUsageInKB());
+
+        // simulate a restart
+        ConversionCacheHolder.unloadCache();
+        assertEquals(0, ConversionCacheHolder.getNbCacheEntries());
+        assertEquals(0, ConversionCacheHolder.getCacheSizeInKB());
+        ConversionCacheHolder.loadCache();
+
+        assertEquals(cacheSize, ConversionCacheHolder.getNbCacheEntries());
+        assertEquals(cacheSizeInKB, ConversionCacheHolder.getCacheSizeInKB());
+        BlobHolder cached = ConversionCacheHolder.getFromCache(key);
+        assertNotNull(cached);
+        assertEquals(file.length(), cached.getBlob().getLength());
+
+        // evict everything
+        ConversionCacheGCManager.doGC(Long.MAX_VALUE - 1);
+        assertEquals(0, ConversionCacheHolder.getNbCacheEntries());
+        assertEquals(0, ConversionCacheHolder.getCacheSizeInKB());
+        assertNull(ConversionCacheHolder.getCacheEntry(key));
+    }
+
+    @Test
+    public void testConcurrentAddToCache() throws Exception {
+        File file = FileUtils.getResourceFileFromContext("test-data/hello.doc");
+        Blob blob = new FileBlob(file);
+        blob.setFilename("hello.doc");
+        blob.setMimeType("application/msword");
+        final BlobHolder bh = new SimpleCachableBlobHolder(blob);
+        final String key = CacheKeyGenerator.computeKey("concurrent", bh, null);
+        int cacheSize = ConversionCacheHolder.getNbCacheEntries();
+
+        int nbThreads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(nbThreads);
+        Thread[] threads = new Thread[nbThreads];
+        for (int i = 0; i < nbThreads; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                    } catch (InterruptedException | BrokenBarrierException e) {
+                        return;
+                    }
+                    ConversionCacheHolder.addToCache(key, bh);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(cacheSize + 1, ConversionCacheHolder.getNbCacheEntries());
+        assertEquals(file.length() / 1024,
+                ConversionCacheHolder.getCacheEntry(key).getDiskSpaceUsageInKB());
+        BlobHolder cached = ConversionCacheHolder.getFromCache(key);
+        assertNotNull(cached);
+        assertEquals(file.length(), cached.getBlob().getLength());
+        // no temporary directory left behind
+        File dir = new File(
+                ConversionCacheHolder.getCacheEntry(key).getPersistPath()).getParentFile();
+        assertEquals(1, dir.getParentFile().list().length);
+
+        ConversionCacheHolder.removeFromCache(key);
+        assertNull(ConversionCacheHolder.getCacheEntry(key));
+        assertFalse(dir.exists());
+    }
+
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+import com.google.inject.Inject;
+
+@RunWith(FeaturesRunner.class)
+@Features(ConvertFeature.class)
+@LocalDeploy("org.nuxeo.ecm.core.convert:OSGI-INF/converters-test-contrib6.xml")
+public class TestConcurrentConversions {
+
+    protected static final int THREADS = 10;
+
+    @Inject
+    ConversionService cs;
+
+    @Before
+    public void setUp() {
+        SlowConverter.reset();
+    }
+
+    protected List<BlobHolder> convertConcurrently(List<BlobHolder> sources)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(sources.size());
+        try {
+            List<Future<BlobHolder>> futures = new ArrayList<>();
+            for (final BlobHolder source : sources) {
+                futures.add(executor.submit(new Callable<BlobHolder>() {
+                    @Override
+                    public BlobHolder call() throws Exception {
+                        return cs.convert("slow", source, null);
+                    }
+                }));
+            }
+            List<BlobHolder> results = new ArrayList<>();
+            for (Future<BlobHolder> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected static BlobHolder getBlobHolder(String content) {
+        Blob blob = new StringBlob(content);
+        blob.setFilename("test.txt");
+        blob.setMimeType("text/plain");
+        return new SimpleBlobHolder(blob);
+    }
+
+    @Test
+    public void testIdenticalConversionsCoalesced() throws Exception {
+        List<BlobHolder> sources = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            sources.add(getBlobHolder("same content"));
+        }
+        for (BlobHolder result : convertConcurrently(sources)) {
+            assertNotNull(result);
+            assertEquals("same content", result.getBlob().getString());
+        }
+        assertEquals(1, SlowConverter.invocations.get());
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        List<BlobHolder> sources = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            sources.add(getBlobHolder("content " + i));
+        }
+        for (BlobHolder result : convertConcurrently(sources)) {
+            assertNotNull(result);
+        }
+        assertEquals(THREADS, SlowConverter.invocations.get());
+        // maxConcurrency="2" in the contribution
+        assertTrue(String.valueOf(SlowConverter.maxRunning.get()),
+                SlowConverter.maxRunning.get() <= 2);
+    }
+
+}
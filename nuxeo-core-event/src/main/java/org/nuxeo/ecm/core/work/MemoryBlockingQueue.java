@@ -17,6 +17,7 @@
  */
 package org.nuxeo.ecm.core.work;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -164,8 +165,43 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
 
     @Override
     public void putElement(Runnable r) throws InterruptedException {
-        queue.put(r);
+        // registered before being published, so that a poller always finds
+        // the id of the work it takes
         addWorkId(r);
+        try {
+            queue.put(r);
+        } catch (InterruptedException e) {
+            removeWorkId(r);
+            throw e;
+        }
+    }
+
+    @Override
+    public void putElements(Collection<Runnable> rs)
+            throws InterruptedException {
+        // all ids registered at once before being published, see putElement
+        synchronized (workIds) {
+            for (Runnable r : rs) {
+                if (r instanceof WorkHolder) {
+                    workIds.add(WorkHolder.getWork(r).getId());
+                }
+            }
+        }
+        Iterator<Runnable> it = rs.iterator();
+        Runnable r = null;
+        try {
+            while (it.hasNext()) {
+                r = it.next();
+                queue.put(r);
+            }
+        } catch (InterruptedException e) {
+            // the interrupted one and the following ones were not published
+            removeWorkId(r);
+            while (it.hasNext()) {
+                removeWorkId(it.next());
+            }
+            throw e;
+        }
     }
 
     @Override
@@ -70,6 +70,10 @@ public class MemoryWorkQueuing implements WorkQueuing {
         allCompleted.clear();
     }
 
+    @Override
+    public void shutdown() {
+    }
+
     // called synchronized
     protected WorkQueueDescriptor getDescriptor(String queueId) {
         WorkQueueDescriptor descriptor = workQueueDescriptors.get(queueId);
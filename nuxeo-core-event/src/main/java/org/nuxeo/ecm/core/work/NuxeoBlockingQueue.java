@@ -223,6 +223,21 @@ public abstract class NuxeoBlockingQueue extends AbstractQueue<Runnable>
      */
     public abstract void putElement(Runnable r) throws InterruptedException;
 
+    /**
+     * Adds several elements into this queue, waiting if necessary for space to
+     * become available.
+     * <p>
+     * The default implementation adds them one by one.
+     *
+     * @since 7.1
+     */
+    public void putElements(Collection<Runnable> rs)
+            throws InterruptedException {
+        for (Runnable r : rs) {
+            putElement(r);
+        }
+    }
+
     /**
      * Retrieves and removes an element from the queue, or returns null if the
      * queue is empty.
@@ -22,9 +22,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
@@ -375,7 +378,11 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
                 executors.values());
         executors.clear();
         started = false;
-        return shutdownExecutors(executorList, timeout, unit);
+        try {
+            return shutdownExecutors(executorList, timeout, unit);
+        } finally {
+            queuing.shutdown();
+        }
     }
 
     protected class ShutdownListener implements RuntimeServiceListener {
@@ -422,6 +429,43 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         }
     }
 
+    /**
+     * Several work instances and how to schedule them, for
+     * schedule-after-commit.
+     *
+     * @since 7.1
+     */
+    public class WorkBatchScheduling implements Synchronization {
+        public final Collection<Work> works;
+
+        public final Scheduling scheduling;
+
+        public WorkBatchScheduling(Collection<Work> works,
+                Scheduling scheduling) {
+            this.works = works;
+            this.scheduling = scheduling;
+        }
+
+        @Override
+        public void beforeCompletion() {
+            ;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == Status.STATUS_COMMITTED) {
+                schedule(works, scheduling, false);
+            } else if (status == Status.STATUS_ROLLEDBACK) {
+                for (Work work : works) {
+                    work.setWorkInstanceState(State.CANCELED);
+                }
+            } else {
+                throw new IllegalArgumentException(
+                        "Unsupported transaction status " + status);
+            }
+        }
+    }
+
     /**
      * Creates non-daemon threads at normal priority.
      */
@@ -627,6 +671,59 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             }
         }
 
+        /**
+         * Executes the given tasks sometime in the future, adding them to the
+         * queue in one batch.
+         *
+         * @param works the works to execute
+         * @since 7.1
+         */
+        public void execute(List<Work> works) {
+            for (int i = 0; i < works.size(); i++) {
+                scheduledCount.inc();
+                if (scheduledCount.getCount() > scheduledMax.getCount()) {
+                    scheduledMax.inc();
+                }
+                completionSynchronizer.signalSchedule();
+            }
+            boolean ok = false;
+            try {
+                submit(works);
+                ok = true;
+            } finally {
+                if (!ok) {
+                    for (int i = 0; i < works.size(); i++) {
+                        completionSynchronizer.signalCompletion();
+                    }
+                }
+            }
+        }
+
+        /**
+         * @since 7.1
+         */
+        protected void submit(List<Work> works) throws RuntimeException {
+            BlockingQueue<Runnable> queue = queuing.getScheduledQueue(queueId);
+            List<Runnable> holders = new ArrayList<>(works.size());
+            for (Work work : works) {
+                holders.add(new WorkHolder(work));
+            }
+            if (queue instanceof NuxeoBlockingQueue) {
+                try {
+                    ((NuxeoBlockingQueue) queue).putElements(holders);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // restore interrupt status
+                    throw new RuntimeException("interrupted", e);
+                }
+            } else {
+                for (Runnable r : holders) {
+                    if (!queue.offer(r)) {
+                        throw new RuntimeException("queue should have blocked");
+                    }
+                }
+            }
+        }
+
         /**
          * go through the queue instead of using super.execute which may skip
          * the queue and hand off to a thread directly
@@ -769,7 +866,6 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     @Override
     public void schedule(Work work, Scheduling scheduling, boolean afterCommit) {
-        String workId = work.getId();
         String queueId = getCategoryQueueId(work.getCategory());
         if (!isQueuingEnabled(queueId)) {
             work.setWorkInstanceState(State.CANCELED);
@@ -778,6 +874,83 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         if (afterCommit && scheduleAfterCommit(work, scheduling)) {
             return;
         }
+        if (prepareSchedule(work, queueId, scheduling)) {
+            getExecutor(queueId).execute(work);
+        }
+    }
+
+    @Override
+    public void schedule(Collection<Work> works, Scheduling scheduling,
+            boolean afterCommit) {
+        if (works.isEmpty()) {
+            return;
+        }
+        if (afterCommit && scheduleAfterCommit(works, scheduling)) {
+            return;
+        }
+        // deduplicate works with the same id
+        List<Work> unique = new ArrayList<>(works.size());
+        switch (scheduling) {
+        case IF_NOT_SCHEDULED:
+        case IF_NOT_RUNNING_OR_SCHEDULED:
+            // keep the first one
+            Set<String> ids = new HashSet<>();
+            for (Work work : works) {
+                if (ids.add(work.getId())) {
+                    unique.add(work);
+                } else {
+                    work.setWorkInstanceState(State.CANCELED);
+                }
+            }
+            break;
+        case CANCEL_SCHEDULED:
+            // keep the last one
+            Map<String, Work> last = new HashMap<>();
+            for (Work work : works) {
+                last.put(work.getId(), work);
+            }
+            for (Work work : works) {
+                if (last.get(work.getId()) == work) {
+                    unique.add(work);
+                } else {
+                    work.setWorkInstanceState(State.CANCELED);
+                }
+            }
+            break;
+        default:
+            unique.addAll(works);
+        }
+        // group by queue
+        Map<String, List<Work>> worksByQueue = new LinkedHashMap<>();
+        for (Work work : unique) {
+            String queueId = getCategoryQueueId(work.getCategory());
+            if (!isQueuingEnabled(queueId)) {
+                work.setWorkInstanceState(State.CANCELED);
+                continue;
+            }
+            if (!prepareSchedule(work, queueId, scheduling)) {
+                continue;
+            }
+            List<Work> queueWorks = worksByQueue.get(queueId);
+            if (queueWorks == null) {
+                worksByQueue.put(queueId, queueWorks = new ArrayList<>());
+            }
+            queueWorks.add(work);
+        }
+        for (Map.Entry<String, List<Work>> es : worksByQueue.entrySet()) {
+            getExecutor(es.getKey()).execute(es.getValue());
+        }
+    }
+
+    /**
+     * Sets the work state to scheduled and applies the scheduling policy.
+     *
+     * @return {@code false} if the work must not be scheduled
+     * @since 7.1
+     */
+    protected boolean prepareSchedule(Work work, String queueId,
+            Scheduling scheduling) {
+        String workId = work.getId();
         work.setWorkInstanceState(State.SCHEDULED);
         WorkSchedulePath.newInstance(work);
         if (log.isTraceEnabled()) {
@@ -812,13 +985,13 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
                 if (log.isDebugEnabled()) {
                     log.debug("Canceling schedule because found: " + scheduling);
                 }
-                return;
+                return false;
 
             }
             break;
 
         }
-        getExecutor(queueId).execute(work);
+        return true;
     }
 
     /**
@@ -828,6 +1001,29 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
      * @since 5.8
      */
     protected boolean scheduleAfterCommit(Work work, Scheduling scheduling) {
+        return registerAfterCommit(new WorkScheduling(work, scheduling), work);
+    }
+
+    /**
+     * Schedule several works after commit. Returns {@code false} if impossible
+     * (no transaction or transaction manager).
+     *
+     * @since 7.1
+     */
+    protected boolean scheduleAfterCommit(Collection<Work> works,
+            Scheduling scheduling) {
+        return registerAfterCommit(new WorkBatchScheduling(works, scheduling),
+                works.size() + " works");
+    }
+
+    /**
+     * Registers the synchronization scheduling the work after commit. Returns
+     * {@code false} if impossible (no transaction or transaction manager).
+     *
+     * @since 7.1
+     */
+    protected boolean registerAfterCommit(Synchronization synchronization,
+            Object work) {
         TransactionManager transactionManager;
         try {
             transactionManager = TransactionHelper.lookupTransactionManager();
@@ -855,8 +1051,7 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
                 if (log.isDebugEnabled()) {
                     log.debug("Scheduling work after commit: " + work);
                 }
-                transaction.registerSynchronization(new WorkScheduling(work,
-                        scheduling));
+                transaction.registerSynchronization(synchronization);
                 return true;
             } else {
                 if (log.isDebugEnabled()) {
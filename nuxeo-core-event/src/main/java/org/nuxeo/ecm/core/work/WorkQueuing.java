@@ -196,4 +196,12 @@ public interface WorkQueuing {
      */
     void clearCompletedWork(String queueId, long completionTime);
 
+    /**
+     * Releases the resources acquired by {@link #init}, after the executors
+     * have been shut down. {@link #init} may be called again afterwards.
+     *
+     * @since 7.1
+     */
+    void shutdown();
+
 }
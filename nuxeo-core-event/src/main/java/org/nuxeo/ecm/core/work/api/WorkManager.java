@@ -16,6 +16,7 @@
  */
 package org.nuxeo.ecm.core.work.api;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -178,6 +179,31 @@ public interface WorkManager {
      */
     void schedule(Work work, Scheduling scheduling, boolean afterCommit);
 
+    /**
+     * Schedules several works for execution at a later time, with a specific
+     * {@linkplain Scheduling scheduling} policy.
+     * <p>
+     * This is equivalent to scheduling each work in turn, but the works going
+     * to the same queue are added to it in one batch.
+     * <p>
+     * Several works with the same id in the collection are deduplicated
+     * according to the scheduling policy: with {@link Scheduling#IF_NOT_SCHEDULED IF_NOT_SCHEDULED}
+     * or {@link Scheduling#IF_NOT_RUNNING_OR_SCHEDULED IF_NOT_RUNNING_OR_SCHEDULED}
+     * only the first one is scheduled, with
+     * {@link Scheduling#CANCEL_SCHEDULED CANCEL_SCHEDULED} only the last one,
+     * the others being canceled.
+     *
+     * @param works the works to execute
+     * @param scheduling the scheduling policy
+     * @param afterCommit if {@code true} and the works are scheduled, they
+     *            will only be run after the current transaction (if any) has
+     *            committed
+     * @see #schedule(Work, Scheduling, boolean)
+     * @since 7.1
+     */
+    void schedule(Collection<Work> works, Scheduling scheduling,
+            boolean afterCommit);
+
     /**
      * Finds a work instance.
      *
@@ -40,6 +40,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.ecm.core.work.api.WorkManager.Scheduling;
 import org.nuxeo.ecm.core.work.api.WorkQueueDescriptor;
@@ -221,6 +222,27 @@ public class WorkManagerTest extends NXRuntimeTestCase {
                 service.listWorkIds(QUEUE, COMPLETED));
     }
 
+    @Test
+    public void testWorkManagerBulkScheduling() throws Exception {
+        int duration = 500; // ms
+        SleepWork work1 = new SleepWork(duration, false, "1");
+        SleepWork work2 = new SleepWork(duration, false, "2");
+        SleepWork work3 = new SleepWork(duration, false, "3");
+        SleepWork work4 = new SleepWork(duration, false, "1"); // id=1
+        service.schedule(Arrays.<Work> asList(work1, work2, work3, work4),
+                Scheduling.IF_NOT_SCHEDULED, false);
+        assertEquals(SCHEDULED, work1.getWorkInstanceState());
+        assertEquals(SCHEDULED, work2.getWorkInstanceState());
+        assertEquals(SCHEDULED, work3.getWorkInstanceState());
+        assertEquals(CANCELED, work4.getWorkInstanceState());
+
+        boolean completed = service.awaitCompletion(duration * 4,
+                TimeUnit.MILLISECONDS);
+        assertTrue(completed);
+        assertSetEquals(Arrays.asList("1", "2", "3"),
+                service.listWorkIds(QUEUE, COMPLETED));
+    }
+
     @Test
     @Ignore
     public void testWorkManagerShutdown() throws Exception {
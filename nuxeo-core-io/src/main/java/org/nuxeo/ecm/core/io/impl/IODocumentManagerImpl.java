@@ -14,11 +14,13 @@
 
 package org.nuxeo.ecm.core.io.impl;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.zip.Deflater;
 
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.CoreInstance;
@@ -37,6 +39,7 @@ import org.nuxeo.ecm.core.io.impl.plugins.DocumentTreeReader;
 import org.nuxeo.ecm.core.io.impl.plugins.DocumentsListReader;
 import org.nuxeo.ecm.core.io.impl.plugins.NuxeoArchiveReader;
 import org.nuxeo.ecm.core.io.impl.plugins.NuxeoArchiveWriter;
+import org.nuxeo.runtime.api.Framework;
 
 /**
  * IODocumentManager basic implementation.
@@ -47,6 +50,15 @@ public class IODocumentManagerImpl implements IODocumentManager {
 
     private static final long serialVersionUID = -3131999198524020179L;
 
+    /**
+     * Number of threads compressing the entries of exported archives. If
+     * positive, already compressed blobs are also stored without compression.
+     * Default is 0, for sequential compression of all entries.
+     *
+     * @since 7.1
+     */
+    public static final String ARCHIVE_THREADS_PROP = "org.nuxeo.ecm.core.io.archive.threads";
+
     @Override
     public DocumentTranslationMap importDocuments(InputStream in, String repo,
             DocumentRef root) throws ImportDocumentException, ClientException {
@@ -110,7 +122,7 @@ public class IODocumentManagerImpl implements IODocumentManager {
         try (CoreSession coreSession = CoreInstance.openCoreSessionSystem(repo)) {
             DocumentPipe pipe = new DocumentPipeImpl(10);
             // XXX check format before creating writer
-            writer = new NuxeoArchiveWriter(out);
+            writer = createArchiveWriter(out);
             pipe.setWriter(writer);
             if (!recurse) {
                 reader = DocumentsListReader.createDocumentsListReader(
@@ -152,7 +164,7 @@ public class IODocumentManagerImpl implements IODocumentManager {
         try {
             DocumentPipe pipe = new DocumentPipeImpl(10);
             // XXX check format before creating writer
-            writer = new NuxeoArchiveWriter(out);
+            writer = createArchiveWriter(out);
             pipe.setWriter(writer);
             pipe.setReader(customDocReader);
 
@@ -194,4 +206,18 @@ public class IODocumentManagerImpl implements IODocumentManager {
         }
     }
 
+    /**
+     * @since 7.1
+     */
+    protected DocumentWriter createArchiveWriter(OutputStream out)
+            throws IOException {
+        int threads = Integer.parseInt(Framework.getProperty(
+                ARCHIVE_THREADS_PROP, "0"));
+        if (threads > 0) {
+            return new NuxeoArchiveWriter(out,
+                    Deflater.DEFAULT_COMPRESSION, threads);
+        }
+        return new NuxeoArchiveWriter(out);
+    }
+
 }
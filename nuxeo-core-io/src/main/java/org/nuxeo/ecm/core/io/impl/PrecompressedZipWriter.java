@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.io.impl;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Zip writer for entries whose data is already compressed (or stored).
+ * <p>
+ * Unlike with a {@link ZipOutputStream}, the method, CRC, size and compressed
+ * size of each entry must be set before it is written, and its data (raw
+ * deflate data for a {@link ZipEntry#DEFLATED} entry) is copied as is. This
+ * allows entries to be compressed beforehand, possibly in parallel.
+ * <p>
+ * Names and comment are encoded in UTF-8. Zip64 extensions are used for large
+ * entries and archives.
+ *
+ * @since 7.1
+ */
+public class PrecompressedZipWriter implements Closeable {
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    protected static final int LOCSIG = 0x04034b50;
+
+    protected static final int CENSIG = 0x02014b50;
+
+    protected static final int ENDSIG = 0x06054b50;
+
+    protected static final int ZIP64_ENDSIG = 0x06064b50;
+
+    protected static final int ZIP64_LOCSIG = 0x07064b50;
+
+    protected static final int ZIP64_EXTID = 0x0001;
+
+    protected static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+
+    protected static final int ZIP64_MAGICCOUNT = 0xFFFF;
+
+    /** General purpose flag for UTF-8 names. */
+    protected static final int EFS = 0x800;
+
+    protected static final int VERSION = 20;
+
+    protected static final int VERSION_ZIP64 = 45;
+
+    protected static final int BUFFER_SIZE = 8192;
+
+    protected static final byte[] EMPTY = new byte[0];
+
+    protected static class Entry {
+
+        protected final ZipEntry entry;
+
+        protected final byte[] name;
+
+        protected final byte[] extra;
+
+        protected final long offset;
+
+        protected Entry(ZipEntry entry, byte[] name, byte[] extra, long offset) {
+            this.entry = entry;
+            this.name = name;
+            this.extra = extra;
+            this.offset = offset;
+        }
+    }
+
+    protected final OutputStream out;
+
+    protected final byte[] buffer = new byte[BUFFER_SIZE];
+
+    protected final List<Entry> entries = new ArrayList<Entry>();
+
+    protected final Set<String> names = new HashSet<String>();
+
+    protected byte[] comment = EMPTY;
+
+    protected long written;
+
+    protected boolean closed;
+
+    public PrecompressedZipWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public void setComment(String comment) {
+        this.comment = comment == null ? EMPTY : comment.getBytes(UTF8);
+        if (this.comment.length > 0xFFFF) {
+            throw new IllegalArgumentException("Zip comment too long");
+        }
+    }
+
+    /**
+     * Writes an entry and its data.
+     *
+     * @param entry the entry, with method, CRC, size and compressed size set
+     * @param data the stored or raw deflated data, of which the compressed size
+     *            is read
+     */
+    public void writeEntry(ZipEntry entry, InputStream data) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        String nameString = entry.getName();
+        int method = entry.getMethod();
+        long size = entry.getSize();
+        long csize = entry.getCompressedSize();
+        long crc = entry.getCrc();
+        if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+            throw new ZipException("Invalid compression method for entry: "
+                    + nameString);
+        }
+        if (size < 0 || csize < 0 || crc < 0) {
+            throw new ZipException("Missing size, compressed size or CRC for"
+                    + " entry: " + nameString);
+        }
+        if (method == ZipEntry.STORED && size != csize) {
+            throw new ZipException("Invalid compressed size for stored entry: "
+                    + nameString);
+        }
+        if (!names.add(nameString)) {
+            throw new ZipException("Duplicate entry: " + nameString);
+        }
+        if (entry.getTime() == -1) {
+            entry.setTime(System.currentTimeMillis());
+        }
+        byte[] name = nameString.getBytes(UTF8);
+        byte[] extra = entry.getExtra();
+        if (extra == null) {
+            extra = EMPTY;
+        }
+        boolean zip64 = size >= ZIP64_MAGICVAL || csize >= ZIP64_MAGICVAL;
+        long offset = written;
+        writeInt(LOCSIG);
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION);
+        writeShort(EFS);
+        writeShort(method);
+        writeInt(dosTime(entry.getTime()));
+        writeInt(crc);
+        if (zip64) {
+            writeInt(ZIP64_MAGICVAL);
+            writeInt(ZIP64_MAGICVAL);
+            writeShort(name.length);
+            writeShort(extra.length + 20);
+            writeBytes(name);
+            writeShort(ZIP64_EXTID);
+            writeShort(16);
+            writeLong(size);
+            writeLong(csize);
+        } else {
+            writeInt(csize);
+            writeInt(size);
+            writeShort(name.length);
+            writeShort(extra.length);
+            writeBytes(name);
+        }
+        writeBytes(extra);
+        long remaining = csize;
+        while (remaining > 0) {
+            int n = data.read(buffer, 0, (int) Math.min(buffer.length,
+                    remaining));
+            if (n == -1) {
+                throw new EOFException("Unexpected end of data for entry: "
+                        + nameString);
+            }
+            out.write(buffer, 0, n);
+            written += n;
+            remaining -= n;
+        }
+        entries.add(new Entry(entry, name, extra, offset));
+    }
+
+    /**
+     * Writes the central directory and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long cenOffset = written;
+            for (Entry entry : entries) {
+                writeCentralEntry(entry);
+            }
+            long cenSize = written - cenOffset;
+            long count = entries.size();
+            if (count >= ZIP64_MAGICCOUNT || cenOffset >= ZIP64_MAGICVAL
+                    || cenSize >= ZIP64_MAGICVAL) {
+                long end64Offset = written;
+                writeInt(ZIP64_ENDSIG);
+                writeLong(44); // size of the rest of the record
+                writeShort(VERSION_ZIP64);
+                writeShort(VERSION_ZIP64);
+                writeInt(0); // disk number
+                writeInt(0); // disk of the central directory
+                writeLong(count);
+                writeLong(count);
+                writeLong(cenSize);
+                writeLong(cenOffset);
+                writeInt(ZIP64_LOCSIG);
+                writeInt(0); // disk of the zip64 end record
+                writeLong(end64Offset);
+                writeInt(1); // number of disks
+            }
+            writeInt(ENDSIG);
+            writeShort(0); // disk number
+            writeShort(0); // disk of the central directory
+            writeShort((int) Math.min(count, ZIP64_MAGICCOUNT));
+            writeShort((int) Math.min(count, ZIP64_MAGICCOUNT));
+            writeInt(Math.min(cenSize, ZIP64_MAGICVAL));
+            writeInt(Math.min(cenOffset, ZIP64_MAGICVAL));
+            writeShort(comment.length);
+            writeBytes(comment);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    protected void writeCentralEntry(Entry e) throws IOException {
+        ZipEntry entry = e.entry;
+        long size = entry.getSize();
+        long csize = entry.getCompressedSize();
+        int zip64Length = 0;
+        if (size >= ZIP64_MAGICVAL) {
+            zip64Length += 8;
+        }
+        if (csize >= ZIP64_MAGICVAL) {
+            zip64Length += 8;
+        }
+        if (e.offset >= ZIP64_MAGICVAL) {
+            zip64Length += 8;
+        }
+        boolean zip64 = zip64Length > 0;
+        writeInt(CENSIG);
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION); // version made by
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION); // version needed
+        writeShort(EFS);
+        writeShort(entry.getMethod());
+        writeInt(dosTime(entry.getTime()));
+        writeInt(entry.getCrc());
+        writeInt(Math.min(csize, ZIP64_MAGICVAL));
+        writeInt(Math.min(size, ZIP64_MAGICVAL));
+        writeShort(e.name.length);
+        writeShort(e.extra.length + (zip64 ? zip64Length + 4 : 0));
+        writeShort(0); // comment length
+        writeShort(0); // disk number
+        writeShort(0); // internal attributes
+        writeInt(0); // external attributes
+        writeInt(Math.min(e.offset, ZIP64_MAGICVAL));
+        writeBytes(e.name);
+        if (zip64) {
+            writeShort(ZIP64_EXTID);
+            writeShort(zip64Length);
+            if (size >= ZIP64_MAGICVAL) {
+                writeLong(size);
+            }
+            if (csize >= ZIP64_MAGICVAL) {
+                writeLong(csize);
+            }
+            if (e.offset >= ZIP64_MAGICVAL) {
+                writeLong(e.offset);
+            }
+        }
+        writeBytes(e.extra);
+    }
+
+    protected void writeShort(int v) throws IOException {
+        out.write(v & 0xFF);
+        out.write((v >>> 8) & 0xFF);
+        written += 2;
+    }
+
+    protected void writeInt(long v) throws IOException {
+        writeShort((int) (v & 0xFFFF));
+        writeShort((int) ((v >>> 16) & 0xFFFF));
+    }
+
+    protected void writeLong(long v) throws IOException {
+        writeInt(v & 0xFFFFFFFFL);
+        writeInt(v >>> 32);
+    }
+
+    protected void writeBytes(byte[] bytes) throws IOException {
+        out.write(bytes);
+        written += bytes.length;
+    }
+
+    /**
+     * Converts a Java time to a MS-DOS date and time.
+     */
+    protected static long dosTime(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        int year = cal.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (year - 1980) << 25)
+                | ((cal.get(Calendar.MONTH) + 1) << 21)
+                | (cal.get(Calendar.DAY_OF_MONTH) << 16)
+                | (cal.get(Calendar.HOUR_OF_DAY) << 11)
+                | (cal.get(Calendar.MINUTE) << 5)
+                | (cal.get(Calendar.SECOND) >> 1);
+    }
+
+}
@@ -15,16 +15,36 @@
 package org.nuxeo.ecm.core.io.impl.plugins;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.dom4j.Document;
 import org.dom4j.io.OutputFormat;
 import org.dom4j.io.XMLWriter;
@@ -32,21 +52,93 @@ import org.nuxeo.common.utils.FileUtils;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.DocumentLocation;
 import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.impl.blob.ByteArrayBlob;
 import org.nuxeo.ecm.core.io.DocumentTranslationMap;
 import org.nuxeo.ecm.core.io.ExportConstants;
 import org.nuxeo.ecm.core.io.ExportedDocument;
 import org.nuxeo.ecm.core.io.impl.AbstractDocumentWriter;
 import org.nuxeo.ecm.core.io.impl.DWord;
 import org.nuxeo.ecm.core.io.impl.DocumentTranslationMapImpl;
+import org.nuxeo.ecm.core.io.impl.PrecompressedZipWriter;
 
 /**
+ * Writes documents to a Nuxeo archive.
+ * <p>
+ * In parallel mode, blobs of already compressed MIME types (images, audio,
+ * video, archives, Office documents) are stored without compression, and the
+ * other entries are deflated on a thread pool before being appended to the
+ * archive in order.
+ *
  * @author <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a>
  *
  */
 public class NuxeoArchiveWriter extends AbstractDocumentWriter {
 
+    private static final Log log = LogFactory.getLog(NuxeoArchiveWriter.class);
+
+    /**
+     * MIME types of already compressed data, stored as is in parallel mode.
+     *
+     * @since 7.1
+     */
+    protected static final Set<String> COMPRESSED_MIME_TYPES = new HashSet<String>(
+            Arrays.asList( //
+                    "image/jpeg", "image/png", "image/gif", "image/webp",
+                    "image/jp2", //
+                    "audio/mpeg", "audio/mp4", "audio/ogg", "audio/aac", //
+                    "application/zip", "application/gzip",
+                    "application/x-gzip", "application/x-bzip2",
+                    "application/x-xz", "application/x-7z-compressed",
+                    "application/x-rar-compressed",
+                    "application/java-archive"));
+
+    /**
+     * MIME type prefixes of already compressed data, stored as is in parallel
+     * mode.
+     *
+     * @since 7.1
+     */
+    protected static final String[] COMPRESSED_MIME_TYPE_PREFIXES = {
+            "video/", //
+            "application/vnd.openxmlformats-officedocument.",
+            "application/vnd.oasis.opendocument.", //
+            "application/vnd.sun.xml." };
+
+    /**
+     * Compressed entries larger than this are kept in a temporary file until
+     * written.
+     *
+     * @since 7.1
+     */
+    protected static final long SPOOL_THRESHOLD = 1024 * 1024;
+
+    protected static final int BUFFER_SIZE = 8192;
+
     protected ZipOutputStream out;
 
+    /**
+     * The writer used instead of {@link #out} in parallel mode.
+     *
+     * @since 7.1
+     */
+    protected PrecompressedZipWriter zipWriter;
+
+    /** @since 7.1 */
+    protected int compressionLevel;
+
+    /** @since 7.1 */
+    protected ExecutorService executor;
+
+    /**
+     * The entries being compressed, in archive order.
+     *
+     * @since 7.1
+     */
+    protected final Deque<Future<CompressedEntry>> pending = new ArrayDeque<Future<CompressedEntry>>();
+
+    /** @since 7.1 */
+    protected int maxPending;
+
     public NuxeoArchiveWriter(File destination) throws IOException {
         this(new BufferedOutputStream(new FileOutputStream(destination)),
                 Deflater.DEFAULT_COMPRESSION);
@@ -80,9 +172,46 @@ public class NuxeoArchiveWriter extends AbstractDocumentWriter {
         writeMarker();
     }
 
+    /**
+     * Creates a writer in parallel mode, using the given number of threads to
+     * compress entries.
+     *
+     * @since 7.1
+     */
+    public NuxeoArchiveWriter(File destination, int compressionLevel,
+            int threads) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(destination)),
+                compressionLevel, threads);
+    }
+
+    /**
+     * Creates a writer in parallel mode, using the given number of threads to
+     * compress entries.
+     *
+     * @since 7.1
+     */
+    public NuxeoArchiveWriter(OutputStream out, int compressionLevel,
+            int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: "
+                    + threads);
+        }
+        zipWriter = new PrecompressedZipWriter(out);
+        this.compressionLevel = compressionLevel;
+        maxPending = 4 * threads;
+        executor = Executors.newFixedThreadPool(threads,
+                new CompressorThreadFactory());
+        setComment("");
+        // write the marker entry
+        writeMarker();
+    }
+
     public void setComment(String comment) {
         if (out != null) {
             out.setComment(ExportConstants.ZIP_HEADER + "\r\n" + comment);
+        } else if (zipWriter != null) {
+            zipWriter.setComment(ExportConstants.ZIP_HEADER + "\r\n"
+                    + comment);
         }
     }
 
@@ -103,6 +232,10 @@ public class NuxeoArchiveWriter extends AbstractDocumentWriter {
 
     @Override
     public void close() {
+        if (zipWriter != null) {
+            closeParallel();
+            return;
+        }
         if (out != null) {
             try {
                 out.close();
@@ -116,6 +249,10 @@ public class NuxeoArchiveWriter extends AbstractDocumentWriter {
 
     protected void writeDocument(String path, ExportedDocument doc)
             throws IOException {
+        if (zipWriter != null) {
+            addDocumentEntries(path, doc);
+            return;
+        }
 
         if (path.equals("/") || path.length() == 0) {
             path = "";
@@ -180,7 +317,304 @@ public class NuxeoArchiveWriter extends AbstractDocumentWriter {
 
     protected void writeMarker() throws IOException {
         ZipEntry entry = new ZipEntry(ExportConstants.MARKER_FILE);
+        if (zipWriter != null) {
+            addEntry(entry, new ByteArrayBlob(new byte[0]));
+            return;
+        }
         out.putNextEntry(entry);
         out.closeEntry();
     }
+
+    /**
+     * Parallel mode equivalent of {@link #writeDocument}.
+     *
+     * @since 7.1
+     */
+    protected void addDocumentEntries(String path, ExportedDocument doc)
+            throws IOException {
+        if (path.equals("/") || path.length() == 0) {
+            path = "";
+        } else { // avoid adding a root entry
+            path += '/';
+            ZipEntry entry = new ZipEntry(path);
+            // store the number of child as an extra info on the entry
+            entry.setExtra(new DWord(doc.getFilesCount()).getBytes());
+            addEntry(entry, new ByteArrayBlob(new byte[0]));
+        }
+
+        // write metadata
+        addEntry(new ZipEntry(path + ExportConstants.DOCUMENT_FILE),
+                toXML(doc.getDocument()));
+
+        // write external documents
+        for (Map.Entry<String, Document> ext : doc.getDocuments().entrySet()) {
+            String fileName = ext.getKey() + ".xml";
+            addEntry(new ZipEntry(path + fileName), toXML(ext.getValue()));
+        }
+
+        // write blobs
+        for (Map.Entry<String, Blob> blobEntry : doc.getBlobs().entrySet()) {
+            String fileName = blobEntry.getKey();
+            addEntry(new ZipEntry(path + fileName), blobEntry.getValue());
+        }
+    }
+
+    protected static Blob toXML(Document doc) throws IOException {
+        ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        writeXML(doc, baout);
+        return new ByteArrayBlob(baout.toByteArray());
+    }
+
+    /**
+     * Schedules the compression of an entry, and writes the oldest compressed
+     * entries if too many are pending.
+     *
+     * @since 7.1
+     */
+    protected void addEntry(ZipEntry entry, Blob blob) throws IOException {
+        boolean store = blob.getLength() == 0 || isCompressed(blob);
+        pending.add(executor.submit(new EntryCompressor(entry, blob, store)));
+        writePending(maxPending);
+    }
+
+    /**
+     * Writes the oldest compressed entries, waiting for their compression,
+     * until at most {@code max} entries are pending.
+     *
+     * @since 7.1
+     */
+    protected void writePending(int max) throws IOException {
+        while (pending.size() > max) {
+            CompressedEntry compressed;
+            try {
+                compressed = pending.peek().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                pending.poll();
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new IOException(cause);
+                }
+            }
+            pending.poll();
+            try (InputStream in = compressed.getStream()) {
+                zipWriter.writeEntry(compressed.entry, in);
+            } finally {
+                compressed.dispose();
+            }
+        }
+    }
+
+    protected void closeParallel() {
+        try {
+            writePending(0);
+            zipWriter.close();
+        } catch (IOException e) {
+            log.error("Cannot write archive", e);
+        } finally {
+            discardPending();
+            executor.shutdownNow();
+            executor = null;
+            zipWriter = null;
+        }
+    }
+
+    /**
+     * Cancels the pending entries after a failure, and deletes their temporary
+     * files.
+     */
+    protected void discardPending() {
+        for (Future<CompressedEntry> future : pending) {
+            future.cancel(false);
+        }
+        for (Future<CompressedEntry> future : pending) {
+            if (future.isCancelled()) {
+                continue;
+            }
+            try {
+                future.get().dispose();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // already failed, nothing to delete
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Checks if a blob holds already compressed data, which is stored without
+     * compression in parallel mode.
+     *
+     * @since 7.1
+     */
+    protected boolean isCompressed(Blob blob) {
+        String mimeType = blob.getMimeType();
+        if (mimeType == null) {
+            return false;
+        }
+        int i = mimeType.indexOf(';');
+        if (i >= 0) {
+            mimeType = mimeType.substring(0, i);
+        }
+        mimeType = mimeType.trim().toLowerCase();
+        if (COMPRESSED_MIME_TYPES.contains(mimeType)) {
+            return true;
+        }
+        for (String prefix : COMPRESSED_MIME_TYPE_PREFIXES) {
+            if (mimeType.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An entry whose data is compressed and ready to be written.
+     *
+     * @since 7.1
+     */
+    protected static class CompressedEntry {
+
+        protected final ZipEntry entry;
+
+        /** The blob, when stored and re-readable. */
+        protected final Blob blob;
+
+        protected final byte[] bytes;
+
+        protected final File file;
+
+        protected CompressedEntry(ZipEntry entry, Blob blob, byte[] bytes,
+                File file) {
+            this.entry = entry;
+            this.blob = blob;
+            this.bytes = bytes;
+            this.file = file;
+        }
+
+        protected InputStream getStream() throws IOException {
+            if (bytes != null) {
+                return new ByteArrayInputStream(bytes);
+            } else if (file != null) {
+                return new FileInputStream(file);
+            } else {
+                return blob.getStream();
+            }
+        }
+
+        protected void dispose() {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Computes the CRC and sizes of an entry, and compresses its data unless
+     * stored.
+     *
+     * @since 7.1
+     */
+    protected class EntryCompressor implements Callable<CompressedEntry> {
+
+        protected final ZipEntry entry;
+
+        protected final Blob blob;
+
+        protected final boolean store;
+
+        protected EntryCompressor(ZipEntry entry, Blob blob, boolean store) {
+            this.entry = entry;
+            this.blob = blob;
+            this.store = store;
+        }
+
+        @Override
+        public CompressedEntry call() throws IOException {
+            entry.setMethod(store ? ZipEntry.STORED : ZipEntry.DEFLATED);
+            if (store && blob.isPersistent()) {
+                // no copy, the blob is read again when written
+                CRC32 crc = new CRC32();
+                long size = 0;
+                byte[] buf = new byte[BUFFER_SIZE];
+                try (InputStream in = blob.getStream()) {
+                    int n;
+                    while ((n = in.read(buf)) != -1) {
+                        crc.update(buf, 0, n);
+                        size += n;
+                    }
+                }
+                entry.setCrc(crc.getValue());
+                entry.setSize(size);
+                entry.setCompressedSize(size);
+                return new CompressedEntry(entry, blob, null, null);
+            }
+            long length = blob.getLength();
+            ByteArrayOutputStream baout = null;
+            File file = null;
+            OutputStream spool;
+            if (length >= 0 && length <= SPOOL_THRESHOLD) {
+                baout = new ByteArrayOutputStream((int) length);
+                spool = baout;
+            } else {
+                file = File.createTempFile("nxarchive-", ".tmp");
+                spool = new BufferedOutputStream(new FileOutputStream(file));
+            }
+            Deflater deflater = store ? null : new Deflater(compressionLevel,
+                    true);
+            boolean done = false;
+            try {
+                CRC32 crc = new CRC32();
+                long size = 0;
+                byte[] buf = new byte[BUFFER_SIZE];
+                try (InputStream in = blob.getStream();
+                        OutputStream dout = store ? spool
+                                : new DeflaterOutputStream(spool, deflater,
+                                        BUFFER_SIZE)) {
+                    int n;
+                    while ((n = in.read(buf)) != -1) {
+                        crc.update(buf, 0, n);
+                        size += n;
+                        dout.write(buf, 0, n);
+                    }
+                }
+                entry.setCrc(crc.getValue());
+                entry.setSize(size);
+                entry.setCompressedSize(file == null ? baout.size()
+                        : file.length());
+                done = true;
+                return new CompressedEntry(entry, null,
+                        file == null ? baout.toByteArray() : null, file);
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+                if (!done && file != null) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    protected static class CompressorThreadFactory implements ThreadFactory {
+
+        protected static final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Nuxeo-Archive-Compressor-"
+                    + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.io.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.dom4j.Document;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nuxeo.common.utils.Path;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.impl.DocumentLocationImpl;
+import org.nuxeo.ecm.core.api.impl.blob.ByteArrayBlob;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.ecm.core.io.DocumentWriter;
+import org.nuxeo.ecm.core.io.ExportConstants;
+import org.nuxeo.ecm.core.io.impl.plugins.NuxeoArchiveWriter;
+
+public class TestNuxeoArchiveWriter {
+
+    private static final Log log = LogFactory.getLog(TestNuxeoArchiveWriter.class);
+
+    protected static class MockExportedDocument extends ExportedDocumentImpl {
+
+        public MockExportedDocument(String id, String path) {
+            this.id = id;
+            this.path = new Path(path);
+            srcLocation = new DocumentLocationImpl("test", new IdRef(id));
+            document = DocumentFactory.getInstance().createDocument();
+            Element root = document.addElement(ExportConstants.DOCUMENT_TAG);
+            root.addAttribute(ExportConstants.ID_ATTR, id);
+            for (int i = 0; i < 50; i++) {
+                root.addElement("field" + i).setText("value of field " + i);
+            }
+        }
+    }
+
+    protected final Random random = new Random(1234);
+
+    protected File sequential;
+
+    protected File parallel;
+
+    @Before
+    public void setUp() throws Exception {
+        sequential = File.createTempFile("nxarchive-seq-", ".zip");
+        parallel = File.createTempFile("nxarchive-par-", ".zip");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sequential.delete();
+        parallel.delete();
+    }
+
+    protected byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    protected String randomText(int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sb.append("word").append(random.nextInt(2000)).append(' ');
+            if (i % 12 == 11) {
+                sb.append(".\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Mixed content: a few photos and Office documents (incompressible), text
+     * and XML (compressible), and small documents without blobs.
+     */
+    protected Map<String, MockExportedDocument> createDocuments(int count) {
+        Map<String, MockExportedDocument> docs = new HashMap<String, MockExportedDocument>();
+        for (int i = 0; i < count; i++) {
+            String id = "doc" + i;
+            MockExportedDocument doc = new MockExportedDocument(id, "folder/"
+                    + id);
+            switch (i % 4) {
+            case 0:
+                doc.putBlob("photo.blob", new ByteArrayBlob(
+                        randomBytes(500 * 1024), "image/jpeg"));
+                break;
+            case 1:
+                doc.putBlob(
+                        "report.blob",
+                        new ByteArrayBlob(randomBytes(200 * 1024),
+                                "application/vnd.openxmlformats-officedocument.wordprocessingml.document"));
+                doc.putBlob("notes.blob", new StringBlob(randomText(20000),
+                        "text/plain"));
+                break;
+            case 2:
+                doc.putBlob("data.blob", new StringBlob(randomText(50000),
+                        "text/xml"));
+                break;
+            default:
+                // metadata only
+            }
+            docs.put(id, doc);
+        }
+        return docs;
+    }
+
+    protected long write(DocumentWriter writer,
+            Map<String, MockExportedDocument> docs) throws IOException {
+        long t0 = System.nanoTime();
+        try {
+            for (MockExportedDocument doc : docs.values()) {
+                writer.write(doc);
+            }
+        } finally {
+            writer.close();
+        }
+        return (System.nanoTime() - t0) / 1000000;
+    }
+
+    protected static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    protected static Map<String, byte[]> readArchive(File file)
+            throws IOException {
+        Map<String, byte[]> entries = new HashMap<String, byte[]>();
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(file))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.put(entry.getName(), read(in));
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    public void testParallelArchive() throws Exception {
+        Map<String, MockExportedDocument> docs = createDocuments(20);
+        write(new NuxeoArchiveWriter(sequential), docs);
+        write(new NuxeoArchiveWriter(parallel, Deflater.DEFAULT_COMPRESSION,
+                4), docs);
+
+        // same entries and content as a sequential archive
+        Map<String, byte[]> expected = readArchive(sequential);
+        Map<String, byte[]> actual = readArchive(parallel);
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> es : expected.entrySet()) {
+            assertArrayEquals(es.getKey(), es.getValue(),
+                    actual.get(es.getKey()));
+        }
+
+        try (ZipFile zip = new ZipFile(parallel)) {
+            assertTrue(zip.getComment().startsWith(ExportConstants.ZIP_HEADER));
+            assertNotNull(zip.getEntry(ExportConstants.MARKER_FILE));
+            // already compressed blobs are stored
+            assertEquals(ZipEntry.STORED,
+                    zip.getEntry("folder/doc0/photo.blob").getMethod());
+            assertEquals(ZipEntry.STORED,
+                    zip.getEntry("folder/doc1/report.blob").getMethod());
+            assertEquals(ZipEntry.DEFLATED,
+                    zip.getEntry("folder/doc1/notes.blob").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry(
+                    "folder/doc2/" + ExportConstants.DOCUMENT_FILE).getMethod());
+        }
+
+        // the number of files is kept on the directory entries
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(
+                parallel))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (entry.getName().equals("folder/doc1/")) {
+                    assertEquals(docs.get("doc1").getFilesCount(), new DWord(
+                            entry.getExtra()).getInt());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testZip64EntryCount() throws Exception {
+        // more entries than fit in the end of central directory record
+        int count = 0xFFFF + 1000;
+        byte[] data = new byte[] { 'x' };
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        try (PrecompressedZipWriter writer = new PrecompressedZipWriter(
+                new BufferedOutputStream(new FileOutputStream(sequential)))) {
+            for (int i = 0; i < count; i++) {
+                ZipEntry entry = new ZipEntry("e" + i);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(data.length);
+                entry.setCompressedSize(data.length);
+                entry.setCrc(crc.getValue());
+                writer.writeEntry(entry, new ByteArrayInputStream(data));
+            }
+        }
+
+        // end record, without comment, preceded by the zip64 end locator
+        try (RandomAccessFile raf = new RandomAccessFile(sequential, "r")) {
+            long end = raf.length() - 22;
+            assertEquals(0x06054b50, readIntLE(raf, end));
+            assertEquals(0xFFFF, readShortLE(raf, end + 8));
+            assertEquals(0xFFFF, readShortLE(raf, end + 10));
+            assertEquals(0x07064b50, readIntLE(raf, end - 20));
+        }
+
+        try (ZipFile zip = new ZipFile(sequential)) {
+            assertEquals(count, zip.size());
+            ZipEntry entry = zip.getEntry("e" + (count - 1));
+            assertNotNull(entry);
+            try (InputStream in = zip.getInputStream(entry)) {
+                assertArrayEquals(data, read(in));
+            }
+        }
+    }
+
+    protected static int readShortLE(RandomAccessFile raf, long pos)
+            throws IOException {
+        raf.seek(pos);
+        return raf.read() | raf.read() << 8;
+    }
+
+    protected static int readIntLE(RandomAccessFile raf, long pos)
+            throws IOException {
+        return readShortLE(raf, pos) | readShortLE(raf, pos + 2) << 16;
+    }
+
+    @Ignore("benchmark, writes about 70 MB")
+    @Test
+    public void testBenchmarkMixedContent() throws Exception {
+        Map<String, MockExportedDocument> docs = createDocuments(200);
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        long seqTime = write(new NuxeoArchiveWriter(sequential), docs);
+        long parTime = write(new NuxeoArchiveWriter(parallel,
+                Deflater.DEFAULT_COMPRESSION, threads), docs);
+        log.info(String.format(
+                "Mixed content export of %d documents: sequential %d ms"
+                        + " (%d bytes), parallel on %d threads %d ms (%d bytes)",
+                docs.size(), seqTime, sequential.length(), threads, parTime,
+                parallel.length()));
+        // storing incompressible blobs costs a few bytes at most
+        assertTrue(parallel.length() < sequential.length() * 101 / 100);
+    }
+
+}
@@ -14,6 +14,7 @@ package org.nuxeo.ecm.core.query;
 
 import java.io.Serializable;
 import java.security.Principal;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -28,6 +29,11 @@ import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
  * filtering on facets, and applying query transformers.
  * <p>
  * You can also include a limit and offset, to get a subset of the total.
+ * <p>
+ * Instead of an offset, the ORDER BY values of the last row of the previous
+ * page can be passed as keyset values: the query then only returns rows
+ * strictly after it in the ORDER BY order, which is as cheap for deep pages as
+ * for the first one.
  *
  * @author Florent Guillaume
  */
@@ -54,6 +60,14 @@ public class QueryFilter implements Serializable {
 
     protected final long offset;
 
+    /**
+     * The ORDER BY values of the last row previously seen, for keyset
+     * pagination.
+     *
+     * @since 7.1
+     */
+    protected final Serializable[] keysetValues;
+
     /**
      * Constructs a query filter.
      * <p>
@@ -63,6 +77,26 @@ public class QueryFilter implements Serializable {
             String[] permissions, FacetFilter facetFilter,
             Collection<SQLQuery.Transformer> queryTransformers, long limit,
             long offset) {
+        this(principal, principals, permissions, facetFilter,
+                queryTransformers, limit, offset, null);
+    }
+
+    /**
+     * Constructs a query filter for keyset pagination.
+     * <p>
+     * The keyset values are the values of the ORDER BY columns of the last row
+     * previously seen, in the ORDER BY order, or {@code null} for the first
+     * page. The ORDER BY must be on non-null columns and be unique (for
+     * instance by ending with {@code ecm:uuid}) for pages to be consistent.
+     * <p>
+     * Note that the principal MUST be {@link Serializable}.
+     *
+     * @since 7.1
+     */
+    public QueryFilter(Principal principal, String[] principals,
+            String[] permissions, FacetFilter facetFilter,
+            Collection<SQLQuery.Transformer> queryTransformers, long limit,
+            long offset, Serializable[] keysetValues) {
         this.principal = principal;
         this.principals = principals;
         this.permissions = permissions;
@@ -70,6 +104,7 @@ public class QueryFilter implements Serializable {
         this.queryTransformers = queryTransformers;
         this.limit = limit;
         this.offset = offset;
+        this.keysetValues = keysetValues;
     }
 
     public static QueryFilter withoutLimitOffset(QueryFilter other) {
@@ -79,7 +114,8 @@ public class QueryFilter implements Serializable {
                 other.permissions, //
                 other.facetFilter, //
                 other.queryTransformers, //
-                0, 0);
+                0, 0, //
+                other.keysetValues);
     }
 
     public Principal getPrincipal() {
@@ -110,9 +146,19 @@ public class QueryFilter implements Serializable {
         return offset;
     }
 
+    /**
+     * Gets the keyset values, or {@code null} if not using keyset pagination.
+     *
+     * @since 7.1
+     */
+    public Serializable[] getKeysetValues() {
+        return keysetValues;
+    }
+
     @Override
     public String toString() {
-        return String.format("QueryFilter(principal=%s, limit=%d, offset=%d)",
-                principal, limit, offset);
+        return String.format(
+                "QueryFilter(principal=%s, limit=%d, offset=%d, keysetValues=%s)",
+                principal, limit, offset, Arrays.toString(keysetValues));
     }
 }
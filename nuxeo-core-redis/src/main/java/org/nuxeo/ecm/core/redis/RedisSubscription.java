@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps a Redis pub/sub subscription alive in a dedicated daemon thread.
+ * <p>
+ * Subscribing blocks until unsubscribed. When the subscription fails, it is
+ * established again after a delay that doubles on each consecutive failure,
+ * up to {@link #MAX_DELAY_MILLIS}. Redis pub/sub is at-most-once: the messages
+ * published while not subscribed are lost, which {@link #onSubscribed} and
+ * {@link #onDisconnected} let subclasses make up for.
+ * <p>
+ * The pub/sub listener must call {@link #subscribed} when its subscription is
+ * effective.
+ *
+ * @since 7.1
+ */
+public abstract class RedisSubscription implements Runnable {
+
+    private static final Log log = LogFactory.getLog(RedisSubscription.class);
+
+    public static final long INITIAL_DELAY_MILLIS = 100;
+
+    public static final long MAX_DELAY_MILLIS = 30000;
+
+    /** Maximum time to wait for the thread to finish when stopping. */
+    protected static final long JOIN_TIMEOUT_MILLIS = 5000;
+
+    protected final String name;
+
+    protected volatile boolean stopped;
+
+    protected volatile boolean subscribed;
+
+    /** Delay before the next attempt, only used by the subscription thread. */
+    protected long delay = INITIAL_DELAY_MILLIS;
+
+    /**
+     * Whether a previous subscription was lost, only used by the subscription
+     * thread.
+     */
+    protected boolean disconnected;
+
+    // @GuardedBy("this")
+    protected Thread thread;
+
+    protected RedisSubscription(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Subscribes, blocking until unsubscribed.
+     */
+    protected abstract void subscribe() throws IOException;
+
+    /**
+     * Unsubscribes, making {@link #subscribe} return.
+     */
+    protected abstract void unsubscribe();
+
+    /**
+     * Called in the subscription thread when the subscription is effective.
+     *
+     * @param resubscribed {@code true} if this follows a failed subscription,
+     *            in which case messages may have been lost
+     */
+    protected void onSubscribed(boolean resubscribed) {
+    }
+
+    /**
+     * Called in the subscription thread when the subscription failed, before
+     * waiting to subscribe again.
+     */
+    protected void onDisconnected() {
+    }
+
+    /**
+     * Starts the subscription thread.
+     */
+    public synchronized void start() {
+        if (thread != null || stopped) {
+            throw new IllegalStateException("Already started: " + name);
+        }
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Unsubscribes and waits for the subscription thread to finish.
+     */
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            stopped = true;
+            t = thread;
+            thread = null;
+        }
+        if (subscribed) {
+            try {
+                unsubscribe();
+            } catch (RuntimeException e) {
+                log.debug("Cannot unsubscribe: " + name, e);
+            }
+        }
+        if (t != null) {
+            t.interrupt(); // if waiting to subscribe again
+            try {
+                t.join(JOIN_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (t.isAlive()) {
+                log.warn("Redis subscription thread did not stop: " + name);
+            }
+        }
+    }
+
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    /**
+     * To be called by the pub/sub listener when its subscription is effective.
+     */
+    public void subscribed() {
+        boolean resubscribed = disconnected;
+        disconnected = false;
+        delay = INITIAL_DELAY_MILLIS;
+        onSubscribed(resubscribed);
+        subscribed = true;
+        if (stopped) {
+            // stopped while subscribing
+            unsubscribe();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!stopped) {
+            try {
+                subscribe(); // blocks until unsubscribed
+            } catch (IOException | RuntimeException e) {
+                if (!stopped) {
+                    log.warn("Redis subscription failed: " + name
+                            + ", subscribing again in " + delay + " ms", e);
+                }
+            }
+            subscribed = false;
+            if (stopped) {
+                break;
+            }
+            disconnected = true;
+            onDisconnected();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                // stopped, or spurious: check again
+            }
+            delay = Math.min(delay * 2, MAX_DELAY_MILLIS);
+        }
+        subscribed = false;
+    }
+
+}
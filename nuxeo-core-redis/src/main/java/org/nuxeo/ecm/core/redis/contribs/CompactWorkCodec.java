@@ -0,0 +1,273 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.nuxeo.ecm.core.work.api.Work;
+
+/**
+ * Compact {@link WorkCodec}, enabled through
+ * {@link RedisWorkQueuing#CODEC_PROP}.
+ * <p>
+ * This is Java serialization where each class descriptor, instead of the full
+ * list of serializable fields of the class and its superclasses, only holds
+ * the class id or name, its serialVersionUID and a hash of its fields. The
+ * local class must therefore have the same fields as the one used to encode,
+ * otherwise decoding fails with an {@link InvalidClassException}.
+ * <p>
+ * The classes found in most works are registered in {@link #CLASS_NAMES} and
+ * written as a one-byte id, other classes are written by name.
+ * <p>
+ * Large payloads are deflated. The encoded bytes start with a format byte,
+ * and plain Java serialization is still decoded, so that work stored by
+ * previous versions can be read.
+ *
+ * @since 7.1
+ */
+public class CompactWorkCodec implements WorkCodec {
+
+    /** Format byte for compact serialization. */
+    protected static final byte FORMAT_COMPACT = 1;
+
+    /** Format byte for deflated compact serialization. */
+    protected static final byte FORMAT_COMPACT_DEFLATED = 2;
+
+    /** First byte of the Java serialization stream magic. */
+    protected static final byte JAVA_MAGIC_0 = (byte) 0xAC;
+
+    /** Second byte of the Java serialization stream magic. */
+    protected static final byte JAVA_MAGIC_1 = (byte) 0xED;
+
+    /** Payloads larger than this are deflated. */
+    protected static final int DEFLATE_THRESHOLD = 1024;
+
+    /** Class id written before the name of an unregistered class. */
+    protected static final int CLASS_ID_NONE = 0;
+
+    /**
+     * Registered classes, written as their position in this list plus one.
+     * <p>
+     * The ids are shared by all the nodes using the queues: only append to
+     * this list, at most 255 names.
+     */
+    protected static final List<String> CLASS_NAMES = Arrays.asList(
+            "org.nuxeo.ecm.core.work.AbstractWork",
+            "org.nuxeo.ecm.core.work.api.WorkSchedulePath",
+            "org.nuxeo.ecm.core.work.SleepWork",
+            "org.nuxeo.ecm.core.event.impl.AsyncEventExecutor$ListenerWork",
+            "org.nuxeo.ecm.core.event.impl.ReconnectedEventBundleImpl",
+            "org.nuxeo.ecm.core.event.impl.EventBundleImpl",
+            "org.nuxeo.ecm.core.event.impl.EventImpl",
+            "org.nuxeo.ecm.core.event.impl.EventContextImpl",
+            "org.nuxeo.ecm.core.event.impl.DocumentEventContext",
+            "org.nuxeo.ecm.core.storage.FulltextExtractorWork",
+            "org.nuxeo.ecm.core.storage.FulltextUpdaterWork",
+            "org.nuxeo.ecm.core.storage.FulltextUpdaterWork$IndexAndText",
+            "java.util.ArrayList",
+            "java.util.LinkedList",
+            "java.util.HashMap",
+            "java.lang.Number",
+            "java.lang.Boolean",
+            "java.lang.Integer",
+            "java.lang.Long",
+            "java.lang.Enum");
+
+    protected static final Map<String, Integer> CLASS_IDS = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 0; i < CLASS_NAMES.size(); i++) {
+            CLASS_IDS.put(CLASS_NAMES.get(i), Integer.valueOf(i + 1));
+        }
+    }
+
+    @Override
+    public byte[] encode(Work work) throws IOException {
+        ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        baout.write(FORMAT_COMPACT);
+        writeObject(baout, work);
+        byte[] bytes = baout.toByteArray();
+        if (bytes.length <= DEFLATE_THRESHOLD) {
+            return bytes;
+        }
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(
+                bytes.length / 2);
+        deflated.write(FORMAT_COMPACT_DEFLATED);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (OutputStream out = new DeflaterOutputStream(deflated, deflater)) {
+            out.write(bytes, 1, bytes.length - 1);
+        } finally {
+            deflater.end();
+        }
+        return deflated.size() < bytes.length ? deflated.toByteArray() : bytes;
+    }
+
+    @Override
+    public Work decode(byte[] bytes) throws IOException,
+            ClassNotFoundException {
+        if (bytes.length == 0) {
+            throw new IOException("Empty work data");
+        }
+        if (bytes.length > 1 && bytes[0] == JAVA_MAGIC_0
+                && bytes[1] == JAVA_MAGIC_1) {
+            // stored by a previous version
+            return new JavaWorkCodec().decode(bytes);
+        }
+        InputStream in = new ByteArrayInputStream(bytes, 1, bytes.length - 1);
+        switch (bytes[0]) {
+        case FORMAT_COMPACT:
+            return readObject(in);
+        case FORMAT_COMPACT_DEFLATED:
+            try (InputStream inflated = new InflaterInputStream(in)) {
+                return readObject(inflated);
+            }
+        default:
+            throw new IOException("Unknown work data format: " + bytes[0]);
+        }
+    }
+
+    protected void writeObject(OutputStream out, Work work)
+            throws IOException {
+        ObjectOutputStream oout = new CompactObjectOutputStream(out);
+        oout.writeObject(work);
+        oout.flush();
+        oout.close();
+    }
+
+    protected Work readObject(InputStream in) throws IOException,
+            ClassNotFoundException {
+        try (ObjectInputStream oin = new CompactObjectInputStream(in)) {
+            return (Work) oin.readObject();
+        }
+    }
+
+    /**
+     * Hash of the serializable fields of a class, to detect incompatible
+     * changes.
+     */
+    protected static int fieldsHash(ObjectStreamClass desc) {
+        int h = 0;
+        for (ObjectStreamField field : desc.getFields()) {
+            h = 31 * h + field.getName().hashCode();
+            String type = field.getTypeString();
+            h = 31 * h
+                    + (type == null ? field.getTypeCode() : type.hashCode());
+        }
+        return h;
+    }
+
+    protected static Class<?> loadClass(String name)
+            throws ClassNotFoundException {
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        if (cl == null) {
+            cl = CompactWorkCodec.class.getClassLoader();
+        }
+        return Class.forName(name, false, cl);
+    }
+
+    /**
+     * Object stream writing only the id or name, serialVersionUID and fields
+     * hash of class descriptors.
+     */
+    protected static class CompactObjectOutputStream extends
+            ObjectOutputStream {
+
+        protected CompactObjectOutputStream(OutputStream out)
+                throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc)
+                throws IOException {
+            Integer id = CLASS_IDS.get(desc.getName());
+            if (id == null) {
+                writeByte(CLASS_ID_NONE);
+                writeUTF(desc.getName());
+            } else {
+                writeByte(id.intValue());
+            }
+            writeLong(desc.getSerialVersionUID());
+            writeInt(fieldsHash(desc));
+        }
+    }
+
+    /**
+     * Object stream reading class descriptors written by
+     * {@link CompactObjectOutputStream}, using the local classes.
+     */
+    protected static class CompactObjectInputStream extends ObjectInputStream {
+
+        protected CompactObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException,
+                ClassNotFoundException {
+            int id = readUnsignedByte();
+            String name;
+            if (id == CLASS_ID_NONE) {
+                name = readUTF();
+            } else if (id <= CLASS_NAMES.size()) {
+                name = CLASS_NAMES.get(id - 1);
+            } else {
+                throw new InvalidClassException("Unknown class id: " + id);
+            }
+            long suid = readLong();
+            int hash = readInt();
+            ObjectStreamClass desc = ObjectStreamClass.lookupAny(loadClass(name));
+            if (desc.getSerialVersionUID() != suid) {
+                throw new InvalidClassException(name,
+                        "serialVersionUID mismatch, stream: " + suid
+                                + ", local: " + desc.getSerialVersionUID());
+            }
+            if (fieldsHash(desc) != hash) {
+                throw new InvalidClassException(name,
+                        "fields mismatch with local class");
+            }
+            return desc;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            try {
+                return loadClass(desc.getName());
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.nuxeo.ecm.core.work.api.Work;
+
+/**
+ * {@link WorkCodec} using plain Java serialization, the default one.
+ * <p>
+ * Data encoded by the {@link CompactWorkCodec}, which other nodes of the
+ * cluster may be configured to use, is decoded too.
+ *
+ * @since 7.1
+ */
+public class JavaWorkCodec implements WorkCodec {
+
+    @Override
+    public byte[] encode(Work work) throws IOException {
+        ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baout);
+        out.writeObject(work);
+        out.flush();
+        out.close();
+        return baout.toByteArray();
+    }
+
+    @Override
+    public Work decode(byte[] bytes) throws IOException,
+            ClassNotFoundException {
+        boolean java = bytes.length > 1
+                && bytes[0] == CompactWorkCodec.JAVA_MAGIC_0
+                && bytes[1] == CompactWorkCodec.JAVA_MAGIC_1;
+        if (!java) {
+            // encoded by a node using the compact codec
+            return new CompactWorkCodec().decode(bytes);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes))) {
+            return (Work) in.readObject();
+        }
+    }
+
+}
@@ -17,8 +17,13 @@
 package org.nuxeo.ecm.core.redis.contribs;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,6 +36,11 @@ import org.nuxeo.ecm.core.work.api.Work;
  * <p>
  * It has unlimited capacity, so never blocks on {@link #put} and
  * {@link #offer} always returns {@code true}.
+ * <p>
+ * Idle pollers don't poll Redis continuously, they wait until they are woken
+ * up by {@link #wakeup} when work is scheduled in the queue (by any node, see
+ * {@link RedisWorkQueuing}), and only rescan the queue periodically as a
+ * safety net.
  *
  * @since 5.8
  */
@@ -42,6 +52,14 @@ public class RedisBlockingQueue extends NuxeoBlockingQueue {
 
     protected final RedisWorkQueuing queuing;
 
+    protected final ReentrantLock wakeupLock = new ReentrantLock();
+
+    protected final Condition wakeupCondition = wakeupLock.newCondition();
+
+    /** Number of wakeups so far, to detect the ones missed while polling. */
+    // @GuardedBy("wakeupLock")
+    protected long wakeups;
+
     public RedisBlockingQueue(String queueId, RedisWorkQueuing queuing) {
         this.queueId = queueId;
         this.queuing = queuing;
@@ -73,15 +91,98 @@ public class RedisBlockingQueue extends NuxeoBlockingQueue {
         long end = System.currentTimeMillis()
                 + TimeUnit.NANOSECONDS.toMillis(nanos);
         for (;;) {
+            long seen = getWakeups();
             Runnable r = poll();
             if (r != null) {
+                // there may be more elements, let another poller check
+                wakeupIfWaiting();
                 return r;
             }
-            if (timeUntil(end) == 0) {
+            long timeout = timeUntil(end);
+            if (timeout == 0) {
                 return null;
             }
-            // TODO replace by wakeup when an element is added
-            Thread.sleep(100);
+            awaitWakeup(seen,
+                    Math.min(timeout, queuing.getPollDelayMillis()));
+        }
+    }
+
+    @Override
+    public void setActive(boolean active) {
+        super.setActive(active);
+        wakeupAll();
+    }
+
+    /**
+     * Wakes up one poller waiting for an element to be added.
+     *
+     * @since 7.1
+     */
+    public void wakeup() {
+        wakeupLock.lock();
+        try {
+            wakeups++;
+            wakeupCondition.signal();
+        } finally {
+            wakeupLock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up all the waiting pollers.
+     *
+     * @since 7.1
+     */
+    public void wakeupAll() {
+        wakeupLock.lock();
+        try {
+            wakeups++;
+            wakeupCondition.signalAll();
+        } finally {
+            wakeupLock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up one poller if some are waiting.
+     *
+     * @since 7.1
+     */
+    protected void wakeupIfWaiting() {
+        wakeupLock.lock();
+        try {
+            if (wakeupLock.hasWaiters(wakeupCondition)) {
+                wakeups++;
+                wakeupCondition.signal();
+            }
+        } finally {
+            wakeupLock.unlock();
+        }
+    }
+
+    protected long getWakeups() {
+        wakeupLock.lock();
+        try {
+            return wakeups;
+        } finally {
+            wakeupLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a wakeup happens after the given one, or until the timeout
+     * expires.
+     */
+    protected void awaitWakeup(long seen, long millis)
+            throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        wakeupLock.lock();
+        try {
+            while (nanos > 0 && wakeups == seen) {
+                nanos = wakeupCondition.awaitNanos(nanos);
+            }
+        } finally {
+            wakeupLock.unlock();
         }
     }
 
@@ -96,6 +197,20 @@ public class RedisBlockingQueue extends NuxeoBlockingQueue {
         }
     }
 
+    @Override
+    public void putElements(Collection<Runnable> rs) {
+        List<Work> works = new ArrayList<Work>(rs.size());
+        for (Runnable r : rs) {
+            works.add(WorkHolder.getWork(r));
+        }
+        try {
+            queuing.addScheduledWork(queueId, works);
+        } catch (IOException e) {
+            log.error("Failed to add " + works.size() + " works", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public Runnable pollElement() {
         try {
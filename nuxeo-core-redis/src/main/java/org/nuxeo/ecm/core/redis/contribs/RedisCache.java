@@ -24,6 +24,11 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,6 +40,7 @@ import org.nuxeo.ecm.core.redis.RedisExecutor;
 import org.nuxeo.runtime.api.Framework;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
 
 /**
  * Cache implementation on top of Redis
@@ -140,4 +146,86 @@ public class RedisCache extends AbstractCache {
         });
     }
 
+    protected static List<String> nonNullKeys(Collection<String> keys) {
+        List<String> list = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            if (key != null) {
+                list.add(key);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public Map<String, Serializable> getAll(Collection<String> keys)
+            throws IOException {
+        final List<String> list = nonNullKeys(keys);
+        if (list.isEmpty()) {
+            return new HashMap<String, Serializable>();
+        }
+        return executor.execute(new RedisCallable<Map<String, Serializable>>() {
+
+            @Override
+            public Map<String, Serializable> call(Jedis jedis)
+                    throws Exception {
+                byte[][] bkeys = new byte[list.size()][];
+                for (int i = 0; i < bkeys.length; i++) {
+                    bkeys[i] = bytes(formatKey(list.get(i)));
+                }
+                List<byte[]> bvalues = jedis.mget(bkeys);
+                Map<String, Serializable> values = new HashMap<String, Serializable>();
+                for (int i = 0; i < bkeys.length; i++) {
+                    Serializable value = deserializeValue(bvalues.get(i));
+                    if (value != null) {
+                        values.put(list.get(i), value);
+                    }
+                }
+                return values;
+            }
+        });
+    }
+
+    @Override
+    public void putAll(final Map<String, ? extends Serializable> entries)
+            throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        executor.execute(new RedisCallable<Void>() {
+
+            @Override
+            public Void call(Jedis jedis) throws Exception {
+                // Redis set in second ttl but descriptor set as mn
+                int ttlKey = ttl * 60;
+                Pipeline pipeline = jedis.pipelined();
+                for (Map.Entry<String, ? extends Serializable> es : entries.entrySet()) {
+                    pipeline.setex(bytes(formatKey(es.getKey())), ttlKey,
+                            serializeValue(es.getValue()));
+                }
+                pipeline.sync();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void invalidateAll(Collection<String> keys) throws IOException {
+        final List<String> list = nonNullKeys(keys);
+        if (list.isEmpty()) {
+            return;
+        }
+        executor.execute(new RedisCallable<Void>() {
+
+            @Override
+            public Void call(Jedis jedis) throws Exception {
+                String[] skeys = new String[list.size()];
+                for (int i = 0; i < skeys.length; i++) {
+                    skeys[i] = formatKey(list.get(i));
+                }
+                jedis.del(skeys);
+                return null;
+            }
+        });
+    }
+
 }
@@ -0,0 +1,296 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.redis.RedisAdmin;
+import org.nuxeo.ecm.core.redis.RedisCallable;
+import org.nuxeo.ecm.core.redis.RedisExecutor;
+import org.nuxeo.ecm.core.redis.RedisSubscription;
+import org.nuxeo.ecm.core.storage.StorageException;
+import org.nuxeo.ecm.core.storage.sql.ClusterInvalidator;
+import org.nuxeo.ecm.core.storage.sql.Invalidations;
+import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
+import org.nuxeo.runtime.api.Framework;
+
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+
+/**
+ * Implementation of a {@link ClusterInvalidator} using Redis pub/sub.
+ * <p>
+ * Each cluster node publishes its invalidations on a channel per repository,
+ * and a dedicated thread subscribed to that channel accumulates the
+ * invalidations sent by the other nodes until they are received.
+ * <p>
+ * Messages published while the subscription is down are lost, so everything
+ * is invalidated once when it drops, and once again when it is established
+ * again. The subscription is retried with an increasing delay.
+ * <p>
+ * The Maven dependency on VCS is optional: this class is only loaded when
+ * configured as the cluster invalidator of a VCS repository.
+ *
+ * @since 7.1
+ */
+public class RedisClusterInvalidator implements ClusterInvalidator {
+
+    private static final Log log = LogFactory.getLog(RedisClusterInvalidator.class);
+
+    /** Maximum time to wait for the subscription at startup. */
+    protected static final long SUBSCRIBE_TIMEOUT_SECONDS = 10;
+
+    protected RedisExecutor redisExecutor;
+
+    protected String nodeId;
+
+    protected byte[] channel;
+
+    protected volatile InvalidationsSubscription subscription;
+
+    protected final CountDownLatch firstSubscribed = new CountDownLatch(1);
+
+    // @GuardedBy("this")
+    protected Invalidations pending = new Invalidations();
+
+    @Override
+    public void initialize(String nodeId,
+            RepositoryDescriptor repositoryDescriptor) throws StorageException {
+        redisExecutor = Framework.getService(RedisExecutor.class);
+        String namespace = Framework.getService(RedisAdmin.class).namespace(
+                "invalidations", repositoryDescriptor.name);
+        start(nodeId, repositoryDescriptor.name, namespace);
+    }
+
+    /**
+     * Subscribes to the channel and waits for the subscription.
+     */
+    protected void start(String nodeId, String repositoryName,
+            String namespace) throws StorageException {
+        this.nodeId = nodeId;
+        channel = bytes(namespace);
+        subscription = new InvalidationsSubscription(
+                "Nuxeo-VCS-Invalidations-" + repositoryName);
+        subscription.start();
+        // don't lose invalidations sent right after startup
+        try {
+            if (!firstSubscribed.await(SUBSCRIBE_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS)) {
+                subscription.stop();
+                throw new StorageException(
+                        "Timeout subscribing to Redis invalidations channel: "
+                                + namespace);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        InvalidationsSubscription s = subscription;
+        if (s != null) {
+            s.stop();
+            subscription = null;
+        }
+    }
+
+    @Override
+    public synchronized Invalidations receiveInvalidations() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        Invalidations invalidations = pending;
+        pending = new Invalidations();
+        return invalidations;
+    }
+
+    protected synchronized void addInvalidations(Invalidations invalidations) {
+        pending.add(invalidations);
+    }
+
+    @Override
+    public void sendInvalidations(Invalidations invalidations)
+            throws StorageException {
+        final byte[] message;
+        try {
+            message = serialize(nodeId, invalidations);
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+        try {
+            redisExecutor.execute(new RedisCallable<Void>() {
+                @Override
+                public Void call(Jedis jedis) {
+                    jedis.publish(channel, message);
+                    return null;
+                }
+            });
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Subscribes to the channel, blocking until unsubscribed.
+     */
+    protected void subscribe(final InvalidationsSubscriber subscriber)
+            throws IOException {
+        redisExecutor.execute(new RedisCallable<Void>() {
+            @Override
+            public Void call(Jedis jedis) {
+                jedis.subscribe(subscriber, channel);
+                return null;
+            }
+        });
+    }
+
+    protected void unsubscribe(InvalidationsSubscriber subscriber) {
+        subscriber.unsubscribe();
+    }
+
+    protected static byte[] bytes(String string) {
+        try {
+            return string.getBytes(RedisWorkQueuing.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static byte[] serialize(String nodeId, Invalidations invalidations)
+            throws IOException {
+        ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baout);
+        out.writeUTF(nodeId);
+        out.writeObject(invalidations);
+        out.flush();
+        out.close();
+        return baout.toByteArray();
+    }
+
+    /**
+     * Keeps the channel subscribed.
+     */
+    protected class InvalidationsSubscription extends RedisSubscription {
+
+        protected volatile InvalidationsSubscriber subscriber;
+
+        /**
+         * Whether everything was invalidated since the subscription was lost,
+         * only used by the subscription thread.
+         */
+        protected boolean invalidatedAll;
+
+        protected InvalidationsSubscription(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void subscribe() throws IOException {
+            InvalidationsSubscriber s = new InvalidationsSubscriber(this);
+            subscriber = s;
+            RedisClusterInvalidator.this.subscribe(s);
+        }
+
+        @Override
+        protected void unsubscribe() {
+            RedisClusterInvalidator.this.unsubscribe(subscriber);
+        }
+
+        @Override
+        protected void onDisconnected() {
+            if (!invalidatedAll) {
+                // invalidations from other nodes are missed until subscribed
+                // again, but don't flush the caches on each retry
+                addInvalidations(new Invalidations(true));
+                invalidatedAll = true;
+            }
+        }
+
+        @Override
+        protected void onSubscribed(boolean resubscribed) {
+            invalidatedAll = false;
+            if (resubscribed) {
+                log.warn("Redis invalidations subscription established again,"
+                        + " invalidating all");
+                addInvalidations(new Invalidations(true));
+            }
+            firstSubscribed.countDown();
+        }
+    }
+
+    /**
+     * Receives the messages published on the channel and keeps the ones sent
+     * by other nodes.
+     */
+    protected class InvalidationsSubscriber extends BinaryJedisPubSub {
+
+        protected final RedisSubscription subscription;
+
+        protected InvalidationsSubscriber(RedisSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onMessage(byte[] channel, byte[] message) {
+            try {
+                ObjectInputStream in = new ObjectInputStream(
+                        new ByteArrayInputStream(message));
+                String senderId = in.readUTF();
+                if (nodeId.equals(senderId)) {
+                    // our own invalidations
+                    return;
+                }
+                addInvalidations((Invalidations) in.readObject());
+            } catch (IOException | ClassNotFoundException e) {
+                log.error("Cannot read invalidations, invalidating all", e);
+                addInvalidations(new Invalidations(true));
+            }
+        }
+
+        @Override
+        public void onSubscribe(byte[] channel, int subscribedChannels) {
+            subscription.subscribed();
+        }
+
+        @Override
+        public void onUnsubscribe(byte[] channel, int subscribedChannels) {
+        }
+
+        @Override
+        public void onPMessage(byte[] pattern, byte[] channel, byte[] message) {
+        }
+
+        @Override
+        public void onPSubscribe(byte[] pattern, int subscribedChannels) {
+        }
+
+        @Override
+        public void onPUnsubscribe(byte[] pattern, int subscribedChannels) {
+        }
+    }
+
+}
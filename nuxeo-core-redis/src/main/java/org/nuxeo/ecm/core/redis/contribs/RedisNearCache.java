@@ -0,0 +1,392 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.cache.CacheDescriptor;
+import org.nuxeo.ecm.core.redis.RedisAdmin;
+import org.nuxeo.ecm.core.redis.RedisCallable;
+import org.nuxeo.ecm.core.redis.RedisSubscription;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Two-level cache: a bounded local in-memory cache in front of a
+ * {@link RedisCache}.
+ * <p>
+ * Each node publishes the keys it puts or invalidates on a Redis channel per
+ * cache, and a dedicated thread subscribed to that channel removes them from
+ * the local cache. While not subscribed, the local cache is not used, and it
+ * is emptied when the subscription is established again, which is retried
+ * with an increasing delay. The thread is started by {@link #start}.
+ * <p>
+ * As for the in-memory cache, the values returned by the local cache are
+ * shared and must not be modified.
+ * <p>
+ * Options:
+ * <ul>
+ * <li>{@code nearMaxSize}: maximum number of entries in the local cache
+ * (default 1000).
+ * </ul>
+ *
+ * @since 7.1
+ */
+public class RedisNearCache extends RedisCache implements Closeable {
+
+    private static final Log log = LogFactory.getLog(RedisNearCache.class);
+
+    public static final String NEAR_MAX_SIZE_OPTION = "nearMaxSize";
+
+    public static final String DEFAULT_NEAR_MAX_SIZE = "1000";
+
+    /** Message prefix for the invalidation of a key. */
+    protected static final char KEY_PREFIX = 'K';
+
+    /** Message prefix for the invalidation of several keys. */
+    protected static final char KEYS_PREFIX = 'M';
+
+    /** Separator between the keys of a multi-key invalidation. */
+    protected static final char KEYS_SEP = '\u0000';
+
+    /** Message for the invalidation of all keys. */
+    protected static final char ALL_PREFIX = 'A';
+
+    protected static final char SEP = ':';
+
+    protected final String nodeId = UUID.randomUUID().toString();
+
+    protected final String channel;
+
+    protected final Cache<String, Serializable> near;
+
+    /**
+     * Number of invalidations done, to avoid caching locally a value read from
+     * Redis while it was changed.
+     */
+    protected final AtomicLong invalidations = new AtomicLong();
+
+    protected final InvalidationsSubscription subscription;
+
+    protected final Counter nearHits;
+
+    protected final Counter nearMisses;
+
+    protected final Timer remoteTimer;
+
+    public RedisNearCache(CacheDescriptor desc) {
+        super(desc);
+        String maxSize = desc.getOptions().get(NEAR_MAX_SIZE_OPTION);
+        near = CacheBuilder.newBuilder() //
+        .expireAfterWrite(ttl, TimeUnit.MINUTES) //
+        .maximumSize(
+                Long.parseLong(maxSize == null ? DEFAULT_NEAR_MAX_SIZE
+                        : maxSize)) //
+        .<String, Serializable> build();
+        channel = Framework.getService(RedisAdmin.class).namespace(
+                "cache-invalidations", name);
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        nearHits = registry.counter(MetricRegistry.name("nuxeo", "caches",
+                name, "near", "hits"));
+        nearMisses = registry.counter(MetricRegistry.name("nuxeo", "caches",
+                name, "near", "misses"));
+        remoteTimer = registry.timer(MetricRegistry.name("nuxeo", "caches",
+                name, "remote", "get"));
+        subscription = new InvalidationsSubscription(
+                "Nuxeo-Cache-Invalidations-" + name);
+    }
+
+    @Override
+    public void start() {
+        subscription.start();
+    }
+
+    @Override
+    public void close() {
+        subscription.stop();
+    }
+
+    /**
+     * Checks if the local cache can be used.
+     */
+    protected boolean isSubscribed() {
+        return subscription.isSubscribed();
+    }
+
+    @Override
+    public Serializable get(String key) throws IOException {
+        boolean useNear = isSubscribed();
+        if (useNear) {
+            Serializable value = near.getIfPresent(key);
+            if (value != null) {
+                nearHits.inc();
+                return value;
+            }
+            nearMisses.inc();
+        }
+        long seen = invalidations.get();
+        Serializable value;
+        Timer.Context context = remoteTimer.time();
+        try {
+            value = super.get(key);
+        } finally {
+            context.stop();
+        }
+        if (useNear && value != null && invalidations.get() == seen) {
+            near.put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(String key, Serializable value) throws IOException {
+        invalidations.incrementAndGet();
+        super.put(key, value);
+        near.put(key, value);
+        publish(KEY_PREFIX + key);
+    }
+
+    @Override
+    public void invalidate(String key) throws IOException {
+        invalidations.incrementAndGet();
+        super.invalidate(key);
+        near.invalidate(key);
+        publish(KEY_PREFIX + key);
+    }
+
+    @Override
+    public void invalidateAll() throws IOException {
+        invalidations.incrementAndGet();
+        super.invalidateAll();
+        near.invalidateAll();
+        publish(String.valueOf(ALL_PREFIX));
+    }
+
+    @Override
+    public Map<String, Serializable> getAll(Collection<String> keys)
+            throws IOException {
+        boolean useNear = isSubscribed();
+        if (!useNear) {
+            return super.getAll(keys);
+        }
+        Map<String, Serializable> values = near.getAllPresent(nonNullKeys(keys));
+        List<String> missing = new ArrayList<String>();
+        for (String key : keys) {
+            if (key != null && !values.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        nearHits.inc(values.size());
+        nearMisses.inc(missing.size());
+        values = new HashMap<String, Serializable>(values);
+        if (missing.isEmpty()) {
+            return values;
+        }
+        long seen = invalidations.get();
+        Map<String, Serializable> remote;
+        Timer.Context context = remoteTimer.time();
+        try {
+            remote = super.getAll(missing);
+        } finally {
+            context.stop();
+        }
+        if (invalidations.get() == seen) {
+            near.putAll(remote);
+        }
+        values.putAll(remote);
+        return values;
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> entries)
+            throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        invalidations.incrementAndGet();
+        super.putAll(entries);
+        near.putAll(entries);
+        publish(KEYS_PREFIX + StringUtils.join(entries.keySet(), KEYS_SEP));
+    }
+
+    @Override
+    public void invalidateAll(Collection<String> keys) throws IOException {
+        List<String> list = nonNullKeys(keys);
+        if (list.isEmpty()) {
+            return;
+        }
+        invalidations.incrementAndGet();
+        super.invalidateAll(list);
+        near.invalidateAll(list);
+        publish(KEYS_PREFIX + StringUtils.join(list, KEYS_SEP));
+    }
+
+    protected void publish(String invalidation) throws IOException {
+        final String message = nodeId + SEP + invalidation;
+        executor.execute(new RedisCallable<Void>() {
+            @Override
+            public Void call(Jedis jedis) {
+                jedis.publish(channel, message);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Subscribes to the channel, blocking until unsubscribed.
+     */
+    protected void subscribe(final InvalidationsSubscriber subscriber)
+            throws IOException {
+        executor.execute(new RedisCallable<Void>() {
+            @Override
+            public Void call(Jedis jedis) {
+                jedis.subscribe(subscriber, channel);
+                return null;
+            }
+        });
+    }
+
+    protected void unsubscribe(InvalidationsSubscriber subscriber) {
+        subscriber.unsubscribe();
+    }
+
+    /**
+     * Empties the local cache, and prevents values being read from Redis from
+     * being put in it.
+     */
+    protected void invalidateNear() {
+        invalidations.incrementAndGet();
+        near.invalidateAll();
+    }
+
+    /**
+     * Keeps the channel subscribed.
+     */
+    protected class InvalidationsSubscription extends RedisSubscription {
+
+        protected volatile InvalidationsSubscriber subscriber;
+
+        protected InvalidationsSubscription(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void subscribe() throws IOException {
+            InvalidationsSubscriber s = new InvalidationsSubscriber(this);
+            subscriber = s;
+            RedisNearCache.this.subscribe(s);
+        }
+
+        @Override
+        protected void unsubscribe() {
+            RedisNearCache.this.unsubscribe(subscriber);
+        }
+
+        @Override
+        protected void onSubscribed(boolean resubscribed) {
+            // values may have changed while not subscribed
+            invalidateNear();
+        }
+
+        @Override
+        protected void onDisconnected() {
+            invalidateNear();
+        }
+    }
+
+    /**
+     * Receives the invalidations published on the channel and applies the
+     * ones sent by other nodes to the local cache.
+     */
+    protected class InvalidationsSubscriber extends JedisPubSub {
+
+        protected final RedisSubscription subscription;
+
+        protected InvalidationsSubscriber(RedisSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+            int i = message.indexOf(SEP);
+            if (i < 0 || i == message.length() - 1) {
+                log.error("Invalid cache invalidation message: " + message);
+                invalidateNear();
+                return;
+            }
+            if (message.startsWith(nodeId) && i == nodeId.length()) {
+                // our own invalidation, already done locally
+                return;
+            }
+            invalidations.incrementAndGet();
+            if (message.charAt(i + 1) == ALL_PREFIX) {
+                near.invalidateAll();
+            } else if (message.charAt(i + 1) == KEYS_PREFIX) {
+                near.invalidateAll(Arrays.asList(StringUtils.split(
+                        message.substring(i + 2), KEYS_SEP)));
+            } else {
+                near.invalidate(message.substring(i + 2));
+            }
+        }
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            subscription.subscribed();
+        }
+
+        @Override
+        public void onUnsubscribe(String channel, int subscribedChannels) {
+        }
+
+        @Override
+        public void onPMessage(String pattern, String channel, String message) {
+        }
+
+        @Override
+        public void onPSubscribe(String pattern, int subscribedChannels) {
+        }
+
+        @Override
+        public void onPUnsubscribe(String pattern, int subscribedChannels) {
+        }
+    }
+
+}
@@ -16,12 +16,7 @@
  */
 package org.nuxeo.ecm.core.redis.contribs;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -35,6 +30,7 @@ import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.redis.RedisAdmin;
 import org.nuxeo.ecm.core.redis.RedisCallable;
 import org.nuxeo.ecm.core.redis.RedisExecutor;
+import org.nuxeo.ecm.core.redis.RedisSubscription;
 import org.nuxeo.ecm.core.work.WorkManagerImpl;
 import org.nuxeo.ecm.core.work.WorkQueueDescriptorRegistry;
 import org.nuxeo.ecm.core.work.WorkQueuing;
@@ -42,11 +38,18 @@ import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.Work.State;
 import org.nuxeo.runtime.api.Framework;
 
+import redis.clients.jedis.BinaryJedisPubSub;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
 
 /**
  * Implementation of a {@link WorkQueuing} storing {@link Work} instances in
  * Redis.
+ * <p>
+ * When work is scheduled, the queue id is published on a channel to which
+ * each node subscribes, so that idle pollers of the {@link RedisBlockingQueue}
+ * are woken up immediately instead of polling Redis. If the subscription is
+ * not available, pollers fall back to frequent polling.
  *
  * @since 5.8
  */
@@ -56,6 +59,23 @@ public class RedisWorkQueuing implements WorkQueuing {
 
     protected static final String UTF_8 = "UTF-8";
 
+    /**
+     * Property holding the class name of the {@link WorkCodec} to use.
+     *
+     * @since 7.1
+     */
+    public static final String CODEC_PROP = "org.nuxeo.work.redis.codec";
+
+    /**
+     * The default {@link WorkCodec}, plain Java serialization as understood by
+     * all versions. Both codecs decode each other's data, but the
+     * {@link CompactWorkCodec} should only be enabled once no node of the
+     * cluster runs a previous version.
+     *
+     * @since 7.1
+     */
+    public static final String DEFAULT_CODEC = JavaWorkCodec.class.getName();
+
     /**
      * Global hash of Work instance id -> serialized Work instance.
      */
@@ -88,6 +108,37 @@ public class RedisWorkQueuing implements WorkQueuing {
      */
     protected static final String KEY_COMPLETED_PREFIX = "done:";
 
+    /**
+     * Channel on which the ids of the queues having new scheduled work are
+     * published.
+     *
+     * @since 7.1
+     */
+    protected static final String CHANNEL_SCHEDULED = "scheduled";
+
+    /**
+     * Delay between rescans of a queue by idle pollers when subscribed to the
+     * scheduled channel, in case a notification was missed.
+     *
+     * @since 7.1
+     */
+    protected static final long RESCAN_DELAY_MILLIS = 10000;
+
+    /**
+     * Delay between polls of a queue by idle pollers when not subscribed to
+     * the scheduled channel.
+     *
+     * @since 7.1
+     */
+    protected static final long POLL_DELAY_MILLIS = 100;
+
+    /**
+     * Maximum number of work instances added to Redis in one command.
+     *
+     * @since 7.1
+     */
+    protected static final int SCHEDULE_BATCH_SIZE = 1000;
+
     protected static final byte STATE_SCHEDULED_B = 'Q';
 
     protected static final byte STATE_CANCELED_B = 'X';
@@ -113,6 +164,10 @@ public class RedisWorkQueuing implements WorkQueuing {
 
     protected String redisNamespace;
 
+    protected WorkCodec codec;
+
+    protected volatile ScheduledSubscription subscription;
+
     public RedisWorkQueuing(WorkManagerImpl mgr,
             WorkQueueDescriptorRegistry workQueueDescriptors) {
         this.mgr = mgr;
@@ -122,6 +177,8 @@ public class RedisWorkQueuing implements WorkQueuing {
     public void init() {
         redisExecutor = Framework.getLocalService(RedisExecutor.class);
         redisNamespace = Framework.getService(RedisAdmin.class).namespace("work");
+        codec = newCodec();
+        startSubscriber();
         try {
             for (String queueId : getSuspendedQueueIds()) {
                 int n = scheduleSuspendedWork(queueId);
@@ -133,8 +190,127 @@ public class RedisWorkQueuing implements WorkQueuing {
         }
     }
 
+    /**
+     * Instantiates the configured {@link WorkCodec}.
+     *
+     * @since 7.1
+     */
+    protected WorkCodec newCodec() {
+        String className = Framework.getProperty(CODEC_PROP, DEFAULT_CODEC);
+        try {
+            Class<?> klass = Class.forName(className);
+            return (WorkCodec) klass.newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new RuntimeException("Cannot instantiate work codec: "
+                    + className, e);
+        }
+    }
+
+    /**
+     * Starts the thread listening to the scheduled work notifications, unless
+     * already started.
+     *
+     * @since 7.1
+     */
+    protected synchronized void startSubscriber() {
+        if (subscription != null) {
+            return;
+        }
+        subscription = new ScheduledSubscription();
+        subscription.start();
+    }
+
+    /**
+     * Stops the thread listening to the scheduled work notifications.
+     *
+     * @since 7.1
+     */
+    @Override
+    public void shutdown() {
+        ScheduledSubscription s;
+        synchronized (this) {
+            s = subscription;
+            subscription = null;
+        }
+        if (s != null) {
+            s.stop();
+        }
+    }
+
+    /**
+     * Subscribes to the scheduled work notifications, blocking until
+     * unsubscribed.
+     *
+     * @since 7.1
+     */
+    protected void subscribeScheduled(final ScheduledSubscriber subscriber)
+            throws IOException {
+        redisExecutor.execute(new RedisCallable<Void>() {
+            @Override
+            public Void call(Jedis jedis) {
+                jedis.subscribe(subscriber, scheduledChannel());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @since 7.1
+     */
+    protected void unsubscribeScheduled(ScheduledSubscriber subscriber) {
+        subscriber.unsubscribe();
+    }
+
+    /**
+     * Checks if the scheduled work notifications are currently received.
+     *
+     * @since 7.1
+     */
+    protected boolean isSubscribed() {
+        ScheduledSubscription s = subscription;
+        return s != null && s.isSubscribed();
+    }
+
+    /**
+     * Gets the maximum delay during which an idle poller waits for a wakeup
+     * before polling its queue again.
+     *
+     * @since 7.1
+     */
+    protected long getPollDelayMillis() {
+        return isSubscribed() ? RESCAN_DELAY_MILLIS : POLL_DELAY_MILLIS;
+    }
+
+    /**
+     * Wakes up a local poller of the given queue.
+     *
+     * @since 7.1
+     */
+    protected void wakeup(String queueId) {
+        BlockingQueue<Runnable> queue;
+        synchronized (this) {
+            queue = allScheduled.get(queueId);
+        }
+        if (queue instanceof RedisBlockingQueue) {
+            ((RedisBlockingQueue) queue).wakeup();
+        }
+    }
+
+    protected void wakeupAll() {
+        List<BlockingQueue<Runnable>> queues;
+        synchronized (this) {
+            queues = new ArrayList<BlockingQueue<Runnable>>(
+                    allScheduled.values());
+        }
+        for (BlockingQueue<Runnable> queue : queues) {
+            if (queue instanceof RedisBlockingQueue) {
+                ((RedisBlockingQueue) queue).wakeupAll();
+            }
+        }
+    }
+
     @Override
-    public BlockingQueue<Runnable> initScheduleQueue(String queueId) {
+    public synchronized BlockingQueue<Runnable> initScheduleQueue(String queueId) {
         if (allScheduled.containsKey(queueId)) {
             throw new IllegalStateException(queueId + " is already configured");
         }
@@ -144,7 +320,8 @@ public class RedisWorkQueuing implements WorkQueuing {
     }
 
     @Override
-    public BlockingQueue<Runnable> getScheduledQueue(String queueId) {
+    public synchronized BlockingQueue<Runnable> getScheduledQueue(
+            String queueId) {
         if (!allScheduled.containsKey(queueId)) {
             throw new IllegalStateException(queueId + " was not configured yet");
         }
@@ -402,6 +579,10 @@ public class RedisWorkQueuing implements WorkQueuing {
         return keyBytes(KEY_COMPLETED_PREFIX, queueId);
     }
 
+    protected byte[] scheduledChannel() {
+        return keyBytes(CHANNEL_SCHEDULED);
+    }
+
     protected byte[] stateKey() {
         return keyBytes(KEY_STATE);
     }
@@ -411,21 +592,15 @@ public class RedisWorkQueuing implements WorkQueuing {
     }
 
     protected byte[] serializeWork(Work work) throws IOException {
-        ByteArrayOutputStream baout = new ByteArrayOutputStream();
-        ObjectOutputStream out = new ObjectOutputStream(baout);
-        out.writeObject(work);
-        out.flush();
-        out.close();
-        return baout.toByteArray();
+        return codec.encode(work);
     }
 
     protected Work deserializeWork(byte[] workBytes) {
         if (workBytes == null) {
             return null;
         }
-        InputStream bain = new ByteArrayInputStream(workBytes);
-        try (ObjectInputStream in = new ObjectInputStream(bain)) {
-            return (Work) in.readObject();
+        try {
+            return codec.decode(workBytes);
         } catch (RuntimeException cause) {
             throw cause;
         } catch (Exception cause) {
@@ -490,10 +665,80 @@ public class RedisWorkQueuing implements WorkQueuing {
                 jedis.hset(dataKey(), workIdBytes, workBytes);
                 jedis.hset(stateKey(), workIdBytes, STATE_SCHEDULED);
                 jedis.lpush(scheduledKey(queueId), workIdBytes);
+                publishScheduled(jedis, queueId);
                 return null;
             }
 
         });
+        notifyScheduled(queueId);
+    }
+
+    /**
+     * Persists several work instances and adds them to the scheduled queue.
+     * <p>
+     * The work instances are added in batches using multi-valued commands,
+     * which is much faster than adding them one by one.
+     *
+     * @param queueId the queue id
+     * @param works the work instances
+     * @since 7.1
+     */
+    public void addScheduledWork(final String queueId, List<Work> works)
+            throws IOException {
+        for (int start = 0; start < works.size(); start += SCHEDULE_BATCH_SIZE) {
+            List<Work> batch = works.subList(start,
+                    Math.min(start + SCHEDULE_BATCH_SIZE, works.size()));
+            final Map<byte[], byte[]> data = new HashMap<byte[], byte[]>();
+            final Map<byte[], byte[]> states = new HashMap<byte[], byte[]>();
+            final byte[][] workIds = new byte[batch.size()][];
+            for (int i = 0; i < workIds.length; i++) {
+                Work work = batch.get(i);
+                log.debug("Add scheduled " + work);
+                workIds[i] = bytes(work.getId());
+                data.put(workIds[i], serializeWork(work));
+                states.put(workIds[i], STATE_SCHEDULED);
+            }
+            redisExecutor.execute(new RedisCallable<Void>() {
+
+                @Override
+                public Void call(Jedis jedis) {
+                    jedis.hmset(dataKey(), data);
+                    jedis.hmset(stateKey(), states);
+                    jedis.lpush(scheduledKey(queueId), workIds);
+                    publishScheduled(jedis, queueId);
+                    return null;
+                }
+
+            });
+            notifyScheduled(queueId);
+        }
+    }
+
+    /**
+     * Notifies all nodes that work was scheduled in the given queue.
+     * <p>
+     * This is only a hint for idle pollers, so failures are not fatal.
+     *
+     * @since 7.1
+     */
+    protected void publishScheduled(Jedis jedis, String queueId) {
+        try {
+            jedis.publish(scheduledChannel(), bytes(queueId));
+        } catch (JedisException e) {
+            log.warn("Cannot publish scheduled work notification for queue: "
+                    + queueId, e);
+        }
+    }
+
+    /**
+     * Wakes up a local poller if the published notification won't do it.
+     *
+     * @since 7.1
+     */
+    protected void notifyScheduled(String queueId) {
+        if (!isSubscribed()) {
+            wakeup(queueId);
+        }
     }
 
     /**
@@ -574,6 +819,9 @@ public class RedisWorkQueuing implements WorkQueuing {
                     byte[] workIdBytes = jedis.rpoplpush(suspendedKey(queueId),
                             scheduledKey(queueId));
                     if (workIdBytes == null) {
+                        if (n > 0) {
+                            publishScheduled(jedis, queueId);
+                        }
                         return Integer.valueOf(n);
                     }
                 }
@@ -898,4 +1146,87 @@ public class RedisWorkQueuing implements WorkQueuing {
         });
     }
 
+    /**
+     * Keeps the scheduled work notifications subscribed. While not subscribed,
+     * idle pollers fall back to polling their queue every
+     * {@link #POLL_DELAY_MILLIS}.
+     *
+     * @since 7.1
+     */
+    protected class ScheduledSubscription extends RedisSubscription {
+
+        protected volatile ScheduledSubscriber subscriber;
+
+        protected ScheduledSubscription() {
+            super("Nuxeo-Work-Notifications");
+        }
+
+        @Override
+        protected void subscribe() throws IOException {
+            ScheduledSubscriber s = new ScheduledSubscriber(this);
+            subscriber = s;
+            subscribeScheduled(s);
+        }
+
+        @Override
+        protected void unsubscribe() {
+            unsubscribeScheduled(subscriber);
+        }
+
+        @Override
+        protected void onSubscribed(boolean resubscribed) {
+            if (resubscribed) {
+                // notifications may have been missed
+                wakeupAll();
+            }
+        }
+
+        @Override
+        protected void onDisconnected() {
+            // switch idle pollers to polling
+            wakeupAll();
+        }
+    }
+
+    /**
+     * Receives the scheduled work notifications and wakes up the local
+     * pollers of the corresponding queues.
+     *
+     * @since 7.1
+     */
+    protected class ScheduledSubscriber extends BinaryJedisPubSub {
+
+        protected final RedisSubscription subscription;
+
+        protected ScheduledSubscriber(RedisSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onMessage(byte[] channel, byte[] message) {
+            wakeup(string(message));
+        }
+
+        @Override
+        public void onSubscribe(byte[] channel, int subscribedChannels) {
+            subscription.subscribed();
+        }
+
+        @Override
+        public void onUnsubscribe(byte[] channel, int subscribedChannels) {
+        }
+
+        @Override
+        public void onPMessage(byte[] pattern, byte[] channel, byte[] message) {
+        }
+
+        @Override
+        public void onPSubscribe(byte[] pattern, int subscribedChannels) {
+        }
+
+        @Override
+        public void onPUnsubscribe(byte[] pattern, int subscribedChannels) {
+        }
+    }
+
 }
@@ -0,0 +1,42 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.io.IOException;
+
+import org.nuxeo.ecm.core.work.api.Work;
+
+/**
+ * Encodes and decodes {@link Work} instances stored in Redis.
+ * <p>
+ * Implementations must have a public no-arg constructor and be thread-safe.
+ *
+ * @since 7.1
+ */
+public interface WorkCodec {
+
+    /**
+     * Encodes a work instance.
+     */
+    byte[] encode(Work work) throws IOException;
+
+    /**
+     * Decodes a work instance.
+     */
+    Work decode(byte[] bytes) throws IOException, ClassNotFoundException;
+
+}
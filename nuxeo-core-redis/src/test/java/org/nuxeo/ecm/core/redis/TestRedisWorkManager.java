@@ -16,8 +16,26 @@
  */
 package org.nuxeo.ecm.core.redis;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.redis.contribs.RedisWorkQueuing;
+import org.nuxeo.ecm.core.work.SleepWork;
+import org.nuxeo.ecm.core.work.WorkHolder;
+import org.nuxeo.ecm.core.work.WorkManagerImpl;
 import org.nuxeo.ecm.core.work.WorkManagerTest;
 
+import redis.clients.jedis.Jedis;
+
 /**
  * Test of the WorkManager using Redis. Does not run if no Redis is configured
  * through the properties of {@link RedisFeature}.
@@ -37,4 +55,122 @@ public class TestRedisWorkManager extends WorkManagerTest {
         RedisFeature.setup(this);
     }
 
+    /**
+     * Queuing delivering the scheduled work notifications directly to its
+     * subscriber, as the embedded Redis has no pub/sub.
+     */
+    protected static class PubSubWorkQueuing extends RedisWorkQueuing {
+
+        protected final Semaphore unsubscribed = new Semaphore(0);
+
+        protected volatile ScheduledSubscriber current;
+
+        protected volatile Thread subscriberThread;
+
+        public PubSubWorkQueuing(WorkManagerImpl mgr) {
+            super(mgr, null);
+        }
+
+        @Override
+        protected void subscribeScheduled(ScheduledSubscriber subscriber)
+                throws IOException {
+            subscriberThread = Thread.currentThread();
+            current = subscriber;
+            subscriber.onSubscribe(scheduledChannel(), 1);
+            try {
+                unsubscribed.acquire();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        protected void unsubscribeScheduled(ScheduledSubscriber subscriber) {
+            current = null;
+            unsubscribed.release();
+        }
+
+        @Override
+        protected void publishScheduled(Jedis jedis, String queueId) {
+            ScheduledSubscriber s = current;
+            if (s != null) {
+                s.onMessage(scheduledChannel(), bytes(queueId));
+            }
+        }
+
+        public boolean subscribed() {
+            return isSubscribed();
+        }
+
+        public long pollDelayMillis() {
+            return getPollDelayMillis();
+        }
+
+        public void waitForSubscribed() throws InterruptedException {
+            for (int i = 0; i < 1000 && !isSubscribed(); i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(isSubscribed());
+        }
+    }
+
+    @Test
+    public void testScheduledNotificationWakesUpPoller() throws Exception {
+        PubSubWorkQueuing queuing = new PubSubWorkQueuing(
+                (WorkManagerImpl) service);
+        queuing.init();
+        try {
+            queuing.waitForSubscribed();
+            // idle pollers only rely on notifications
+            assertTrue(queuing.pollDelayMillis() > 5000);
+
+            final BlockingQueue<Runnable> queue = queuing.initScheduleQueue("pubsubtest");
+            final AtomicReference<Runnable> polled = new AtomicReference<Runnable>();
+            Thread poller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        polled.set(queue.poll(30, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            poller.start();
+            Thread.sleep(200); // let the poller become idle
+
+            queuing.addScheduledWork("pubsubtest", new SleepWork(0, false,
+                    "pubsubwork"));
+            poller.join(5000);
+            assertFalse("Work not picked up", poller.isAlive());
+            assertNotNull(polled.get());
+            assertEquals("pubsubwork",
+                    WorkHolder.getWork(polled.get()).getId());
+        } finally {
+            queuing.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownReleasesSubscriber() throws Exception {
+        PubSubWorkQueuing queuing = new PubSubWorkQueuing(
+                (WorkManagerImpl) service);
+        queuing.init();
+        queuing.waitForSubscribed();
+        Thread thread = queuing.subscriberThread;
+        assertNotNull(thread);
+
+        queuing.shutdown();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        assertFalse(queuing.subscribed());
+
+        // can be started again
+        queuing.init();
+        queuing.waitForSubscribed();
+        assertTrue(queuing.subscriberThread != thread);
+        queuing.shutdown();
+        assertFalse(queuing.subscribed());
+    }
+
 }
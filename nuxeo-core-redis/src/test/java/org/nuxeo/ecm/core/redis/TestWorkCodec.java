@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.redis.contribs.CompactWorkCodec;
+import org.nuxeo.ecm.core.redis.contribs.JavaWorkCodec;
+import org.nuxeo.ecm.core.work.SleepWork;
+import org.nuxeo.ecm.core.work.api.Work;
+
+public class TestWorkCodec {
+
+    protected static class ListWork extends SleepWork {
+
+        private static final long serialVersionUID = 1L;
+
+        protected List<String> values = new ArrayList<String>();
+
+        public ListWork(String id) {
+            super(0, false, id);
+        }
+    }
+
+    @Test
+    public void testCompactIsSmaller() throws Exception {
+        Work work = new SleepWork(1234, false, "myid");
+        byte[] java = new JavaWorkCodec().encode(work);
+        byte[] compact = new CompactWorkCodec().encode(work);
+        assertTrue(compact.length + " >= " + java.length,
+                compact.length < java.length);
+
+        Work decoded = new CompactWorkCodec().decode(compact);
+        assertEquals("myid", decoded.getId());
+        assertEquals("SleepWork", decoded.getCategory());
+    }
+
+    protected static class UnregisteredWork extends SleepWork {
+
+        private static final long serialVersionUID = 1L;
+
+        public UnregisteredWork(String id) {
+            super(0, false, id);
+        }
+    }
+
+    @Test
+    public void testUnregisteredClassWrittenByName() throws Exception {
+        Work registered = new SleepWork(0, false, "myid");
+        Work unregistered = new UnregisteredWork("myid");
+        byte[] compact = new CompactWorkCodec().encode(registered);
+        byte[] compactByName = new CompactWorkCodec().encode(unregistered);
+        // the registered classes are written as ids
+        String name = UnregisteredWork.class.getName();
+        assertTrue(compactByName.length + " < " + compact.length + " + "
+                + name.length(),
+                compactByName.length >= compact.length + name.length());
+
+        Work decoded = new CompactWorkCodec().decode(compactByName);
+        assertEquals(UnregisteredWork.class, decoded.getClass());
+        assertEquals("myid", decoded.getId());
+    }
+
+    @Test
+    public void testDecodeJavaSerialization() throws Exception {
+        byte[] java = new JavaWorkCodec().encode(new SleepWork(1, false,
+                "myid"));
+        Work decoded = new CompactWorkCodec().decode(java);
+        assertEquals("myid", decoded.getId());
+    }
+
+    @Test
+    public void testDecodeCompactWithDefault() throws Exception {
+        byte[] compact = new CompactWorkCodec().encode(new SleepWork(1,
+                false, "myid"));
+        Work decoded = new JavaWorkCodec().decode(compact);
+        assertEquals("myid", decoded.getId());
+    }
+
+    @Test
+    public void testLargeWorkDeflated() throws Exception {
+        ListWork work = new ListWork("myid");
+        for (int i = 0; i < 1000; i++) {
+            work.values.add("value" + i);
+        }
+        byte[] java = new JavaWorkCodec().encode(work);
+        byte[] compact = new CompactWorkCodec().encode(work);
+        assertTrue(compact.length + " >= " + java.length / 2,
+                compact.length < java.length / 2);
+
+        ListWork decoded = (ListWork) new CompactWorkCodec().decode(compact);
+        assertEquals("myid", decoded.getId());
+        assertEquals(work.values, decoded.values);
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.Invalidations;
+import org.nuxeo.ecm.core.storage.sql.RowId;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Checks the behavior of the Redis invalidator when the subscription is lost,
+ * with a simulated Redis connection.
+ */
+public class TestRedisClusterInvalidator {
+
+    protected static final long TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Invalidator whose subscription succeeds or fails on demand.
+     */
+    protected static class FlakyInvalidator extends RedisClusterInvalidator {
+
+        /** Outcome of the next subscription attempts. */
+        protected final BlockingQueue<Boolean> attempts = new LinkedBlockingQueue<Boolean>();
+
+        protected final Semaphore connectionEnd = new Semaphore(0);
+
+        protected volatile boolean unsubscribed;
+
+        protected volatile InvalidationsSubscriber current;
+
+        protected volatile Thread thread;
+
+        @Override
+        protected void subscribe(InvalidationsSubscriber subscriber)
+                throws IOException {
+            thread = Thread.currentThread();
+            try {
+                if (!attempts.take().booleanValue()) {
+                    throw new JedisConnectionException("Connection refused");
+                }
+                current = subscriber;
+                subscriber.onSubscribe(channel, 1);
+                connectionEnd.acquire();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (!unsubscribed) {
+                throw new JedisConnectionException("Connection lost");
+            }
+        }
+
+        @Override
+        protected void unsubscribe(InvalidationsSubscriber subscriber) {
+            unsubscribed = true;
+            connectionEnd.release();
+        }
+
+        protected void dropConnection() {
+            connectionEnd.release();
+        }
+
+        protected void receiveFromOtherNode(Invalidations invalidations)
+                throws IOException {
+            current.onMessage(channel, serialize("othernode", invalidations));
+        }
+    }
+
+    protected FlakyInvalidator invalidator;
+
+    @Before
+    public void setUp() throws Exception {
+        invalidator = new FlakyInvalidator();
+        invalidator.attempts.add(Boolean.TRUE);
+        invalidator.start("mynode", "test", "test:invalidations");
+        waitForSubscribed(true);
+    }
+
+    @After
+    public void tearDown() {
+        invalidator.close();
+    }
+
+    protected void waitForSubscribed(boolean expected) throws Exception {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (invalidator.subscription.isSubscribed() != expected) {
+            if (System.currentTimeMillis() > end) {
+                throw new AssertionError("Timeout waiting for subscribed="
+                        + expected);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    protected Invalidations waitForInvalidations() throws Exception {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        Invalidations invalidations;
+        while ((invalidations = invalidator.receiveInvalidations()) == null) {
+            if (System.currentTimeMillis() > end) {
+                throw new AssertionError("Timeout waiting for invalidations");
+            }
+            Thread.sleep(10);
+        }
+        return invalidations;
+    }
+
+    protected static Invalidations modified(String id) {
+        Invalidations invalidations = new Invalidations();
+        invalidations.addModified(new RowId("hierarchy", id));
+        return invalidations;
+    }
+
+    @Test
+    public void testReceive() throws Exception {
+        assertNull(invalidator.receiveInvalidations());
+        invalidator.receiveFromOtherNode(modified("id1"));
+        Invalidations invalidations = invalidator.receiveInvalidations();
+        assertNotNull(invalidations);
+        assertFalse(invalidations.all);
+        assertEquals(1, invalidations.modified.size());
+        assertNull(invalidator.receiveInvalidations());
+    }
+
+    @Test
+    public void testInvalidateAllWhileDisconnected() throws Exception {
+        invalidator.receiveFromOtherNode(modified("id1"));
+        invalidator.attempts.add(Boolean.FALSE);
+        invalidator.dropConnection();
+        waitForSubscribed(false);
+
+        // everything is invalidated once when the subscription drops
+        Invalidations invalidations = waitForInvalidations();
+        assertTrue(invalidations.all);
+        // not again while retrying
+        invalidator.attempts.add(Boolean.FALSE);
+        Thread.sleep(500); // after the second failed attempt
+        assertNull(invalidator.receiveInvalidations());
+
+        // subscribe again after failed attempts
+        invalidator.attempts.add(Boolean.TRUE);
+        waitForSubscribed(true);
+
+        // messages published during the gap are lost, invalidate all once
+        invalidations = invalidator.receiveInvalidations();
+        assertNotNull(invalidations);
+        assertTrue(invalidations.all);
+        assertNull(invalidator.receiveInvalidations());
+
+        // back to normal
+        invalidator.receiveFromOtherNode(modified("id2"));
+        invalidations = invalidator.receiveInvalidations();
+        assertNotNull(invalidations);
+        assertFalse(invalidations.all);
+        assertEquals(1, invalidations.modified.size());
+    }
+
+    @Test
+    public void testCloseStopsSubscription() throws Exception {
+        Thread thread = invalidator.thread;
+        assertNotNull(thread);
+        invalidator.close();
+        thread.join(TIMEOUT_MILLIS);
+        assertFalse(thread.isAlive());
+        assertTrue(invalidator.unsubscribed);
+    }
+
+    @Test
+    public void testCloseWhileDisconnected() throws Exception {
+        invalidator.dropConnection();
+        waitForSubscribed(false);
+        Thread thread = invalidator.thread;
+        invalidator.close();
+        thread.join(TIMEOUT_MILLIS);
+        assertFalse(thread.isAlive());
+    }
+
+}
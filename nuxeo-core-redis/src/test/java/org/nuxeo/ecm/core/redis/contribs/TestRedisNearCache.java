@@ -0,0 +1,225 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.cache.CacheDescriptor;
+import org.nuxeo.ecm.core.redis.RedisFeature;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Checks the local tier of the Redis near cache with two simulated nodes, as
+ * the embedded Redis has no pub/sub.
+ */
+@RunWith(FeaturesRunner.class)
+@Features(RedisFeature.class)
+public class TestRedisNearCache {
+
+    protected static final long TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Near cache whose invalidations are delivered directly to the other
+     * caches of the same list, and whose subscription can be dropped.
+     */
+    protected static class LoopbackNearCache extends RedisNearCache {
+
+        protected final List<LoopbackNearCache> nodes;
+
+        /** Outcome of the next subscription attempts, after the first one. */
+        protected final BlockingQueue<Boolean> attempts = new LinkedBlockingQueue<Boolean>();
+
+        protected final Semaphore connectionEnd = new Semaphore(0);
+
+        protected volatile boolean first = true;
+
+        protected volatile boolean unsubscribed;
+
+        protected volatile InvalidationsSubscriber current;
+
+        public LoopbackNearCache(CacheDescriptor desc,
+                List<LoopbackNearCache> nodes) {
+            super(desc);
+            this.nodes = nodes;
+            nodes.add(this);
+        }
+
+        @Override
+        protected void subscribe(InvalidationsSubscriber subscriber)
+                throws IOException {
+            try {
+                if (!first && !attempts.take().booleanValue()) {
+                    throw new JedisConnectionException("Connection refused");
+                }
+                first = false;
+                current = subscriber;
+                subscriber.onSubscribe(channel, 1);
+                connectionEnd.acquire();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                current = null;
+            }
+            if (!unsubscribed) {
+                throw new JedisConnectionException("Connection lost");
+            }
+        }
+
+        @Override
+        protected void unsubscribe(InvalidationsSubscriber subscriber) {
+            unsubscribed = true;
+            connectionEnd.release();
+        }
+
+        @Override
+        protected void publish(String invalidation) {
+            String message = nodeId + SEP + invalidation;
+            for (LoopbackNearCache node : nodes) {
+                InvalidationsSubscriber s = node.current;
+                if (s != null) {
+                    s.onMessage(channel, message);
+                }
+            }
+        }
+
+        protected void dropConnection() {
+            connectionEnd.release();
+        }
+
+        protected void waitForSubscribed(boolean expected)
+                throws InterruptedException {
+            long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (isSubscribed() != expected) {
+                if (System.currentTimeMillis() > end) {
+                    throw new AssertionError(
+                            "Timeout waiting for subscribed=" + expected);
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    protected final List<LoopbackNearCache> nodes = new CopyOnWriteArrayList<LoopbackNearCache>();
+
+    protected CacheDescriptor desc;
+
+    protected LoopbackNearCache cache1;
+
+    protected LoopbackNearCache cache2;
+
+    /** Writes directly to Redis, without any invalidation. */
+    protected RedisCache remote;
+
+    @Before
+    public void setUp() throws Exception {
+        desc = new CacheDescriptor();
+        desc.name = "neartest";
+        cache1 = new LoopbackNearCache(desc, nodes);
+        cache2 = new LoopbackNearCache(desc, nodes);
+        remote = new RedisCache(desc);
+        cache1.start();
+        cache2.start();
+        cache1.waitForSubscribed(true);
+        cache2.waitForSubscribed(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache1.close();
+        cache2.close();
+        remote.invalidateAll();
+    }
+
+    @Test
+    public void testReadServedFromNear() throws Exception {
+        cache1.put("near1", "foo");
+        remote.put("near1", "bar");
+        // not read from Redis
+        assertEquals("foo", cache1.get("near1"));
+        // first read on the other node caches the value
+        assertEquals("bar", cache2.get("near1"));
+        remote.put("near1", "gee");
+        assertEquals("bar", cache2.get("near1"));
+    }
+
+    @Test
+    public void testOtherNodeEvictsNear() throws Exception {
+        cache1.put("near2", "foo");
+        assertEquals("foo", cache2.get("near2")); // now in cache2 near tier
+
+        cache1.put("near2", "bar");
+        assertEquals("bar", cache2.get("near2"));
+
+        cache1.invalidate("near2");
+        assertNull(cache2.get("near2"));
+
+        cache2.put("near2", "gee");
+        assertEquals("gee", cache1.get("near2"));
+        cache2.invalidateAll();
+        assertNull(cache1.get("near2"));
+    }
+
+    @Test
+    public void testNoNearWhileUnsubscribed() throws Exception {
+        cache1.put("near3", "foo");
+        cache1.dropConnection();
+        cache1.waitForSubscribed(false);
+
+        // changes not seen through pub/sub are read from Redis
+        remote.put("near3", "bar");
+        assertEquals("bar", cache1.get("near3"));
+        remote.put("near3", "gee");
+        assertEquals("gee", cache1.get("near3"));
+
+        // a failed attempt, then subscribed again
+        cache1.attempts.add(Boolean.FALSE);
+        cache1.attempts.add(Boolean.TRUE);
+        cache1.waitForSubscribed(true);
+        assertEquals("gee", cache1.get("near3"));
+        remote.put("near3", "moo");
+        // near tier used again
+        assertEquals("gee", cache1.get("near3"));
+    }
+
+    @Test
+    public void testCloseStopsSubscription() throws Exception {
+        cache1.close();
+        assertFalse(cache1.isSubscribed());
+        assertTrue(cache1.unsubscribed);
+        // still usable, through Redis only
+        cache1.put("near4", "foo");
+        assertEquals("foo", cache1.get("near4"));
+    }
+
+}
@@ -13,10 +13,25 @@
 
 package org.nuxeo.ecm.core.schema;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -33,7 +48,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.nuxeo.common.utils.FileUtils;
 import org.nuxeo.ecm.core.schema.types.AnyType;
 import org.nuxeo.ecm.core.schema.types.CompositeType;
 import org.nuxeo.ecm.core.schema.types.CompositeTypeImpl;
@@ -115,6 +129,45 @@ public class SchemaManagerImpl implements SchemaManager {
 
     public static final String SCHEMAS_DIR_NAME = "schemas";
 
+    /**
+     * Framework property to disable the snapshot of the loaded schemas, which
+     * is enabled by default.
+     *
+     * @since 7.1
+     */
+    public static final String SNAPSHOT_ENABLED_PROP = "org.nuxeo.ecm.core.schema.snapshot.enabled";
+
+    /**
+     * Name of the file, in the schemas directory, holding the snapshot of the
+     * loaded schemas.
+     *
+     * @since 7.1
+     */
+    public static final String SNAPSHOT_FILE_NAME = ".schemas.snapshot";
+
+    /**
+     * Version of the snapshot format, to increment when the serialized types
+     * change incompatibly.
+     */
+    protected static final int SNAPSHOT_VERSION = 1;
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The schemas registered by the XSD loader during a full load, in order,
+     * or {@code null} if not recording.
+     */
+    protected List<Schema> loadedSchemas;
+
+    /**
+     * Whether an XSD was resolved outside of the schemas directory during a
+     * full load, in which case the snapshot key would not cover it.
+     */
+    protected boolean snapshotUnsafe;
+
+    /** Whether the effective schemas were loaded from the snapshot (for tests). */
+    protected boolean schemasFromSnapshot;
+
     public SchemaManagerImpl() {
         schemaDir = new File(Framework.getRuntime().getHome(), SCHEMAS_DIR_NAME);
         if (!schemaDir.isDirectory()) {
@@ -289,6 +342,7 @@ public class SchemaManagerImpl implements SchemaManager {
         schemas.clear();
         uriToSchema.clear();
         prefixToSchema.clear();
+        schemasFromSnapshot = false;
         RuntimeException errors = new RuntimeException("Cannot load schemas");
         for (SchemaBindingDescriptor sd : allSchemas) {
             try {
@@ -301,20 +355,48 @@ public class SchemaManagerImpl implements SchemaManager {
                 errors.addSuppressed(error);
             }
         }
-        for (SchemaBindingDescriptor sd : allSchemas) {
+        String snapshotKey = null;
+        if (errors.getSuppressed().length == 0 && isSnapshotEnabled()) {
             try {
-                loadSchema(sd);
-            } catch (Exception error) {
-                if (error instanceof InterruptedException) {
-                    // restore interrupted status
-                    Thread.currentThread().interrupt();
+                snapshotKey = computeSnapshotKey();
+            } catch (IOException e) {
+                log.warn("Cannot compute schemas snapshot key", e);
+            }
+            if (snapshotKey != null && loadSnapshot(snapshotKey)) {
+                schemasFromSnapshot = true;
+                return;
+            }
+        }
+        List<Schema> loaded = new ArrayList<Schema>();
+        loadedSchemas = loaded;
+        snapshotUnsafe = false;
+        try {
+            for (SchemaBindingDescriptor sd : allSchemas) {
+                try {
+                    loadSchema(sd);
+                } catch (Exception error) {
+                    if (error instanceof InterruptedException) {
+                        // restore interrupted status
+                        Thread.currentThread().interrupt();
+                    }
+                    errors.addSuppressed(error);
                 }
-                errors.addSuppressed(error);
             }
+        } finally {
+            loadedSchemas = null;
         }
         if (errors.getSuppressed().length > 0) {
             throw errors;
         }
+        if (snapshotKey != null) {
+            if (snapshotUnsafe) {
+                log.debug("Schemas import XSDs from outside the schemas"
+                        + " directory, not writing snapshot");
+                getSnapshotFile().delete();
+            } else {
+                writeSnapshot(snapshotKey, loaded);
+            }
+        }
     }
 
     protected void copySchema(SchemaBindingDescriptor sd)
@@ -332,12 +414,186 @@ public class SchemaManagerImpl implements SchemaManager {
             log.error("XSD Schema not found: " + sd.src);
             return;
         }
-        InputStream in = url.openStream();
+        byte[] bytes;
+        try (InputStream in = url.openStream()) {
+            bytes = readBytes(in);
+        }
+        sd.file = new File(schemaDir, sd.name + ".xsd");
+        // don't rewrite an unchanged file
+        if (!sd.file.isFile() || sd.file.length() != bytes.length
+                || !Arrays.equals(bytes, Files.readAllBytes(sd.file.toPath()))) {
+            Files.write(sd.file.toPath(), bytes); // may overwrite
+        }
+    }
+
+    protected static byte[] readBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /*
+     * ===== Schemas snapshot =====
+     */
+
+    protected boolean isSnapshotEnabled() {
+        return Boolean.parseBoolean(Framework.getProperty(
+                SNAPSHOT_ENABLED_PROP, "true"));
+    }
+
+    protected File getSnapshotFile() {
+        return new File(schemaDir, SNAPSHOT_FILE_NAME);
+    }
+
+    /**
+     * Computes the key of the snapshot from the schema descriptors and the
+     * XSDs of the schemas directory, which include the copies of all the
+     * contributed ones.
+     */
+    protected String computeSnapshotKey() throws IOException {
+        MessageDigest digest;
         try {
-            sd.file = new File(schemaDir, sd.name + ".xsd");
-            FileUtils.copyToFile(in, sd.file); // may overwrite
-        } finally {
-            in.close();
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        updateDigest(digest, String.valueOf(SNAPSHOT_VERSION));
+        updateDigest(digest,
+                SchemaManagerImpl.class.getPackage().getImplementationVersion());
+        for (SchemaBindingDescriptor sd : allSchemas) {
+            updateDigest(digest, sd.name);
+            updateDigest(digest, sd.prefix);
+            updateDigest(digest, String.valueOf(sd.override));
+            updateDigest(digest, sd.xsdRootElement);
+            updateDigest(digest, sd.file == null ? null : sd.file.getName());
+        }
+        File[] files = schemaDir.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list: " + schemaDir);
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(".xsd")) {
+                updateDigest(digest, file.getName());
+                digest.update(Files.readAllBytes(file.toPath()));
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", Integer.valueOf(b & 0xff)));
+        }
+        return sb.toString();
+    }
+
+    protected static void updateDigest(MessageDigest digest, String string) {
+        if (string != null) {
+            digest.update(string.getBytes(UTF8));
+        }
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Registers the schemas of the snapshot if its key matches.
+     *
+     * @return {@code true} if the snapshot was used
+     */
+    protected boolean loadSnapshot(String key) {
+        File file = getSnapshotFile();
+        if (!file.isFile()) {
+            return false;
+        }
+        try (ObjectInputStream in = new SnapshotInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (!key.equals(in.readUTF())) {
+                log.debug("Schemas changed, not using snapshot");
+                return false;
+            }
+            @SuppressWarnings("unchecked")
+            List<Schema> list = (List<Schema>) in.readObject();
+            for (Schema schema : list) {
+                registerSchema(schema);
+            }
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            log.warn("Cannot read schemas snapshot, reloading schemas: " + e);
+            log.debug(e, e);
+            schemas.clear();
+            uriToSchema.clear();
+            prefixToSchema.clear();
+            return false;
+        }
+        log.info("Registered " + schemas.size() + " schemas from snapshot");
+        return true;
+    }
+
+    protected void writeSnapshot(String key, List<Schema> list) {
+        File file = getSnapshotFile();
+        File tmp = new File(schemaDir, SNAPSHOT_FILE_NAME + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(
+                    new FileOutputStream(tmp));
+                    ObjectOutputStream oout = new ObjectOutputStream(out)) {
+                oout.writeUTF(key);
+                oout.writeObject(new ArrayList<Schema>(list));
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Cannot write schemas snapshot: " + e);
+            log.debug(e, e);
+            tmp.delete();
+        }
+    }
+
+    // called from XSDLoader when an XSD is found outside the schemas directory
+    protected void setSnapshotUnsafe() {
+        snapshotUnsafe = true;
+    }
+
+    /**
+     * Object stream only reading the JDK and schema classes that make up the
+     * snapshot.
+     */
+    protected static class SnapshotInputStream extends ObjectInputStream {
+
+        protected SnapshotInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            int i = 0;
+            while (name.charAt(i) == '[') {
+                i++;
+            }
+            if (i == 0 || name.charAt(i) == 'L') {
+                String className = i == 0 ? name : name.substring(i + 1,
+                        name.length() - 1);
+                if (!className.startsWith("java.")
+                        && !className.startsWith("org.nuxeo.ecm.core.schema.")) {
+                    throw new InvalidClassException(name,
+                            "Unexpected class in schemas snapshot");
+                }
+            }
+            try {
+                return Class.forName(name, false,
+                        SchemaManagerImpl.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces)
+                throws IOException {
+            throw new InvalidClassException("Unexpected proxy class in"
+                    + " schemas snapshot");
         }
     }
 
@@ -368,6 +624,9 @@ public class SchemaManagerImpl implements SchemaManager {
 
     // called from XSDLoader
     protected void registerSchema(Schema schema) {
+        if (loadedSchemas != null) {
+            loadedSchemas.add(schema);
+        }
         schemas.put(schema.getName(), schema);
         Namespace ns = schema.getNamespace();
         uriToSchema.put(ns.uri, schema);
@@ -149,6 +149,8 @@ public class XSDLoader {
                     url = sd.context.getResource(importXSDSubPath);
                 }
                 if (url != null) {
+                    // not covered by the schemas snapshot
+                    schemaManager.setSnapshotUnsafe();
                     return new InputSource(url.openStream());
                 }
             }
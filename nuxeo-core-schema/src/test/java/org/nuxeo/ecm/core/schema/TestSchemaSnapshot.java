@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nuxeo.ecm.core.schema.types.Field;
+import org.nuxeo.ecm.core.schema.types.Schema;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+public class TestSchemaSnapshot extends NXRuntimeTestCase {
+
+    private static final Log log = LogFactory.getLog(TestSchemaSnapshot.class);
+
+    SchemaManagerImpl schemaManager;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        deployBundle("org.nuxeo.ecm.core.schema");
+        schemaManager = (SchemaManagerImpl) Framework.getLocalService(SchemaManager.class);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        Framework.getProperties().remove(
+                SchemaManagerImpl.SNAPSHOT_ENABLED_PROP);
+        schemaManager = null;
+        super.tearDown();
+    }
+
+    protected File getSnapshotFile() {
+        return new File(schemaManager.getSchemasDir(),
+                SchemaManagerImpl.SNAPSHOT_FILE_NAME);
+    }
+
+    /** Recomputes everything, as on a restart. */
+    protected void reload() {
+        schemaManager.dirty = true;
+        schemaManager.checkDirty();
+    }
+
+    /** Schema name to field names and types, and namespace. */
+    protected Map<String, String> describeSchemas() {
+        Map<String, String> map = new TreeMap<String, String>();
+        for (Schema schema : schemaManager.getSchemas()) {
+            StringBuilder sb = new StringBuilder(schema.getNamespace().toString());
+            Map<String, String> fields = new TreeMap<String, String>();
+            for (Field field : schema.getFields()) {
+                fields.put(field.getName().getPrefixedName(),
+                        field.getType().getName());
+            }
+            sb.append(fields);
+            map.put(schema.getName(), sb.toString());
+        }
+        return map;
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        deployContrib("org.nuxeo.ecm.core.schema.tests",
+                "OSGI-INF/CoreTestExtensions.xml");
+        Map<String, String> expected = describeSchemas();
+        assertFalse(schemaManager.schemasFromSnapshot);
+        assertTrue(getSnapshotFile().isFile());
+
+        reload();
+        assertTrue(schemaManager.schemasFromSnapshot);
+        assertEquals(expected, describeSchemas());
+        assertNotNull(schemaManager.getSchemaFromURI("http://www.nuxeo.org/ecm/schemas/common/"));
+        DocumentType t = schemaManager.getDocumentType("myDoc3");
+        assertEquals(new HashSet<String>(Arrays.asList("schema1", "schema2")),
+                new HashSet<String>(Arrays.asList(t.getSchemaNames())));
+    }
+
+    @Test
+    public void testSnapshotAfterChanges() throws Exception {
+        deployContrib("org.nuxeo.ecm.core.schema.tests",
+                "OSGI-INF/CoreTestExtensions.xml");
+        schemaManager.getSchemas();
+
+        // document type changes don't invalidate the snapshot
+        deployContrib("org.nuxeo.ecm.core.schema.tests",
+                "OSGI-INF/test-change-doctype.xml");
+        DocumentType t = schemaManager.getDocumentType("myDoc3");
+        assertTrue(schemaManager.schemasFromSnapshot);
+        Set<String> ts = new HashSet<String>(Arrays.asList(t.getSchemaNames()));
+        assertEquals(new HashSet<String>(Arrays.asList("schema1", "common")),
+                ts);
+
+        // new schema, full load
+        deployContrib("org.nuxeo.ecm.core.schema.tests",
+                "OSGI-INF/testSchemaRebase.xml");
+        assertNotNull(schemaManager.getSchema("employeeSchema"));
+        assertFalse(schemaManager.schemasFromSnapshot);
+        reload();
+        assertTrue(schemaManager.schemasFromSnapshot);
+        assertEquals(6, schemaManager.getSchema("employeeSchema").getFieldsCount());
+    }
+
+    @Test
+    public void testNoSnapshotWithExternalImport() throws Exception {
+        deployContrib("org.nuxeo.ecm.core.schema.tests",
+                "OSGI-INF/testSchemaWithImportInclude.xml");
+        assertNotNull(schemaManager.getSchema("schemaWithIncludeAndImport"));
+        // imported XSDs are not contributed, they would not be checked
+        assertFalse(getSnapshotFile().exists());
+        reload();
+        assertFalse(schemaManager.schemasFromSnapshot);
+    }
+
+    @Ignore("benchmark, reloads the schemas 40 times")
+    @Test
+    public void testBenchmarkStartup() throws Exception {
+        deployContrib("org.nuxeo.ecm.core.schema.tests",
+                "OSGI-INF/CoreTestExtensions.xml");
+        deployContrib("org.nuxeo.ecm.core.schema.tests",
+                "OSGI-INF/testSchemaRebase.xml");
+        schemaManager.getSchemas();
+        int n = 20;
+
+        Framework.getProperties().setProperty(
+                SchemaManagerImpl.SNAPSHOT_ENABLED_PROP, "false");
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            reload();
+        }
+        long fullTime = System.nanoTime() - t0;
+        assertFalse(schemaManager.schemasFromSnapshot);
+
+        Framework.getProperties().setProperty(
+                SchemaManagerImpl.SNAPSHOT_ENABLED_PROP, "true");
+        reload(); // writes the snapshot
+        t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            reload();
+        }
+        long snapshotTime = System.nanoTime() - t0;
+        assertTrue(schemaManager.schemasFromSnapshot);
+
+        log.info(String.format("Schema registry recomputation of %d schemas:"
+                + " XSD parsing %.2f ms, snapshot %.2f ms",
+                Integer.valueOf(schemaManager.getSchemas().length),
+                Double.valueOf(fullTime / 1e6 / n),
+                Double.valueOf(snapshotTime / 1e6 / n)));
+    }
+
+}
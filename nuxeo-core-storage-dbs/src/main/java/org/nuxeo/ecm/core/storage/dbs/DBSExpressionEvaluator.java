@@ -20,12 +20,20 @@ import static java.lang.Boolean.TRUE;
 
 import java.io.Serializable;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.Literal;
+import org.nuxeo.ecm.core.query.sql.model.LiteralList;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
 import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
 import org.nuxeo.ecm.core.query.sql.model.OrderByExpr;
 import org.nuxeo.ecm.core.query.sql.model.OrderByList;
@@ -59,6 +67,12 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
 
     protected State state;
 
+    /** Resolved references, by name. */
+    protected final Map<String, ValueInfo> valueInfos = new HashMap<String, ValueInfo>();
+
+    /** The compiled expression, computed on first use. */
+    protected Predicate predicate;
+
     public DBSExpressionEvaluator(DBSSession session, Expression expr,
             String[] principals) {
         super(new DBSPathResolver(session), principals);
@@ -83,8 +97,8 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
         this.state = state;
         // security check
         if (principals != null) {
-            String[] racl = (String[]) walkReference(new Reference(
-                    NXQL_ECM_READ_ACL));
+            String[] racl = (String[]) getValueInfo(NXQL_ECM_READ_ACL).getValue(
+                    state);
             if (racl == null) {
                 log.error("NULL racl for " + state.get(DBSDocument.KEY_ID));
             } else {
@@ -100,7 +114,10 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
                 }
             }
         }
-        return TRUE.equals(walkExpression(expr));
+        if (predicate == null) {
+            predicate = compile(expr);
+        }
+        return TRUE.equals(predicate.eval(state));
     }
 
     public boolean matches(DBSDocumentState docState) {
@@ -114,72 +131,404 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
 
     @Override
     public Object evaluateReference(Reference ref, State state) {
-        String name = ref.name;
-        String[] split = name.split("/");
-        String prop = split[0];
-        boolean isArray;
-        boolean isBoolean;
-        boolean isTrueOrNullBoolean;
-        if (name.startsWith(NXQL.ECM_PREFIX)) {
-            prop = DBSSession.convToInternal(name);
-            isArray = DBSSession.isArray(prop);
-            isBoolean = DBSSession.isBoolean(prop);
-            isTrueOrNullBoolean = true;
-        } else {
-            Field field = schemaManager.getField(prop);
-            if (field == null) {
-                if (prop.indexOf(':') > -1) {
-                    throw new RuntimeException("Unkown property: " + name);
-                }
-                // check without prefix
-                // TODO precompute this in SchemaManagerImpl
-                for (Schema schema : schemaManager.getSchemas()) {
-                    if (!StringUtils.isBlank(schema.getNamespace().prefix)) {
-                        // schema with prefix, do not consider as candidate
-                        continue;
+        return getValueInfo(ref.name).getValue(state);
+    }
+
+    /**
+     * Gets the resolved information about a reference, resolving it only once
+     * per evaluator.
+     *
+     * @since 7.1
+     */
+    protected ValueInfo getValueInfo(String name) {
+        ValueInfo info = valueInfos.get(name);
+        if (info == null) {
+            info = new ValueInfo(name);
+            valueInfos.put(name, info);
+        }
+        return info;
+    }
+
+    /**
+     * A reference resolved to the state keys where its value is found.
+     *
+     * @since 7.1
+     */
+    protected class ValueInfo {
+
+        protected final String name;
+
+        protected final String prop;
+
+        /** Keys in sub-states for complex properties. */
+        protected final String[] subKeys;
+
+        protected final boolean isArray;
+
+        protected final boolean isBoolean;
+
+        protected final boolean isTrueOrNullBoolean;
+
+        protected ValueInfo(String name) {
+            this.name = name;
+            String[] split = name.split("/");
+            String prop = split[0];
+            if (name.startsWith(NXQL.ECM_PREFIX)) {
+                prop = DBSSession.convToInternal(name);
+                isArray = DBSSession.isArray(prop);
+                isBoolean = DBSSession.isBoolean(prop);
+                isTrueOrNullBoolean = true;
+            } else {
+                Field field = schemaManager.getField(prop);
+                if (field == null) {
+                    if (prop.indexOf(':') > -1) {
+                        throw new RuntimeException("Unkown property: " + name);
                     }
-                    if (schema != null) {
-                        field = schema.getField(prop);
-                        if (field != null) {
-                            break;
+                    // check without prefix
+                    // TODO precompute this in SchemaManagerImpl
+                    for (Schema schema : schemaManager.getSchemas()) {
+                        if (!StringUtils.isBlank(schema.getNamespace().prefix)) {
+                            // schema with prefix, do not consider as candidate
+                            continue;
+                        }
+                        if (schema != null) {
+                            field = schema.getField(prop);
+                            if (field != null) {
+                                break;
+                            }
                         }
                     }
+                    if (field == null) {
+                        throw new RuntimeException("Unkown property: " + name);
+                    }
                 }
-                if (field == null) {
-                    throw new RuntimeException("Unkown property: " + name);
+                prop = field.getName().getPrefixedName();
+                Type type = field.getType();
+                isArray = type instanceof ListType
+                        && ((ListType) type).isArray();
+                isBoolean = type instanceof BooleanType;
+                isTrueOrNullBoolean = false;
+            }
+            this.prop = prop;
+            subKeys = new String[split.length - 1];
+            System.arraycopy(split, 1, subKeys, 0, subKeys.length);
+        }
+
+        protected Object getValue(State state) {
+            Serializable value = state.get(prop);
+            for (String subKey : subKeys) {
+                if (value == null) {
+                    return null;
+                }
+                if (!(value instanceof State)) {
+                    throw new RuntimeException(
+                            "Unkown property (no State): " + name);
                 }
+                value = ((State) value).get(subKey);
             }
-            prop = field.getName().getPrefixedName();
-            Type type = field.getType();
-            isArray = type instanceof ListType && ((ListType) type).isArray();
-            isBoolean = type instanceof BooleanType;
-            isTrueOrNullBoolean = false;
-        }
-        Serializable value = state.get(prop);
-        for (int i = 1; i < split.length; i++) {
-            if (value == null) {
-                return null;
+            if (value == null && isArray) {
+                // don't use null, as list-based matches don't use ternary
+                // logic
+                value = new Object[0];
             }
-            if (!(value instanceof State)) {
-                throw new RuntimeException("Unkown property (no State): "
-                        + name);
+            if (isBoolean) {
+                // boolean evaluation is like 0 / 1
+                if (isTrueOrNullBoolean) {
+                    value = TRUE.equals(value) ? ONE : ZERO;
+                } else {
+                    value = value == null ? null
+                            : (((Boolean) value).booleanValue() ? ONE : ZERO);
+                }
             }
-            value = ((State) value).get(split[i]);
+            return value;
         }
-        if (value == null && isArray) {
-            // don't use null, as list-based matches don't use ternary logic
-            value = new Object[0];
+    }
+
+    /**
+     * Compiles an expression into a tree of predicates evaluated directly
+     * against a state.
+     * <p>
+     * Expressions needing special evaluation ({@code ecm:path},
+     * {@code ecm:ancestorId}, {@code STARTSWITH}, ...) or whose references
+     * cannot be resolved are evaluated by walking them.
+     * <p>
+     * The result, including the errors raised, is the same as walking the
+     * expression: operands are evaluated in the same order and only skipped
+     * where {@link #walkMultiExpression} skips them.
+     *
+     * @since 7.1
+     */
+    protected Predicate compile(Operand operand) {
+        if (!(operand instanceof Expression)) {
+            return new WalkingPredicate(operand);
         }
-        if (isBoolean) {
-            // boolean evaluation is like 0 / 1
-            if (isTrueOrNullBoolean) {
-                value = TRUE.equals(value) ? ONE : ZERO;
+        Expression expr = (Expression) operand;
+        Operator op = expr.operator;
+        if (op == Operator.AND) {
+            if (expr instanceof MultiExpression) {
+                List<Operand> values = ((MultiExpression) expr).values;
+                Predicate[] predicates = new Predicate[values.size()];
+                for (int i = 0; i < predicates.length; i++) {
+                    predicates[i] = compile(values.get(i));
+                }
+                return new MultiAndPredicate(predicates);
             } else {
-                value = value == null ? null
-                        : (((Boolean) value).booleanValue() ? ONE : ZERO);
+                return new AndPredicate(compile(expr.lvalue),
+                        compile(expr.rvalue));
+            }
+        } else if (op == Operator.OR) {
+            return new OrPredicate(compile(expr.lvalue), compile(expr.rvalue));
+        } else if (op == Operator.NOT) {
+            return new NotPredicate(compile(expr.lvalue));
+        }
+        if (!(expr.lvalue instanceof Reference)) {
+            return new WalkingPredicate(expr);
+        }
+        String name = ((Reference) expr.lvalue).name;
+        if (NXQL.ECM_PATH.equals(name) || NXQL.ECM_ANCESTORID.equals(name)) {
+            return new WalkingPredicate(expr);
+        }
+        ValueInfo info;
+        try {
+            info = getValueInfo(name);
+        } catch (RuntimeException e) {
+            // unknown property, report the error when evaluated, as walking
+            // the expression would
+            return new WalkingPredicate(expr);
+        }
+        if (op == Operator.ISNULL || op == Operator.ISNOTNULL) {
+            return new NullPredicate(info, op == Operator.ISNULL);
+        }
+        if (op == Operator.IN || op == Operator.NOTIN) {
+            if (!(expr.rvalue instanceof LiteralList)) {
+                return new WalkingPredicate(expr);
             }
+            return new InPredicate(info,
+                    walkLiteralList((LiteralList) expr.rvalue),
+                    op == Operator.IN);
+        }
+        if (!(expr.rvalue instanceof Literal)) {
+            return new WalkingPredicate(expr);
+        }
+        Object value = walkLiteral((Literal) expr.rvalue);
+        if (op == Operator.LIKE || op == Operator.ILIKE
+                || op == Operator.NOTLIKE || op == Operator.NOTILIKE) {
+            if (!(value instanceof String)) {
+                return new WalkingPredicate(expr);
+            }
+            return new LikePredicate(info, (String) value, op == Operator.LIKE
+                    || op == Operator.ILIKE, op == Operator.ILIKE
+                    || op == Operator.NOTILIKE);
+        }
+        if (op == Operator.EQ || op == Operator.NOTEQ || op == Operator.LT
+                || op == Operator.GT || op == Operator.LTEQ
+                || op == Operator.GTEQ) {
+            return new ComparisonPredicate(info, op, value);
+        }
+        return new WalkingPredicate(expr);
+    }
+
+    /**
+     * A compiled predicate, using ternary logic.
+     *
+     * @since 7.1
+     */
+    protected interface Predicate {
+        Boolean eval(State state);
+    }
+
+    /** Fallback evaluating an operand by walking it. */
+    protected class WalkingPredicate implements Predicate {
+
+        protected final Operand operand;
+
+        protected WalkingPredicate(Operand operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public Boolean eval(State state) {
+            DBSExpressionEvaluator.this.state = state;
+            return bool(walkOperand(operand));
+        }
+    }
+
+    protected class MultiAndPredicate implements Predicate {
+
+        protected final Predicate[] predicates;
+
+        protected MultiAndPredicate(Predicate[] predicates) {
+            this.predicates = predicates;
+        }
+
+        @Override
+        public Boolean eval(State state) {
+            Boolean res = TRUE;
+            for (Predicate predicate : predicates) {
+                Boolean bool = predicate.eval(state);
+                if (bool == null) {
+                    // null is absorbent
+                    return null;
+                }
+                res = and(res, bool);
+            }
+            return res;
+        }
+    }
+
+    protected class AndPredicate implements Predicate {
+
+        protected final Predicate left;
+
+        protected final Predicate right;
+
+        protected AndPredicate(Predicate left, Predicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Boolean eval(State state) {
+            // no short-circuit, like walkAnd
+            Boolean l = left.eval(state);
+            Boolean r = right.eval(state);
+            return and(l, r);
+        }
+    }
+
+    protected class OrPredicate implements Predicate {
+
+        protected final Predicate left;
+
+        protected final Predicate right;
+
+        protected OrPredicate(Predicate left, Predicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Boolean eval(State state) {
+            // no short-circuit, like walkOr
+            Boolean l = left.eval(state);
+            Boolean r = right.eval(state);
+            return or(l, r);
+        }
+    }
+
+    protected class NotPredicate implements Predicate {
+
+        protected final Predicate predicate;
+
+        protected NotPredicate(Predicate predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public Boolean eval(State state) {
+            return not(predicate.eval(state));
+        }
+    }
+
+    protected class NullPredicate implements Predicate {
+
+        protected final ValueInfo info;
+
+        protected final boolean isNull;
+
+        protected NullPredicate(ValueInfo info, boolean isNull) {
+            this.info = info;
+            this.isNull = isNull;
+        }
+
+        @Override
+        public Boolean eval(State state) {
+            return Boolean.valueOf((info.getValue(state) == null) == isNull);
+        }
+    }
+
+    protected class ComparisonPredicate implements Predicate {
+
+        protected final ValueInfo info;
+
+        protected final Operator op;
+
+        protected final Object value;
+
+        protected ComparisonPredicate(ValueInfo info, Operator op, Object value) {
+            this.info = info;
+            this.op = op;
+            this.value = value;
+        }
+
+        @Override
+        public Boolean eval(State state) {
+            Object left = info.getValue(state);
+            if (op == Operator.EQ) {
+                return eqMaybeList(left, value);
+            } else if (op == Operator.NOTEQ) {
+                return not(eqMaybeList(left, value));
+            }
+            Integer cmp = cmp(left, value);
+            if (cmp == null) {
+                return null;
+            } else if (op == Operator.LT) {
+                return Boolean.valueOf(cmp.intValue() < 0);
+            } else if (op == Operator.GT) {
+                return Boolean.valueOf(cmp.intValue() > 0);
+            } else if (op == Operator.LTEQ) {
+                return Boolean.valueOf(cmp.intValue() <= 0);
+            } else {
+                return Boolean.valueOf(cmp.intValue() >= 0);
+            }
+        }
+    }
+
+    protected class InPredicate implements Predicate {
+
+        protected final ValueInfo info;
+
+        protected final List<Object> values;
+
+        protected final boolean positive;
+
+        protected InPredicate(ValueInfo info, List<Object> values,
+                boolean positive) {
+            this.info = info;
+            this.values = values;
+            this.positive = positive;
+        }
+
+        @Override
+        public Boolean eval(State state) {
+            Boolean in = inMaybeList(info.getValue(state), values);
+            return positive ? in : not(in);
+        }
+    }
+
+    protected class LikePredicate implements Predicate {
+
+        protected final ValueInfo info;
+
+        protected final String pattern;
+
+        protected final boolean positive;
+
+        protected final boolean caseInsensitive;
+
+        protected LikePredicate(ValueInfo info, String pattern,
+                boolean positive, boolean caseInsensitive) {
+            this.info = info;
+            this.pattern = pattern;
+            this.positive = positive;
+            this.caseInsensitive = caseInsensitive;
+        }
+
+        @Override
+        public Boolean eval(State state) {
+            return likeMaybeList(info.getValue(state), pattern, positive,
+                    caseInsensitive);
         }
-        return value;
     }
 
     public static class OrderByComparator implements Comparator<State> {
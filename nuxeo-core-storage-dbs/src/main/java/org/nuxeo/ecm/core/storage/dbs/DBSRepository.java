@@ -78,6 +78,18 @@ public interface DBSRepository extends Repository {
      */
     void createState(State state) throws DocumentException;
 
+    /**
+     * Creates several documents, in order.
+     * <p>
+     * Implementations should write them using as few round trips to the
+     * backend as possible.
+     *
+     * @param states the document states
+     * @throws DocumentException if a document already exists
+     * @since 7.1
+     */
+    void createStates(List<State> states) throws DocumentException;
+
     /**
      * Updates a document.
      *
@@ -87,6 +99,18 @@ public interface DBSRepository extends Repository {
      */
     void updateState(String id, StateDiff diff) throws DocumentException;
 
+    /**
+     * Updates several documents, in the iteration order of the map.
+     * <p>
+     * Implementations should write them using as few round trips to the
+     * backend as possible.
+     *
+     * @param diffs the map of document id to diff to apply
+     * @throws DocumentException if a document does not exist
+     * @since 7.1
+     */
+    void updateStates(Map<String, StateDiff> diffs) throws DocumentException;
+
     /**
      * Deletes a set of document.
      *
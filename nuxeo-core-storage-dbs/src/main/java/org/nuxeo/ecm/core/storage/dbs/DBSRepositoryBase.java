@@ -21,7 +21,9 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -39,6 +41,8 @@ import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
 import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
 import org.nuxeo.ecm.core.model.Document;
 import org.nuxeo.ecm.core.model.Session;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.binary.BinaryManager;
 import org.nuxeo.ecm.core.storage.binary.BinaryManagerDescriptor;
 import org.nuxeo.ecm.core.storage.binary.BinaryManagerService;
@@ -81,6 +85,27 @@ public abstract class DBSRepositoryBase implements DBSRepository {
         return repositoryName;
     }
 
+    /**
+     * Default implementation creating the documents one by one.
+     */
+    @Override
+    public void createStates(List<State> states) throws DocumentException {
+        for (State state : states) {
+            createState(state);
+        }
+    }
+
+    /**
+     * Default implementation updating the documents one by one.
+     */
+    @Override
+    public void updateStates(Map<String, StateDiff> diffs)
+            throws DocumentException {
+        for (Entry<String, StateDiff> en : diffs.entrySet()) {
+            updateState(en.getKey(), en.getValue());
+        }
+    }
+
     /**
      * Initializes the root and its ACP.
      */
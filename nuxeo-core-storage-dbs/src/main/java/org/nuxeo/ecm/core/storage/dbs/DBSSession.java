@@ -104,6 +104,7 @@ import org.nuxeo.ecm.core.model.NoSuchDocumentException;
 import org.nuxeo.ecm.core.model.Session;
 import org.nuxeo.ecm.core.query.QueryException;
 import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.QueryParseException;
 import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
 import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
@@ -378,6 +379,12 @@ public class DBSSession implements Session {
         throw new NoSuchDocumentException(id);
     }
 
+    @Override
+    public void prefetchSchemas(List<Document> docs, Collection<String> schemas)
+            throws DocumentException {
+        // the whole state of a document is read at once, nothing to do
+    }
+
     @Override
     public Document getRootDocument() throws DocumentException {
         return getDocument(getRootId());
@@ -1500,6 +1507,11 @@ public class DBSSession implements Session {
             throw new QueryException("No QueryMaker accepts query type: "
                     + queryType);
         }
+        if (queryFilter.getKeysetValues() != null) {
+            throw new QueryParseException(
+                    "Keyset pagination not supported by repository: "
+                            + repository.getName());
+        }
         // transform the query according to the transformers defined by the
         // security policies
         SQLQuery sqlQuery = SQLQueryParser.parse(query);
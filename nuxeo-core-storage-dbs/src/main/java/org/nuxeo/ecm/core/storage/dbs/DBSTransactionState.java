@@ -50,6 +50,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -93,6 +94,17 @@ public class DBSTransactionState {
 
     private static final Log log = LogFactory.getLog(DBSTransactionState.class);
 
+    /**
+     * Framework property for the maximum number of documents written to the
+     * repository in a single batch on save.
+     *
+     * @since 7.1
+     */
+    public static final String SAVE_BATCH_SIZE_PROPERTY = "org.nuxeo.dbs.save.batch.size";
+
+    /** @since 7.1 */
+    public static final String DEFAULT_SAVE_BATCH_SIZE = "100";
+
     protected final DBSRepository repository;
 
     protected final DBSSession session;
@@ -107,12 +119,18 @@ public class DBSTransactionState {
 
     protected final Set<String> browsePermissions;
 
+    /** Maximum number of documents written in a single batch on save. */
+    protected final int saveBatchSize;
+
     public DBSTransactionState(DBSRepository repository, DBSSession session) {
         this.repository = repository;
         this.session = session;
         SecurityService securityService = Framework.getLocalService(SecurityService.class);
         browsePermissions = new HashSet<>(
                 Arrays.asList(securityService.getPermissionsToCheck(BROWSE)));
+        int batchSize = Integer.parseInt(Framework.getProperty(
+                SAVE_BATCH_SIZE_PROPERTY, DEFAULT_SAVE_BATCH_SIZE));
+        saveBatchSize = batchSize < 1 ? 1 : batchSize;
     }
 
     protected FulltextConfiguration getFulltextConfiguration() {
@@ -509,12 +527,21 @@ public class DBSTransactionState {
         updateProxies();
         // TODO getting fulltext already does a getStateChange
         List<Work> works = getFulltextWorks();
+        List<State> statesToCreate = new ArrayList<>();
         for (String id : transientCreated) { // ordered
             DBSDocumentState docState = transientStates.get(id);
             docState.setNotDirty();
-            repository.createState(docState.getState());
+            statesToCreate.add(docState.getState());
+            if (statesToCreate.size() >= saveBatchSize) {
+                repository.createStates(statesToCreate);
+                statesToCreate = new ArrayList<>();
+            }
             // TODO undo log
         }
+        if (!statesToCreate.isEmpty()) {
+            repository.createStates(statesToCreate);
+        }
+        Map<String, StateDiff> diffs = new LinkedHashMap<>();
         for (DBSDocumentState docState : transientStates.values()) {
             String id = docState.getId();
             if (transientCreated.contains(id)) {
@@ -523,10 +550,17 @@ public class DBSTransactionState {
             StateDiff diff = docState.getStateChange();
             docState.setNotDirty();
             if (diff != null) {
-                repository.updateState(id, diff);
+                diffs.put(id, diff);
+                if (diffs.size() >= saveBatchSize) {
+                    repository.updateStates(diffs);
+                    diffs = new LinkedHashMap<>();
+                }
                 // TODO undo log
             }
         }
+        if (!diffs.isEmpty()) {
+            repository.updateStates(diffs);
+        }
         transientCreated.clear();
         scheduleWork(works);
     }
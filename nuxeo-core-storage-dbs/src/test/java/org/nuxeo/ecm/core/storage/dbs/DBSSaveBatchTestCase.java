@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.PathRef;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Saves with more documents than the save batch size, for each DBS storage.
+ * <p>
+ * Subclasses set up the repository of their storage.
+ *
+ * @since 7.1
+ */
+public abstract class DBSSaveBatchTestCase {
+
+    protected static final int BATCH_SIZE = 3;
+
+    /**
+     * Sets up the runtime and the repository, and opens a session.
+     */
+    protected abstract void setUpRepository() throws Exception;
+
+    /**
+     * Closes the session, the repository and the runtime.
+     */
+    protected abstract void tearDownRepository() throws Exception;
+
+    protected abstract CoreSession getSession();
+
+    protected abstract void reopenSession() throws Exception;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpRepository();
+        Framework.getProperties().setProperty(
+                DBSTransactionState.SAVE_BATCH_SIZE_PROPERTY,
+                String.valueOf(BATCH_SIZE));
+        // the batch size is read when the session is opened
+        reopenSession();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Framework.getProperties().remove(
+                DBSTransactionState.SAVE_BATCH_SIZE_PROPERTY);
+        tearDownRepository();
+    }
+
+    protected void createDocs(int from, int to) throws Exception {
+        CoreSession session = getSession();
+        for (int i = from; i < to; i++) {
+            DocumentModel doc = session.createDocumentModel("/folder", "doc"
+                    + i, "File");
+            doc.setPropertyValue("dc:title", "title" + i);
+            session.createDocument(doc);
+        }
+    }
+
+    protected void checkDocs(int count, String updatedPrefix, int updated)
+            throws Exception {
+        CoreSession session = getSession();
+        DocumentModelList docs = session.getChildren(new PathRef("/folder"));
+        assertEquals(count, docs.size());
+        for (int i = 0; i < count; i++) {
+            DocumentModel doc = session.getDocument(new PathRef("/folder/doc"
+                    + i));
+            String prefix = i < updated ? updatedPrefix : "title";
+            assertEquals(prefix + i, doc.getPropertyValue("dc:title"));
+        }
+    }
+
+    @Test
+    public void testSaveMoreThanBatchSize() throws Exception {
+        int n = BATCH_SIZE * 3 + 1;
+        CoreSession session = getSession();
+        session.createDocument(session.createDocumentModel("/", "folder",
+                "Folder"));
+        createDocs(0, n);
+        session.save();
+        reopenSession();
+        checkDocs(n, "title", 0);
+    }
+
+    @Test
+    public void testSaveMixedBatch() throws Exception {
+        int n = BATCH_SIZE * 2 + 1;
+        CoreSession session = getSession();
+        session.createDocument(session.createDocumentModel("/", "folder",
+                "Folder"));
+        createDocs(0, n);
+        session.save();
+
+        // updates and creations in the same save
+        for (int i = 0; i < n; i++) {
+            DocumentModel doc = session.getDocument(new PathRef("/folder/doc"
+                    + i));
+            doc.setPropertyValue("dc:title", "updated" + i);
+            session.saveDocument(doc);
+        }
+        createDocs(n, n + BATCH_SIZE + 2);
+        session.save();
+        reopenSession();
+        checkDocs(n + BATCH_SIZE + 2, "updated", n);
+    }
+
+}
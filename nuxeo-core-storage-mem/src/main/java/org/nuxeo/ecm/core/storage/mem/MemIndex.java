@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Secondary index for the {@link MemRepository}, mapping a value to the set of
+ * document ids having this value.
+ * <p>
+ * Reads are lock-free, updates are serialized so that empty entries can be
+ * removed safely.
+ *
+ * @since 7.1
+ */
+public class MemIndex {
+
+    protected final ConcurrentMap<Object, Set<String>> index = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a document id to the index for the given value.
+     */
+    public synchronized void add(Object value, String id) {
+        Set<String> ids = index.get(value);
+        if (ids == null) {
+            ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            index.put(value, ids);
+        }
+        ids.add(id);
+    }
+
+    /**
+     * Removes a document id from the index for the given value.
+     */
+    public synchronized void remove(Object value, String id) {
+        Set<String> ids = index.get(value);
+        if (ids == null) {
+            return;
+        }
+        ids.remove(id);
+        if (ids.isEmpty()) {
+            index.remove(value);
+        }
+    }
+
+    /**
+     * Gets the document ids having the given value.
+     *
+     * @return a live view of the ids (never {@code null})
+     */
+    public Set<String> get(Object value) {
+        Set<String> ids = index.get(value);
+        if (ids == null) {
+            return Collections.emptySet();
+        }
+        return ids;
+    }
+
+    /**
+     * Clears the index.
+     */
+    public synchronized void clear() {
+        index.clear();
+    }
+
+}
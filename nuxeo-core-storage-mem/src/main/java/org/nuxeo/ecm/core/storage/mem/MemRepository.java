@@ -13,19 +13,29 @@ package org.nuxeo.ecm.core.storage.mem;
 
 import static java.lang.Boolean.TRUE;
 import static org.nuxeo.ecm.core.storage.State.NOP;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_PROXY;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PRIMARY_TYPE;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_TARGET_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_VERSION_SERIES_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_SERIES_ID;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.Map.Entry;
@@ -39,8 +49,16 @@ import org.nuxeo.ecm.core.api.ConcurrentUpdateDocumentException;
 import org.nuxeo.ecm.core.api.DocumentException;
 import org.nuxeo.ecm.core.api.model.Delta;
 import org.nuxeo.ecm.core.model.Repository;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.Literal;
+import org.nuxeo.ecm.core.query.sql.model.LiteralList;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
 import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
 import org.nuxeo.ecm.core.storage.State.ListDiff;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.StateHelper;
@@ -50,6 +68,7 @@ import org.nuxeo.ecm.core.storage.dbs.DBSDocument;
 import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
 import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator.OrderByComparator;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase;
+import org.nuxeo.ecm.core.storage.dbs.DBSSession;
 
 /**
  * In-memory implementation of a {@link Repository}.
@@ -59,6 +78,10 @@ import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase;
  * A document object is a JSON-like document stored as a Map recursively
  * containing the data, see {@link DBSDocument} for the description of the
  * document.
+ * <p>
+ * Secondary indexes are maintained for child lookups (parent id + name), for
+ * some simple keys (see {@link #VALUE_INDEXED_KEYS}) and for some array keys
+ * (see {@link #ARRAY_INDEXED_KEYS}), other queries do a full scan.
  *
  * @since 5.9.4
  */
@@ -69,11 +92,49 @@ public class MemRepository extends DBSRepositoryBase {
     // for debug
     private final AtomicLong temporaryIdCounter = new AtomicLong(0);
 
+    /**
+     * Simple keys for which a value index is maintained by default.
+     *
+     * @since 7.1
+     */
+    public static final String[] VALUE_INDEXED_KEYS = { KEY_PARENT_ID,
+            KEY_PRIMARY_TYPE, KEY_VERSION_SERIES_ID, KEY_PROXY_TARGET_ID,
+            KEY_PROXY_VERSION_SERIES_ID };
+
+    /**
+     * Array keys for which an index on each element is maintained by default.
+     *
+     * @since 7.1
+     */
+    public static final String[] ARRAY_INDEXED_KEYS = { KEY_ANCESTOR_IDS,
+            KEY_PROXY_IDS };
+
     /**
      * The content of the repository, a map of document id -> object.
      */
     protected Map<String, State> states;
 
+    /**
+     * Index of parent id + name -> document ids.
+     *
+     * @since 7.1
+     */
+    protected MemIndex childIndex;
+
+    /**
+     * Indexes for simple keys, key -> index.
+     *
+     * @since 7.1
+     */
+    protected Map<String, MemIndex> valueIndexes;
+
+    /**
+     * Indexes for array keys, key -> index.
+     *
+     * @since 7.1
+     */
+    protected Map<String, MemIndex> arrayIndexes;
+
     public MemRepository(String repositoryName) {
         super(repositoryName);
         initRepository();
@@ -83,13 +144,122 @@ public class MemRepository extends DBSRepositoryBase {
     public void shutdown() {
         super.shutdown();
         states = null;
+        childIndex = null;
+        valueIndexes = null;
+        arrayIndexes = null;
     }
 
     protected void initRepository() {
         states = new ConcurrentHashMap<>();
+        initIndexes();
         initRoot();
     }
 
+    /**
+     * Initializes the secondary indexes. Subclasses may override this to index
+     * additional keys, using {@link #addValueIndex} or {@link #addArrayIndex}.
+     *
+     * @since 7.1
+     */
+    protected void initIndexes() {
+        childIndex = new MemIndex();
+        valueIndexes = new HashMap<>();
+        arrayIndexes = new HashMap<>();
+        for (String key : VALUE_INDEXED_KEYS) {
+            addValueIndex(key);
+        }
+        for (String key : ARRAY_INDEXED_KEYS) {
+            addArrayIndex(key);
+        }
+    }
+
+    /**
+     * Adds an index on a simple key. Must be called before documents are
+     * created.
+     *
+     * @since 7.1
+     */
+    protected void addValueIndex(String key) {
+        valueIndexes.put(key, new MemIndex());
+    }
+
+    /**
+     * Adds an index on the elements of an array key. Must be called before
+     * documents are created.
+     *
+     * @since 7.1
+     */
+    protected void addArrayIndex(String key) {
+        arrayIndexes.put(key, new MemIndex());
+    }
+
+    protected static String childKey(Object parentId, Object name) {
+        // ids never contain a '/' so this is unambiguous
+        return parentId + "/" + name;
+    }
+
+    /**
+     * Adds a document to the secondary indexes.
+     */
+    protected void index(String id, State state) {
+        Object parentId = state.get(KEY_PARENT_ID);
+        if (parentId != null) {
+            childIndex.add(childKey(parentId, state.get(KEY_NAME)), id);
+        }
+        for (Entry<String, MemIndex> en : valueIndexes.entrySet()) {
+            Object value = state.get(en.getKey());
+            if (value != null) {
+                en.getValue().add(value, id);
+            }
+        }
+        for (Entry<String, MemIndex> en : arrayIndexes.entrySet()) {
+            Object[] array = (Object[]) state.get(en.getKey());
+            if (array != null) {
+                for (Object value : array) {
+                    en.getValue().add(value, id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a document from the secondary indexes.
+     */
+    protected void unindex(String id, State state) {
+        Object parentId = state.get(KEY_PARENT_ID);
+        if (parentId != null) {
+            childIndex.remove(childKey(parentId, state.get(KEY_NAME)), id);
+        }
+        for (Entry<String, MemIndex> en : valueIndexes.entrySet()) {
+            Object value = state.get(en.getKey());
+            if (value != null) {
+                en.getValue().remove(value, id);
+            }
+        }
+        for (Entry<String, MemIndex> en : arrayIndexes.entrySet()) {
+            Object[] array = (Object[]) state.get(en.getKey());
+            if (array != null) {
+                for (Object value : array) {
+                    en.getValue().remove(value, id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if a diff touches an indexed key.
+     */
+    protected boolean isIndexed(StateDiff diff) {
+        for (String key : diff.keySet()) {
+            if (KEY_PARENT_ID.equals(key) || KEY_NAME.equals(key)
+                    || valueIndexes.containsKey(key)
+                    || arrayIndexes.containsKey(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public String generateNewId() {
         if (DEBUG_UUIDS) {
@@ -128,9 +298,38 @@ public class MemRepository extends DBSRepositoryBase {
         if (states.containsKey(id)) {
             throw new DocumentException("Already exists: " + id);
         }
+        doCreateState(id, state);
+    }
+
+    /**
+     * Stores a new state, once checked.
+     *
+     * @since 7.1
+     */
+    protected void doCreateState(String id, State state) {
         state = StateHelper.deepCopy(state, true); // thread-safe
         StateHelper.resetDeltas(state);
         states.put(id, state);
+        index(id, state);
+    }
+
+    @Override
+    public void createStates(List<State> states) throws DocumentException {
+        // check all the ids first so that nothing is created on error
+        Set<String> ids = new HashSet<>();
+        for (State state : states) {
+            String id = (String) state.get(KEY_ID);
+            if (this.states.containsKey(id) || !ids.add(id)) {
+                throw new DocumentException("Already exists: " + id);
+            }
+        }
+        for (State state : states) {
+            String id = (String) state.get(KEY_ID);
+            if (log.isTraceEnabled()) {
+                log.trace("create " + id + ": " + state);
+            }
+            doCreateState(id, state);
+        }
     }
 
     @Override
@@ -142,7 +341,46 @@ public class MemRepository extends DBSRepositoryBase {
         if (state == null) {
             throw new ConcurrentUpdateDocumentException("Missing: " + id);
         }
-        applyDiff(state, diff);
+        doUpdateState(id, state, diff);
+    }
+
+    /**
+     * Applies a diff to an existing state, once checked.
+     *
+     * @since 7.1
+     */
+    protected void doUpdateState(String id, State state, StateDiff diff) {
+        if (isIndexed(diff)) {
+            unindex(id, state);
+            applyDiff(state, diff);
+            index(id, state);
+        } else {
+            applyDiff(state, diff);
+        }
+    }
+
+    @Override
+    public void updateStates(Map<String, StateDiff> diffs)
+            throws DocumentException {
+        // check all the ids first so that nothing is updated on error
+        List<State> list = new ArrayList<>(diffs.size());
+        for (String id : diffs.keySet()) {
+            State state = states.get(id);
+            if (state == null) {
+                throw new ConcurrentUpdateDocumentException("Missing: " + id);
+            }
+            list.add(state);
+        }
+        int i = 0;
+        for (Entry<String, StateDiff> en : diffs.entrySet()) {
+            String id = en.getKey();
+            StateDiff diff = en.getValue();
+            State state = list.get(i++);
+            if (log.isTraceEnabled()) {
+                log.trace("update " + id + ": " + diff);
+            }
+            doUpdateState(id, state, diff);
+        }
     }
 
     @Override
@@ -151,8 +389,11 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("delete " + ids);
         }
         for (String id : ids) {
-            if (states.remove(id) == null) {
+            State state = states.remove(id);
+            if (state == null) {
                 log.debug("Missing on remove: " + id);
+            } else {
+                unindex(id, state);
             }
         }
     }
@@ -160,15 +401,14 @@ public class MemRepository extends DBSRepositoryBase {
     @Override
     public State readChildState(String parentId, String name,
             Set<String> ignored) {
-        // TODO optimize by maintaining a parent/child index
-        for (State state : states.values()) {
-            if (ignored.contains(state.get(KEY_ID))) {
-                continue;
-            }
-            if (!parentId.equals(state.get(KEY_PARENT_ID))) {
+        for (String id : childIndex.get(childKey(parentId, name))) {
+            if (ignored.contains(id)) {
                 continue;
             }
-            if (!name.equals(state.get(KEY_NAME))) {
+            State state = states.get(id);
+            // recheck in case of concurrent update
+            if (state == null || !parentId.equals(state.get(KEY_PARENT_ID))
+                    || !name.equals(state.get(KEY_NAME))) {
                 continue;
             }
             return state;
@@ -181,11 +421,30 @@ public class MemRepository extends DBSRepositoryBase {
         return readChildState(parentId, name, ignored) != null;
     }
 
+    /**
+     * Gets the candidate states for a query on key = value, using an index if
+     * available.
+     */
+    protected Iterable<State> getCandidateStates(String key, Object value) {
+        MemIndex index = valueIndexes.get(key);
+        if (index == null) {
+            return states.values();
+        }
+        List<State> list = new ArrayList<>();
+        for (String id : index.get(value)) {
+            State state = states.get(id);
+            if (state != null) {
+                list.add(state);
+            }
+        }
+        return list;
+    }
+
     @Override
     public List<State> queryKeyValue(String key, String value,
             Set<String> ignored) {
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -202,7 +461,21 @@ public class MemRepository extends DBSRepositoryBase {
     public void queryKeyValueArray(String key, Object value, Set<String> ids,
             Map<String, String> proxyTargets,
             Map<String, Object[]> targetProxies) {
-        STATE: for (State state : states.values()) {
+        Iterable<State> candidates;
+        MemIndex index = arrayIndexes.get(key);
+        if (index == null) {
+            candidates = states.values();
+        } else {
+            List<State> list = new ArrayList<>();
+            for (String id : index.get(value)) {
+                State state = states.get(id);
+                if (state != null) {
+                    list.add(state);
+                }
+            }
+            candidates = list;
+        }
+        STATE: for (State state : candidates) {
             Object[] array = (Object[]) state.get(key);
             String id = (String) state.get(KEY_ID);
             if (array != null) {
@@ -230,7 +503,7 @@ public class MemRepository extends DBSRepositoryBase {
     @Override
     public boolean queryKeyValuePresence(String key, String value,
             Set<String> ignored) {
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -247,22 +520,61 @@ public class MemRepository extends DBSRepositoryBase {
             DBSExpressionEvaluator evaluator, OrderByClause orderByClause,
             int limit, int offset, int countUpTo, boolean deepCopy,
             boolean fulltextScore) {
-        List<State> maps = new ArrayList<>();
-        for (State state : states.values()) {
-            if (evaluator.matches(state)) {
-                if (deepCopy) {
-                    state = StateHelper.deepCopy(state);
+        // number of matches to keep, 0 to keep them all
+        int keep = limit == 0 ? 0 : offset + limit;
+        if (keep < 0) {
+            // overflow
+            keep = 0;
+        }
+        // number of matches after which we can stop, -1 to never stop
+        int stopAfter;
+        if (orderByClause != null || keep == 0 || countUpTo == -1) {
+            stopAfter = -1;
+        } else if (countUpTo == 0) {
+            stopAfter = keep;
+        } else {
+            stopAfter = Math.max(keep, countUpTo + 1);
+        }
+        Comparator<State> comparator = orderByClause == null ? null
+                : new OrderByComparator(orderByClause, evaluator);
+        // with ORDER BY + LIMIT, only keep the top matches in a bounded heap
+        // whose head is the worst match kept so far
+        PriorityQueue<State> heap = null;
+        Collection<State> matches;
+        if (comparator != null && keep != 0) {
+            heap = new PriorityQueue<>(Math.min(keep, 1000) + 1,
+                    Collections.reverseOrder(comparator));
+            matches = heap;
+        } else {
+            matches = new ArrayList<>();
+        }
+        int count = 0;
+        for (State state : getCandidateStates(expression, evaluator)) {
+            if (!evaluator.matches(state)) {
+                continue;
+            }
+            count++;
+            if (heap != null) {
+                if (heap.size() < keep) {
+                    heap.add(state);
+                } else if (comparator.compare(state, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(state);
                 }
-                maps.add(state);
+            } else if (keep == 0 || matches.size() < keep) {
+                matches.add(state);
+            }
+            if (count == stopAfter) {
+                break;
             }
         }
+        List<State> maps = new ArrayList<>(matches);
         // ORDER BY
-        if (orderByClause != null) {
-            Collections.sort(maps, new OrderByComparator(orderByClause,
-                    evaluator));
+        if (comparator != null) {
+            Collections.sort(maps, comparator);
         }
         // LIMIT / OFFSET
-        int totalSize = maps.size();
+        int totalSize = count;
         if (countUpTo == -1) {
             // count full size
         } else if (countUpTo == 0) {
@@ -284,9 +596,162 @@ public class MemRepository extends DBSRepositoryBase {
         }
         // TODO DISTINCT
 
+        if (deepCopy) {
+            for (ListIterator<State> it = maps.listIterator(); it.hasNext();) {
+                it.set(StateHelper.deepCopy(it.next()));
+            }
+        }
         return new PartialList<>(maps, totalSize);
     }
 
+    /**
+     * Gets the candidate states for a query, using the most selective index
+     * usable by one of the toplevel ANDed operands of the expression. Falls
+     * back to all the states if no index can be used.
+     * <p>
+     * The candidates must still be checked against the full expression.
+     *
+     * @since 7.1
+     */
+    protected Iterable<State> getCandidateStates(Expression expression,
+            DBSExpressionEvaluator evaluator) {
+        List<Operand> operands;
+        if (expression instanceof MultiExpression) {
+            operands = ((MultiExpression) expression).values;
+        } else {
+            operands = Collections.<Operand> singletonList(expression);
+        }
+        List<Set<String>> best = null;
+        int bestSize = Integer.MAX_VALUE;
+        for (Operand operand : operands) {
+            List<Set<String>> idSets = getIndexedIds(operand, evaluator);
+            if (idSets == null) {
+                continue;
+            }
+            int size = 0;
+            for (Set<String> ids : idSets) {
+                size += ids.size();
+            }
+            if (size < bestSize) {
+                best = idSets;
+                bestSize = size;
+            }
+        }
+        if (best == null) {
+            return states.values();
+        }
+        // union of the sets, with deduplication if there are several
+        Collection<String> ids;
+        if (best.size() == 1) {
+            ids = best.get(0);
+        } else {
+            ids = new HashSet<>(bestSize);
+            for (Set<String> set : best) {
+                ids.addAll(set);
+            }
+        }
+        List<State> list = new ArrayList<>(bestSize);
+        for (String id : ids) {
+            State state = states.get(id);
+            if (state != null) {
+                list.add(state);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Finds the ids matching an operand of the query using an index, as a
+     * union of sets.
+     *
+     * @return the sets of ids, or {@code null} if no index can be used
+     * @since 7.1
+     */
+    protected List<Set<String>> getIndexedIds(Operand operand,
+            DBSExpressionEvaluator evaluator) {
+        if (!(operand instanceof Expression)
+                || operand instanceof MultiExpression) {
+            return null;
+        }
+        Expression expr = (Expression) operand;
+        if (!(expr.lvalue instanceof Reference)) {
+            return null;
+        }
+        String name = ((Reference) expr.lvalue).name;
+        Operator op = expr.operator;
+        Operand rvalue = expr.rvalue;
+        List<String> values;
+        if (op == Operator.EQ && rvalue instanceof StringLiteral) {
+            values = Collections.singletonList(((StringLiteral) rvalue).value);
+        } else if (op == Operator.IN && rvalue instanceof LiteralList) {
+            values = new ArrayList<>();
+            for (Literal literal : (LiteralList) rvalue) {
+                if (!(literal instanceof StringLiteral)) {
+                    return null;
+                }
+                values.add(((StringLiteral) literal).value);
+            }
+        } else if (op == Operator.STARTSWITH && NXQL.ECM_PATH.equals(name)
+                && rvalue instanceof StringLiteral) {
+            String path = ((StringLiteral) rvalue).value;
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            String id = evaluator.pathResolver.getIdForPath(path);
+            if (id == null) {
+                return Collections.singletonList(Collections.<String> emptySet());
+            }
+            return Collections.singletonList(arrayIndexes.get(KEY_ANCESTOR_IDS).get(
+                    id));
+        } else {
+            return null;
+        }
+        MemIndex index;
+        if (NXQL.ECM_UUID.equals(name)) {
+            return Collections.<Set<String>> singletonList(new HashSet<String>(values));
+        } else if (NXQL.ECM_PATH.equals(name)) {
+            if (op != Operator.EQ) {
+                return null;
+            }
+            String path = values.get(0);
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            String id = evaluator.pathResolver.getIdForPath(path);
+            Set<String> ids = id == null ? Collections.<String> emptySet()
+                    : Collections.singleton(id);
+            return Collections.singletonList(ids);
+        } else if (NXQL.ECM_ANCESTORID.equals(name)) {
+            if (op != Operator.EQ) {
+                return null;
+            }
+            index = arrayIndexes.get(KEY_ANCESTOR_IDS);
+        } else if (name.startsWith(NXQL.ECM_PREFIX)) {
+            String key;
+            try {
+                key = DBSSession.convToInternal(name);
+            } catch (RuntimeException e) {
+                // unknown or unsupported, let the evaluator deal with it
+                return null;
+            }
+            if (DBSSession.isArray(key) || DBSSession.isBoolean(key)) {
+                return null;
+            }
+            index = valueIndexes.get(key);
+        } else {
+            // only exact prefixed names can use an index
+            index = valueIndexes.get(name);
+        }
+        if (index == null) {
+            return null;
+        }
+        List<Set<String>> idSets = new ArrayList<>(values.size());
+        for (String value : values) {
+            idSets.add(index.get(value));
+        }
+        return idSets;
+    }
+
     /**
      * Applies a {@link StateDiff} in-place onto a base {@link State}.
      * <p>
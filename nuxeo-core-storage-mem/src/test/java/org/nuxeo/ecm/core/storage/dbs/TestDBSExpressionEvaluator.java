@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+/**
+ * Checks that the compiled evaluation of an expression gives the same result
+ * as walking it, including errors.
+ */
+public class TestDBSExpressionEvaluator extends NXRuntimeTestCase {
+
+    protected List<State> states;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        deployBundle("org.nuxeo.ecm.core.schema");
+        deployBundle("org.nuxeo.ecm.core.api");
+        deployBundle("org.nuxeo.ecm.core");
+        deployContrib("org.nuxeo.ecm.core.storage.mem.tests",
+                "OSGI-INF/test-repo-types.xml");
+
+        states = new ArrayList<State>();
+        State state = new State();
+        state.put("dc:title", "foo");
+        state.put("dc:subjects", new String[] { "a", "b" });
+        State complex = new State();
+        complex.put("string", "bar");
+        state.put("tp:complex", complex);
+        states.add(state);
+
+        state = new State();
+        state.put("dc:title", "Foo");
+        state.put("dc:description", "x");
+        state.put("dc:subjects", new String[0]);
+        state.put("ecm:isProxy", Boolean.TRUE);
+        states.add(state);
+
+        // no values at all
+        states.add(new State());
+    }
+
+    protected static Expression parse(String where) {
+        return SQLQueryParser.parse("SELECT * FROM Document WHERE " + where).where.predicate;
+    }
+
+    protected DBSExpressionEvaluator newEvaluator(Expression expr) {
+        return new DBSExpressionEvaluator(null, expr, null);
+    }
+
+    protected void check(String where) {
+        check(where, parse(where));
+    }
+
+    protected void check(String message, Expression expr) {
+        for (int i = 0; i < states.size(); i++) {
+            State state = states.get(i);
+            String msg = message + " (state " + i + ")";
+
+            DBSExpressionEvaluator walking = newEvaluator(expr);
+            walking.state = state;
+            Object walked = null;
+            RuntimeException walkError = null;
+            try {
+                walked = walking.walkExpression(expr);
+            } catch (RuntimeException e) {
+                walkError = e;
+            }
+
+            DBSExpressionEvaluator compiling = newEvaluator(expr);
+            Object compiled = null;
+            RuntimeException compileError = null;
+            try {
+                compiled = compiling.compile(expr).eval(state);
+            } catch (RuntimeException e) {
+                compileError = e;
+            }
+
+            assertEquals(msg, walkError == null ? null : walkError.toString(),
+                    compileError == null ? null : compileError.toString());
+            assertEquals(msg, walked, compiled);
+        }
+    }
+
+    @Test
+    public void testComparison() {
+        check("dc:title = 'foo'");
+        check("dc:title <> 'foo'");
+        check("dc:title < 'g'");
+        check("dc:title >= 'g'");
+        check("dc:description > 'a'");
+        check("dc:description <= 'a'");
+    }
+
+    @Test
+    public void testTernaryNull() {
+        check("dc:description = 'x'");
+        check("dc:description <> 'x'");
+        check("dc:title = 'foo' AND dc:description = 'x'");
+        check("dc:description = 'x' AND dc:title = 'foo'");
+        check("dc:description = 'x' AND dc:title = 'bar'");
+        check("dc:title = 'foo' OR dc:description = 'x'");
+        check("dc:description = 'x' OR dc:title = 'foo'");
+        check("dc:description = 'x' OR dc:title = 'bar'");
+        check("NOT dc:description = 'x'");
+    }
+
+    @Test
+    public void testAndOrNot() {
+        check("dc:title = 'foo' AND dc:title <> 'bar'");
+        check("dc:title = 'bar' AND dc:title = 'foo'");
+        check("dc:title = 'bar' OR dc:title = 'foo'");
+        check("dc:title = 'foo' OR dc:title = 'bar'");
+        check("NOT dc:title = 'foo'");
+        check("NOT (dc:title = 'foo' OR dc:description = 'x')");
+        check("(dc:title = 'foo' OR dc:title = 'Foo') AND NOT dc:description = 'x'");
+    }
+
+    @Test
+    public void testMultiAnd() {
+        List<Operand> values = Arrays.<Operand> asList(parse("dc:title = 'foo'"),
+                parse("dc:description = 'x'"), parse("dc:title <> 'bar'"));
+        check("multi", new MultiExpression(Operator.AND, values));
+        values = Arrays.<Operand> asList(parse("dc:title = 'bar'"),
+                parse("dc:description = 'x'"), parse("foo:bar = 1"));
+        check("multi unknown", new MultiExpression(Operator.AND, values));
+    }
+
+    @Test
+    public void testIn() {
+        check("dc:title IN ('foo', 'bar')");
+        check("dc:title NOT IN ('foo', 'bar')");
+        check("dc:description IN ('x', 'y')");
+        check("dc:description NOT IN ('x', 'y')");
+    }
+
+    @Test
+    public void testLike() {
+        check("dc:title LIKE 'f%'");
+        check("dc:title NOT LIKE 'f%'");
+        check("dc:title ILIKE 'F%'");
+        check("dc:title NOT ILIKE 'F%'");
+        check("dc:title LIKE 'f_o'");
+        check("dc:description LIKE 'x%'");
+        check("dc:description NOT LIKE 'x%'");
+    }
+
+    @Test
+    public void testIsNull() {
+        check("dc:title IS NULL");
+        check("dc:title IS NOT NULL");
+        check("dc:description IS NULL");
+        check("dc:subjects IS NULL");
+        check("tp:complex/string IS NULL");
+        check("tp:complex/string IS NOT NULL");
+    }
+
+    @Test
+    public void testListProperties() {
+        check("dc:subjects = 'a'");
+        check("dc:subjects <> 'a'");
+        check("dc:subjects IN ('b', 'c')");
+        check("dc:subjects NOT IN ('b', 'c')");
+        check("dc:subjects LIKE 'a%'");
+        check("dc:subjects NOT LIKE 'a%'");
+        check("dc:subjects ILIKE 'A%'");
+    }
+
+    @Test
+    public void testComplexAndBoolean() {
+        check("tp:complex/string = 'bar'");
+        check("tp:complex/string LIKE 'b%'");
+        check("ecm:isProxy = 0");
+        check("ecm:isProxy = 1");
+    }
+
+    @Test
+    public void testUnknownProperty() {
+        check("foo:bar = 1");
+        check("foo:bar IS NULL");
+        check("foo:bar IN (1, 2)");
+        check("foo:bar LIKE 'x%'");
+        check("NOT foo:bar = 1");
+        check("dc:title = 'bar' AND foo:bar = 1");
+        check("dc:title = 'foo' OR foo:bar = 1");
+        check("foo:bar = 1 OR dc:title = 'foo'");
+    }
+
+    @Test
+    public void testUnknownPropertyNotSkipped() {
+        // the right side of an OR whose left side is true is still evaluated
+        Expression expr = parse("dc:title = 'foo' OR foo:bar = 1");
+        try {
+            newEvaluator(expr).compile(expr).eval(states.get(0));
+            fail("should fail on unknown property");
+        } catch (RuntimeException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+}
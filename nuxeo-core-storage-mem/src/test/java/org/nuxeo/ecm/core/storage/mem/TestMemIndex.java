@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class TestMemIndex {
+
+    @Test
+    public void testIndex() {
+        MemIndex index = new MemIndex();
+        assertTrue(index.get("foo").isEmpty());
+
+        index.add("foo", "id1");
+        index.add("foo", "id2");
+        index.add("bar", "id3");
+        assertEquals(new HashSet<>(Arrays.asList("id1", "id2")),
+                index.get("foo"));
+        assertEquals(new HashSet<>(Arrays.asList("id3")), index.get("bar"));
+
+        index.remove("foo", "id1");
+        assertEquals(new HashSet<>(Arrays.asList("id2")), index.get("foo"));
+        index.remove("foo", "id2");
+        assertTrue(index.get("foo").isEmpty());
+        assertTrue(!index.index.containsKey("foo"));
+
+        // removing a missing id is a no-op
+        index.remove("gee", "id4");
+        assertTrue(index.get("gee").isEmpty());
+
+        index.clear();
+        assertTrue(index.get("bar").isEmpty());
+    }
+
+}
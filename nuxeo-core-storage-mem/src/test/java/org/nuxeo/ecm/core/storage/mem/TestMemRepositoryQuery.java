@@ -763,6 +763,63 @@ public class TestMemRepositoryQuery extends MemRepositoryTestCase {
         assertTrue(dml.totalSize() < 0);
     }
 
+    @Test
+    public void testQueryIndexedCandidates() throws Exception {
+        DocumentModelList dml;
+        createDocs();
+        DocumentModel folder1 = session.getDocument(new PathRef("/testfolder1"));
+        DocumentModel folder2 = session.getDocument(new PathRef("/testfolder2"));
+
+        String sql = String.format(
+                "SELECT * FROM Document WHERE ecm:parentId = '%s' ORDER BY ecm:name DESC",
+                folder1.getId());
+        dml = session.query(sql);
+        assertEquals(3, dml.size());
+        assertEquals("testfile3", dml.get(0).getName());
+        assertEquals("testfile1", dml.get(2).getName());
+
+        // top of the ordered list with a limit
+        dml = session.query(sql, null, 2, 0, true);
+        assertEquals(2, dml.size());
+        assertEquals(3, dml.totalSize());
+        assertEquals("testfile3", dml.get(0).getName());
+        assertEquals("testfile2", dml.get(1).getName());
+
+        dml = session.query(sql, null, 2, 2, true);
+        assertEquals(1, dml.size());
+        assertEquals(3, dml.totalSize());
+        assertEquals("testfile1", dml.get(0).getName());
+
+        sql = String.format(
+                "SELECT * FROM Document WHERE ecm:ancestorId = '%s' ORDER BY ecm:name",
+                folder2.getId());
+        dml = session.query(sql);
+        assertEquals(2, dml.size());
+        assertEquals("testfile4", dml.get(0).getName());
+        assertEquals("testfolder3", dml.get(1).getName());
+
+        sql = "SELECT * FROM File WHERE ecm:path STARTSWITH '/testfolder2' ORDER BY ecm:name";
+        dml = session.query(sql);
+        assertEquals(1, dml.size());
+        assertEquals("testfile4", dml.get(0).getName());
+
+        sql = "SELECT * FROM Document WHERE ecm:path STARTSWITH '/nosuchfolder'";
+        dml = session.query(sql);
+        assertEquals(0, dml.size());
+
+        // moved document is found through its new parent
+        session.move(new PathRef("/testfolder1/testfile1"), folder2.getRef(),
+                null);
+        session.save();
+        sql = String.format(
+                "SELECT * FROM Document WHERE ecm:parentId = '%s' ORDER BY ecm:name",
+                folder2.getId());
+        dml = session.query(sql);
+        assertEquals(2, dml.size());
+        assertEquals("testfile1", dml.get(0).getName());
+        assertEquals("testfolder3", dml.get(1).getName());
+    }
+
     @Test
     public void testQueryConstantsLeft() throws Exception {
         String sql;
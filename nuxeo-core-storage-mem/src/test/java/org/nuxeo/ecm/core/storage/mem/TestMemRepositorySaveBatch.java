@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.ConcurrentUpdateDocumentException;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentException;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.storage.dbs.DBSSaveBatchTestCase;
+
+/**
+ * Saves with more documents than the save batch size, and batch validation
+ * of the memory repository.
+ */
+public class TestMemRepositorySaveBatch extends DBSSaveBatchTestCase {
+
+    protected final MemRepositoryTestCase testCase = new MemRepositoryTestCase();
+
+    @Override
+    protected void setUpRepository() throws Exception {
+        testCase.setUp();
+    }
+
+    @Override
+    protected void tearDownRepository() throws Exception {
+        testCase.tearDown();
+    }
+
+    @Override
+    protected CoreSession getSession() {
+        return testCase.session;
+    }
+
+    @Override
+    protected void reopenSession() throws Exception {
+        testCase.closeSession();
+        testCase.openSession();
+    }
+
+    protected static State newState(String id, String title) {
+        State state = new State();
+        state.put(KEY_ID, id);
+        state.put("dc:title", title);
+        return state;
+    }
+
+    @Test
+    public void testCreateStatesValidatesWholeBatch() throws Exception {
+        MemRepository repository = new MemRepository("batchtest");
+        try {
+            repository.createState(newState("id1", "foo"));
+            List<State> states = Arrays.asList(newState("id2", "bar"),
+                    newState("id1", "gee"));
+            try {
+                repository.createStates(states);
+                fail("should fail on existing id");
+            } catch (DocumentException e) {
+                // ok
+            }
+            // nothing created
+            assertNull(repository.readState("id2"));
+            assertEquals("foo", repository.readState("id1").get("dc:title"));
+
+            // duplicate ids in the batch
+            states = Arrays.asList(newState("id3", "bar"), newState("id3",
+                    "gee"));
+            try {
+                repository.createStates(states);
+                fail("should fail on duplicate id");
+            } catch (DocumentException e) {
+                // ok
+            }
+            assertNull(repository.readState("id3"));
+
+            List<State> ok = new ArrayList<>();
+            for (int i = 10; i < 20; i++) {
+                ok.add(newState("id" + i, "title" + i));
+            }
+            repository.createStates(ok);
+            for (int i = 10; i < 20; i++) {
+                assertEquals("title" + i,
+                        repository.readState("id" + i).get("dc:title"));
+            }
+        } finally {
+            repository.shutdown();
+        }
+    }
+
+    @Test
+    public void testUpdateStatesValidatesWholeBatch() throws Exception {
+        MemRepository repository = new MemRepository("batchtest");
+        try {
+            repository.createState(newState("id1", "foo"));
+            repository.createState(newState("id2", "bar"));
+            Map<String, StateDiff> diffs = new LinkedHashMap<>();
+            StateDiff diff = new StateDiff();
+            diff.put("dc:title", "changed");
+            diffs.put("id1", diff);
+            diffs.put("missing", diff);
+            try {
+                repository.updateStates(diffs);
+                fail("should fail on missing document");
+            } catch (ConcurrentUpdateDocumentException e) {
+                // ok
+            }
+            // nothing updated
+            assertEquals("foo", repository.readState("id1").get("dc:title"));
+
+            diffs.remove("missing");
+            diffs.put("id2", diff);
+            repository.updateStates(diffs);
+            assertEquals("changed",
+                    repository.readState("id1").get("dc:title"));
+            assertEquals("changed",
+                    repository.readState("id2").get("dc:title"));
+        } finally {
+            repository.shutdown();
+        }
+    }
+
+}
@@ -55,6 +55,7 @@ import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
@@ -459,6 +460,19 @@ public class MongoDBRepository extends DBSRepositoryBase {
         // throw new DocumentException("Already exists: " + id);
     }
 
+    @Override
+    public void createStates(List<State> states) throws DocumentException {
+        List<DBObject> obs = new ArrayList<>(states.size());
+        for (State state : states) {
+            obs.add(stateToBson(state));
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("MongoDB: CREATE " + obs);
+        }
+        coll.insert(obs);
+        // TODO dupe exception
+    }
+
     @Override
     public State readState(String id) {
         DBObject query = new BasicDBObject(KEY_ID, id);
@@ -485,6 +499,30 @@ public class MongoDBRepository extends DBSRepositoryBase {
         }
     }
 
+    @Override
+    public void updateStates(Map<String, StateDiff> diffs)
+            throws DocumentException {
+        // ordered, as several updates for the same document must be applied
+        // in sequence
+        BulkWriteOperation bulk = coll.initializeOrderedBulkOperation();
+        boolean empty = true;
+        for (Entry<String, StateDiff> en : diffs.entrySet()) {
+            String id = en.getKey();
+            DBObject query = new BasicDBObject(KEY_ID, id);
+            for (DBObject update : diffToBson(en.getValue())) {
+                if (log.isTraceEnabled()) {
+                    log.trace("MongoDB: UPDATE " + id + ": " + update);
+                }
+                bulk.find(query).updateOne(update);
+                empty = false;
+            }
+        }
+        if (!empty) {
+            bulk.execute();
+            // TODO dupe exception
+        }
+    }
+
     @Override
     public void deleteStates(Set<String> ids) throws DocumentException {
         DBObject query = new BasicDBObject(KEY_ID, new BasicDBObject(
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mongodb;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.storage.dbs.DBSSaveBatchTestCase;
+
+/**
+ * Saves with more documents than the save batch size, done with bulk
+ * writes.
+ */
+public class TestMongoDBRepositorySaveBatch extends DBSSaveBatchTestCase {
+
+    protected final MongoDBRepositoryTestCase testCase = new MongoDBRepositoryTestCase();
+
+    @Override
+    protected void setUpRepository() throws Exception {
+        testCase.setUp();
+    }
+
+    @Override
+    protected void tearDownRepository() throws Exception {
+        testCase.tearDown();
+    }
+
+    @Override
+    protected CoreSession getSession() {
+        return testCase.session;
+    }
+
+    @Override
+    protected void reopenSession() throws Exception {
+        testCase.closeSession();
+        testCase.openSession();
+    }
+
+}
@@ -14,6 +14,7 @@ package org.nuxeo.ecm.core.storage.sql.ra;
 
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -205,6 +206,12 @@ public class ConnectionImpl implements Session {
         return getSession().getNodesByIds(ids);
     }
 
+    @Override
+    public void prefetchSchemas(List<Serializable> ids,
+            Collection<String> schemas) throws StorageException {
+        getSession().prefetchSchemas(ids, schemas);
+    }
+
     @Override
     public Node getNodeByPath(String path, Node node) throws StorageException {
         return getSession().getNodeByPath(path, node);
@@ -4050,6 +4050,62 @@ public class TestSQLBackend extends SQLBackendTestCase {
         }
     }
 
+    protected static QueryFilter keysetFilter(long limit,
+            Serializable... keysetValues) {
+        return new QueryFilter(null, null, new String[0], null,
+                Collections.<SQLQuery.Transformer> emptyList(), limit, 0,
+                keysetValues);
+    }
+
+    protected static List<String> getNames(Session session,
+            PartialList<Serializable> res) throws Exception {
+        List<String> names = new ArrayList<String>(res.list.size());
+        for (Serializable id : res.list) {
+            names.add(session.getNodeById(id).getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testQueryKeysetPagination() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        for (int i = 1; i <= 5; i++) {
+            Node node = session.addChildNode(root, "doc" + i, null,
+                    "TestDoc", false);
+            node.setSimpleProperty("tst:title", "t" + (i % 2));
+        }
+        session.save();
+        PartialList<Serializable> res;
+
+        String nxql = "SELECT * FROM TestDoc ORDER BY ecm:name";
+        res = session.query(nxql, keysetFilter(2), false);
+        assertEquals(Arrays.asList("doc1", "doc2"), getNames(session, res));
+        res = session.query(nxql, keysetFilter(2, "doc2"), false);
+        assertEquals(Arrays.asList("doc3", "doc4"), getNames(session, res));
+        res = session.query(nxql, keysetFilter(2, "doc4"), false);
+        assertEquals(Arrays.asList("doc5"), getNames(session, res));
+
+        nxql = "SELECT * FROM TestDoc ORDER BY ecm:name DESC";
+        res = session.query(nxql, keysetFilter(2, "doc4"), false);
+        assertEquals(Arrays.asList("doc3", "doc2"), getNames(session, res));
+
+        // mixed directions, with ties on the first key
+        nxql = "SELECT * FROM TestDoc ORDER BY tst:title DESC, ecm:name";
+        res = session.query(nxql, keysetFilter(2, "t1", "doc3"), false);
+        assertEquals(Arrays.asList("doc5", "doc2"), getNames(session, res));
+
+        // ORDER BY is mandatory
+        try {
+            session.query("SELECT * FROM TestDoc", keysetFilter(2, "doc2"),
+                    false);
+            fail("Should fail");
+        } catch (StorageException e) {
+            String msg = e.getMessage();
+            assertTrue(msg, msg.contains("requires an ORDER BY"));
+        }
+    }
+
     @Test
     public void testQueryAggregates() throws Exception {
         IterableQueryResult it;
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import org.nuxeo.ecm.core.storage.StorageException;
+
+/**
+ * Transport of invalidations between cluster nodes.
+ * <p>
+ * When configured on a repository (clustering@invalidator), it is used instead
+ * of the database cluster invalidations table: invalidations are pushed to the
+ * other nodes as soon as they are sent, and received without any polling
+ * delay.
+ *
+ * @since 7.1
+ */
+public interface ClusterInvalidator {
+
+    /**
+     * Initializes the invalidator for a cluster node.
+     *
+     * @param nodeId the cluster node id
+     * @param repositoryDescriptor the repository descriptor
+     */
+    void initialize(String nodeId, RepositoryDescriptor repositoryDescriptor)
+            throws StorageException;
+
+    /**
+     * Closes the invalidator and releases its resources.
+     */
+    void close();
+
+    /**
+     * Receives the invalidations pushed by other cluster nodes since the last
+     * call.
+     *
+     * @return the invalidations, or {@code null} if there are none
+     */
+    Invalidations receiveInvalidations() throws StorageException;
+
+    /**
+     * Sends invalidations to the other cluster nodes.
+     *
+     * @param invalidations the invalidations
+     */
+    void sendInvalidations(Invalidations invalidations)
+            throws StorageException;
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-JVM implementation of a {@link ClusterInvalidator}, delivering the
+ * invalidations to the other cluster nodes of the same repository living in
+ * the same JVM.
+ * <p>
+ * Mostly useful for tests.
+ *
+ * @since 7.1
+ */
+public class LocalClusterInvalidator implements ClusterInvalidator {
+
+    /** Repository name -> cluster nodes. */
+    // @GuardedBy("CHANNELS")
+    protected static final Map<String, List<LocalClusterInvalidator>> CHANNELS = new HashMap<String, List<LocalClusterInvalidator>>();
+
+    protected String nodeId;
+
+    protected String channel;
+
+    // @GuardedBy("this")
+    protected Invalidations pending = new Invalidations();
+
+    @Override
+    public void initialize(String nodeId,
+            RepositoryDescriptor repositoryDescriptor) {
+        this.nodeId = nodeId;
+        channel = repositoryDescriptor.name;
+        synchronized (CHANNELS) {
+            List<LocalClusterInvalidator> nodes = CHANNELS.get(channel);
+            if (nodes == null) {
+                nodes = new ArrayList<LocalClusterInvalidator>();
+                CHANNELS.put(channel, nodes);
+            }
+            nodes.add(this);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (CHANNELS) {
+            List<LocalClusterInvalidator> nodes = CHANNELS.get(channel);
+            if (nodes != null) {
+                nodes.remove(this);
+                if (nodes.isEmpty()) {
+                    CHANNELS.remove(channel);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized Invalidations receiveInvalidations() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        Invalidations invalidations = pending;
+        pending = new Invalidations();
+        return invalidations;
+    }
+
+    protected synchronized void addInvalidations(Invalidations invalidations) {
+        pending.add(invalidations);
+    }
+
+    @Override
+    public void sendInvalidations(Invalidations invalidations) {
+        List<LocalClusterInvalidator> nodes;
+        synchronized (CHANNELS) {
+            nodes = CHANNELS.get(channel);
+            if (nodes == null) {
+                return;
+            }
+            nodes = new ArrayList<LocalClusterInvalidator>(nodes);
+        }
+        for (LocalClusterInvalidator node : nodes) {
+            if (node != this) {
+                node.addInvalidations(invalidations);
+            }
+        }
+    }
+
+}
@@ -25,6 +25,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -355,6 +357,9 @@ public class Model {
     /** Map of fragment to key to column type. */
     private final Map<String, Map<String, ColumnType>> fragmentKeyTypes;
 
+    /** Map of fragment to root row layout. */
+    private final ConcurrentMap<String, RowLayout> rowLayouts = new ConcurrentHashMap<String, RowLayout>();
+
     /** Map of fragment to keys for binary columns. */
     private final Map<String, List<String>> binaryFragmentKeys;
 
@@ -496,6 +501,12 @@ public class Model {
             inferFulltextInfoByFragment(); // needs mixin schemas
             initFullTextModel();
         }
+        // share the row keys between rows of the same table
+        for (Entry<String, Map<String, ColumnType>> en : fragmentKeyTypes.entrySet()) {
+            if (!isCollectionFragment(en.getKey())) {
+                getRowLayout(en.getKey()).register(en.getValue().keySet());
+            }
+        }
     }
 
     /**
@@ -1102,6 +1113,24 @@ public class Model {
         return fragmentKeyTypes.get(fragmentName);
     }
 
+    /**
+     * Gets the root layout of the rows of a table, from which the layouts of
+     * the rows built the same way are shared.
+     *
+     * @since 7.1
+     */
+    public RowLayout getRowLayout(String tableName) {
+        RowLayout root = rowLayouts.get(tableName);
+        if (root == null) {
+            root = RowLayout.newRoot(tableName);
+            RowLayout previous = rowLayouts.putIfAbsent(tableName, root);
+            if (previous != null) {
+                root = previous;
+            }
+        }
+        return root;
+    }
+
     public Map<String, List<String>> getBinaryPropertyInfos() {
         return binaryFragmentKeys;
     }
@@ -1220,6 +1249,16 @@ public class Model {
         return fragmentNames;
     }
 
+    /**
+     * Gets the fragments holding the simple and collection properties of a
+     * schema, or {@code null} if the schema is unknown.
+     *
+     * @since 7.1
+     */
+    public Set<String> getSchemaFragments(String schemaName) {
+        return schemaFragments.get(schemaName);
+    }
+
     public Set<String> getNoPerDocumentQueryFacets() {
         return noPerDocumentQueryFacets;
     }
@@ -779,7 +779,8 @@ public class PersistenceContext {
                     Row row = new Row(rowId.tableName, rowId.id, empty);
                     return new CollectionFragment(row, State.ABSENT, this);
                 } else {
-                    Row row = new Row(rowId.tableName, rowId.id);
+                    Row row = new Row(
+                            model.getRowLayout(rowId.tableName), rowId.id);
                     return new SimpleFragment(row, State.ABSENT, this);
                 }
             } else {
@@ -1509,7 +1510,8 @@ public class PersistenceContext {
                 verHier.get(Model.MAIN_MINOR_VERSION_KEY));
 
         // create a "version" row for our new version
-        Row row = new Row(Model.VERSION_TABLE_NAME, newId);
+        Row row = new Row(
+                model.getRowLayout(Model.VERSION_TABLE_NAME), newId);
         row.putNew(Model.VERSION_VERSIONABLE_KEY, id);
         row.putNew(Model.VERSION_CREATED_KEY, new GregorianCalendar()); // now
         row.putNew(Model.VERSION_LABEL_KEY, label);
@@ -1562,7 +1564,8 @@ public class PersistenceContext {
         session.flush(); // flush deletes
 
         // copy the version values
-        Row overwriteRow = new Row(Model.HIER_TABLE_NAME, versionableId);
+        Row overwriteRow = new Row(
+                model.getRowLayout(Model.HIER_TABLE_NAME), versionableId);
         SimpleFragment versionHier = version.getHierFragment();
         for (String key : model.getFragmentKeysType(Model.HIER_TABLE_NAME).keySet()) {
             // keys we don't copy from version when restoring
@@ -299,6 +299,15 @@ public class RepositoryDescriptor {
         clusteringDelay = Long.valueOf(delay);
     }
 
+    /**
+     * The transport used to push invalidations to other cluster nodes, or
+     * {@code null} to use the database cluster invalidations table.
+     *
+     * @since 7.1
+     */
+    @XNode("clustering@invalidator")
+    public Class<? extends ClusterInvalidator> clusterInvalidatorClass;
+
     @XNodeList(value = "schema/field", type = ArrayList.class, componentType = FieldDescriptor.class)
     public List<FieldDescriptor> schemaFields = new ArrayList<FieldDescriptor>(0);
 
@@ -435,6 +444,7 @@ public class RepositoryDescriptor {
         idType = other.idType;
         clusteringEnabled = other.clusteringEnabled;
         clusteringDelay = other.clusteringDelay;
+        clusterInvalidatorClass = other.clusterInvalidatorClass;
         fulltextDisabled = other.fulltextDisabled;
         fulltextAnalyzer = other.fulltextAnalyzer;
         fulltextParser = other.fulltextParser;
@@ -501,6 +511,9 @@ public class RepositoryDescriptor {
         if (other.clusteringDelay != null) {
             clusteringDelay = other.clusteringDelay;
         }
+        if (other.clusterInvalidatorClass != null) {
+            clusterInvalidatorClass = other.clusterInvalidatorClass;
+        }
         for (FieldDescriptor of : other.schemaFields) {
             boolean append = true;
             for (FieldDescriptor f : schemaFields) {
@@ -28,6 +28,9 @@ import org.nuxeo.ecm.core.storage.binary.Binary;
  * The id of the row is distinguished internally from other columns. For
  * fragments corresponding to created data, the initial id is a temporary one,
  * and it will be changed after database insert.
+ * <p>
+ * For a single row, the keys are not stored in the row itself but in a
+ * {@link RowLayout} shared by all rows of the table having the same keys.
  */
 public final class Row extends RowId implements Serializable, Cloneable {
 
@@ -46,9 +49,10 @@ public final class Row extends RowId implements Serializable, Cloneable {
     public static final Serializable OPAQUE = OpaqueValue.OPAQUE_VALUE;
 
     /**
-     * The row keys, for single row.
+     * The row keys layout, for single row. Only the first {@link #size} keys
+     * are used by this row.
      */
-    protected String[] keys;
+    protected RowLayout layout;
 
     /**
      * The row values.
@@ -63,7 +67,7 @@ public final class Row extends RowId implements Serializable, Cloneable {
     /** Copy constructor. */
     private Row(Row row) {
         super(row);
-        keys = row.keys == null ? null : row.keys.clone();
+        layout = row.layout;
         values = row.values == null ? null : row.values.clone();
         size = row.size;
     }
@@ -76,10 +80,25 @@ public final class Row extends RowId implements Serializable, Cloneable {
     /**
      * Constructs an empty {@link Row} for the given table with the given id
      * (may be {@code null}).
+     * <p>
+     * Its layout is not shared with other rows, {@link #Row(RowLayout,
+     * Serializable)} should be used when a {@link Model} is available.
      */
     public Row(String tableName, Serializable id) {
-        super(tableName, id);
-        keys = new String[DEFAULT];
+        this(RowLayout.newUnshared(tableName), id);
+    }
+
+    /**
+     * Constructs an empty {@link Row} for the table of the given root layout
+     * with the given id (may be {@code null}).
+     *
+     * @param root the root layout of the table, see
+     *            {@link Model#getRowLayout}
+     * @since 7.1
+     */
+    public Row(RowLayout root, Serializable id) {
+        super(root.getTableName(), id);
+        layout = root;
         values = new Serializable[DEFAULT];
         // size = 0;
     }
@@ -90,8 +109,21 @@ public final class Row extends RowId implements Serializable, Cloneable {
      * @param map the initial data to use
      */
     public Row(String tableName, Map<String, Serializable> map) {
-        super(tableName, null); // id set through map
-        keys = new String[map.size()];
+        this(RowLayout.newUnshared(tableName), map);
+    }
+
+    /**
+     * Constructs a new {@link Row} from a map, for the table of the given root
+     * layout.
+     *
+     * @param root the root layout of the table, see
+     *            {@link Model#getRowLayout}
+     * @param map the initial data to use
+     * @since 7.1
+     */
+    public Row(RowLayout root, Map<String, Serializable> map) {
+        super(root.getTableName(), null); // id set through map
+        layout = root;
         values = new Serializable[map.size()];
         // size = 0;
         for (Entry<String, Serializable> entry : map.entrySet()) {
@@ -107,7 +139,7 @@ public final class Row extends RowId implements Serializable, Cloneable {
     public Row(String tableName, Serializable id, Serializable[] array) {
         super(tableName, id);
         values = array.clone();
-        keys = null;
+        layout = null;
         size = -1;
     }
 
@@ -117,16 +149,13 @@ public final class Row extends RowId implements Serializable, Cloneable {
 
     private void ensureCapacity(int minCapacity) {
         if (minCapacity > values.length) {
-            Serializable[] k = keys;
             Serializable[] d = values;
             int newCapacity = (values.length * 3) / 2 + 1;
             if (newCapacity < minCapacity) {
                 newCapacity = minCapacity;
             }
-            keys = new String[newCapacity];
             values = new Serializable[newCapacity];
             System.arraycopy(d, 0, values, 0, size);
-            System.arraycopy(k, 0, keys, 0, size);
         }
     }
 
@@ -141,30 +170,26 @@ public final class Row extends RowId implements Serializable, Cloneable {
             id = value;
             return;
         }
-        // linear search but the array is small
-        for (int i = 0; i < size; i++) {
-            if (key.equals(keys[i])) {
-                Serializable oldValue = values[i];
-                if (oldValue instanceof Delta) {
-                    Delta oldDelta = (Delta) oldValue;
-                    if (value instanceof Delta) {
-                        if (value != oldDelta) {
-                            // add a delta to another delta
-                            value = oldDelta.add((Delta) value);
-                        }
-                    } else if (oldDelta.getFullValue().equals(value)) {
-                        // don't overwrite a delta with the full value
-                        // that actually comes from it
-                        return;
+        int i = layout.indexOf(key);
+        if (i >= 0 && i < size) {
+            Serializable oldValue = values[i];
+            if (oldValue instanceof Delta) {
+                Delta oldDelta = (Delta) oldValue;
+                if (value instanceof Delta) {
+                    if (value != oldDelta) {
+                        // add a delta to another delta
+                        value = oldDelta.add((Delta) value);
                     }
+                } else if (oldDelta.getFullValue().equals(value)) {
+                    // don't overwrite a delta with the full value
+                    // that actually comes from it
+                    return;
                 }
-                values[i] = value;
-                return;
             }
+            values[i] = value;
+            return;
         }
-        ensureCapacity(size + 1);
-        keys[size] = key;
-        values[size++] = value;
+        putNew(key, value);
     }
 
     /**
@@ -179,7 +204,7 @@ public final class Row extends RowId implements Serializable, Cloneable {
             return;
         }
         ensureCapacity(size + 1);
-        keys[size] = key;
+        layout = layout.with(size, key);
         values[size++] = value;
     }
 
@@ -193,13 +218,17 @@ public final class Row extends RowId implements Serializable, Cloneable {
         if (key.equals(Model.MAIN_KEY)) {
             return id;
         }
-        // linear search but the array is small
-        for (int i = 0; i < size; i++) {
-            if (key.equals(keys[i])) {
-                return values[i];
-            }
-        }
-        return null;
+        int i = layout.indexOf(key);
+        return i >= 0 && i < size ? values[i] : null;
+    }
+
+    /**
+     * Gets the key at the given position, for single row.
+     *
+     * @since 7.1
+     */
+    protected String getKey(int i) {
+        return layout.getKey(i);
     }
 
     /**
@@ -208,7 +237,7 @@ public final class Row extends RowId implements Serializable, Cloneable {
     public List<String> getKeys() {
         List<String> list = new ArrayList<String>(size);
         for (int i = 0; i < size; i++) {
-            list.add(keys[i]);
+            list.add(layout.getKey(i));
         }
         return list;
     }
@@ -239,7 +268,7 @@ public final class Row extends RowId implements Serializable, Cloneable {
                 if (i > 0) {
                     buf.append(", ");
                 }
-                buf.append(keys[i]);
+                buf.append(layout.getKey(i));
                 buf.append('=');
                 printValue(values[i], buf);
             }
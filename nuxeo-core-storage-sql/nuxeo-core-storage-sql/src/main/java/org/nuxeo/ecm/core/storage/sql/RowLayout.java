@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The ordered keys of a single {@link Row}, shared between all the rows of a
+ * table having their keys in the same order.
+ * <p>
+ * A row only stores its values, the value at position {@code i} being
+ * associated to the key at position {@code i} of its layout. Layouts are
+ * immutable; adding a key to a row moves it to a derived layout, derived
+ * layouts are cached so that rows built the same way share the same instance.
+ * The root layout of each table is held by the {@link Model}, which registers
+ * the layout of the known columns of the table, the order in which rows are
+ * usually built.
+ * <p>
+ * Once {@link #MAX_TRANSITIONS} derived layouts are cached for a layout, or for
+ * rows not created through a {@link Model} or deserialized, layouts are not
+ * shared anymore: they are then plain per-row key arrays, without index.
+ *
+ * @since 7.1
+ */
+public final class RowLayout implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Maximum number of derived layouts cached for a given layout, to avoid
+     * unbounded growth if rows are built with random key orders.
+     */
+    protected static final int MAX_TRANSITIONS = 32;
+
+    private static final String[] NO_KEYS = new String[0];
+
+    protected final String tableName;
+
+    protected final String[] keys;
+
+    /**
+     * The layout with the last key removed, {@code null} for the root. Lazily
+     * computed for unshared layouts.
+     */
+    protected transient RowLayout parent;
+
+    /**
+     * Key to position, first position wins. {@code null} for unshared
+     * layouts.
+     */
+    protected transient Map<String, Integer> index;
+
+    /** Derived layouts, by added key. {@code null} for unshared layouts. */
+    protected transient ConcurrentMap<String, RowLayout> transitions;
+
+    private RowLayout(String tableName, String[] keys, RowLayout parent,
+            boolean shared) {
+        this.tableName = tableName;
+        this.keys = keys;
+        this.parent = parent;
+        if (shared) {
+            index = new HashMap<String, Integer>(keys.length * 2);
+            for (int i = keys.length - 1; i >= 0; i--) {
+                index.put(keys[i], Integer.valueOf(i));
+            }
+            transitions = new ConcurrentHashMap<>(4);
+        }
+    }
+
+    /**
+     * Creates the empty layout of a table, from which shared layouts derive.
+     */
+    public static RowLayout newRoot(String tableName) {
+        return new RowLayout(tableName, NO_KEYS, null, true);
+    }
+
+    /**
+     * Creates an empty layout whose derived layouts aren't shared.
+     */
+    public static RowLayout newUnshared(String tableName) {
+        return new RowLayout(tableName, NO_KEYS, null, false);
+    }
+
+    /**
+     * Registers the layout having the given keys, so that rows built with
+     * keys in this order share it.
+     *
+     * @param keys the ordered keys, the id key is skipped
+     */
+    public void register(Collection<String> keys) {
+        RowLayout layout = this;
+        for (String key : keys) {
+            if (!key.equals(Model.MAIN_KEY)) {
+                layout = layout.next(key);
+            }
+        }
+    }
+
+    /**
+     * Gets the table name.
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Gets the number of keys.
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Gets the key at the given position.
+     */
+    public String getKey(int i) {
+        return keys[i];
+    }
+
+    /**
+     * Gets the position of a key, or {@code -1} if absent.
+     */
+    public int indexOf(String key) {
+        if (index == null) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        Integer i = index.get(key);
+        return i == null ? -1 : i.intValue();
+    }
+
+    /**
+     * Gets a layout whose first {@code size} keys are those of this layout,
+     * followed by the given key.
+     */
+    public RowLayout with(int size, String key) {
+        if (size < keys.length && key.equals(keys[size])) {
+            return this;
+        }
+        RowLayout layout = this;
+        while (layout.keys.length > size) {
+            layout = layout.getParent();
+        }
+        return layout.next(key);
+    }
+
+    protected RowLayout getParent() {
+        if (parent == null && keys.length > 0) {
+            // unshared, benign race
+            parent = new RowLayout(tableName, Arrays.copyOf(keys,
+                    keys.length - 1), null, false);
+        }
+        return parent;
+    }
+
+    /**
+     * Gets the layout having this layout's keys followed by the given key.
+     */
+    protected RowLayout next(String key) {
+        RowLayout layout = transitions == null ? null : transitions.get(key);
+        if (layout == null) {
+            String[] newKeys = Arrays.copyOf(keys, keys.length + 1);
+            newKeys[keys.length] = key;
+            if (transitions != null && transitions.size() < MAX_TRANSITIONS) {
+                layout = new RowLayout(tableName, newKeys, this, true);
+                RowLayout previous = transitions.putIfAbsent(key, layout);
+                if (previous != null) {
+                    layout = previous;
+                }
+            } else {
+                // don't keep a chain of unshared layouts alive
+                layout = new RowLayout(tableName, newKeys,
+                        isShared() ? this : null, false);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Checks if this layout is shared between rows.
+     */
+    protected boolean isShared() {
+        return index != null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append(getClass().getSimpleName());
+        buf.append('(');
+        buf.append(tableName);
+        for (String key : keys) {
+            buf.append(", ");
+            buf.append(key);
+        }
+        buf.append(')');
+        return buf.toString();
+    }
+
+}
@@ -14,6 +14,7 @@ package org.nuxeo.ecm.core.storage.sql;
 
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -105,6 +106,21 @@ public interface Session extends Connection {
      */
     List<Node> getNodesByIds(List<Serializable> ids) throws StorageException;
 
+    /**
+     * Fetches in bulk the fragments holding the given schemas for several
+     * nodes, so that reading their properties afterwards doesn't need one
+     * database access per node.
+     * <p>
+     * Complex properties, which are stored in child nodes, are not fetched.
+     *
+     * @param ids the node ids
+     * @param schemas the schema names
+     * @throws StorageException
+     * @since 7.1
+     */
+    void prefetchSchemas(List<Serializable> ids, Collection<String> schemas)
+            throws StorageException;
+
     /**
      * Gets a node given its absolute path, or given an existing node and a
      * relative path.
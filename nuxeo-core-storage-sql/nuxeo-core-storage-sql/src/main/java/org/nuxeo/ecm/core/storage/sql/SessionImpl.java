@@ -928,6 +928,28 @@ public class SessionImpl implements Session, XAResource {
         return getNodesByIds(ids, true);
     }
 
+    @Override
+    public void prefetchSchemas(List<Serializable> ids,
+            Collection<String> schemas) throws StorageException {
+        checkLive();
+        Set<String> fragmentNames = new HashSet<String>();
+        for (String schema : schemas) {
+            Set<String> fragments = model.getSchemaFragments(schema);
+            if (fragments != null) {
+                fragmentNames.addAll(fragments);
+            }
+        }
+        List<RowId> rowIds = new ArrayList<RowId>(fragmentNames.size()
+                * ids.size());
+        for (String fragmentName : fragmentNames) {
+            for (Serializable id : ids) {
+                rowIds.add(new RowId(fragmentName, id));
+            }
+        }
+        // the fetched fragments are kept in the context for later reads
+        context.getMulti(rowIds, true);
+    }
+
     @Override
     public Node getParentNode(Node node) throws StorageException {
         checkLive();
@@ -1095,7 +1117,8 @@ public class SessionImpl implements Session, XAResource {
             throws StorageException {
         requireReadAclsUpdate();
         // main info
-        Row hierRow = new Row(Model.HIER_TABLE_NAME, id);
+        Row hierRow = new Row(
+                model.getRowLayout(Model.HIER_TABLE_NAME), id);
         hierRow.putNew(Model.HIER_PARENT_KEY, parentId);
         hierRow.putNew(Model.HIER_CHILD_NAME_KEY, name);
         hierRow.putNew(Model.HIER_CHILD_POS_KEY, pos);
@@ -28,7 +28,7 @@ public final class SimpleFragment extends Fragment {
 
     private static final long serialVersionUID = 1L;
 
-    private static final Row UNKNOWN_ROW = new Row(null, (Serializable) null);
+    private static final Row UNKNOWN_ROW = new Row((String) null, (Serializable) null);
 
     public static final SimpleFragment UNKNOWN = new SimpleFragment(
             UNKNOWN_ROW, State.DETACHED, null);
@@ -120,7 +120,7 @@ public final class SimpleFragment extends Fragment {
                 if (keys == null) {
                     keys = new LinkedList<String>();
                 }
-                keys.add(row.keys[i]);
+                keys.add(row.getKey(i));
             }
         }
         return keys == null ? Collections.<String> emptyList() : keys;
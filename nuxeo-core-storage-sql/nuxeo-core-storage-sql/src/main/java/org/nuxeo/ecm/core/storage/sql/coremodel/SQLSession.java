@@ -260,6 +260,25 @@ public class SQLSession implements Session {
         return doc;
     }
 
+    @Override
+    public void prefetchSchemas(List<Document> docs, Collection<String> schemas)
+            throws DocumentException {
+        List<Serializable> ids = new ArrayList<Serializable>(docs.size());
+        for (Document doc : docs) {
+            ids.add(((SQLDocument) doc).getNode().getId());
+            if (doc instanceof SQLDocumentProxy) {
+                // non-proxy schemas are read from the target
+                Document target = ((SQLDocumentProxy) doc).getTargetDocument();
+                ids.add(((SQLDocument) target).getNode().getId());
+            }
+        }
+        try {
+            session.prefetchSchemas(ids, schemas);
+        } catch (StorageException e) {
+            throw new DocumentException(e);
+        }
+    }
+
     @Override
     public Document resolvePath(String path) throws DocumentException {
         if (path.endsWith("/") && path.length() > 1) {
@@ -12,10 +12,13 @@
 
 package org.nuxeo.ecm.core.storage.sql.jdbc;
 
+import java.util.UUID;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.storage.ConnectionResetException;
 import org.nuxeo.ecm.core.storage.StorageException;
+import org.nuxeo.ecm.core.storage.sql.ClusterInvalidator;
 import org.nuxeo.ecm.core.storage.sql.Invalidations;
 import org.nuxeo.ecm.core.storage.sql.InvalidationsPropagator;
 import org.nuxeo.ecm.core.storage.sql.InvalidationsQueue;
@@ -26,6 +29,11 @@ import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
  * Encapsulates cluster node operations.
  * <p>
  * There is one cluster node handler per cluster node (repository).
+ * <p>
+ * Invalidations are exchanged with the other cluster nodes through the
+ * database cluster invalidations table, polled every clustering delay, unless
+ * a {@link ClusterInvalidator} is configured in which case it's used instead
+ * and the table is not used at all.
  */
 public class ClusterNodeHandler {
 
@@ -45,10 +53,29 @@ public class ClusterNodeHandler {
     /** Cluster node id, needed at the Java level for some databases. */
     private String nodeId;
 
+    /**
+     * Transport for the invalidations, or {@code null} to use the database
+     * table.
+     */
+    private final ClusterInvalidator clusterInvalidator;
+
     public ClusterNodeHandler(Mapper clusterNodeMapper,
             RepositoryDescriptor repositoryDescriptor) throws StorageException {
         this.clusterNodeMapper = clusterNodeMapper;
-        nodeId = clusterNodeMapper.createClusterNode();
+        Class<? extends ClusterInvalidator> klass = repositoryDescriptor.clusterInvalidatorClass;
+        if (klass == null) {
+            clusterInvalidator = null;
+            nodeId = clusterNodeMapper.createClusterNode();
+        } else {
+            try {
+                clusterInvalidator = klass.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new StorageException(
+                        "Cannot instantiate cluster invalidator: " + klass, e);
+            }
+            nodeId = UUID.randomUUID().toString();
+            clusterInvalidator.initialize(nodeId, repositoryDescriptor);
+        }
         clusteringDelay = repositoryDescriptor.getClusteringDelay();
         processClusterInvalidationsNext();
         propagator = new InvalidationsPropagator("cluster-" + this);
@@ -60,16 +87,24 @@ public class ClusterNodeHandler {
 
     public void close() throws StorageException {
         synchronized (clusterNodeMapper) {
-            try {
-                clusterNodeMapper.removeClusterNode();
-            } catch (StorageException e) {
-                log.error(e.getMessage(), e);
+            if (clusterInvalidator == null) {
+                try {
+                    clusterNodeMapper.removeClusterNode();
+                } catch (StorageException e) {
+                    log.error(e.getMessage(), e);
+                }
+            } else {
+                clusterInvalidator.close();
             }
             clusterNodeMapper.close();
         }
     }
 
     public void connectionWasReset() throws StorageException {
+        if (clusterInvalidator != null) {
+            // invalidations don't go through the database
+            return;
+        }
         synchronized (clusterNodeMapper) {
             // cannot remove, old connection is gone
             // create should do a cleanup anyway
@@ -113,6 +148,10 @@ public class ClusterNodeHandler {
      */
     public Invalidations receiveClusterInvalidations()
             throws StorageException {
+        if (clusterInvalidator != null) {
+            // pushed, no need to wait for the delay
+            return clusterInvalidator.receiveInvalidations();
+        }
         synchronized (clusterNodeMapper) {
             if (clusterNodeLastInvalidationTimeMillis + clusteringDelay > System.currentTimeMillis()) {
                 // delay hasn't expired
@@ -138,6 +177,10 @@ public class ClusterNodeHandler {
         if (invalidations == null || invalidations.isEmpty()) {
             return;
         }
+        if (clusterInvalidator != null) {
+            clusterInvalidator.sendInvalidations(invalidations);
+            return;
+        }
         synchronized (clusterNodeMapper) {
             clusterNodeMapper.insertClusterInvalidations(invalidations, nodeId);
         }
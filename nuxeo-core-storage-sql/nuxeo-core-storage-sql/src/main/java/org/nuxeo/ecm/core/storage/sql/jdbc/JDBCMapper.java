@@ -48,6 +48,7 @@ import org.nuxeo.common.utils.StringUtils;
 import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.api.Lock;
 import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.QueryParseException;
 import org.nuxeo.ecm.core.storage.ConnectionResetException;
 import org.nuxeo.ecm.core.storage.PartialList;
 import org.nuxeo.ecm.core.storage.StorageException;
@@ -748,16 +749,22 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
             throw new StorageException("No QueryMaker accepts query: "
                     + queryType + ": " + query);
         }
-        QueryMaker.Query q = queryMaker.buildQuery(sqlInfo, model,
-                pathResolver, query, queryFilter);
+        QueryMaker.Query q = sqlInfo.getQueryCache().getQuery(queryMaker,
+                queryType, sqlInfo, model, pathResolver, query, queryFilter);
 
         if (q == null) {
             logger.log("Query cannot return anything due to conflicting clauses");
             return new PartialList<Serializable>(
                     Collections.<Serializable> emptyList(), 0);
         }
+        if (queryFilter.getKeysetValues() != null && !q.keyset) {
+            throw new QueryParseException(
+                    "Keyset pagination not supported by query maker: "
+                            + queryMaker.getName());
+        }
         long limit = queryFilter.getLimit();
-        long offset = queryFilter.getOffset();
+        // with keyset pagination the query itself starts after the last row
+        long offset = q.keyset ? 0 : queryFilter.getOffset();
 
         if (logger.isLogEnabled()) {
             String sql = q.selectInfo.sql;
@@ -1228,7 +1235,8 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         public Lock call() throws StorageException {
             Lock oldLock = getLock(id);
             if (oldLock == null) {
-                Row row = new Row(Model.LOCK_TABLE_NAME, id);
+                Row row = new Row(
+                        model.getRowLayout(Model.LOCK_TABLE_NAME), id);
                 row.put(Model.LOCK_OWNER_KEY, lock.getOwner());
                 row.put(Model.LOCK_CREATED_KEY, lock.getCreated());
                 insertSimpleRows(Model.LOCK_TABLE_NAME,
@@ -361,7 +361,8 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             if (select.whereColumns.size() == 1
                     && select.whereColumns.get(0).getKey() == model.MAIN_KEY
                     && joinMap == null) {
-                Row row = new Row(tableName, criteriaMap);
+                Row row = new Row(model.getRowLayout(tableName),
+                        criteriaMap);
                 if (select.opaqueColumns != null) {
                     for (Column column : select.opaqueColumns) {
                         row.putNew(column.getKey(), Row.OPAQUE);
@@ -431,7 +432,8 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
              * Construct the maps from the result set.
              */
             while (rs.next()) {
-                Row row = new Row(tableName, criteriaMap);
+                Row row = new Row(model.getRowLayout(tableName),
+                        criteriaMap);
                 i = 1;
                 for (Column column : select.whatColumns) {
                     row.put(column.getKey(), column.getFromResultSet(rs, i++));
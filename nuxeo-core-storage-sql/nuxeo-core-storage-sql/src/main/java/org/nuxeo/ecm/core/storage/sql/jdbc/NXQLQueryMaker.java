@@ -316,6 +316,15 @@ public class NXQLQueryMaker implements QueryMaker {
                     + " with more than one fulltext match expression");
         }
 
+        /*
+         * Keyset pagination needs an ORDER BY matching the keyset values.
+         */
+
+        Serializable[] keysetValues = queryFilter.getKeysetValues();
+        if (keysetValues != null) {
+            checkKeysetOrderBy(sqlQuery.orderBy, keysetValues);
+        }
+
         /*
          * Find whether to check proxies, relations.
          */
@@ -391,6 +400,7 @@ public class NXQLQueryMaker implements QueryMaker {
         List<Select> withSelects = new LinkedList<Select>();
         List<String> withSelectsStatements = new LinkedList<String>();
         List<Serializable> withParams = new LinkedList<Serializable>();
+        List<Serializable> keysetParams = null;
         Table hier = database.getTable(model.HIER_TABLE_NAME);
 
         for (DocKind docKind : docKinds) {
@@ -519,6 +529,23 @@ public class NXQLQueryMaker implements QueryMaker {
                 }
             }
 
+            /*
+             * Keyset pagination.
+             */
+
+            if (keysetValues != null) {
+                if (keysetParams == null) {
+                    keysetParams = getKeysetParams(sqlQuery.orderBy,
+                            keysetValues, whereBuilder);
+                }
+                if (!doUnion) {
+                    // ORDER BY was computed in this (only) iteration
+                    whereClauses.add(getKeysetClause(
+                            whereBuilder.orderByExpressions, sqlQuery.orderBy,
+                            keysetParams, whereParams));
+                }
+            }
+
             String selectWhat = StringUtils.join(whatNames, ", ");
             if (!doUnion && distinct) {
                 selectWhat = "DISTINCT " + selectWhat;
@@ -709,6 +736,16 @@ public class NXQLQueryMaker implements QueryMaker {
                         + dialect.closeQuote();
             }
             select.setFrom(selectFrom);
+            if (keysetValues != null) {
+                // the keyset clause applies to the union, through aliases
+                List<String> names = new ArrayList<String>(
+                        keysetValues.length);
+                for (OrderByExpr expr : sqlQuery.orderBy.elements) {
+                    names.add(aliasesByName.get(expr.reference.name));
+                }
+                select.setWhere(getKeysetClause(names, sqlQuery.orderBy,
+                        keysetParams, selectParams));
+            }
         } else {
             // use last (and only) Select in above big loop
             if (!withSelects.isEmpty()) {
@@ -732,9 +769,82 @@ public class NXQLQueryMaker implements QueryMaker {
         q.selectInfo = new SQLInfoSelect(select.getStatement(), whatColumns,
                 mapMaker, null, null);
         q.selectParams = selectParams;
+        q.keyset = keysetValues != null;
         return q;
     }
 
+    protected void checkKeysetOrderBy(OrderByClause orderBy,
+            Serializable[] keysetValues) throws StorageException {
+        if (orderBy == null) {
+            throw new StorageException(
+                    "Keyset pagination requires an ORDER BY clause");
+        }
+        if (orderBy.elements.size() != keysetValues.length) {
+            throw new StorageException("Keyset pagination requires "
+                    + orderBy.elements.size() + " values for ORDER BY "
+                    + orderBy + ", got " + keysetValues.length);
+        }
+        for (OrderByExpr expr : orderBy.elements) {
+            if (NXQL.ECM_FULLTEXT_SCORE.equals(expr.reference.name)) {
+                throw new StorageException("Keyset pagination cannot use "
+                        + NXQL.ECM_FULLTEXT_SCORE);
+            }
+        }
+    }
+
+    /**
+     * Gets the keyset values as query parameters, wrapping ids so that the
+     * mapper can map them to actual database ids.
+     */
+    protected List<Serializable> getKeysetParams(OrderByClause orderBy,
+            Serializable[] keysetValues, WhereBuilder whereBuilder) {
+        List<Serializable> params = new ArrayList<Serializable>(
+                keysetValues.length);
+        for (int i = 0; i < keysetValues.length; i++) {
+            Serializable value = keysetValues[i];
+            String name = orderBy.elements.get(i).reference.name;
+            // only system columns hold ids, and getting their info has no
+            // side effect on the joins
+            if (value instanceof String && name.startsWith(NXQL.ECM_PREFIX)
+                    && whereBuilder.getColumnInfo(name).column.getType().isId()) {
+                value = new WrappedId((String) value);
+            }
+            params.add(value);
+        }
+        return params;
+    }
+
+    /**
+     * Builds the clause restricting the results to the rows strictly after
+     * the keyset values in the ORDER BY order:
+     * <p>
+     * (k1 > ?) OR (k1 = ? AND k2 > ?) OR (k1 = ? AND k2 = ? AND k3 > ?)
+     * <p>
+     * This expanded form is used instead of a row value comparison because
+     * it is portable and allows mixed ASC/DESC orders.
+     */
+    protected String getKeysetClause(List<String> names, OrderByClause orderBy,
+            List<Serializable> keysetParams, List<Serializable> params) {
+        StringBuilder buf = new StringBuilder("(");
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                buf.append(" OR ");
+            }
+            buf.append('(');
+            for (int j = 0; j < i; j++) {
+                buf.append(names.get(j));
+                buf.append(" = ? AND ");
+                params.add(keysetParams.get(j));
+            }
+            buf.append(names.get(i));
+            buf.append(orderBy.elements.get(i).isDescending ? " < ?" : " > ?");
+            params.add(keysetParams.get(i));
+            buf.append(')');
+        }
+        buf.append(')');
+        return buf.toString();
+    }
+
     // overridden by specialized query makers that need to tweak some joins
     protected void addJoin(int kind, String alias, Table table, String column,
             Table contextTable, String contextColumn, String name, int index,
@@ -1482,6 +1592,9 @@ public class NXQLQueryMaker implements QueryMaker {
 
         protected boolean aliasOrderByColumns;
 
+        // ORDER BY column expressions, before aliasing, for keyset pagination
+        public final List<String> orderByExpressions = new LinkedList<String>();
+
         // internal fields
 
         protected boolean allowSubSelect;
@@ -2574,6 +2687,7 @@ public class NXQLQueryMaker implements QueryMaker {
             int length = buf.length();
             // generates needed joins
             super.visitOrderByExpr(node); // visit reference
+            orderByExpressions.add(buf.substring(length));
             if (aliasOrderByColumns) {
                 // but don't use generated values
                 // make the ORDER BY clause uses the aliases instead
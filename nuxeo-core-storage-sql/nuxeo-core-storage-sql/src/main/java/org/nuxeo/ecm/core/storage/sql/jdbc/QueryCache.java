@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.nuxeo.ecm.core.api.impl.FacetFilter;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.storage.StorageException;
+import org.nuxeo.ecm.core.storage.sql.ColumnType.WrappedId;
+import org.nuxeo.ecm.core.storage.sql.Model;
+import org.nuxeo.ecm.core.storage.sql.Session.PathResolver;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryMaker.Query;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLInfo.SQLInfoSelect;
+import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * Bounded LRU cache of the SQL generated for NXQL queries.
+ * <p>
+ * The SQL only depends on the query text and on the shape of the
+ * {@link QueryFilter} (security check or not, permissions, facet filter,
+ * keyset pagination), the principals and keyset values being passed as
+ * parameters. A query is compiled once using placeholder values for these
+ * parameters, and the placeholders are replaced by the actual values for each
+ * execution.
+ * <p>
+ * Queries whose SQL depends on the principal (security policy query
+ * transformers) or on the repository content (resolution of {@code ecm:path})
+ * are not cached.
+ *
+ * @since 7.1
+ */
+public class QueryCache {
+
+    public static final String SIZE_PROP = "org.nuxeo.vcs.query.cache.size";
+
+    public static final String DEFAULT_SIZE = "500";
+
+    /** Placeholder for the principals. */
+    protected static final String PRINCIPALS_SLOT = "\u0000principals";
+
+    /** Placeholder prefix for the keyset values. */
+    protected static final String KEYSET_SLOT = "\u0000keyset";
+
+    /** Marker for queries that cannot be cached. */
+    protected static final CachedQuery UNCACHEABLE = new CachedQuery(null,
+            null, null, false);
+
+    protected final int maxSize;
+
+    protected final Map<Key, CachedQuery> cache;
+
+    protected final Counter hits;
+
+    protected final Counter misses;
+
+    public QueryCache(String repositoryName) {
+        maxSize = Integer.parseInt(Framework.getProperty(SIZE_PROP,
+                DEFAULT_SIZE));
+        cache = new LinkedHashMap<Key, CachedQuery>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Key, CachedQuery> eldest) {
+                return size() > maxSize;
+            }
+        };
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        hits = registry.counter(MetricRegistry.name("nuxeo", "repositories",
+                repositoryName, "queries", "cache", "hits"));
+        misses = registry.counter(MetricRegistry.name("nuxeo",
+                "repositories", repositoryName, "queries", "cache", "misses"));
+    }
+
+    /**
+     * Gets the query for the given NXQL, from the cache if possible.
+     *
+     * @return the query, or {@code null} if the query cannot match
+     */
+    public Query getQuery(QueryMaker queryMaker, String queryType,
+            SQLInfo sqlInfo, Model model, PathResolver pathResolver,
+            String query, QueryFilter queryFilter) throws StorageException {
+        if (maxSize <= 0 || !NXQL.NXQL.equals(queryType)
+                || !queryFilter.getQueryTransformers().isEmpty()) {
+            return queryMaker.buildQuery(sqlInfo, model, pathResolver, query,
+                    queryFilter);
+        }
+        Key key = new Key(queryType, query, queryFilter);
+        CachedQuery cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached == UNCACHEABLE) {
+            return queryMaker.buildQuery(sqlInfo, model, pathResolver, query,
+                    queryFilter);
+        }
+        if (cached != null) {
+            hits.inc();
+            return cached.bind(queryFilter);
+        }
+        misses.inc();
+        // compile with placeholders
+        String[] principalsSlot = queryFilter.getPrincipals() == null ? null
+                : new String[] { PRINCIPALS_SLOT };
+        Serializable[] keysetValues = queryFilter.getKeysetValues();
+        Serializable[] keysetSlots = null;
+        if (keysetValues != null) {
+            keysetSlots = new Serializable[keysetValues.length];
+            for (int i = 0; i < keysetSlots.length; i++) {
+                keysetSlots[i] = KEYSET_SLOT + i;
+            }
+        }
+        QueryFilter template = new QueryFilter(null, principalsSlot,
+                queryFilter.getPermissions(), queryFilter.getFacetFilter(),
+                queryFilter.getQueryTransformers(), 0, 0, keysetSlots);
+        TrackingPathResolver trackingPathResolver = new TrackingPathResolver(
+                pathResolver);
+        Query q = queryMaker.buildQuery(sqlInfo, model, trackingPathResolver,
+                query, template);
+        if (q == null) {
+            cached = new CachedQuery(null, null, null, false);
+        } else {
+            cached = new CachedQuery(q.selectInfo, new ArrayList<Serializable>(
+                    q.selectParams), principalsSlot, q.keyset);
+        }
+        synchronized (cache) {
+            cache.put(key, trackingPathResolver.used ? UNCACHEABLE : cached);
+        }
+        return cached.bind(queryFilter);
+    }
+
+    /**
+     * Clears the cache.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * The cache key: query and the parts of the {@link QueryFilter} that
+     * change the generated SQL.
+     */
+    protected static class Key {
+
+        protected final String queryType;
+
+        protected final String query;
+
+        protected final boolean checkSecurity;
+
+        protected final List<String> permissions;
+
+        protected final FacetFilter facetFilter;
+
+        protected final int keysetSize;
+
+        protected final int hashCode;
+
+        protected Key(String queryType, String query, QueryFilter queryFilter) {
+            this.queryType = queryType;
+            this.query = query;
+            checkSecurity = queryFilter.getPrincipals() != null;
+            String[] perms = queryFilter.getPermissions();
+            permissions = perms == null ? null : Arrays.asList(perms);
+            facetFilter = queryFilter.getFacetFilter();
+            Serializable[] keysetValues = queryFilter.getKeysetValues();
+            keysetSize = keysetValues == null ? -1 : keysetValues.length;
+            int h = 31 * queryType.hashCode() + query.hashCode();
+            h = 31 * h + (checkSecurity ? 1 : 0);
+            h = 31 * h + (permissions == null ? 0 : permissions.hashCode());
+            h = 31 * h + keysetSize;
+            hashCode = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashCode == other.hashCode
+                    && checkSecurity == other.checkSecurity
+                    && keysetSize == other.keysetSize
+                    && queryType.equals(other.queryType)
+                    && query.equals(other.query)
+                    && (permissions == null ? other.permissions == null
+                            : permissions.equals(other.permissions))
+                    && sameFacetFilter(facetFilter, other.facetFilter);
+        }
+
+        protected static boolean sameFacetFilter(FacetFilter a, FacetFilter b) {
+            if (a == b) {
+                return true;
+            }
+            if (a == null || b == null) {
+                return false;
+            }
+            return a.required.equals(b.required)
+                    && a.excluded.equals(b.excluded)
+                    && (a.shortcut == null ? b.shortcut == null
+                            : a.shortcut.equals(b.shortcut));
+        }
+    }
+
+    /**
+     * A compiled query, with placeholders in its parameters.
+     */
+    protected static class CachedQuery {
+
+        protected final SQLInfoSelect selectInfo;
+
+        protected final List<Serializable> params;
+
+        /** The principals placeholder array, recognized by identity. */
+        protected final String[] principalsSlot;
+
+        protected final boolean keyset;
+
+        protected CachedQuery(SQLInfoSelect selectInfo,
+                List<Serializable> params, String[] principalsSlot,
+                boolean keyset) {
+            this.selectInfo = selectInfo;
+            this.params = params;
+            this.principalsSlot = principalsSlot;
+            this.keyset = keyset;
+        }
+
+        /**
+         * Creates the query with the actual parameters of the filter.
+         */
+        protected Query bind(QueryFilter queryFilter) {
+            if (selectInfo == null) {
+                return null; // cannot match
+            }
+            Query q = new Query();
+            q.selectInfo = selectInfo;
+            q.keyset = keyset;
+            q.selectParams = new ArrayList<Serializable>(params.size());
+            for (Serializable param : params) {
+                q.selectParams.add(bindParam(param, queryFilter));
+            }
+            return q;
+        }
+
+        protected Serializable bindParam(Serializable param,
+                QueryFilter queryFilter) {
+            if (principalsSlot != null && param == principalsSlot) {
+                return queryFilter.getPrincipals();
+            }
+            String slot;
+            boolean wrapped;
+            if (param instanceof String) {
+                slot = (String) param;
+                wrapped = false;
+            } else if (param instanceof WrappedId) {
+                slot = param.toString();
+                wrapped = true;
+            } else {
+                return param;
+            }
+            if (slot.isEmpty() || slot.charAt(0) != '\u0000') {
+                return param;
+            }
+            if (slot.equals(PRINCIPALS_SLOT)) {
+                // dialect without arrays
+                return StringUtils.join(queryFilter.getPrincipals(),
+                        Dialect.ARRAY_SEP);
+            }
+            if (slot.startsWith(KEYSET_SLOT)) {
+                int i = Integer.parseInt(slot.substring(KEYSET_SLOT.length()));
+                Serializable value = queryFilter.getKeysetValues()[i];
+                if (wrapped && value instanceof String) {
+                    value = new WrappedId((String) value);
+                }
+                return value;
+            }
+            return param;
+        }
+    }
+
+    /**
+     * Path resolver recording whether it was used.
+     */
+    protected static class TrackingPathResolver implements PathResolver {
+
+        protected final PathResolver pathResolver;
+
+        protected boolean used;
+
+        protected TrackingPathResolver(PathResolver pathResolver) {
+            this.pathResolver = pathResolver;
+        }
+
+        @Override
+        public Serializable getIdForPath(String path) throws StorageException {
+            used = true;
+            return pathResolver.getIdForPath(path);
+        }
+    }
+
+}
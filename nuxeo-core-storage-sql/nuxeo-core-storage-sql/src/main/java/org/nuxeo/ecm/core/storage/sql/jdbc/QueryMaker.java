@@ -69,6 +69,14 @@ public interface QueryMaker {
 
         public List<Serializable> selectParams = new LinkedList<Serializable>();
 
+        /**
+         * Whether the query only returns the rows after the keyset values of
+         * the {@link QueryFilter}, in which case no offset applies.
+         *
+         * @since 7.1
+         */
+        public boolean keyset;
+
     }
 
     public static class QueryMakerException extends RuntimeException {
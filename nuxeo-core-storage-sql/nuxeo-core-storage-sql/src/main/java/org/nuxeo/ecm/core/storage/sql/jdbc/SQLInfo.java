@@ -97,6 +97,9 @@ public class SQLInfo {
 
     protected final Map<String, SQLInfoSelect> selectFragmentById;
 
+    /** @since 7.1 */
+    protected final QueryCache queryCache;
+
     protected List<Column> clusterInvalidationsColumns;
 
     protected Map<String, List<SQLStatement>> sqlStatements;
@@ -128,6 +131,8 @@ public class SQLInfo {
 
         selectFragmentById = new HashMap<String, SQLInfoSelect>();
 
+        queryCache = new QueryCache(repositoryDescriptor.name);
+
         selections = new HashMap<SelectionType, SQLInfoSelection>();
 
         selectChildrenIdsAndTypesSql = null;
@@ -160,6 +165,15 @@ public class SQLInfo {
         return database;
     }
 
+    /**
+     * Gets the cache of compiled NXQL queries.
+     *
+     * @since 7.1
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
     // ----- select -----
 
     public String getSelectRootIdSql() {
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TestLocalClusterInvalidator {
+
+    protected static RepositoryDescriptor newDescriptor(String name) {
+        RepositoryDescriptor descriptor = new RepositoryDescriptor();
+        descriptor.name = name;
+        return descriptor;
+    }
+
+    @Test
+    public void testPushInvalidations() throws Exception {
+        LocalClusterInvalidator node1 = new LocalClusterInvalidator();
+        LocalClusterInvalidator node2 = new LocalClusterInvalidator();
+        LocalClusterInvalidator other = new LocalClusterInvalidator();
+        node1.initialize("node1", newDescriptor("repo"));
+        node2.initialize("node2", newDescriptor("repo"));
+        other.initialize("node3", newDescriptor("otherrepo"));
+        try {
+            assertNull(node1.receiveInvalidations());
+            assertNull(node2.receiveInvalidations());
+
+            Invalidations invalidations = new Invalidations();
+            invalidations.addModified(new RowId("hierarchy", "id1"));
+            node1.sendInvalidations(invalidations);
+
+            // not received by the sender or another repository
+            assertNull(node1.receiveInvalidations());
+            assertNull(other.receiveInvalidations());
+            // received immediately by the other node
+            Invalidations received = node2.receiveInvalidations();
+            assertEquals(
+                    Collections.singleton(new RowId("hierarchy", "id1")),
+                    received.modified);
+            assertNull(node2.receiveInvalidations());
+
+            // accumulated until received
+            node1.sendInvalidations(new Invalidations(true));
+            node1.sendInvalidations(invalidations);
+            received = node2.receiveInvalidations();
+            assertTrue(received.all);
+        } finally {
+            node1.close();
+            node2.close();
+            other.close();
+        }
+        assertTrue(LocalClusterInvalidator.CHANNELS.isEmpty());
+    }
+
+}
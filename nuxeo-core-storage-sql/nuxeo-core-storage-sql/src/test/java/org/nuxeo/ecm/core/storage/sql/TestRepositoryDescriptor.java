@@ -52,6 +52,8 @@ public class TestRepositoryDescriptor {
         assertEquals("foo", desc.name);
         assertTrue(desc.getClusteringEnabled());
         assertEquals(1234, desc.getClusteringDelay());
+        assertEquals(LocalClusterInvalidator.class,
+                desc.clusterInvalidatorClass);
     }
 
     @Test
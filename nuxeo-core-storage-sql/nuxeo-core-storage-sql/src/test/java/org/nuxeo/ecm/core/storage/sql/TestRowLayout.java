@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestRowLayout {
+
+    @Test
+    public void testSharedLayout() {
+        RowLayout root = RowLayout.newRoot("dublincore");
+        root.register(Arrays.asList("id", "title", "description", "creator"));
+        Row row1 = new Row(root, "id1");
+        row1.putNew("title", "t1");
+        row1.putNew("description", "d1");
+        row1.putNew("creator", "c1");
+        Row row2 = new Row(root, "id2");
+        row2.put("title", "t2");
+        row2.put("description", "d2");
+        row2.put("creator", "c2");
+        assertSame(row1.layout, row2.layout);
+        assertEquals(Arrays.asList("title", "description", "creator"), row2.getKeys());
+        assertEquals("d1", row1.get("description"));
+        assertEquals("c2", row2.get("creator"));
+        assertEquals("id2", row2.get("id"));
+        assertNull(row2.get("nosuchkey"));
+
+        // partial row shares the layout but doesn't see the missing keys
+        Row row3 = new Row(root, "id3");
+        row3.put("title", "t3");
+        assertSame(row1.layout, row3.layout);
+        assertNull(row3.get("description"));
+        assertEquals(Arrays.asList("title"), row3.getKeys());
+
+        // different order gives a different layout
+        Row row4 = new Row(root, "id4");
+        row4.put("title", "t4");
+        row4.put("creator", "c4");
+        assertNotSame(row1.layout, row4.layout);
+        assertEquals("c4", row4.get("creator"));
+        assertNull(row4.get("description"));
+        assertEquals(Arrays.asList("title", "creator"), row4.getKeys());
+
+        // overwrite
+        row4.put("creator", "c5");
+        assertEquals("c5", row4.get("creator"));
+        assertEquals(2, row4.getValues().size());
+
+        // clone shares the layout
+        Row row5 = row1.clone();
+        assertSame(row1.layout, row5.layout);
+        row5.put("title", "t5");
+        assertEquals("t1", row1.get("title"));
+        assertEquals("t5", row5.get("title"));
+    }
+
+    @Test
+    public void testLayoutsScopedToRoot() {
+        RowLayout root1 = RowLayout.newRoot("dublincore");
+        RowLayout root2 = RowLayout.newRoot("dublincore");
+        Row row1 = new Row(root1, "id1");
+        row1.put("title", "t1");
+        Row row2 = new Row(root2, "id2");
+        row2.put("title", "t2");
+        assertNotSame(row1.layout, row2.layout);
+        Row row3 = new Row(root1, "id3");
+        row3.put("title", "t3");
+        assertSame(row1.layout, row3.layout);
+    }
+
+    @Test
+    public void testUnsharedLayout() {
+        Row row1 = new Row("dublincore", "id1");
+        row1.put("title", "t1");
+        row1.put("description", "d1");
+        Row row2 = new Row("dublincore", "id2");
+        row2.put("title", "t2");
+        assertNotSame(row1.layout, row2.layout);
+        assertFalse(row1.layout.isShared());
+        assertEquals("d1", row1.get("description"));
+        assertEquals(Arrays.asList("title", "description"), row1.getKeys());
+
+        // clone then extend
+        Row row3 = row1.clone();
+        row3.putNew("creator", "c3");
+        assertEquals(Arrays.asList("title", "description", "creator"),
+                row3.getKeys());
+        assertEquals(Arrays.asList("title", "description"), row1.getKeys());
+    }
+
+    @Test
+    public void testMaxTransitions() {
+        RowLayout root = RowLayout.newRoot("dublincore");
+        int n = RowLayout.MAX_TRANSITIONS + 10;
+        RowLayout[] layouts = new RowLayout[n];
+        for (int i = 0; i < n; i++) {
+            Row row = new Row(root, "id" + i);
+            row.put("key" + i, "v" + i);
+            row.put("title", "t" + i);
+            layouts[i] = row.layout;
+            assertEquals("v" + i, row.get("key" + i));
+            assertEquals("t" + i, row.get("title"));
+            assertNull(row.get("key" + (i + 1)));
+        }
+        // cached up to the maximum, not shared afterwards
+        for (int i = 0; i < n; i++) {
+            Row row = new Row(root, "idbis" + i);
+            row.put("key" + i, "w" + i);
+            row.put("title", "u" + i);
+            if (i < RowLayout.MAX_TRANSITIONS) {
+                assertSame(layouts[i], row.layout);
+                assertTrue(row.layout.isShared());
+            } else {
+                assertNotSame(layouts[i], row.layout);
+                assertFalse(row.layout.isShared());
+            }
+            assertEquals("w" + i, row.get("key" + i));
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        RowLayout root = RowLayout.newRoot("hierarchy");
+        Row row = new Row(root, "id1");
+        row.put("parentid", "id0");
+        row.put("name", "foo");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(row);
+        oos.close();
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        Row row2 = (Row) ois.readObject();
+        assertEquals(row.getKeys(), row2.getKeys());
+        assertEquals("foo", row2.get("name"));
+        assertEquals("id0", row2.get("parentid"));
+        // still usable
+        row2.put("name", "bar");
+        row2.put("pos", Long.valueOf(1));
+        assertEquals("bar", row2.get("name"));
+        assertEquals(Long.valueOf(1), row2.get("pos"));
+        assertEquals("foo", row.get("name"));
+        assertNull(row.get("pos"));
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.storage.StorageException;
+import org.nuxeo.ecm.core.storage.sql.ColumnType.WrappedId;
+import org.nuxeo.ecm.core.storage.sql.Model;
+import org.nuxeo.ecm.core.storage.sql.Session.PathResolver;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryMaker.Query;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLInfo.SQLInfoSelect;
+
+public class TestQueryCache {
+
+    /**
+     * Query maker passing principals and keyset values as parameters, and
+     * resolving paths for queries mentioning ecm:path.
+     */
+    public static class DummyQueryMaker implements QueryMaker {
+
+        protected int builds;
+
+        @Override
+        public String getName() {
+            return "dummy";
+        }
+
+        @Override
+        public boolean accepts(String query) {
+            return true;
+        }
+
+        @Override
+        public Query buildQuery(SQLInfo sqlInfo, Model model,
+                PathResolver pathResolver, String query,
+                QueryFilter queryFilter, Object... params)
+                throws StorageException {
+            builds++;
+            Query q = new Query();
+            q.selectInfo = new SQLInfoSelect("SELECT " + query, null);
+            if (query.contains(NXQL.ECM_PATH)) {
+                q.selectParams.add(pathResolver.getIdForPath("/"));
+            }
+            q.selectParams.add("constant");
+            if (queryFilter.getPrincipals() != null) {
+                q.selectParams.add(queryFilter.getPrincipals());
+            }
+            Serializable[] keysetValues = queryFilter.getKeysetValues();
+            if (keysetValues != null) {
+                q.selectParams.add(keysetValues[0]);
+                q.selectParams.add(new WrappedId((String) keysetValues[1]));
+                q.keyset = true;
+            }
+            return q;
+        }
+    }
+
+    protected static final PathResolver PATH_RESOLVER = new PathResolver() {
+        @Override
+        public Serializable getIdForPath(String path) {
+            return "rootid";
+        }
+    };
+
+    protected static QueryFilter newFilter(String[] principals,
+            Serializable... keysetValues) {
+        return new QueryFilter(null, principals, new String[] { "Browse" },
+                null, Collections.<SQLQuery.Transformer> emptyList(), 0, 0,
+                keysetValues.length == 0 ? null : keysetValues);
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        QueryCache cache = new QueryCache("test");
+        DummyQueryMaker queryMaker = new DummyQueryMaker();
+        String nxql = "SELECT * FROM Document ORDER BY dc:title, ecm:uuid";
+
+        Query q = cache.getQuery(queryMaker, NXQL.NXQL, null, null,
+                PATH_RESOLVER, nxql,
+                newFilter(new String[] { "bob" }, "title1", "id1"));
+        assertEquals(1, queryMaker.builds);
+        assertEquals("constant", q.selectParams.get(0));
+        assertArrayEquals(new String[] { "bob" },
+                (String[]) q.selectParams.get(1));
+        assertEquals("title1", q.selectParams.get(2));
+        assertEquals("id1", q.selectParams.get(3).toString());
+        assertTrue(q.keyset);
+
+        // same shape, other principals and keyset values: cached
+        Query q2 = cache.getQuery(queryMaker, NXQL.NXQL, null, null,
+                PATH_RESOLVER, nxql,
+                newFilter(new String[] { "pete" }, "title2", "id2"));
+        assertEquals(1, queryMaker.builds);
+        assertSame(q.selectInfo, q2.selectInfo);
+        assertArrayEquals(new String[] { "pete" },
+                (String[]) q2.selectParams.get(1));
+        assertEquals("title2", q2.selectParams.get(2));
+        assertTrue(q2.selectParams.get(3) instanceof WrappedId);
+        assertEquals("id2", q2.selectParams.get(3).toString());
+        assertTrue(q2.keyset);
+
+        // other shape: not cached
+        cache.getQuery(queryMaker, NXQL.NXQL, null, null, PATH_RESOLVER,
+                nxql, newFilter(null, "title2", "id2"));
+        assertEquals(2, queryMaker.builds);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testPathQueryNotCached() throws Exception {
+        QueryCache cache = new QueryCache("test");
+        DummyQueryMaker queryMaker = new DummyQueryMaker();
+        String nxql = "SELECT * FROM Document WHERE ecm:path STARTSWITH '/'";
+        for (int i = 0; i < 2; i++) {
+            Query q = cache.getQuery(queryMaker, NXQL.NXQL, null, null,
+                    PATH_RESOLVER, nxql, newFilter(new String[] { "bob" }));
+            assertEquals("rootid", q.selectParams.get(0));
+            assertFalse(q.keyset);
+        }
+        assertEquals(2, queryMaker.builds);
+    }
+
+}
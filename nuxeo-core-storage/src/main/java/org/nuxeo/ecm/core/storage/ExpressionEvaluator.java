@@ -22,10 +22,11 @@ import static java.lang.Boolean.TRUE;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.core.query.sql.model.BooleanLiteral;
@@ -75,6 +76,12 @@ public abstract class ExpressionEvaluator {
 
     public final Set<String> principals;
 
+    /** LIKE patterns compiled for this evaluator. */
+    protected final Map<String, LikeMatcher> likeMatchers = new HashMap<String, LikeMatcher>();
+
+    /** ILIKE patterns compiled for this evaluator. */
+    protected final Map<String, LikeMatcher> ilikeMatchers = new HashMap<String, LikeMatcher>();
+
     public ExpressionEvaluator(PathResolver pathResolver, String[] principals) {
         this.pathResolver = pathResolver;
         this.principals = principals == null ? null : new HashSet<String>(
@@ -505,14 +512,26 @@ public abstract class ExpressionEvaluator {
         String value = (String) left;
         if (caseInsensitive) {
             value = value.toLowerCase();
-            right = right.toLowerCase();
-        }
-        // escape with slash except alphanumeric and percent
-        String regex = right.replaceAll("([^a-zA-Z0-9%])", "\\\\$1");
-        // replace percent with regexp
-        regex = regex.replaceAll("%", ".*");
-        boolean match = Pattern.compile(regex).matcher(value).matches();
-        return match;
+        }
+        LikeMatcher matcher = getLikeMatcher(right, caseInsensitive);
+        return Boolean.valueOf(matcher.matches(value));
+    }
+
+    /**
+     * Gets the compiled LIKE pattern, compiling it only once per evaluator.
+     *
+     * @since 7.1
+     */
+    protected LikeMatcher getLikeMatcher(String like, boolean caseInsensitive) {
+        Map<String, LikeMatcher> matchers = caseInsensitive ? ilikeMatchers
+                : likeMatchers;
+        LikeMatcher matcher = matchers.get(like);
+        if (matcher == null) {
+            matcher = LikeMatcher.compile(caseInsensitive ? like.toLowerCase()
+                    : like);
+            matchers.put(like, matcher);
+        }
+        return matcher;
     }
 
     // if list, use EXIST (SELECT 1 FROM left WHERE left.item = right)
@@ -12,10 +12,16 @@
  */
 package org.nuxeo.ecm.core.storage;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.Blob;
@@ -56,6 +62,24 @@ public abstract class FulltextExtractorWork extends AbstractWork {
 
     protected static final String TITLE = "fulltextExtractor";
 
+    /**
+     * Framework property for the maximum number of characters of fulltext
+     * extracted from the blobs of a document. Unlimited by default.
+     *
+     * @since 7.1
+     */
+    public static final String MAX_LENGTH_PROP = "org.nuxeo.fulltext.extractor.maxlength";
+
+    /**
+     * Conversion parameter for the maximum number of characters to extract,
+     * understood by the streaming text converters, which stop early.
+     *
+     * @since 7.1
+     */
+    protected static final String MAX_LENGTH_PARAMETER = "maxLength";
+
+    protected static final int BUFFER_SIZE = 8192;
+
     protected final boolean excludeProxies;
 
     protected transient FulltextConfiguration fulltextConfiguration;
@@ -155,25 +179,41 @@ public abstract class FulltextExtractorWork extends AbstractWork {
     }
 
     protected String blobsToText(List<Blob> blobs, String docId) {
-        List<String> strings = new LinkedList<String>();
+        long maxLength = getMaxLength();
+        // same cap for each blob, so that the conversion is cached regardless
+        // of the text already extracted; truncated when appending
+        Map<String, Serializable> parameters = null;
+        if (maxLength >= 0) {
+            parameters = new HashMap<String, Serializable>();
+            parameters.put(MAX_LENGTH_PARAMETER, Long.valueOf(maxLength));
+        }
+        StringBuilder sb = new StringBuilder();
+        boolean first = true;
         for (Blob blob : blobs) {
+            if (maxLength >= 0 && sb.length() >= maxLength) {
+                break;
+            }
+            int mark = sb.length();
             try {
                 SimpleBlobHolder bh = new SimpleBlobHolder(blob);
-                BlobHolder result = convert(bh);
+                BlobHolder result = convert(bh, parameters);
                 if (result == null) {
                     continue;
                 }
-                blob = result.getBlob();
-                if (blob == null) {
+                Blob text = result.getBlob();
+                if (text == null) {
                     continue;
                 }
-                String string = new String(blob.getByteArray(), "UTF-8");
-                // strip '\0 chars from text
-                if (string.indexOf('\0') >= 0) {
-                    string = string.replace("\0", " ");
+                if (!first) {
+                    if (maxLength >= 0 && sb.length() + 1 >= maxLength) {
+                        break;
+                    }
+                    sb.append(' ');
                 }
-                strings.add(string);
+                appendText(text, sb, maxLength);
+                first = false;
             } catch (Exception e) {
+                sb.setLength(mark);
                 String msg = "Could not extract fulltext of file '"
                         + blob.getFilename() + "' for document: " + docId
                         + ": " + e;
@@ -182,17 +222,68 @@ public abstract class FulltextExtractorWork extends AbstractWork {
                 continue;
             }
         }
-        return StringUtils.join(strings, " ");
+        return sb.toString();
+    }
+
+    /**
+     * Gets the maximum number of characters of fulltext extracted from the
+     * blobs of a document, or -1 if there is no maximum.
+     *
+     * @since 7.1
+     */
+    protected long getMaxLength() {
+        return Long.parseLong(Framework.getProperty(MAX_LENGTH_PROP, "-1"));
+    }
+
+    /**
+     * Appends the UTF-8 text of a blob, read incrementally, up to the given
+     * maximum length of the buffer.
+     *
+     * @since 7.1
+     */
+    protected void appendText(Blob blob, StringBuilder sb, long maxLength)
+            throws IOException {
+        InputStream in = blob.getStream();
+        if (in == null) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(in, "UTF-8")) {
+            char[] buf = new char[BUFFER_SIZE];
+            int n;
+            while ((n = reader.read(buf)) != -1) {
+                if (maxLength >= 0) {
+                    n = (int) Math.min(n, maxLength - sb.length());
+                }
+                // strip '\0 chars from text
+                for (int i = 0; i < n; i++) {
+                    if (buf[i] == '\0') {
+                        buf[i] = ' ';
+                    }
+                }
+                sb.append(buf, 0, n);
+                if (maxLength >= 0 && sb.length() >= maxLength) {
+                    break;
+                }
+            }
+        }
     }
 
     protected BlobHolder convert(BlobHolder blobHolder)
             throws ConversionException {
+        return convert(blobHolder, null);
+    }
+
+    /**
+     * @since 7.1
+     */
+    protected BlobHolder convert(BlobHolder blobHolder,
+            Map<String, Serializable> parameters) throws ConversionException {
         ConversionService conversionService = Framework.getLocalService(ConversionService.class);
         if (conversionService == null) {
             log.debug("No ConversionService available");
             return null;
         }
-        return conversionService.convert(ANY2TEXT, blobHolder, null);
+        return conversionService.convert(ANY2TEXT, blobHolder, parameters);
     }
 
 }
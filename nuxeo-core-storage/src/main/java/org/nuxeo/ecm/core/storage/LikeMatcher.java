@@ -0,0 +1,102 @@
+/*
+ * (C) Copyright 2015 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage;
+
+import java.util.regex.Pattern;
+
+/**
+ * A compiled NXQL LIKE pattern, where {@code %} matches any sequence of
+ * characters.
+ * <p>
+ * Patterns whose only wildcards are leading or trailing {@code %} (exact,
+ * prefix, suffix or contains match) are matched without regexp.
+ *
+ * @since 7.1
+ */
+public class LikeMatcher {
+
+    protected enum Kind {
+        EXACT, PREFIX, SUFFIX, CONTAINS, REGEXP
+    }
+
+    protected final Kind kind;
+
+    protected final String string;
+
+    protected final Pattern pattern;
+
+    protected LikeMatcher(Kind kind, String string, Pattern pattern) {
+        this.kind = kind;
+        this.string = string;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Compiles a LIKE pattern.
+     */
+    public static LikeMatcher compile(String like) {
+        int start = 0;
+        int end = like.length();
+        while (start < end && like.charAt(start) == '%') {
+            start++;
+        }
+        while (end > start && like.charAt(end - 1) == '%') {
+            end--;
+        }
+        String inner = like.substring(start, end);
+        if (inner.indexOf('%') == -1) {
+            boolean leading = start > 0;
+            boolean trailing = end < like.length();
+            Kind kind;
+            if (leading && trailing) {
+                kind = Kind.CONTAINS;
+            } else if (leading) {
+                kind = Kind.SUFFIX;
+            } else if (trailing) {
+                kind = Kind.PREFIX;
+            } else {
+                kind = Kind.EXACT;
+            }
+            return new LikeMatcher(kind, inner, null);
+        }
+        // escape with slash except alphanumeric and percent
+        String regex = like.replaceAll("([^a-zA-Z0-9%])", "\\\\$1");
+        // replace percent with regexp
+        regex = regex.replaceAll("%", ".*");
+        return new LikeMatcher(Kind.REGEXP, null, Pattern.compile(regex,
+                Pattern.DOTALL));
+    }
+
+    /**
+     * Checks if the value matches the pattern.
+     */
+    public boolean matches(String value) {
+        switch (kind) {
+        case EXACT:
+            return value.equals(string);
+        case PREFIX:
+            return value.startsWith(string);
+        case SUFFIX:
+            return value.endsWith(string);
+        case CONTAINS:
+            return value.contains(string);
+        default:
+            return pattern.matcher(value).matches();
+        }
+    }
+
+}
@@ -19,6 +19,9 @@ package org.nuxeo.ecm.core.storage.binary;
 /**
  * Status of a BinaryManager, including files that may have just been deleted by
  * GC
+ * <p>
+ * Some garbage collectors update the counts while the GC is in progress, which
+ * can be used to monitor its progress.
  */
 public class BinaryManagerStatus {
 
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.binary;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of digests, used to record the binaries marked during a garbage
+ * collection.
+ * <p>
+ * Only the first 64 bits of each digest are kept, in a sorted array of
+ * primitive longs (8 bytes per digest). Two different digests may therefore be
+ * considered equal, which for a GC only means that an unused binary is kept
+ * until a later GC, never that a used one is deleted.
+ * <p>
+ * Digests are added concurrently, then the set is sealed, after which lookups
+ * are lock-free.
+ *
+ * @since 7.1
+ */
+public class DigestSet {
+
+    protected long[] values = new long[1024];
+
+    protected int size;
+
+    protected volatile boolean sealed;
+
+    /**
+     * Adds a digest to the set.
+     */
+    public synchronized void add(String digest) {
+        if (sealed) {
+            throw new IllegalStateException("Sealed");
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = toLong(digest);
+    }
+
+    /**
+     * Seals the set, no more digests can be added after this.
+     */
+    public synchronized void seal() {
+        if (sealed) {
+            return;
+        }
+        Arrays.sort(values, 0, size);
+        // remove duplicates
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (n == 0 || values[i] != values[n - 1]) {
+                values[n++] = values[i];
+            }
+        }
+        size = n;
+        sealed = true;
+    }
+
+    /**
+     * Checks if a digest is (probably) in the set. The set must be sealed.
+     */
+    public boolean contains(String digest) {
+        if (!sealed) {
+            throw new IllegalStateException("Not sealed");
+        }
+        return Arrays.binarySearch(values, 0, size, toLong(digest)) >= 0;
+    }
+
+    /**
+     * The number of distinct digests in the set. The set must be sealed.
+     */
+    public int size() {
+        if (!sealed) {
+            throw new IllegalStateException("Not sealed");
+        }
+        return size;
+    }
+
+    /**
+     * Gets the first 64 bits of an hexadecimal digest, or a 64-bit hash of it
+     * if it is not hexadecimal.
+     */
+    protected static long toLong(String digest) {
+        int len = Math.min(digest.length(), 16);
+        long value = 0;
+        for (int i = 0; i < len; i++) {
+            int d = Character.digit(digest.charAt(i), 16);
+            if (d == -1) {
+                return hash(digest);
+            }
+            value = (value << 4) | d;
+        }
+        if (len < 16) {
+            // distinguish short digests from their zero-padded versions
+            return hash(digest);
+        }
+        return value;
+    }
+
+    /** FNV-1a 64-bit hash. */
+    protected static long hash(String string) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < string.length(); i++) {
+            h ^= string.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+}
@@ -19,6 +19,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -60,6 +64,13 @@ public class LocalBinaryManager extends AbstractBinaryManager {
 
     public static final String CONFIG_FILE = "config.xml";
 
+    /**
+     * Framework property to use the {@link ParallelBinaryGarbageCollector}.
+     *
+     * @since 7.1
+     */
+    public static final String GC_PARALLEL_PROP = "org.nuxeo.binarymanager.gc.parallel";
+
     protected File storageDir;
 
     protected File tmpDir;
@@ -256,7 +267,11 @@ public class LocalBinaryManager extends AbstractBinaryManager {
     }
 
     protected void createGarbageCollector() {
-        garbageCollector = new DefaultBinaryGarbageCollector(this);
+        if (Boolean.parseBoolean(Framework.getProperty(GC_PARALLEL_PROP))) {
+            garbageCollector = new ParallelBinaryGarbageCollector(this);
+        } else {
+            garbageCollector = new DefaultBinaryGarbageCollector(this);
+        }
     }
 
     public static class DefaultBinaryGarbageCollector implements
@@ -353,6 +368,145 @@ public class LocalBinaryManager extends AbstractBinaryManager {
         }
     }
 
+    /**
+     * Garbage collector recording the marked digests in memory instead of
+     * touching the files, and sweeping the storage directories in parallel.
+     * <p>
+     * Marked digests are kept in a compact {@link DigestSet}. A file is
+     * deleted if it is not marked and was not modified since the start of the
+     * GC (which protects binaries created during the GC). The status is
+     * updated as the sweep progresses.
+     *
+     * @since 7.1
+     */
+    public static class ParallelBinaryGarbageCollector extends
+            DefaultBinaryGarbageCollector {
+
+        protected DigestSet marked;
+
+        protected final int parallelism;
+
+        public ParallelBinaryGarbageCollector(LocalBinaryManager binaryManager) {
+            this(binaryManager, Runtime.getRuntime().availableProcessors());
+        }
+
+        public ParallelBinaryGarbageCollector(
+                LocalBinaryManager binaryManager, int parallelism) {
+            super(binaryManager);
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        public void start() {
+            super.start();
+            marked = new DigestSet();
+        }
+
+        @Override
+        public void mark(String digest) {
+            marked.add(digest);
+        }
+
+        @Override
+        public void stop(boolean delete) {
+            if (startTime == 0) {
+                throw new RuntimeException("Not started");
+            }
+            marked.seal();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new SweepTask(binaryManager.getStorageDir(), 0,
+                        startTime - TIME_RESOLUTION, delete));
+            } finally {
+                pool.shutdown();
+            }
+            marked = null;
+            status.gcDuration = System.currentTimeMillis() - startTime;
+            startTime = 0;
+        }
+
+        /**
+         * Sweeps a directory, its subdirectories being swept in parallel.
+         */
+        protected class SweepTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            protected final File dir;
+
+            protected final int depth;
+
+            protected final long minTime;
+
+            protected final boolean delete;
+
+            protected SweepTask(File dir, int depth, long minTime,
+                    boolean delete) {
+                this.dir = dir;
+                this.depth = depth;
+                this.minTime = minTime;
+                this.delete = delete;
+            }
+
+            @Override
+            protected void compute() {
+                File[] files = dir.listFiles();
+                if (files == null) {
+                    return;
+                }
+                List<SweepTask> tasks = new ArrayList<SweepTask>();
+                long numBinaries = 0;
+                long sizeBinaries = 0;
+                long numBinariesGC = 0;
+                long sizeBinariesGC = 0;
+                for (File file : files) {
+                    if (file.isDirectory()) {
+                        tasks.add(new SweepTask(file, depth + 1, minTime,
+                                delete));
+                        continue;
+                    }
+                    if (marked.contains(file.getName())) {
+                        numBinaries++;
+                        sizeBinaries += file.length();
+                        continue;
+                    }
+                    if (!file.isFile() || !file.canWrite()) {
+                        continue;
+                    }
+                    long lastModified = file.lastModified();
+                    long length = file.length();
+                    if (lastModified == 0) {
+                        log.error("Cannot read last modified for file: "
+                                + file);
+                    } else if (lastModified < minTime) {
+                        numBinariesGC++;
+                        sizeBinariesGC += length;
+                        if (delete && !file.delete()) {
+                            log.warn("Cannot gc file: " + file);
+                        }
+                    } else {
+                        numBinaries++;
+                        sizeBinaries += length;
+                    }
+                }
+                synchronized (status) {
+                    status.numBinaries += numBinaries;
+                    status.sizeBinaries += sizeBinaries;
+                    status.numBinariesGC += numBinariesGC;
+                    status.sizeBinariesGC += sizeBinariesGC;
+                }
+                invokeAll(tasks);
+                if (depth > 0) {
+                    String[] list = dir.list();
+                    if (list != null && list.length == 0) {
+                        // empty directory
+                        dir.delete();
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Sets the last modification date to now on a file
      *
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestLikeMatcher {
+
+    protected static boolean like(String value, String like) {
+        return LikeMatcher.compile(like).matches(value);
+    }
+
+    @Test
+    public void testKinds() {
+        assertEquals(LikeMatcher.Kind.EXACT, LikeMatcher.compile("foo").kind);
+        assertEquals(LikeMatcher.Kind.PREFIX, LikeMatcher.compile("foo%").kind);
+        assertEquals(LikeMatcher.Kind.SUFFIX, LikeMatcher.compile("%foo").kind);
+        assertEquals(LikeMatcher.Kind.CONTAINS,
+                LikeMatcher.compile("%foo%").kind);
+        assertEquals(LikeMatcher.Kind.REGEXP, LikeMatcher.compile("f%o").kind);
+    }
+
+    @Test
+    public void testMatches() {
+        assertTrue(like("foo", "foo"));
+        assertFalse(like("foobar", "foo"));
+        assertTrue(like("foobar", "foo%"));
+        assertFalse(like("barfoo", "foo%"));
+        assertTrue(like("barfoo", "%foo"));
+        assertFalse(like("foobar", "%foo"));
+        assertTrue(like("barfoobaz", "%foo%"));
+        assertTrue(like("foo", "%%foo%%"));
+        assertFalse(like("fo", "%foo%"));
+        assertTrue(like("", "%"));
+        assertTrue(like("anything", "%"));
+        assertTrue(like("fxxo", "f%o"));
+        assertTrue(like("fo", "f%o"));
+        assertFalse(like("fxxob", "f%o"));
+        // special chars are not wildcards
+        assertTrue(like("a.b", "a.b"));
+        assertFalse(like("axb", "a.b"));
+        assertTrue(like("a_b(c", "a_b(%"));
+        assertFalse(like("axb(c", "a_b(%"));
+        assertTrue(like("a.b*c", "a.%*c"));
+        // multi-line values
+        assertTrue(like("foo\nbar", "foo%bar"));
+        assertTrue(like("x\nfoo\ny", "%foo%"));
+    }
+
+}
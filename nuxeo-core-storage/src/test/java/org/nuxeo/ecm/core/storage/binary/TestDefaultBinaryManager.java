@@ -114,6 +114,79 @@ public class TestDefaultBinaryManager extends NXRuntimeTestCase {
         binaryManager.close();
     }
 
+    @Test
+    public void testParallelGarbageCollector() throws Exception {
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        binaryManager.initialize(new BinaryManagerDescriptor());
+        binaryManager.garbageCollector = new LocalBinaryManager.ParallelBinaryGarbageCollector(
+                binaryManager, 2);
+        assertEquals(0, countFiles(binaryManager.getStorageDir()));
+
+        byte[] bytes = CONTENT.getBytes("UTF-8");
+        binaryManager.getBinary(new ByteArrayInputStream(bytes));
+        // other binary we'll GC
+        binaryManager.getBinary(new ByteArrayInputStream(
+                "abc".getBytes("UTF-8")));
+        assertEquals(2, countFiles(binaryManager.getStorageDir()));
+
+        // sleep before GC to pass its time threshold
+        Thread.sleep(3 * 1000);
+
+        // create another binary after time threshold, it won't be GCed
+        binaryManager.getBinary(new ByteArrayInputStream(
+                "defg".getBytes("UTF-8")));
+        assertEquals(3, countFiles(binaryManager.getStorageDir()));
+
+        // GC in non-delete mode
+        BinaryGarbageCollector gc = binaryManager.getGarbageCollector();
+        gc.start();
+        assertTrue(gc.isInProgress());
+        gc.mark(CONTENT_MD5);
+        gc.stop(false);
+        assertFalse(gc.isInProgress());
+        BinaryManagerStatus status = gc.getStatus();
+        assertEquals(2, status.numBinaries);
+        assertEquals(bytes.length + 4, status.sizeBinaries);
+        assertEquals(1, status.numBinariesGC);
+        assertEquals(3, status.sizeBinariesGC);
+        assertEquals(3, countFiles(binaryManager.getStorageDir()));
+
+        // real GC
+        gc.start();
+        gc.mark(CONTENT_MD5);
+        gc.stop(true);
+        status = gc.getStatus();
+        assertEquals(2, status.numBinaries);
+        assertEquals(1, status.numBinariesGC);
+        // one file gone
+        assertEquals(2, countFiles(binaryManager.getStorageDir()));
+        assertNotNull(binaryManager.getBinary(CONTENT_MD5));
+
+        binaryManager.close();
+    }
+
+    protected static String digest(long n) {
+        return String.format("%016x%016x", Long.valueOf(n), Long.valueOf(n));
+    }
+
+    @Test
+    public void testDigestSet() {
+        DigestSet set = new DigestSet();
+        for (int i = 0; i < 5000; i++) {
+            set.add(digest(i * 7919L));
+        }
+        set.add(CONTENT_MD5);
+        set.add(CONTENT_MD5);
+        set.add("not-hex");
+        set.seal();
+        assertEquals(5002, set.size());
+        assertTrue(set.contains(CONTENT_MD5));
+        assertTrue(set.contains("not-hex"));
+        assertTrue(set.contains(digest(7919)));
+        assertFalse(set.contains(digest(7920)));
+        assertFalse(set.contains("abc"));
+    }
+
     @Test
     public void testStreamingCopies() throws IOException {
         DefaultBinaryManager binaryManager = new DefaultBinaryManager();
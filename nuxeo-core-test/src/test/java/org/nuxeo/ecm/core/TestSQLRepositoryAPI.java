@@ -773,6 +773,119 @@ public class TestSQLRepositoryAPI extends SQLRepositoryTestCase {
         }
     }
 
+    protected static List<String> names(List<DocumentModel> docs) {
+        List<String> names = new ArrayList<String>(docs.size());
+        for (DocumentModel doc : docs) {
+            names.add(doc.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testGetChildrenPaged() throws ClientException {
+        DocumentModel folder = session.createDocumentModel("/", "folder",
+                "Folder");
+        folder = session.createDocument(folder);
+        for (int i = 0; i < 30; i++) {
+            String name = String.format("doc%02d", Integer.valueOf(i));
+            DocumentModel doc = session.createDocumentModel("/folder", name,
+                    i % 3 == 0 ? "Note" : "File");
+            session.createDocument(doc);
+        }
+        session.save();
+
+        DocumentModelList docs = session.getChildren(folder.getRef(), null,
+                null, "ecm:name", 5, 10, -1);
+        assertEquals(Arrays.asList("doc10", "doc11", "doc12", "doc13",
+                "doc14"), names(docs));
+        assertEquals(30, docs.totalSize());
+
+        // type filter and reverse order
+        docs = session.getChildren(folder.getRef(), "Note", null,
+                "ecm:name DESC", 3, 0, -1);
+        assertEquals(Arrays.asList("doc27", "doc24", "doc21"), names(docs));
+        assertEquals(10, docs.totalSize());
+
+        // bounded count
+        docs = session.getChildren(folder.getRef(), "File", null, null, 3, 0,
+                5);
+        assertEquals(3, docs.size());
+        assertEquals(-2, docs.totalSize());
+
+        // other permissions are checked on each child, block Write on doc01
+        ACP acp = new ACPImpl();
+        ACL acl = new ACLImpl();
+        acl.add(new ACE("bob", "Read", true));
+        acp.addACL(acl);
+        session.setACP(folder.getRef(), acp, true);
+        acp = new ACPImpl();
+        acl = new ACLImpl();
+        acl.add(new ACE("bob", "ReadWrite", true));
+        acp.addACL(acl);
+        session.setACP(new PathRef("/folder/doc01"), acp, true);
+        session.setACP(new PathRef("/folder/doc02"), acp, true);
+        session.save();
+
+        closeSession();
+        session = openSessionAs("bob");
+        docs = session.getChildren(folder.getRef(), "File", "Write",
+                "ecm:name", 1, 1, -1);
+        assertEquals(Arrays.asList("doc02"), names(docs));
+        assertEquals(2, docs.totalSize());
+        docs = session.getChildren(folder.getRef(), "File", null, "ecm:name",
+                1, 1, -1);
+        assertEquals(Arrays.asList("doc02"), names(docs));
+        assertEquals(20, docs.totalSize());
+    }
+
+    @Test
+    public void testLoadDataModels() throws ClientException {
+        DocumentModel folder = session.createDocumentModel("/", "folder",
+                "Folder");
+        folder = session.createDocument(folder);
+        for (int i = 0; i < 5; i++) {
+            DocumentModel doc = session.createDocumentModel("/folder", "doc"
+                    + i, "File");
+            doc.setPropertyValue("file:filename", "file" + i);
+            doc.setPropertyValue("dc:description", "desc" + i);
+            session.createDocument(doc);
+        }
+        session.save();
+        closeSession();
+        openSession();
+
+        String nxql = "SELECT * FROM File WHERE ecm:parentId = '"
+                + folder.getId() + "' ORDER BY ecm:name";
+        DocumentModelList docs = session.query(nxql);
+        assertEquals(5, docs.size());
+        for (DocumentModel doc : docs) {
+            assertFalse(((DocumentModelImpl) doc).isSchemaLoaded("file"));
+        }
+        // the first access loads the schema for the whole result
+        assertEquals("file0", docs.get(0).getPropertyValue("file:filename"));
+        for (DocumentModel doc : docs) {
+            assertTrue(((DocumentModelImpl) doc).isSchemaLoaded("file"));
+        }
+        assertEquals("file3", docs.get(3).getPropertyValue("file:filename"));
+
+        // explicit batch loading, unknown schemas and unbound docs skipped
+        docs = session.query(nxql);
+        DocumentModel unbound = new DocumentModelImpl("/folder", "foo", "File");
+        List<DocumentModel> list = new ArrayList<DocumentModel>(docs);
+        list.add(unbound);
+        session.loadDataModels(list, new HashSet<String>(Arrays.asList(
+                "file", "dublincore", "note")));
+        for (int i = 0; i < 5; i++) {
+            DocumentModelImpl doc = (DocumentModelImpl) docs.get(i);
+            assertTrue(doc.isSchemaLoaded("file"));
+            assertTrue(doc.isSchemaLoaded("dublincore"));
+            assertFalse(doc.isSchemaLoaded("note"));
+            assertEquals("file" + i, doc.getPropertyValue("file:filename"));
+            assertEquals("desc" + i, doc.getPropertyValue("dc:description"));
+        }
+        assertFalse(((DocumentModelImpl) unbound).isSchemaLoaded("file"));
+    }
+
     @Test
     public void testGetChildrenIteratorFilter() throws ClientException {
         int n = 200;
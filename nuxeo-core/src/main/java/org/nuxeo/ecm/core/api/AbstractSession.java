@@ -43,10 +43,12 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -60,6 +62,7 @@ import org.nuxeo.ecm.core.api.event.DocumentEventCategories;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
 import org.nuxeo.ecm.core.api.facet.VersioningDocument;
 import org.nuxeo.ecm.core.api.impl.DocumentModelChildrenIterator;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
 import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
 import org.nuxeo.ecm.core.api.impl.FacetFilter;
 import org.nuxeo.ecm.core.api.impl.UserPrincipal;
@@ -127,8 +130,18 @@ public abstract class AbstractSession implements CoreSession, Serializable {
 
     public static final String BINARY_TEXT_SYS_PROP = "fulltextBinary";
 
+    /**
+     * Whether the documents returned by queries load their schemas together,
+     * see {@link DocumentModelListImpl#enableBatchLoading}.
+     *
+     * @since 7.1
+     */
+    public static final String BATCH_LOADING_PROPERTY = "org.nuxeo.ecm.core.query.batchloading";
+
     private Boolean limitedResults;
 
+    private Boolean batchLoading;
+
     private Long maxResults;
 
     // @since 5.7.2
@@ -594,7 +607,12 @@ public abstract class AbstractSession implements CoreSession, Serializable {
             String comment = srcDoc.getRepositoryName() + ':'
                     + srcDoc.getParent().getUUID();
 
-            Document doc = getSession().move(srcDoc, dstDoc, name);
+            Document doc;
+            try {
+                doc = getSession().move(srcDoc, dstDoc, name);
+            } finally {
+                getSecurityService().invalidateACPs();
+            }
 
             // notify document moved
             DocumentModel docModel = readModel(doc);
@@ -645,7 +663,11 @@ public abstract class AbstractSession implements CoreSession, Serializable {
 
             notifyEvent(DocumentEventTypes.BEFORE_DOC_SECU_UPDATE, docModel,
                     options, null, null, true, true);
-            getSession().setACP(doc, newAcp, overwrite);
+            try {
+                getSession().setACP(doc, newAcp, overwrite);
+            } finally {
+                getSecurityService().invalidateACPs();
+            }
             docModel = readModel(doc);
             options.put(CoreEventConstants.NEW_ACP,
                     (Serializable) newAcp.clone());
@@ -827,6 +849,8 @@ public abstract class AbstractSession implements CoreSession, Serializable {
             }
         } catch (DocumentException e) {
             throw new ClientException("Failed to import documents", e);
+        } finally {
+            getSecurityService().invalidateACPs();
         }
     }
 
@@ -973,6 +997,76 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         }
     }
 
+    @Override
+    public DocumentModelList getChildren(DocumentRef parent, String type,
+            String perm, String orderBy, long limit, long offset,
+            long countUpTo) throws ClientException {
+        if (perm == null) {
+            perm = BROWSE;
+        }
+        try {
+            Document doc = resolveReference(parent);
+            checkPermission(doc, READ_CHILDREN);
+            // Browse is checked by the query engine, from the read ACLs
+            boolean checkPermission = !BROWSE.equals(perm);
+            StringBuilder nxql = new StringBuilder("SELECT ");
+            nxql.append(checkPermission ? NXQL.ECM_UUID : "*");
+            nxql.append(" FROM Document WHERE ");
+            nxql.append(NXQL.ECM_PARENTID).append(" = ").append(
+                    NXQL.escapeString(doc.getUUID()));
+            if (type != null) {
+                nxql.append(" AND ").append(NXQL.ECM_PRIMARYTYPE).append(
+                        " = ").append(NXQL.escapeString(type));
+            }
+            nxql.append(" ORDER BY ");
+            if (orderBy == null) {
+                // unique order, for stable pages
+                nxql.append(NXQL.ECM_POS).append(", ");
+                nxql.append(NXQL.ECM_NAME).append(", ");
+                nxql.append(NXQL.ECM_UUID);
+            } else {
+                nxql.append(orderBy);
+            }
+            if (!checkPermission) {
+                return query(nxql.toString(), null, limit, offset, countUpTo);
+            }
+
+            // check the permission on each candidate, but only load the page
+            long start = offset < 0 ? 0 : offset;
+            long stop = limit <= 0 ? Long.MAX_VALUE : start + limit;
+            long n = 0;
+            DocumentModelListImpl docs = new DocumentModelListImpl();
+            IterableQueryResult result = queryAndFetch(nxql.toString(),
+                    NXQL.NXQL);
+            try {
+                for (Map<String, Serializable> row : result) {
+                    if (n >= stop
+                            && (countUpTo == 0 || (countUpTo > 0 && n > countUpTo))) {
+                        break;
+                    }
+                    Document child = resolveReference(new IdRef(
+                            (String) row.get(NXQL.ECM_UUID)));
+                    if (!hasPermission(child, perm)) {
+                        continue;
+                    }
+                    if (n >= start && n < stop) {
+                        docs.add(readModel(child));
+                    }
+                    n++;
+                }
+            } finally {
+                result.close();
+            }
+            if (countUpTo != 0) {
+                docs.setTotalSize(countUpTo > 0 && n > countUpTo ? -2 : n);
+            }
+            return withBatchLoading(docs);
+        } catch (DocumentException e) {
+            throw new ClientException("Failed to get children for "
+                    + parent.toString(), e);
+        }
+    }
+
     @Override
     public List<DocumentRef> getChildrenRefs(DocumentRef parentRef, String perm)
             throws ClientException {
@@ -1284,6 +1378,27 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         return limitedResults;
     }
 
+    protected boolean isBatchLoading() {
+        if (batchLoading == null) {
+            batchLoading = Boolean.valueOf(Framework.getProperty(
+                    BATCH_LOADING_PROPERTY, "true"));
+        }
+        return batchLoading.booleanValue();
+    }
+
+    /**
+     * Makes the documents of a query result load their schemas together.
+     *
+     * @since 7.1
+     */
+    protected DocumentModelList withBatchLoading(DocumentModelList docs) {
+        if (docs instanceof DocumentModelListImpl && docs.size() > 1
+                && isBatchLoading()) {
+            ((DocumentModelListImpl) docs).enableBatchLoading();
+        }
+        return docs;
+    }
+
     protected void setMaxResults(long maxResults) {
         this.maxResults = maxResults;
     }
@@ -1331,7 +1446,7 @@ public abstract class AbstractSession implements CoreSession, Serializable {
 
             if (!postFilter) {
                 // the backend has done all the needed filtering
-                return dms;
+                return withBatchLoading(dms);
             }
 
             // post-filter the results "by hand", the backend couldn't do it
@@ -1368,7 +1483,7 @@ public abstract class AbstractSession implements CoreSession, Serializable {
             if (countUpTo != 0) {
                 docs.setTotalSize(n);
             }
-            return docs;
+            return withBatchLoading(docs);
         } catch (Exception e) {
             throw new ClientException("Failed to execute query: "
                     + tryToExtractMeaningfulErrMsg(e), e);
@@ -1599,7 +1714,12 @@ public abstract class AbstractSession implements CoreSession, Serializable {
     public void save() throws ClientException {
         try {
             final Map<String, Serializable> options = new HashMap<String, Serializable>();
-            getSession().save();
+            try {
+                getSession().save();
+            } finally {
+                // changes from other sessions may now be visible
+                getSecurityService().invalidateACPs();
+            }
             notifyEvent(DocumentEventTypes.SESSION_SAVED, null, options, null,
                     null, true, false);
         } catch (ConcurrentUpdateDocumentException e) {
@@ -1958,7 +2078,11 @@ public abstract class AbstractSession implements CoreSession, Serializable {
                     options, null, null, true, true);
             writeModel(doc, docModel);
 
-            doc.restore(version);
+            try {
+                doc.restore(version);
+            } finally {
+                getSecurityService().invalidateACPs();
+            }
             // re-read doc model after restoration
             docModel = readModel(doc);
             notifyEvent(DocumentEventTypes.DOCUMENT_RESTORED, docModel,
@@ -2361,6 +2485,61 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         }
     }
 
+    @Override
+    public void loadDataModels(List<DocumentModel> docModels,
+            Set<String> schemas) throws ClientException {
+        String sessionId = getSessionId();
+        List<DocumentModelImpl> toLoad = new ArrayList<DocumentModelImpl>(
+                docModels.size());
+        List<Set<String>> toLoadSchemas = new ArrayList<Set<String>>(
+                docModels.size());
+        List<Document> docs = new ArrayList<Document>(docModels.size());
+        Set<String> allSchemas = new HashSet<String>();
+        try {
+            for (DocumentModel docModel : docModels) {
+                if (!(docModel instanceof DocumentModelImpl)
+                        || !sessionId.equals(docModel.getSessionId())
+                        || docModel.getRef() == null) {
+                    continue;
+                }
+                DocumentModelImpl docModelImpl = (DocumentModelImpl) docModel;
+                Set<String> docSchemas = docModelImpl.getSchemasToLoad(schemas);
+                if (docSchemas.isEmpty()) {
+                    continue;
+                }
+                Document doc;
+                try {
+                    doc = resolveReference(docModel.getRef());
+                } catch (NoSuchDocumentException e) {
+                    continue;
+                }
+                if (!isAdministrator() && !hasPermission(doc, READ)) {
+                    // lazy loading will report it
+                    continue;
+                }
+                toLoad.add(docModelImpl);
+                toLoadSchemas.add(docSchemas);
+                docs.add(doc);
+                allSchemas.addAll(docSchemas);
+            }
+            if (docs.isEmpty()) {
+                return;
+            }
+            getSession().prefetchSchemas(docs, allSchemas);
+            SchemaManager schemaManager = Framework.getLocalService(SchemaManager.class);
+            for (int i = 0; i < docs.size(); i++) {
+                for (String schema : toLoadSchemas.get(i)) {
+                    toLoad.get(i).addDataModel(
+                            DocumentModelFactory.createDataModel(docs.get(i),
+                                    schemaManager.getSchema(schema)));
+                }
+            }
+        } catch (DocumentException e) {
+            throw new ClientException("Failed to load data models for "
+                    + schemas, e);
+        }
+    }
+
     protected Object getDataModelField(DocumentRef docRef, String schema,
             String field) throws ClientException {
         try {
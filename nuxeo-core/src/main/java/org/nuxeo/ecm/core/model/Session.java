@@ -14,6 +14,7 @@ package org.nuxeo.ecm.core.model;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.nuxeo.ecm.core.api.CoreSession;
@@ -107,6 +108,21 @@ public interface Session {
      */
     Document getDocumentByUUID(String uuid) throws DocumentException;
 
+    /**
+     * Loads in bulk the given schemas for several documents of this session,
+     * so that reading them afterwards doesn't need one storage access per
+     * document.
+     * <p>
+     * This is only an optimization, storages that have nothing to gain from
+     * it may do nothing.
+     *
+     * @param docs the documents
+     * @param schemas the schema names
+     * @since 7.1
+     */
+    void prefetchSchemas(List<Document> docs, Collection<String> schemas)
+            throws DocumentException;
+
     /**
      * Gets the root document in this repository.
      *
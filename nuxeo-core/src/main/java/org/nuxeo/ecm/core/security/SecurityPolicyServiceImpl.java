@@ -16,12 +16,15 @@ package org.nuxeo.ecm.core.security;
 
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,6 +38,12 @@ import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
  * <p>
  * Iterates over ordered policies. First policy to give a known access (grant
  * or deny) applies.
+ * <p>
+ * The ordered policies are computed once and published as an immutable
+ * snapshot, so that checks don't need any lock. The snapshot is recomputed
+ * when policies are registered or unregistered. Whether policies restrict a
+ * permission or are expressible in a query is assumed to be constant for a
+ * given policy, and is memoized in the snapshot.
  *
  * @author Anahide Tchertchian
  */
@@ -46,14 +55,68 @@ public class SecurityPolicyServiceImpl implements SecurityPolicyService {
 
     private final Map<String, SecurityPolicyDescriptor> policyDescriptors;
 
-    private List<SecurityPolicy> policies;
+    /**
+     * The current policies, or {@code null} if they must be recomputed.
+     */
+    private transient volatile Policies policies;
+
+    /**
+     * Immutable ordered policies, and their memoized properties.
+     */
+    protected static class Policies {
+
+        protected final SecurityPolicy[] array;
+
+        protected final List<SecurityPolicy> list;
+
+        /** Permission to whether a policy restricts it. */
+        protected final ConcurrentMap<String, Boolean> restricting = new ConcurrentHashMap<String, Boolean>();
+
+        /** Repository to whether all policies are expressible in a query. */
+        protected final ConcurrentMap<String, Boolean> expressible = new ConcurrentHashMap<String, Boolean>();
+
+        protected Policies(List<SecurityPolicy> policies) {
+            array = policies.toArray(new SecurityPolicy[policies.size()]);
+            list = Collections.unmodifiableList(Arrays.asList(array));
+        }
+
+        protected boolean isRestricting(String permission) {
+            Boolean value = restricting.get(permission);
+            if (value == null) {
+                value = Boolean.FALSE;
+                for (SecurityPolicy policy : array) {
+                    if (policy.isRestrictingPermission(permission)) {
+                        value = Boolean.TRUE;
+                        break;
+                    }
+                }
+                restricting.put(permission, value);
+            }
+            return value.booleanValue();
+        }
+
+        protected boolean isExpressibleInQuery(String repositoryName) {
+            Boolean value = expressible.get(repositoryName);
+            if (value == null) {
+                value = Boolean.TRUE;
+                for (SecurityPolicy policy : array) {
+                    if (!policy.isExpressibleInQuery(repositoryName)) {
+                        value = Boolean.FALSE;
+                        break;
+                    }
+                }
+                expressible.put(repositoryName, value);
+            }
+            return value.booleanValue();
+        }
+    }
 
     public SecurityPolicyServiceImpl() {
         policyDescriptors = new Hashtable<String, SecurityPolicyDescriptor>();
     }
 
-    private void computePolicies() {
-        policies = new ArrayList<SecurityPolicy>();
+    private Policies computePolicies() {
+        List<SecurityPolicy> policies = new ArrayList<SecurityPolicy>();
         List<SecurityPolicyDescriptor> orderedDescriptors = new ArrayList<SecurityPolicyDescriptor>();
         for (SecurityPolicyDescriptor descriptor : policyDescriptors.values()) {
             if (descriptor.isEnabled()) {
@@ -81,45 +144,46 @@ public class SecurityPolicyServiceImpl implements SecurityPolicyService {
             }
         }
         log.debug("Ordered security policies: " + policyNames.toString());
+        return new Policies(policies);
     }
 
-    @Override
-    public synchronized List<SecurityPolicy> getPolicies() {
-        if (policies == null) {
-            computePolicies();
+    protected Policies getCurrentPolicies() {
+        Policies current = policies;
+        if (current == null) {
+            synchronized (this) {
+                current = policies;
+                if (current == null) {
+                    policies = current = computePolicies();
+                }
+            }
         }
-        return policies;
+        return current;
     }
 
-    private void resetPolicies() {
+    @Override
+    public List<SecurityPolicy> getPolicies() {
+        return getCurrentPolicies().list;
+    }
+
+    private synchronized void resetPolicies() {
         policies = null;
     }
 
     @Override
     public boolean arePoliciesRestrictingPermission(String permission) {
-        for (SecurityPolicy policy : getPolicies()) {
-            if (policy.isRestrictingPermission(permission)) {
-                return true;
-            }
-        }
-        return false;
+        return getCurrentPolicies().isRestricting(permission);
     }
 
     @Override
     public boolean arePoliciesExpressibleInQuery(String repositoryName) {
-        for (SecurityPolicy policy : getPolicies()) {
-            if (!policy.isExpressibleInQuery(repositoryName)) {
-                return false;
-            }
-        }
-        return true;
+        return getCurrentPolicies().isExpressibleInQuery(repositoryName);
     }
 
     @Override
     public Collection<SQLQuery.Transformer> getPoliciesQueryTransformers(
             String repositoryName) {
         List<SQLQuery.Transformer> transformers = new LinkedList<SQLQuery.Transformer>();
-        for (SecurityPolicy policy : getPolicies()) {
+        for (SecurityPolicy policy : getCurrentPolicies().array) {
             if (policy.isExpressibleInQuery(repositoryName)) {
                 transformers.add(policy.getQueryTransformer(repositoryName));
             } else {
@@ -133,7 +197,8 @@ public class SecurityPolicyServiceImpl implements SecurityPolicyService {
     }
 
     @Override
-    public void registerDescriptor(SecurityPolicyDescriptor descriptor) {
+    public synchronized void registerDescriptor(
+            SecurityPolicyDescriptor descriptor) {
         String id = descriptor.getName();
         if (policyDescriptors.containsKey(id)) {
             log.info("Overriding security policy " + id);
@@ -143,7 +208,8 @@ public class SecurityPolicyServiceImpl implements SecurityPolicyService {
     }
 
     @Override
-    public void unregisterDescriptor(SecurityPolicyDescriptor descriptor) {
+    public synchronized void unregisterDescriptor(
+            SecurityPolicyDescriptor descriptor) {
         String id = descriptor.getName();
         if (policyDescriptors.containsKey(id)) {
             policyDescriptors.remove(id);
@@ -156,8 +222,7 @@ public class SecurityPolicyServiceImpl implements SecurityPolicyService {
             Principal principal, String permission,
             String[] resolvedPermissions, String[] additionalPrincipals) {
         Access access = Access.UNKNOWN;
-        List<SecurityPolicy> policies = getPolicies();
-        for (SecurityPolicy policy : policies) {
+        for (SecurityPolicy policy : getCurrentPolicies().array) {
             Access policyAccess = policy.checkPermission(doc, mergedAcp,
                     principal, permission, resolvedPermissions,
                     additionalPrincipals);
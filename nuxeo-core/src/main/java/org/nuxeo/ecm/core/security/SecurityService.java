@@ -15,25 +15,52 @@
 package org.nuxeo.ecm.core.security;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACL;
 import org.nuxeo.ecm.core.api.security.ACP;
 import org.nuxeo.ecm.core.api.security.Access;
 import org.nuxeo.ecm.core.api.security.PermissionProvider;
 import org.nuxeo.ecm.core.api.security.SecurityConstants;
 import org.nuxeo.ecm.core.model.Document;
+import org.nuxeo.ecm.core.model.Session;
 import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.ComponentName;
 import org.nuxeo.runtime.model.DefaultComponent;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
 /**
+ * Security service, checking permissions against the merged ACP of documents
+ * and the security policies.
+ * <p>
+ * Access decisions based on ACPs are cached, keyed by the content of the
+ * merged ACP, the principals to check and the permission. The merged ACPs of
+ * documents are cached per low-level session in the current thread, and are
+ * invalidated through {@link #invalidateACPs} when ACLs or the hierarchy
+ * change. Security policies depend on the document state and are always
+ * checked.
+ *
  * @author Bogdan Stefanescu
  * @author Olivier Grisel
  * @author Anahide Tchertchian
@@ -52,6 +79,28 @@ public class SecurityService extends DefaultComponent {
 
     private static final String POLICIES_EXTENSION_POINT = "policies";
 
+    /**
+     * Maximum number of access decisions cached, 0 to disable their caching.
+     *
+     * @since 7.1
+     */
+    public static final String DECISIONS_CACHE_SIZE_PROP = "org.nuxeo.ecm.core.security.cache.decisions.maxsize";
+
+    public static final String DEFAULT_DECISIONS_CACHE_SIZE = "10000";
+
+    /**
+     * Maximum number of merged ACPs cached per session, 0 to disable their
+     * caching.
+     *
+     * @since 7.1
+     */
+    public static final String ACPS_CACHE_SIZE_PROP = "org.nuxeo.ecm.core.security.cache.acps.maxsize";
+
+    public static final String DEFAULT_ACPS_CACHE_SIZE = "1000";
+
+    /** Maximum number of principals whose principals to check are cached. */
+    protected static final int PRINCIPALS_CACHE_SIZE = 1000;
+
     private static final Log log = LogFactory.getLog(SecurityService.class);
 
     private PermissionProviderLocal permissionProvider;
@@ -60,11 +109,50 @@ public class SecurityService extends DefaultComponent {
 
     // private SecurityManager securityManager;
 
+    /** Permission to permissions to check. */
+    protected final ConcurrentMap<String, String[]> permissionsToCheck = new ConcurrentHashMap<String, String[]>();
+
+    /** Principal name to principals to check. */
+    protected final ConcurrentMap<String, PrincipalsToCheck> principalsToCheck = new ConcurrentHashMap<String, PrincipalsToCheck>();
+
+    protected final ConcurrentMap<DecisionKey, Boolean> decisions = new ConcurrentHashMap<DecisionKey, Boolean>();
+
+    /**
+     * Merged ACPs per low-level session. Low-level sessions are confined to a
+     * thread and a transaction.
+     */
+    protected final ThreadLocal<Map<Session, SessionACPs>> sessionACPs = new ThreadLocal<Map<Session, SessionACPs>>();
+
+    protected int decisionsCacheSize;
+
+    protected int acpsCacheSize;
+
+    protected Counter decisionHits;
+
+    protected Counter decisionMisses;
+
+    protected Counter acpHits;
+
+    protected Counter acpMisses;
+
     @Override
     public void activate(ComponentContext context) throws Exception {
         super.activate(context);
         permissionProvider = new DefaultPermissionProvider();
         securityPolicyService = new SecurityPolicyServiceImpl();
+        decisionsCacheSize = Integer.parseInt(Framework.getProperty(
+                DECISIONS_CACHE_SIZE_PROP, DEFAULT_DECISIONS_CACHE_SIZE));
+        acpsCacheSize = Integer.parseInt(Framework.getProperty(
+                ACPS_CACHE_SIZE_PROP, DEFAULT_ACPS_CACHE_SIZE));
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        decisionHits = registry.counter(MetricRegistry.name("nuxeo",
+                "security", "decisions", "hits"));
+        decisionMisses = registry.counter(MetricRegistry.name("nuxeo",
+                "security", "decisions", "misses"));
+        acpHits = registry.counter(MetricRegistry.name("nuxeo", "security",
+                "acps", "hits"));
+        acpMisses = registry.counter(MetricRegistry.name("nuxeo", "security",
+                "acps", "misses"));
     }
 
     @Override
@@ -72,6 +160,9 @@ public class SecurityService extends DefaultComponent {
         super.deactivate(context);
         permissionProvider = null;
         securityPolicyService = null;
+        permissionsToCheck.clear();
+        principalsToCheck.clear();
+        decisions.clear();
     }
 
     @Override
@@ -81,6 +172,7 @@ public class SecurityService extends DefaultComponent {
         if (PERMISSIONS_EXTENSION_POINT.equals(extensionPoint)
                 && contribution instanceof PermissionDescriptor) {
             permissionProvider.registerDescriptor((PermissionDescriptor) contribution);
+            permissionsChanged();
         } else if (PERMISSIONS_VISIBILITY_EXTENSION_POINT.equals(extensionPoint)
                 && contribution instanceof PermissionVisibilityDescriptor) {
             permissionProvider.registerDescriptor((PermissionVisibilityDescriptor) contribution);
@@ -97,6 +189,7 @@ public class SecurityService extends DefaultComponent {
         if (PERMISSIONS_EXTENSION_POINT.equals(extensionPoint)
                 && contribution instanceof PermissionDescriptor) {
             permissionProvider.unregisterDescriptor((PermissionDescriptor) contribution);
+            permissionsChanged();
         } else if (PERMISSIONS_VISIBILITY_EXTENSION_POINT.equals(extensionPoint)
                 && contribution instanceof PermissionVisibilityDescriptor) {
             permissionProvider.unregisterDescriptor((PermissionVisibilityDescriptor) contribution);
@@ -106,6 +199,14 @@ public class SecurityService extends DefaultComponent {
         }
     }
 
+    /**
+     * Clears what depends on the permission groups.
+     */
+    protected void permissionsChanged() {
+        permissionsToCheck.clear();
+        decisions.clear();
+    }
+
     public PermissionProvider getPermissionProvider() {
         return permissionProvider;
     }
@@ -139,11 +240,13 @@ public class SecurityService extends DefaultComponent {
         }
 
         // fully check each ACE in turn
-        String[] resolvedPermissions = getPermissionsToCheck(permission);
-        String[] additionalPrincipals = getPrincipalsToCheck(principal);
+        String[] resolvedPermissions = getResolvedPermissions(permission);
+        PrincipalsToCheck principals = getCachedPrincipalsToCheck(principal);
+        String[] additionalPrincipals = principals.principals;
 
         // get the ordered list of ACE
-        ACP acp = doc.getSession().getMergedACP(doc);
+        MergedACP merged = getMergedACP(doc);
+        ACP acp = merged.acp;
 
         // check pluggable policies
         Access access = securityPolicyService.checkPermission(doc, acp,
@@ -156,9 +259,73 @@ public class SecurityService extends DefaultComponent {
         if (acp == null) {
             return false; // no ACP on that doc - by default deny
         }
-        access = acp.getAccess(additionalPrincipals, resolvedPermissions);
+        if (decisionsCacheSize <= 0) {
+            return acp.getAccess(additionalPrincipals, resolvedPermissions).toBoolean();
+        }
+        DecisionKey key = new DecisionKey(merged.getACEs(), principals,
+                permission);
+        Boolean decision = decisions.get(key);
+        if (decision != null) {
+            decisionHits.inc();
+            return decision.booleanValue();
+        }
+        decisionMisses.inc();
+        boolean granted = acp.getAccess(additionalPrincipals,
+                resolvedPermissions).toBoolean();
+        if (decisions.size() >= decisionsCacheSize) {
+            // decisions are cheap to recompute, don't track their usage
+            decisions.clear();
+        }
+        decisions.put(key, Boolean.valueOf(granted));
+        return granted;
+    }
 
-        return access.toBoolean();
+    /**
+     * Gets the merged ACP of a document, cached for its session in the current
+     * thread.
+     */
+    protected MergedACP getMergedACP(Document doc) throws SecurityException {
+        Session session = doc.getSession();
+        String id = doc.getUUID();
+        if (acpsCacheSize <= 0 || id == null) {
+            return new MergedACP(session.getMergedACP(doc));
+        }
+        Map<Session, SessionACPs> map = sessionACPs.get();
+        if (map == null) {
+            map = new WeakHashMap<Session, SessionACPs>();
+            sessionACPs.set(map);
+        }
+        SessionACPs acps = map.get(session);
+        if (acps == null) {
+            acps = new SessionACPs(acpsCacheSize);
+            map.put(session, acps);
+        }
+        MergedACP merged = acps.get(id);
+        if (merged != null) {
+            acpHits.inc();
+            return merged;
+        }
+        acpMisses.inc();
+        merged = new MergedACP(session.getMergedACP(doc));
+        acps.put(id, merged);
+        return merged;
+    }
+
+    /**
+     * Invalidates the merged ACPs cached for the sessions of the current
+     * thread.
+     * <p>
+     * Must be called when ACLs or the hierarchy of documents change, and when
+     * a session is saved, as this makes visible the changes done by other
+     * sessions.
+     *
+     * @since 7.1
+     */
+    public void invalidateACPs() {
+        Map<Session, SessionACPs> map = sessionACPs.get();
+        if (map != null) {
+            map.clear();
+        }
     }
 
     /**
@@ -171,16 +338,52 @@ public class SecurityService extends DefaultComponent {
      * @return the list, as an array of strings.
      */
     public String[] getPermissionsToCheck(String permission) {
-        String[] groups = permissionProvider.getPermissionGroups(permission);
-        if (groups == null) {
-            return new String[] { permission, SecurityConstants.EVERYTHING };
-        } else {
-            String[] perms = new String[groups.length + 2];
-            perms[0] = permission;
-            System.arraycopy(groups, 0, perms, 1, groups.length);
-            perms[groups.length + 1] = SecurityConstants.EVERYTHING;
-            return perms;
+        return getResolvedPermissions(permission).clone();
+    }
+
+    /**
+     * Gets the permissions to check for the given one, cached. The returned
+     * array must not be modified.
+     */
+    protected String[] getResolvedPermissions(String permission) {
+        String[] perms = permissionsToCheck.get(permission);
+        if (perms == null) {
+            String[] groups = permissionProvider.getPermissionGroups(permission);
+            if (groups == null) {
+                perms = new String[] { permission, SecurityConstants.EVERYTHING };
+            } else {
+                perms = new String[groups.length + 2];
+                perms[0] = permission;
+                System.arraycopy(groups, 0, perms, 1, groups.length);
+                perms[groups.length + 1] = SecurityConstants.EVERYTHING;
+            }
+            permissionsToCheck.put(permission, perms);
+        }
+        return perms;
+    }
+
+    /**
+     * Gets the principals to check for the given principal, cached as long as
+     * its groups don't change.
+     */
+    protected PrincipalsToCheck getCachedPrincipalsToCheck(Principal principal) {
+        List<String> groups = null;
+        if (principal instanceof NuxeoPrincipal) {
+            groups = ((NuxeoPrincipal) principal).getAllGroups();
+        }
+        String name = principal.getName();
+        PrincipalsToCheck principals = principalsToCheck.get(name);
+        if (principals == null
+                || !ObjectUtils.equals(principals.groups, groups)) {
+            principals = new PrincipalsToCheck(groups == null ? null
+                    : new ArrayList<String>(groups),
+                    getPrincipalsToCheck(principal));
+            if (principalsToCheck.size() >= PRINCIPALS_CACHE_SIZE) {
+                principalsToCheck.clear();
+            }
+            principalsToCheck.put(name, principals);
         }
+        return principals;
     }
 
     public static String[] getPrincipalsToCheck(Principal principal) {
@@ -213,4 +416,158 @@ public class SecurityService extends DefaultComponent {
         }
     }
 
+    /**
+     * The principals to check for a principal, and the groups they were
+     * computed from.
+     */
+    protected static final class PrincipalsToCheck {
+
+        protected final List<String> groups;
+
+        protected final String[] principals;
+
+        protected final int hash;
+
+        protected PrincipalsToCheck(List<String> groups, String[] principals) {
+            this.groups = groups;
+            this.principals = principals;
+            hash = Arrays.hashCode(principals);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PrincipalsToCheck)) {
+                return false;
+            }
+            PrincipalsToCheck other = (PrincipalsToCheck) obj;
+            return hash == other.hash
+                    && Arrays.equals(principals, other.principals);
+        }
+    }
+
+    /**
+     * The ordered ACEs of a merged ACP, which is all that determines an access
+     * decision.
+     */
+    protected static final class ACEsKey {
+
+        protected final ACE[] aces;
+
+        protected final int hash;
+
+        protected ACEsKey(ACP acp) {
+            List<ACE> list = new ArrayList<ACE>();
+            for (ACL acl : acp.getACLs()) {
+                list.addAll(acl);
+            }
+            aces = list.toArray(new ACE[list.size()]);
+            hash = Arrays.hashCode(aces);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ACEsKey)) {
+                return false;
+            }
+            ACEsKey other = (ACEsKey) obj;
+            return hash == other.hash && Arrays.equals(aces, other.aces);
+        }
+    }
+
+    protected static final class DecisionKey {
+
+        protected final ACEsKey aces;
+
+        protected final PrincipalsToCheck principals;
+
+        protected final String permission;
+
+        protected final int hash;
+
+        protected DecisionKey(ACEsKey aces, PrincipalsToCheck principals,
+                String permission) {
+            this.aces = aces;
+            this.principals = principals;
+            this.permission = permission;
+            hash = 31 * (31 * aces.hash + principals.hash)
+                    + permission.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey other = (DecisionKey) obj;
+            return hash == other.hash && permission.equals(other.permission)
+                    && aces.equals(other.aces)
+                    && principals.equals(other.principals);
+        }
+    }
+
+    /**
+     * A merged ACP (possibly {@code null}), and its key computed on demand.
+     */
+    protected static final class MergedACP {
+
+        protected final ACP acp;
+
+        protected ACEsKey aces;
+
+        protected MergedACP(ACP acp) {
+            this.acp = acp;
+        }
+
+        protected ACEsKey getACEs() {
+            if (aces == null) {
+                aces = new ACEsKey(acp);
+            }
+            return aces;
+        }
+    }
+
+    /**
+     * Merged ACPs of a session by document id, least recently used first.
+     */
+    protected static class SessionACPs extends LinkedHashMap<String, MergedACP> {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final int maxSize;
+
+        protected SessionACPs(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MergedACP> eldest) {
+            return size() > maxSize;
+        }
+    }
+
 }
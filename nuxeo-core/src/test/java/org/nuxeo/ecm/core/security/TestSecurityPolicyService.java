@@ -24,9 +24,19 @@ import static org.nuxeo.ecm.core.api.security.SecurityConstants.WRITE_PROPERTIES
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import org.junit.Before;
 import org.junit.After;
+import org.junit.Ignore;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -39,6 +49,8 @@ import org.nuxeo.runtime.test.NXRuntimeTestCase;
 
 public class TestSecurityPolicyService extends NXRuntimeTestCase {
 
+    private static final Log log = LogFactory.getLog(TestSecurityPolicyService.class);
+
     static final String creator = "Bodie";
 
     static final String user = "Bubbles";
@@ -115,4 +127,77 @@ public class TestSecurityPolicyService extends NXRuntimeTestCase {
                 permission, permissions, null));
     }
 
+    @Test
+    public void testPoliciesSnapshot() throws Exception {
+        List<SecurityPolicy> policies = service.getPolicies();
+        assertEquals(1, policies.size());
+        assertSame(policies, service.getPolicies());
+        try {
+            policies.clear();
+            fail("policies should be immutable");
+        } catch (UnsupportedOperationException e) {
+            // ok
+        }
+        assertFalse(service.arePoliciesRestrictingPermission("Browse"));
+        assertTrue(service.arePoliciesExpressibleInQuery("test"));
+
+        // registration publishes new policies
+        deployContrib(CORE_TESTS_BUNDLE, "test-security-policy-contrib.xml");
+        assertEquals(2, service.getPolicies().size());
+        assertTrue(service.arePoliciesRestrictingPermission("Browse"));
+        assertFalse(service.arePoliciesExpressibleInQuery("test"));
+
+        undeployContrib(CORE_TESTS_BUNDLE, "test-security-policy-contrib.xml");
+        assertEquals(1, service.getPolicies().size());
+        assertFalse(service.arePoliciesRestrictingPermission("Browse"));
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void testBenchmarkConcurrentChecks() throws Exception {
+        final String[] permissions = { WRITE };
+        final Document doc = new MockDocument("Test", creator);
+        final int n = 20000;
+        double base = 0;
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            final CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            try {
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(new Callable<Long>() {
+                        @Override
+                        public Long call() throws Exception {
+                            start.await();
+                            long t0 = System.nanoTime();
+                            for (int i = 0; i < n; i++) {
+                                service.checkPermission(doc, null,
+                                        userPrincipal, WRITE, permissions,
+                                        null);
+                                service.arePoliciesRestrictingPermission("Browse");
+                                service.arePoliciesExpressibleInQuery("test");
+                            }
+                            return Long.valueOf(System.nanoTime() - t0);
+                        }
+                    }));
+                }
+                start.countDown();
+                long elapsed = 0;
+                for (Future<Long> future : futures) {
+                    elapsed = Math.max(elapsed, future.get().longValue());
+                }
+                double throughput = (double) threads * n / elapsed * 1e9;
+                if (threads == 1) {
+                    base = throughput;
+                }
+                log.info(String.format("Security policy checks on %d threads:"
+                        + " %.0f ops/s (x%.1f)", Integer.valueOf(threads),
+                        Double.valueOf(throughput),
+                        Double.valueOf(throughput / base)));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
 }
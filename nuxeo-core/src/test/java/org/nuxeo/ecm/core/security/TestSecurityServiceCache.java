@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2015 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.CoreUTConstants;
+import org.nuxeo.ecm.core.NXCore;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACL;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
+import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
+import org.nuxeo.ecm.core.model.Document;
+import org.nuxeo.ecm.core.model.MockDocument;
+import org.nuxeo.ecm.core.model.Session;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+public class TestSecurityServiceCache extends NXRuntimeTestCase {
+
+    /**
+     * Low-level session only returning merged ACPs, and counting the calls.
+     */
+    protected static class MockSession implements InvocationHandler {
+
+        protected final Map<String, ACP> acps = new HashMap<String, ACP>();
+
+        protected int calls;
+
+        protected final Session session = (Session) Proxy.newProxyInstance(
+                Session.class.getClassLoader(), new Class<?>[] { Session.class },
+                this);
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("getMergedACP")) {
+                calls++;
+                return acps.get(((Document) args[0]).getUUID());
+            } else if (name.equals("hashCode")) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            } else if (name.equals("equals")) {
+                return Boolean.valueOf(proxy == args[0]);
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+
+    protected static class SessionDocument extends MockDocument {
+
+        protected final Session session;
+
+        public SessionDocument(String uuid, Session session) {
+            super(uuid, null);
+            this.session = session;
+        }
+
+        @Override
+        public Session getSession() {
+            return session;
+        }
+    }
+
+    private SecurityService service;
+
+    private MockSession mockSession;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        deployContrib(CoreUTConstants.CORE_BUNDLE,
+                "OSGI-INF/SecurityService.xml");
+        deployContrib(CoreUTConstants.CORE_BUNDLE,
+                "OSGI-INF/permissions-contrib.xml");
+        service = NXCore.getSecurityService();
+        mockSession = new MockSession();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.invalidateACPs();
+        service = null;
+        super.tearDown();
+    }
+
+    protected static ACP newACP(ACE... aces) {
+        ACL acl = new ACLImpl(ACL.LOCAL_ACL);
+        acl.addAll(Arrays.asList(aces));
+        ACP acp = new ACPImpl();
+        acp.addACL(acl);
+        return acp;
+    }
+
+    protected Document newDocument(String id, ACP acp) {
+        mockSession.acps.put(id, acp);
+        return new SessionDocument(id, mockSession.session);
+    }
+
+    @Test
+    public void testMergedACPCache() throws Exception {
+        UserPrincipal bob = new UserPrincipal("bob");
+        Document doc = newDocument("doc1", newACP(new ACE("bob",
+                SecurityConstants.READ, true)));
+
+        assertTrue(service.checkPermission(doc, bob, SecurityConstants.READ));
+        assertTrue(service.checkPermission(doc, bob,
+                SecurityConstants.READ_PROPERTIES));
+        assertFalse(service.checkPermission(doc, bob, SecurityConstants.WRITE));
+        assertEquals(1, mockSession.calls);
+
+        // changed ACLs are seen after invalidation
+        mockSession.acps.put("doc1", newACP(new ACE("bob",
+                SecurityConstants.READ, false)));
+        assertTrue(service.checkPermission(doc, bob, SecurityConstants.READ));
+        service.invalidateACPs();
+        assertFalse(service.checkPermission(doc, bob, SecurityConstants.READ));
+        assertEquals(2, mockSession.calls);
+
+        // another session has its own merged ACPs
+        MockSession otherSession = new MockSession();
+        otherSession.acps.putAll(mockSession.acps);
+        Document otherDoc = new SessionDocument("doc1", otherSession.session);
+        assertFalse(service.checkPermission(otherDoc, bob,
+                SecurityConstants.READ));
+        assertEquals(1, otherSession.calls);
+        assertEquals(2, mockSession.calls);
+    }
+
+    @Test
+    public void testDecisionCache() throws Exception {
+        UserPrincipal bob = new UserPrincipal("bob",
+                new ArrayList<String>(Arrays.asList("members")), false, false);
+        // different documents with the same ACEs share decisions
+        Document doc1 = newDocument("doc1", newACP(new ACE("members",
+                SecurityConstants.READ_WRITE, true)));
+        Document doc2 = newDocument("doc2", newACP(new ACE("members",
+                SecurityConstants.READ_WRITE, true)));
+        Document doc3 = newDocument("doc3", newACP(new ACE("members",
+                SecurityConstants.READ, true)));
+
+        service.decisions.clear();
+        assertTrue(service.checkPermission(doc1, bob, SecurityConstants.WRITE));
+        assertEquals(1, service.decisions.size());
+        assertTrue(service.checkPermission(doc2, bob, SecurityConstants.WRITE));
+        assertEquals(1, service.decisions.size());
+        assertFalse(service.checkPermission(doc3, bob, SecurityConstants.WRITE));
+        assertEquals(2, service.decisions.size());
+
+        // decisions depend on the principal name too
+        UserPrincipal joe = new UserPrincipal("joe",
+                new ArrayList<String>(Arrays.asList("members")), false, false);
+        assertTrue(service.checkPermission(doc1, joe, SecurityConstants.WRITE));
+        assertEquals(3, service.decisions.size());
+
+        // a change in groups is seen
+        UserPrincipal alice = new UserPrincipal("alice",
+                new ArrayList<String>(), false, false);
+        assertFalse(service.checkPermission(doc1, alice,
+                SecurityConstants.WRITE));
+        alice.getAllGroups().add("members");
+        assertTrue(service.checkPermission(doc1, alice,
+                SecurityConstants.WRITE));
+    }
+
+    @Test
+    public void testPermissionsToCheckCache() throws Exception {
+        String[] perms = service.getPermissionsToCheck(SecurityConstants.READ);
+        List<String> expected = Arrays.asList(perms.clone());
+        perms[0] = "foo";
+        String[] perms2 = service.getPermissionsToCheck(SecurityConstants.READ);
+        assertNotSame(perms, perms2);
+        assertEquals(expected, Arrays.asList(perms2));
+
+        // new permission groups are seen
+        deployContrib(CoreUTConstants.CORE_TESTS_BUNDLE,
+                "permissions-override1-contrib.xml");
+        perms = service.getPermissionsToCheck(SecurityConstants.READ);
+        assertTrue(Arrays.asList(perms).contains("CustomCompoundPerm"));
+    }
+
+}